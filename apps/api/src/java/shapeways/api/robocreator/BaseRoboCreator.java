@@ -18,6 +18,7 @@ import com.amazonaws.regions.Region;
 import com.amazonaws.regions.RegionUtils;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
 import com.amazonaws.services.sqs.model.Message;
 import com.google.gson.Gson;
 import shapeways.api.JSONMunger;
@@ -33,12 +34,18 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base class for RoboCreator examples
@@ -49,6 +56,13 @@ public abstract class BaseRoboCreator extends HttpServlet implements ModelGenera
     private static final boolean DEBUG = false;
 
     private static final int DEFAULT_POLL_FREQUENCY = 5000;
+
+    /** SQS default visibility timeout in seconds */
+    private static final int DEFAULT_VISIBILITY_TIMEOUT = 30;
+
+    /** Fraction of the heap available to jobs when MaxJobMemory is not set */
+    private static final double DEFAULT_MEMORY_FRACTION = 0.8;
+
     private static final String QUEUE_PREPEND = "RoboCreator_";
 
     private String shapewaysHost;
@@ -60,7 +74,19 @@ public abstract class BaseRoboCreator extends HttpServlet implements ModelGenera
     private String accessSecret;
 
     // Internal service queue for threads
-    private ThreadPoolExecutor threadPool;
+    private ExecutorService threadPool;
+
+    // Runs model generation jobs within cpu and memory budgets
+    private JobScheduler scheduler;
+
+    // Cost of jobs without size params
+    private JobCost defaultCost;
+
+    // Receipt handles of messages with queued or running jobs.  They are kept invisible in SQS until the job is done
+    private Set<String> acceptedMessages = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // Extends visibility of accepted messages
+    private ScheduledExecutorService visibilityExtender;
 
     // Queue name for messages across machines.
     private String serviceQueue;
@@ -116,7 +142,31 @@ public abstract class BaseRoboCreator extends HttpServlet implements ModelGenera
             threads =  Runtime.getRuntime().availableProcessors();;
         }
 
-        threadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(threads);
+        threadPool = Executors.newSingleThreadExecutor();
+
+        // Memory available to jobs in megabytes.  Default is most of the heap
+        long maxMemory = (long) (Runtime.getRuntime().maxMemory() * DEFAULT_MEMORY_FRACTION);
+        String max_memory_st = getInitParameter("MaxJobMemory");
+        if (max_memory_st != null) {
+            maxMemory = Long.parseLong(max_memory_st) * 1024 * 1024;
+        }
+
+        scheduler = new JobScheduler(threads, maxMemory, threads);
+
+        // Cost of a job which does not send its size.  Default is an equal share of the memory budget
+        long jobMemory = maxMemory / threads;
+        String job_memory_st = getInitParameter("JobMemory");
+        if (job_memory_st != null) {
+            jobMemory = Long.parseLong(job_memory_st) * 1024 * 1024;
+        }
+
+        int jobThreads = 1;
+        String job_threads_st = getInitParameter("JobThreads");
+        if (job_threads_st != null) {
+            jobThreads = Integer.parseInt(job_threads_st);
+        }
+
+        defaultCost = new JobCost(jobThreads, jobMemory);
 
         consumerKey = getInitParameter("ShapewaysConsumerKey");
         consumerSecret = getInitParameter("ShapewaysConsumerSecret");
@@ -168,18 +218,48 @@ public abstract class BaseRoboCreator extends HttpServlet implements ModelGenera
         sqs.setRegion(region);
 
         threadPool.submit(new SQSCreateQueueTask(sqs,QUEUE_PREPEND + serviceQueue,visibilityTimeout,this));
+
+        // Queued jobs may wait longer than the visibility timeout, extend it before it expires
+        final int timeout = (visibilityTimeout != null) ? visibilityTimeout.intValue() : DEFAULT_VISIBILITY_TIMEOUT;
+        long period = Math.max(1, timeout / 2);
+        visibilityExtender = Executors.newSingleThreadScheduledExecutor();
+        visibilityExtender.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                extendVisibility(timeout);
+            }
+        }, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Extend visibility timeout of messages which jobs are queued or running.
+     *
+     * @param timeout The new visibility timeout in seconds
+     */
+    private void extendVisibility(int timeout) {
+        for (String handle : acceptedMessages) {
+            try {
+                sqs.changeMessageVisibility(new ChangeMessageVisibilityRequest(queueUrl, handle, timeout));
+            } catch(Exception e) {
+                // Message may be already deleted
+                if (DEBUG) {
+                    e.printStackTrace();
+                }
+            }
+        }
     }
 
     @Override
     public void destroy() {
         listener.setTerminate(true);
         threadPool.shutdown();
+        visibilityExtender.shutdown();
+        scheduler.shutdown();
     }
 
     @Override
     public void queueCreated(String name, String url) {
         queueUrl = url;
-        listener = new QueueReceiver(threads, sqs, queueUrl, pollFrequency, threadPool, this);
+        listener = new QueueReceiver(sqs, queueUrl, pollFrequency, scheduler, this);
         listener.start();
     }
 
@@ -203,12 +283,48 @@ public abstract class BaseRoboCreator extends HttpServlet implements ModelGenera
 
             ModelUploader uploader = new ModelUploader(shapewaysHost, consumerKey, consumerSecret, accessToken, accessSecret);
 
-            ModelGeneratorRunner runner = new ModelGeneratorRunner(this, params, uploader, modelId, "cube.x3dv",
-                    X3DEncodingType.X3DV, sqs, queueUrl, msg.getReceiptHandle());
-            threadPool.submit(runner);
+            final String handle = msg.getReceiptHandle();
+            final ModelGeneratorRunner runner = new ModelGeneratorRunner(this, params, uploader, modelId, "cube.x3dv",
+                    X3DEncodingType.X3DV, sqs, queueUrl, handle);
+
+            // Queued jobs reserve their place, a large job at the head of a lane runs once running jobs finish
+            acceptedMessages.add(handle);
+            try {
+                scheduler.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            runner.run();
+                        } finally {
+                            acceptedMessages.remove(handle);
+                        }
+                    }
+                }, estimateCost(params), JobScheduler.parsePriority(params.get("priority")));
+            } catch(RejectedExecutionException ree) {
+                // Message becomes visible in SQS again after the visibility timeout
+                acceptedMessages.remove(handle);
+                System.out.println("Job rejected: " + modelId + " " + scheduler);
+            }
         }
     }
 
+    /**
+     * Estimate the resources needed to generate a model.  Jobs without size params get the cost
+     * from the JobMemory and JobThreads init params.  Generators with better knowledge of their grid
+     * and mesh sizes should override.
+     *
+     * @param params The job params
+     */
+    protected JobCost estimateCost(Map params) {
+        return JobCost.fromParams(params, defaultCost);
+    }
+
+    /**
+     * Get the job scheduler metrics.
+     */
+    public JobScheduler getScheduler() {
+        return scheduler;
+    }
+
     /**
      * Get the public facing hostname for this machine.  Uses AWS metadata service.
      */
@@ -0,0 +1,109 @@
+/*****************************************************************************
+ *                        Copyright Shapeways, Inc. (c) 2018
+ *                               Java Source
+ *
+ * This source is licenses under the Apache License, version 2.0
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+ *
+ *
+ ****************************************************************************/
+
+package shapeways.api.robocreator;
+
+import java.util.Map;
+
+/**
+ * Estimated resources needed to run a model generation job.
+ */
+public class JobCost {
+    /** Memory used by any job */
+    public static final long BASE_MEMORY = 64L * 1024 * 1024;
+
+    /** Memory per voxel of the working grids.  Density, distance and index grids are often alive together */
+    public static final long BYTES_PER_VOXEL = 8;
+
+    /** Memory per triangle of the generated mesh including mesh structures and export buffers */
+    public static final long BYTES_PER_TRIANGLE = 120;
+
+    private int threads;
+    private long memory;
+
+    public JobCost(int threads, long memory) {
+        this.threads = Math.max(1, threads);
+        this.memory = Math.max(0, memory);
+    }
+
+    /**
+     * Estimate cost from job params.  Recognized params:
+     *    gridVoxels - count of voxels, or voxelSize with width, height and depth in meters
+     *    maxTriangles - triangle budget of the result
+     *    threads - count of threads used by the job
+     *
+     * Missing params contribute nothing to the estimate.
+     */
+    public static JobCost fromParams(Map<?, ?> params) {
+        return fromParams(params, new JobCost(1, BASE_MEMORY));
+    }
+
+    /**
+     * Estimate cost from job params.  Jobs without grid or triangle params use the default cost,
+     * with the threads param overriding the default thread count.
+     *
+     * @param params The job params
+     * @param defaultCost The cost of jobs of unknown size
+     */
+    public static JobCost fromParams(Map<?, ?> params, JobCost defaultCost) {
+        int threads = (int) getNumber(params, "threads", defaultCost.getThreads());
+
+        double voxels = getNumber(params, "gridVoxels", 0);
+        if (voxels <= 0) {
+            double vs = getNumber(params, "voxelSize", 0);
+            if (vs > 0) {
+                voxels = Math.ceil(getNumber(params, "width", 0) / vs) *
+                         Math.ceil(getNumber(params, "height", 0) / vs) *
+                         Math.ceil(getNumber(params, "depth", 0) / vs);
+            }
+        }
+        double triangles = getNumber(params, "maxTriangles", 0);
+
+        if (voxels <= 0 && triangles <= 0) {
+            return new JobCost(threads, defaultCost.getMemory());
+        }
+
+        long memory = BASE_MEMORY + (long) (voxels * BYTES_PER_VOXEL + triangles * BYTES_PER_TRIANGLE);
+
+        return new JobCost(threads, memory);
+    }
+
+    private static double getNumber(Map<?, ?> params, String name, double defValue) {
+        if (params == null) return defValue;
+
+        Object val = params.get(name);
+        if (val instanceof Number) {
+            return ((Number) val).doubleValue();
+        }
+
+        if (val instanceof String) {
+            try {
+                return Double.parseDouble((String) val);
+            } catch(NumberFormatException nfe) {
+                System.out.println("Cannot parse job param: " + name + " value: " + val);
+            }
+        }
+
+        return defValue;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getMemory() {
+        return memory;
+    }
+
+    public String toString() {
+        return "JobCost(threads: " + threads + " memory: " + (memory / (1024 * 1024)) + "MB)";
+    }
+}
@@ -0,0 +1,346 @@
+/*****************************************************************************
+ *                        Copyright Shapeways, Inc. (c) 2018
+ *                               Java Source
+ *
+ * This source is licenses under the Apache License, version 2.0
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.html
+ *
+ *
+ ****************************************************************************/
+
+package shapeways.api.robocreator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs model generation jobs within thread and memory budgets.
+ *
+ * Jobs wait in priority lanes until their estimated cost fits into the free budget.  The head of the
+ * highest priority non empty lane is admitted first, lower lanes wait behind it so a large job is not
+ * starved by a stream of small ones.  A job larger than the whole budget runs alone.
+ *
+ * The count of waiting jobs is bounded, receivers should only take as many messages from the
+ * queue as getAvailableCapacity() allows and use awaitCapacity() instead of polling.  Messages with
+ * a visibility timeout have to be kept invisible while their jobs wait.
+ */
+public class JobScheduler {
+    private static final boolean DEBUG = false;
+
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
+    private static final int LANE_COUNT = 3;
+
+    private int maxThreads;
+    private long maxMemory;
+    private int maxQueued;
+
+    private List<ArrayDeque<Job>> lanes;
+    private int queued;
+    private int running;
+    private int usedThreads;
+    private long usedMemory;
+    private boolean shutdown;
+
+    // Metrics
+    private long completed;
+    private long rejected;
+    private long totalWait;
+    private long maxWait;
+
+    private ExecutorService executor;
+
+    /**
+     * @param maxThreads Count of threads available to jobs
+     * @param maxMemory Memory available to jobs in bytes
+     * @param maxQueued Max count of jobs waiting for admission
+     */
+    public JobScheduler(int maxThreads, long maxMemory, int maxQueued) {
+        this.maxThreads = Math.max(1, maxThreads);
+        this.maxMemory = maxMemory;
+        this.maxQueued = Math.max(1, maxQueued);
+
+        lanes = new ArrayList<ArrayDeque<Job>>(LANE_COUNT);
+        for(int i = 0; i < LANE_COUNT; i++) {
+            lanes.add(new ArrayDeque<Job>());
+        }
+
+        // Admission bounds the count of running jobs, threads are only created as needed
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private int cnt;
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "JobScheduler-" + (cnt++));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Parse a job priority from a message param.  Accepts a lane number or high, normal and low.
+     */
+    public static int parsePriority(Object val) {
+        if (val instanceof Number) {
+            return clampPriority(((Number) val).intValue());
+        }
+
+        if (val instanceof String) {
+            String st = (String) val;
+            if (st.equalsIgnoreCase("high")) return PRIORITY_HIGH;
+            if (st.equalsIgnoreCase("low")) return PRIORITY_LOW;
+            try {
+                return clampPriority((int) Double.parseDouble(st));
+            } catch(NumberFormatException nfe) {
+                // fall through to normal priority
+            }
+        }
+
+        return PRIORITY_NORMAL;
+    }
+
+    private static int clampPriority(int priority) {
+        return Math.max(PRIORITY_HIGH, Math.min(PRIORITY_LOW, priority));
+    }
+
+    /**
+     * Queue a job.
+     *
+     * @param task The job to run
+     * @param cost The estimated cost
+     * @param priority One of PRIORITY_HIGH, PRIORITY_NORMAL, PRIORITY_LOW
+     * @return The future of the job
+     * @throws RejectedExecutionException when the wait queue is full or the scheduler is shut down
+     */
+    public synchronized Future<?> submit(Runnable task, JobCost cost, int priority) {
+        if (shutdown || queued >= maxQueued) {
+            rejected++;
+            throw new RejectedExecutionException("Job queue is full or shut down.  queued: " + queued);
+        }
+
+        Job job = new Job(task, cost, clampPriority(priority));
+        lanes.get(job.priority).add(job);
+        queued++;
+
+        if (DEBUG) {
+            System.out.println("Queued job: " + cost + " priority: " + job.priority + " queued: " + queued);
+        }
+
+        dispatch();
+
+        return job;
+    }
+
+    /**
+     * Get the count of jobs which can be queued without rejection.
+     */
+    public synchronized int getAvailableCapacity() {
+        return maxQueued - queued;
+    }
+
+    /**
+     * Wait until a job can be queued.
+     *
+     * @param timeout Max time to wait in milliseconds
+     * @return true if there is capacity
+     */
+    public synchronized boolean awaitCapacity(long timeout) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+
+        while(queued >= maxQueued && !shutdown) {
+            long left = end - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+
+        return !shutdown;
+    }
+
+    /**
+     * Wait until all queued and running jobs are done.
+     *
+     * @param timeout Max time to wait in milliseconds
+     * @return true if idle
+     */
+    public synchronized boolean awaitIdle(long timeout) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+
+        while(queued + running > 0) {
+            long left = end - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+
+        return true;
+    }
+
+    /**
+     * Stop accepting jobs.  Running jobs are finished, waiting jobs are cancelled.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+
+        for(int i = 0; i < LANE_COUNT; i++) {
+            for(Job job : lanes.get(i)) {
+                job.cancel(false);
+            }
+            lanes.get(i).clear();
+        }
+        queued = 0;
+
+        executor.shutdown();
+        notifyAll();
+    }
+
+    /**
+     * Start the waiting jobs which fit into the free budget.
+     */
+    private void dispatch() {
+        while(!shutdown) {
+            Job job = null;
+            for(int i = 0; i < LANE_COUNT; i++) {
+                job = lanes.get(i).peek();
+                if (job != null) break;
+            }
+
+            if (job == null || !fits(job.cost)) {
+                return;
+            }
+
+            lanes.get(job.priority).poll();
+            queued--;
+
+            long wait = System.currentTimeMillis() - job.queuedTime;
+            totalWait += wait;
+            maxWait = Math.max(maxWait, wait);
+
+            running++;
+            usedThreads += getThreads(job.cost);
+            usedMemory += job.cost.getMemory();
+
+            executor.execute(job);
+
+            // A slot in the wait queue was freed
+            notifyAll();
+        }
+    }
+
+    private boolean fits(JobCost cost) {
+        if (running == 0) {
+            // Oversized jobs run alone
+            return true;
+        }
+
+        return usedThreads + getThreads(cost) <= maxThreads &&
+               usedMemory + cost.getMemory() <= maxMemory;
+    }
+
+    private int getThreads(JobCost cost) {
+        return Math.min(cost.getThreads(), maxThreads);
+    }
+
+    private synchronized void jobDone(Job job) {
+        running--;
+        usedThreads -= getThreads(job.cost);
+        usedMemory -= job.cost.getMemory();
+        completed++;
+
+        if (DEBUG) {
+            System.out.println("Job done: " + job.cost + " time: " + (System.currentTimeMillis() - job.queuedTime));
+        }
+
+        dispatch();
+        notifyAll();
+    }
+
+    /**
+     * Get the count of jobs waiting in a priority lane.
+     */
+    public synchronized int getQueueDepth(int priority) {
+        return lanes.get(clampPriority(priority)).size();
+    }
+
+    /**
+     * Get the count of jobs waiting in all lanes.
+     */
+    public synchronized int getQueueDepth() {
+        return queued;
+    }
+
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    public synchronized int getUsedThreads() {
+        return usedThreads;
+    }
+
+    public synchronized long getUsedMemory() {
+        return usedMemory;
+    }
+
+    public synchronized long getCompletedCount() {
+        return completed;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * Get the average time jobs waited for admission in milliseconds.
+     */
+    public synchronized double getAverageWaitTime() {
+        long started = completed + running;
+        return (started > 0) ? (double) totalWait / started : 0;
+    }
+
+    /**
+     * Get the longest time a job waited for admission in milliseconds.
+     */
+    public synchronized long getMaxWaitTime() {
+        return maxWait;
+    }
+
+    public synchronized String toString() {
+        return "JobScheduler(queued: " + lanes.get(PRIORITY_HIGH).size() + "/" + lanes.get(PRIORITY_NORMAL).size() + "/" +
+                lanes.get(PRIORITY_LOW).size() + " running: " + running + " threads: " + usedThreads + "/" + maxThreads +
+                " memory: " + (usedMemory / (1024 * 1024)) + "/" + (maxMemory / (1024 * 1024)) + "MB completed: " +
+                completed + " avgWait: " + (long) getAverageWaitTime() + "ms maxWait: " + maxWait + "ms)";
+    }
+
+    private class Job extends FutureTask<Object> {
+        private JobCost cost;
+        private int priority;
+        private long queuedTime;
+
+        Job(Runnable task, JobCost cost, int priority) {
+            super(task, null);
+            this.cost = cost;
+            this.priority = priority;
+            queuedTime = System.currentTimeMillis();
+        }
+
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                jobDone(this);
+            }
+        }
+    }
+}
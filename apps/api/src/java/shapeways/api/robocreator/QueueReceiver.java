@@ -3,37 +3,34 @@ package shapeways.api.robocreator;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
-import com.google.gson.Gson;
 
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Listens to a queue for new messages.
+ * Listens to a queue for new messages.  Only as many messages are received as the
+ * scheduler can queue, the rest stay in SQS for other machines.
  *
  * @author Alan Hudson
  */
 public class QueueReceiver extends Thread {
     private static final boolean DEBUG = false;
 
+    /** Max messages per SQS receive request */
+    private static final int MAX_MESSAGES = 10;
+
     /** Polling frequency to SQS.  A per message cost is incurred so don't make too small */
     private int pollFrequency;
-    private int threads;
     private String queueUrl;
     private volatile boolean terminate;
     private AmazonSQS sqs;
-    private ThreadPoolExecutor threadPool;
+    private JobScheduler scheduler;
     private SQSQueueListener listener;
 
-    public QueueReceiver(int threads, AmazonSQS sqs, String queueUrl, int pollFrequency, ThreadPoolExecutor threadPool, SQSQueueListener listener) {
-        this.threads = threads;
+    public QueueReceiver(AmazonSQS sqs, String queueUrl, int pollFrequency, JobScheduler scheduler, SQSQueueListener listener) {
         this.queueUrl = queueUrl;
         this.sqs = sqs;
         this.pollFrequency = pollFrequency;
-        this.threadPool = threadPool;
+        this.scheduler = scheduler;
         this.listener = listener;
 
         terminate = false;
@@ -46,28 +43,32 @@ public class QueueReceiver extends Thread {
 
         while(!terminate) {
 
-            int count = threads - threadPool.getActiveCount();
+            int count = scheduler.getAvailableCapacity();
 
-            if (count < 0) {
+            if (count <= 0) {
+                // Backpressure, wait for the scheduler to admit a job instead of polling
                 try {
-                    Thread.sleep(100);
+                    scheduler.awaitCapacity(pollFrequency);
                 } catch(InterruptedException ie) {}
 
                 continue;
             }
 
             ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl);
-            receiveMessageRequest.setMaxNumberOfMessages(count);
+            receiveMessageRequest.setMaxNumberOfMessages(Math.min(count, MAX_MESSAGES));
 
             List<Message> messages = sqs.receiveMessage(receiveMessageRequest).getMessages();
 
 
             if (messages.size() > 0) {
                 if (DEBUG) {
-                    System.out.println("Received messages: " + messages.size());
+                    System.out.println("Received messages: " + messages.size() + " " + scheduler);
                 }
 
                 listener.messagesReceived(messages);
+
+                // More messages may be waiting, receive again while there is capacity
+                continue;
             }
 
             try {
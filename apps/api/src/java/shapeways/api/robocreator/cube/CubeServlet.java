@@ -1,6 +1,7 @@
 package shapeways.api.robocreator.cube;
 
 import shapeways.api.robocreator.BaseRoboCreator;
+import shapeways.api.robocreator.JobCost;
 import shapeways.api.robocreator.X3DEncodingType;
 
 import java.io.ByteArrayOutputStream;
@@ -27,4 +28,11 @@ public class CubeServlet extends BaseRoboCreator {
         return baos.toByteArray();
     }
 
+    /**
+     * The cube is a fixed tiny scene, it needs no grid or mesh memory.
+     */
+    @Override
+    protected JobCost estimateCost(Map params) {
+        return new JobCost(1, JobCost.BASE_MEMORY);
+    }
 }
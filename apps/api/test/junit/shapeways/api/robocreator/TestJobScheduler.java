@@ -0,0 +1,283 @@
+/******************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package shapeways.api.robocreator;
+
+// External Imports
+import junit.framework.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests admission, priorities and backpressure of the JobScheduler
+ */
+public class TestJobScheduler extends TestCase {
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestJobScheduler.class);
+    }
+
+    public void testCostEstimate() {
+        Map<String, Object> params = new HashMap<String, Object>();
+        assertEquals("base", JobCost.BASE_MEMORY, JobCost.fromParams(params).getMemory());
+
+        params.put("voxelSize", "0.0001");
+        params.put("width", 0.01);
+        params.put("height", 0.01);
+        params.put("depth", 0.02);
+        params.put("maxTriangles", 1000);
+        params.put("threads", 4.0);
+
+        JobCost cost = JobCost.fromParams(params);
+        long expected = JobCost.BASE_MEMORY + 100 * 100 * 200 * JobCost.BYTES_PER_VOXEL + 1000 * JobCost.BYTES_PER_TRIANGLE;
+        assertEquals("memory", expected, cost.getMemory());
+        assertEquals("threads", 4, cost.getThreads());
+
+        JobCost defaultCost = new JobCost(2, 500 * MB);
+        assertEquals("sized job", expected, JobCost.fromParams(params, defaultCost).getMemory());
+        params.clear();
+        assertEquals("default memory", 500 * MB, JobCost.fromParams(params, defaultCost).getMemory());
+        assertEquals("default threads", 2, JobCost.fromParams(params, defaultCost).getThreads());
+
+        assertEquals(JobScheduler.PRIORITY_HIGH, JobScheduler.parsePriority("high"));
+        assertEquals(JobScheduler.PRIORITY_LOW, JobScheduler.parsePriority(7.0));
+        assertEquals(JobScheduler.PRIORITY_NORMAL, JobScheduler.parsePriority(null));
+    }
+
+    /**
+     * Running jobs never exceed the memory budget
+     */
+    public void testMemoryBudget() throws Exception {
+        JobScheduler scheduler = new JobScheduler(8, 100 * MB, 20);
+        final AtomicInteger memory = new AtomicInteger();
+        final AtomicInteger maxMemory = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for(int i = 0; i < 12; i++) {
+            final int mb = 20 + (i % 3) * 10;
+            futures.add(scheduler.submit(new Runnable() {
+                public void run() {
+                    int m = memory.addAndGet(mb);
+                    synchronized(maxMemory) {
+                        maxMemory.set(Math.max(maxMemory.get(), m));
+                    }
+                    sleep(20);
+                    memory.addAndGet(-mb);
+                }
+            }, new JobCost(1, mb * MB), JobScheduler.PRIORITY_NORMAL));
+        }
+
+        for(Future<?> f : futures) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+
+        assertTrue("memory budget: " + maxMemory.get(), maxMemory.get() <= 100);
+        assertTrue(scheduler.awaitIdle(1000));
+        assertEquals("completed", 12, scheduler.getCompletedCount());
+        assertEquals("used memory", 0, scheduler.getUsedMemory());
+        assertEquals("used threads", 0, scheduler.getUsedThreads());
+        scheduler.shutdown();
+    }
+
+    /**
+     * Jobs larger than the budget run alone
+     */
+    public void testOversizedJob() throws Exception {
+        JobScheduler scheduler = new JobScheduler(2, 100 * MB, 10);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        Runnable job = new Runnable() {
+            public void run() {
+                int r = running.incrementAndGet();
+                synchronized(maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), r));
+                }
+                sleep(20);
+                running.decrementAndGet();
+            }
+        };
+
+        Future<?> big = scheduler.submit(job, new JobCost(1, 500 * MB), JobScheduler.PRIORITY_NORMAL);
+        scheduler.submit(job, new JobCost(1, 10 * MB), JobScheduler.PRIORITY_NORMAL);
+        scheduler.submit(job, new JobCost(1, 10 * MB), JobScheduler.PRIORITY_NORMAL);
+
+        big.get(10, TimeUnit.SECONDS);
+        assertTrue(scheduler.awaitIdle(10000));
+        assertEquals("completed", 3, scheduler.getCompletedCount());
+        assertTrue("small jobs run together: " + maxRunning.get(), maxRunning.get() <= 2);
+        scheduler.shutdown();
+    }
+
+    /**
+     * Waiting jobs are admitted by priority
+     */
+    public void testPriority() throws Exception {
+        JobScheduler scheduler = new JobScheduler(1, 100 * MB, 10);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        scheduler.submit(new Runnable() {
+            public void run() {
+                try {
+                    gate.await();
+                } catch(InterruptedException ie) {}
+            }
+        }, new JobCost(1, MB), JobScheduler.PRIORITY_NORMAL);
+
+        String names[] = {"low", "normal", "high", "low2", "high2"};
+        int priorities[] = {JobScheduler.PRIORITY_LOW, JobScheduler.PRIORITY_NORMAL, JobScheduler.PRIORITY_HIGH,
+                JobScheduler.PRIORITY_LOW, JobScheduler.PRIORITY_HIGH};
+        for(int i = 0; i < names.length; i++) {
+            final String name = names[i];
+            scheduler.submit(new Runnable() {
+                public void run() {
+                    order.add(name);
+                }
+            }, new JobCost(1, MB), priorities[i]);
+        }
+
+        assertEquals("high lane", 2, scheduler.getQueueDepth(JobScheduler.PRIORITY_HIGH));
+        assertEquals("low lane", 2, scheduler.getQueueDepth(JobScheduler.PRIORITY_LOW));
+        assertEquals("queued", 5, scheduler.getQueueDepth());
+
+        gate.countDown();
+        assertTrue(scheduler.awaitIdle(10000));
+
+        assertEquals("[high, high2, normal, low, low2]", order.toString());
+        assertTrue("wait time", scheduler.getMaxWaitTime() >= 0);
+        scheduler.shutdown();
+    }
+
+    /**
+     * A receiver takes only as many messages from an in memory queue as the scheduler can hold
+     */
+    public void testBackpressure() throws Exception {
+        final JobScheduler scheduler = new JobScheduler(2, 100 * MB, 3);
+        ConcurrentLinkedQueue<Map> queue = new ConcurrentLinkedQueue<Map>();
+        for(int i = 0; i < 40; i++) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("gridVoxels", 1000000);
+            params.put("priority", (i % 4 == 0) ? "high" : "normal");
+            queue.add(params);
+        }
+
+        final AtomicInteger done = new AtomicInteger();
+        int maxQueued = 0;
+
+        while(!queue.isEmpty()) {
+            int count = scheduler.getAvailableCapacity();
+            if (count <= 0) {
+                assertTrue("capacity", scheduler.awaitCapacity(10000));
+                continue;
+            }
+
+            for(int i = 0; i < count && !queue.isEmpty(); i++) {
+                Map params = queue.poll();
+                scheduler.submit(new Runnable() {
+                    public void run() {
+                        sleep(5);
+                        done.incrementAndGet();
+                    }
+                }, JobCost.fromParams(params), JobScheduler.parsePriority(params.get("priority")));
+            }
+
+            maxQueued = Math.max(maxQueued, scheduler.getQueueDepth());
+        }
+
+        assertTrue("queue bound: " + maxQueued, maxQueued <= 3);
+        assertTrue(scheduler.awaitIdle(10000));
+        assertEquals("done", 40, done.get());
+        assertEquals("rejected", 0, scheduler.getRejectedCount());
+
+        scheduler.shutdown();
+        try {
+            scheduler.submit(new Runnable() {
+                public void run() {
+                }
+            }, new JobCost(1, MB), JobScheduler.PRIORITY_NORMAL);
+            fail("Job accepted after shutdown");
+        } catch(RejectedExecutionException ree) {
+            // expected
+        }
+    }
+
+    /**
+     * A large waiting job reserves the budget and runs while small jobs keep arriving
+     */
+    public void testLargeJobNotStarved() throws Exception {
+        final JobScheduler scheduler = new JobScheduler(4, 100 * MB, 4);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger runningWithLarge = new AtomicInteger(-1);
+
+        Runnable small = new Runnable() {
+            public void run() {
+                running.incrementAndGet();
+                sleep(5);
+                running.decrementAndGet();
+            }
+        };
+        Runnable large = new Runnable() {
+            public void run() {
+                runningWithLarge.set(running.get());
+                sleep(5);
+            }
+        };
+
+        Future<?> largeFuture = null;
+        int submitted = 0;
+        long end = System.currentTimeMillis() + 10000;
+
+        // Receiver keeps the queue full of small jobs until the large job is done
+        while(System.currentTimeMillis() < end && (largeFuture == null || !largeFuture.isDone())) {
+            if (scheduler.getAvailableCapacity() <= 0) {
+                assertTrue("capacity", scheduler.awaitCapacity(10000));
+                continue;
+            }
+
+            if (submitted == 20) {
+                largeFuture = scheduler.submit(large, new JobCost(1, 90 * MB), JobScheduler.PRIORITY_NORMAL);
+            } else {
+                scheduler.submit(small, new JobCost(1, 30 * MB), JobScheduler.PRIORITY_NORMAL);
+            }
+            submitted++;
+        }
+
+        assertNotNull(largeFuture);
+        largeFuture.get(1, TimeUnit.SECONDS);
+        assertEquals("large job runs alone", 0, runningWithLarge.get());
+
+        assertTrue(scheduler.awaitIdle(10000));
+        assertEquals("rejected", 0, scheduler.getRejectedCount());
+        scheduler.shutdown();
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch(InterruptedException ie) {}
+    }
+}
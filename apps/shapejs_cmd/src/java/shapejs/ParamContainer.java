@@ -7,7 +7,7 @@ import javax.vecmath.Matrix4f;
 import javax.vecmath.Vector3f;
 
 public class ParamContainer {
-    public enum Commands {renderImage,renderTriangle,renderPolyJet,exec};
+    public enum Commands {renderImage,renderTriangle,renderPolyJet,exec,batch};
     private static final int DEFAULT_WIDTH = 512;
     private static final int DEFAULT_HEIGHT = 512;
 
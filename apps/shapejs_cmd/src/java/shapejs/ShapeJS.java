@@ -24,6 +24,7 @@ import static abfab3d.core.Output.printf;
  * shapejs renderTriangle -project prj.zip -variant variants/foo.zip -output foo.stl -meshErrorFactor 0.1
  * shapejs renderPolyjet -project prj.zip -variant variants/foo.zip -output foo.stl
  * shapejs exec -project prj.zip -variant variants/foo.zip
+ * shapejs batch -manifest jobs.json -threads 4 -maxMemory 12000
  */
 public class ShapeJS {
     private List<String> libDirs = new ArrayList<>();
@@ -42,6 +43,24 @@ public class ShapeJS {
             backend = new ShapeJSExecutorImpl(params.getBackend());
         }
 
+        try {
+            Scene scene = loadContent(params.getVariant(),params.getScript());
+            render(backend, scene, params);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            backend.shutdown();
+        }
+    }
+
+    /**
+     * Render a loaded scene into the output of the params
+     *
+     * @param backend The backend to render with
+     * @param scene The scene
+     * @param params The command, output and render params
+     */
+    public static void render(ShapeJSExecutor backend, Scene scene, ParamContainer params) throws IOException {
         String out = params.getOutput();
         String format = FilenameUtils.getExtension(out);
 
@@ -49,7 +68,6 @@ public class ShapeJS {
             FileOutputStream fos = new FileOutputStream(out);
             BufferedOutputStream bos = new BufferedOutputStream(fos);
         ) {
-            Scene scene = loadContent(params.getVariant(),params.getScript());
             switch (params.getCommand()) {
                 case renderImage:
                     Camera camera = params.getCamera();
@@ -59,12 +77,9 @@ public class ShapeJS {
                 case renderTriangle:
                     backend.renderTriangle(scene, bos, format);
                     break;
+                default:
+                    throw new IllegalArgumentException("Unsupported render command: " + params.getCommand());
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            backend.shutdown();
         }
     }
 
@@ -134,6 +149,10 @@ public class ShapeJS {
         try {
             params.setCommand(ParamContainer.Commands.valueOf(args[0]));
 
+            if (params.getCommand() == ParamContainer.Commands.batch) {
+                System.exit(ShapeJSBatch.run(args));
+            }
+
             for(int i = 1; i < args.length; i++){
                 String arg = args[i];
 
@@ -0,0 +1,363 @@
+package shapejs;
+
+import abfab3d.shapejs.*;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
+/**
+ * Render many variants in one JVM.
+ *
+ * The manifest is a JSON array of jobs.  A job has a variant or a script, optional param values
+ * overriding the variant values, an optional memory estimate in megabytes and a list of outputs:
+ *
+ * [
+ *   {"variant": "variants/gyroid1.shapevar", "params": {"radius": 20}, "memory": 2000,
+ *    "outputs": [{"command": "renderImage", "output": "gyroid1.png", "width": 256, "height": 256},
+ *                {"command": "renderTriangle", "output": "gyroid1.stl"}]},
+ *   {"project": "projects/gyrosphere", "script": "scripts/gyrosphere.js", "outputs": [{"output": "gyrosphere.png"}]}
+ * ]
+ *
+ * Relative paths in the manifest are resolved against the manifest location, uri params against the variant
+ * or script.  Jobs sharing a script are run one after another on the same evaluator, so the script is compiled
+ * once and datasources initialized with equal params (meshes, images, distance grids) come from the ParamCache.
+ * Batches of jobs run concurrently and a batch starts only when its memory estimate fits into the memory budget.
+ */
+public class ShapeJSBatch {
+    private static final boolean DEBUG = false;
+
+    /** Memory estimate of a job in megabytes when the manifest has none */
+    static final int DEFAULT_JOB_MEMORY = 2000;
+
+    /** Fraction of the heap used as memory budget by default */
+    private static final double DEFAULT_MEMORY_FRACTION = 0.8;
+
+    private List<String> libDirs = new ArrayList<>();
+    private int threads = 1;
+    private int maxMemory;
+    private String backend;
+
+    public ShapeJSBatch() {
+        maxMemory = (int) (Runtime.getRuntime().maxMemory() * DEFAULT_MEMORY_FRACTION / (1024 * 1024));
+    }
+
+    public void setLibDirs(List<String> libs) {
+        libDirs.clear();
+        libDirs.addAll(libs);
+    }
+
+    /**
+     * Set the count of batches rendered concurrently
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Set the memory budget of concurrent batches in megabytes
+     */
+    public void setMaxMemory(int maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Set the backend class name, null for the CPU backend
+     */
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * A variant to render with its outputs
+     */
+    static class Job {
+        int index;
+        String name;
+
+        // Variant design with overridden params and the file relative paths are resolved against
+        JsonObject design;
+        File base;
+
+        List<String> libDirs;
+        String scriptKey;
+        int memory;
+        List<ParamContainer> outputs = new ArrayList<>();
+    }
+
+    /**
+     * Read the jobs of a manifest
+     */
+    List<Job> readManifest(String path) throws IOException {
+        File manifest = new File(path);
+        JsonArray array = new JsonParser().parse(FileUtils.readFileToString(manifest, StandardCharsets.UTF_8)).getAsJsonArray();
+
+        List<Job> jobs = new ArrayList<>(array.size());
+
+        for(int i = 0; i < array.size(); i++) {
+            JsonObject obj = array.get(i).getAsJsonObject();
+            Job job = new Job();
+            job.index = i;
+            job.libDirs = new ArrayList<>(libDirs);
+
+            if (obj.has("project")) {
+                File project = new File(Variant.resolvePath(manifest, new File(obj.get("project").getAsString())));
+                if (project.isDirectory()) {
+                    job.libDirs.add(project.getPath());
+                }
+            }
+
+            String scriptPath;
+            if (obj.has("variant")) {
+                job.base = new File(Variant.resolvePath(manifest, new File(obj.get("variant").getAsString())));
+                job.name = job.base.getPath();
+                job.design = new JsonParser().parse(FileUtils.readFileToString(job.base, StandardCharsets.UTF_8)).getAsJsonObject();
+                if (!job.design.has(Variant.SCRIPT_PATH)) {
+                    throw new IllegalArgumentException("Variant missing scriptPath: " + job.base);
+                }
+                scriptPath = Variant.resolvePath(job.base, new File(job.design.get(Variant.SCRIPT_PATH).getAsString()));
+            } else if (obj.has("script")) {
+                job.base = new File(Variant.resolvePath(manifest, new File(obj.get("script").getAsString())));
+                job.name = job.base.getPath();
+                job.design = new JsonObject();
+                job.design.addProperty(Variant.SCRIPT_PATH, job.base.getPath());
+                scriptPath = job.base.getPath();
+            } else {
+                throw new IllegalArgumentException("Job " + i + " has no variant or script");
+            }
+
+            JsonObject scriptParams = job.design.getAsJsonObject(Variant.SCRIPT_PARAMS);
+            if (scriptParams == null) {
+                scriptParams = new JsonObject();
+                job.design.add(Variant.SCRIPT_PARAMS, scriptParams);
+            }
+
+            if (obj.has("params")) {
+                for(Map.Entry<String, JsonElement> entry : obj.getAsJsonObject("params").entrySet()) {
+                    scriptParams.add(entry.getKey(), entry.getValue());
+                }
+            }
+
+            job.scriptKey = job.libDirs + scriptPath;
+            job.memory = obj.has("memory") ? obj.get("memory").getAsInt() : DEFAULT_JOB_MEMORY;
+
+            JsonArray outputs = obj.getAsJsonArray("outputs");
+            if (outputs == null || outputs.size() == 0) {
+                throw new IllegalArgumentException("Job " + i + " has no outputs");
+            }
+
+            for(int j = 0; j < outputs.size(); j++) {
+                job.outputs.add(getOutput(manifest, outputs.get(j).getAsJsonObject()));
+            }
+
+            jobs.add(job);
+        }
+
+        return jobs;
+    }
+
+    private ParamContainer getOutput(File manifest, JsonObject obj) {
+        ParamContainer params = new ParamContainer();
+        params.setOutput(Variant.resolvePath(manifest, new File(obj.get("output").getAsString())));
+
+        if (obj.has("command")) {
+            params.setCommand(ParamContainer.Commands.valueOf(obj.get("command").getAsString()));
+        } else {
+            String ext = FilenameUtils.getExtension(params.getOutput()).toLowerCase();
+            boolean image = ext.equals("png") || ext.equals("jpg") || ext.equals("jpeg") || ext.equals("bmp") || ext.equals("gif");
+            params.setCommand(image ? ParamContainer.Commands.renderImage : ParamContainer.Commands.renderTriangle);
+        }
+
+        if (obj.has("width")) params.getImageSetup().setWidth(obj.get("width").getAsInt());
+        if (obj.has("height")) params.getImageSetup().setHeight(obj.get("height").getAsInt());
+
+        return params;
+    }
+
+    /**
+     * Group jobs by script in manifest order.  Large groups are split so all batches fitting
+     * into the memory budget at once have work
+     */
+    List<List<Job>> makeBatches(List<Job> jobs) {
+        Map<String, List<Job>> groups = new LinkedHashMap<>();
+        for(Job job : jobs) {
+            List<Job> group = groups.get(job.scriptKey);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(job.scriptKey, group);
+            }
+            group.add(job);
+        }
+
+        // batches running at once are limited by threads and by the memory of the largest job
+        int jobMemory = 1;
+        for(Job job : jobs) jobMemory = Math.max(jobMemory, Math.min(job.memory, maxMemory));
+        int slots = Math.max(1, Math.min(threads, maxMemory / jobMemory));
+
+        int batchSize = Math.max(1, (jobs.size() + slots - 1) / slots);
+
+        List<List<Job>> batches = new ArrayList<>();
+        for(List<Job> group : groups.values()) {
+            for(int i = 0; i < group.size(); i += batchSize) {
+                batches.add(group.subList(i, Math.min(group.size(), i + batchSize)));
+            }
+        }
+
+        return batches;
+    }
+
+    /**
+     * Render all jobs of a manifest
+     *
+     * @return The count of failed jobs
+     */
+    public int execute(String manifest) throws IOException {
+        long t0 = time();
+
+        List<Job> jobs = readManifest(manifest);
+        List<List<Job>> batches = makeBatches(jobs);
+
+        printf("batch: %d jobs in %d batches, threads: %d memory: %d MB\n", jobs.size(), batches.size(), threads, maxMemory);
+
+        final Semaphore memory = new Semaphore(maxMemory);
+        final AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for(final List<Job> batch : batches) {
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    int mem = 0;
+                    for(Job job : batch) mem = Math.max(mem, job.memory);
+                    mem = Math.min(mem, maxMemory);
+
+                    memory.acquireUninterruptibly(mem);
+                    try {
+                        failed.addAndGet(runBatch(batch));
+                    } finally {
+                        memory.release(mem);
+                    }
+                }
+            }));
+        }
+
+        for(Future<?> future : futures) {
+            try {
+                future.get();
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+        executor.shutdown();
+
+        printf("batch: %d jobs, %d failed, %d ms\n", jobs.size(), failed.get(), time() - t0);
+
+        return failed.get();
+    }
+
+    /**
+     * Render jobs sharing a script on one evaluator
+     *
+     * @return The count of failed jobs
+     */
+    int runBatch(List<Job> batch) {
+        ShapeJSExecutor executor;
+        if (backend == null) {
+            executor = new ShapeJSExecutorCpu(Math.max(1, Runtime.getRuntime().availableProcessors() / threads));
+        } else {
+            executor = new ShapeJSExecutorImpl(backend);
+        }
+
+        // All designs read by the variant share its job ID and evaluator
+        Variant variant = new Variant();
+        int failed = 0;
+
+        try {
+            for(Job job : batch) {
+                long t0 = time();
+                try {
+                    variant.readDesign(job.libDirs, job.base.getPath(), new StringReader(job.design.toString()));
+                    Scene scene = variant.getScene();
+
+                    for(ParamContainer output : job.outputs) {
+                        ShapeJS.render(executor, scene, output);
+                    }
+
+                    if (DEBUG) printf("job %d: %s %d ms\n", job.index, job.name, time() - t0);
+                } catch(Exception e) {
+                    failed++;
+                    printf("job %d failed: %s %s\n", job.index, job.name, e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            ScriptManager.getInstance().cleanupJob(variant.getJobID());
+            executor.shutdown();
+        }
+
+        return failed;
+    }
+
+    /**
+     * Run the batch command
+     *
+     * @return The exit code
+     */
+    public static int run(String[] args) {
+        ShapeJSBatch batch = new ShapeJSBatch();
+        String manifest = null;
+        List<String> libs = new ArrayList<>();
+
+        try {
+            for(int i = 1; i < args.length; i++){
+                String arg = args[i];
+
+                if(arg.equals("-manifest")) {
+                    manifest = args[++i];
+                } else if(arg.equals("-threads")){
+                    batch.setThreads(Integer.parseInt(args[++i]));
+                } else if(arg.equals("-maxMemory")){
+                    batch.setMaxMemory(Integer.parseInt(args[++i]));
+                } else if(arg.equals("-libDir")){
+                    libs.add(args[++i]);
+                } else if(arg.equals("-impl")) {
+                    batch.setBackend(args[++i]);
+                } else {
+                    System.out.println("Unknown parameter: " + arg);
+                    return -1;
+                }
+            }
+
+            if (manifest == null) {
+                System.out.println("No manifest provided");
+                return -1;
+            }
+
+            batch.setLibDirs(libs);
+
+            return (batch.execute(manifest) == 0) ? 0 : 1;
+        } catch(Exception e){
+            e.printStackTrace(System.out);
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/******************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package shapejs;
+
+// External Imports
+import junit.framework.*;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests manifest parsing and batching of the ShapeJSBatch
+ */
+public class TestShapeJSBatch extends TestCase {
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestShapeJSBatch.class);
+    }
+
+    public void testReadManifest() throws IOException {
+        File dir = Files.createTempDirectory("batch").toFile();
+        try {
+            write(new File(dir, "scripts/shape.js"), "function main(args){}");
+            write(new File(dir, "variants/shape.shapevar"),
+                  "{\"scriptPath\": \"../scripts/shape.js\", \"scriptParams\": {\"radius\": 10, \"period\": 5}}");
+            File manifest = new File(dir, "manifest.json");
+            write(manifest,
+                  "[{\"variant\": \"variants/shape.shapevar\", \"params\": {\"radius\": 20}, \"memory\": 500,\n" +
+                  "  \"outputs\": [{\"command\": \"renderImage\", \"output\": \"out/shape.png\", \"width\": 256, \"height\": 128},\n" +
+                  "              {\"output\": \"shape.stl\"}]},\n" +
+                  " {\"script\": \"scripts/shape.js\", \"outputs\": [{\"output\": \"script.jpg\"}]}]");
+
+            ShapeJSBatch batch = new ShapeJSBatch();
+            List<ShapeJSBatch.Job> jobs = batch.readManifest(manifest.getPath());
+            assertEquals("jobs", 2, jobs.size());
+
+            ShapeJSBatch.Job variantJob = jobs.get(0);
+            assertEquals("index", 0, variantJob.index);
+            assertEquals("memory", 500, variantJob.memory);
+            assertEquals("variant base", new File(dir, "variants/shape.shapevar").getCanonicalPath(), variantJob.base.getPath());
+            assertEquals("overridden param", 20, variantJob.design.getAsJsonObject("scriptParams").get("radius").getAsInt());
+            assertEquals("variant param", 5, variantJob.design.getAsJsonObject("scriptParams").get("period").getAsInt());
+
+            assertEquals("outputs", 2, variantJob.outputs.size());
+            ParamContainer image = variantJob.outputs.get(0);
+            assertEquals("image command", ParamContainer.Commands.renderImage, image.getCommand());
+            assertEquals("image output", new File(dir, "out/shape.png").getCanonicalPath(), image.getOutput());
+            assertEquals("width", 256, image.getImageSetup().getWidth());
+            assertEquals("height", 128, image.getImageSetup().getHeight());
+            assertEquals("mesh command", ParamContainer.Commands.renderTriangle, variantJob.outputs.get(1).getCommand());
+
+            ShapeJSBatch.Job scriptJob = jobs.get(1);
+            assertEquals("default memory", ShapeJSBatch.DEFAULT_JOB_MEMORY, scriptJob.memory);
+            assertEquals("script path", scriptJob.base.getPath(), scriptJob.design.get("scriptPath").getAsString());
+            assertEquals("command from extension", ParamContainer.Commands.renderImage, scriptJob.outputs.get(0).getCommand());
+            assertEquals("same script", variantJob.scriptKey, scriptJob.scriptKey);
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    public void testReadInvalidManifest() throws IOException {
+        File dir = Files.createTempDirectory("batch").toFile();
+        try {
+            File manifest = new File(dir, "manifest.json");
+            ShapeJSBatch batch = new ShapeJSBatch();
+
+            write(manifest, "[{\"outputs\": [{\"output\": \"shape.png\"}]}]");
+            try {
+                batch.readManifest(manifest.getPath());
+                fail("job without variant or script");
+            } catch(IllegalArgumentException e) {
+                // expected
+            }
+
+            write(manifest, "[{\"script\": \"shape.js\", \"outputs\": []}]");
+            try {
+                batch.readManifest(manifest.getPath());
+                fail("job without outputs");
+            } catch(IllegalArgumentException e) {
+                // expected
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    public void testBatchesGroupedByScript() {
+        ShapeJSBatch batch = new ShapeJSBatch();
+        batch.setThreads(1);
+        batch.setMaxMemory(8000);
+
+        List<ShapeJSBatch.Job> jobs = makeJobs("a", "b", "a", "c", "b");
+        List<List<ShapeJSBatch.Job>> batches = batch.makeBatches(jobs);
+
+        assertEquals("batches", 3, batches.size());
+        assertBatch(batches.get(0), jobs, 0, 2);
+        assertBatch(batches.get(1), jobs, 1, 4);
+        assertBatch(batches.get(2), jobs, 3);
+    }
+
+    public void testBatchesSplitForThreads() {
+        ShapeJSBatch batch = new ShapeJSBatch();
+        batch.setThreads(4);
+        batch.setMaxMemory(8000);
+
+        List<ShapeJSBatch.Job> jobs = makeJobs("a", "a", "a", "a", "a", "a", "a", "a");
+        for(ShapeJSBatch.Job job : jobs) job.memory = 1000;
+
+        List<List<ShapeJSBatch.Job>> batches = batch.makeBatches(jobs);
+
+        assertEquals("batches", 4, batches.size());
+        for(int i = 0; i < batches.size(); i++) {
+            assertBatch(batches.get(i), jobs, 2*i, 2*i + 1);
+        }
+    }
+
+    public void testBatchesSplitForMemory() {
+        ShapeJSBatch batch = new ShapeJSBatch();
+        batch.setThreads(4);
+        batch.setMaxMemory(5000);
+
+        List<ShapeJSBatch.Job> jobs = makeJobs("a", "a", "a", "a", "a", "a", "a", "a");
+        for(ShapeJSBatch.Job job : jobs) job.memory = 1000;
+        // only two batches fit into the budget together with the largest job
+        jobs.get(5).memory = 2500;
+
+        List<List<ShapeJSBatch.Job>> batches = batch.makeBatches(jobs);
+
+        assertEquals("batches", 2, batches.size());
+        assertBatch(batches.get(0), jobs, 0, 1, 2, 3);
+        assertBatch(batches.get(1), jobs, 4, 5, 6, 7);
+
+        // job larger than the budget runs alone
+        jobs.get(5).memory = 10000;
+        batches = batch.makeBatches(jobs);
+        assertEquals("single batch", 1, batches.size());
+        assertEquals("all jobs", jobs.size(), batches.get(0).size());
+    }
+
+    private static List<ShapeJSBatch.Job> makeJobs(String... scripts) {
+        List<ShapeJSBatch.Job> jobs = new ArrayList<>();
+        for(int i = 0; i < scripts.length; i++) {
+            ShapeJSBatch.Job job = new ShapeJSBatch.Job();
+            job.index = i;
+            job.scriptKey = scripts[i];
+            job.memory = ShapeJSBatch.DEFAULT_JOB_MEMORY;
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    private static void assertBatch(List<ShapeJSBatch.Job> batch, List<ShapeJSBatch.Job> jobs, int... indices) {
+        assertEquals("batch size", indices.length, batch.size());
+        for(int i = 0; i < indices.length; i++) {
+            assertSame("job " + indices[i], jobs.get(indices[i]), batch.get(i));
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        FileUtils.writeStringToFile(file, text, StandardCharsets.UTF_8);
+    }
+}
@@ -19,12 +19,14 @@ import abfab3d.core.AttributeGrid;
 import abfab3d.grid.ArrayAttributeGridByteIndexLong;
 import abfab3d.grid.GridShortIntervals;
 
+import abfab3d.io.input.BinaryGridReader;
 import abfab3d.io.input.SVXReader;
 import abfab3d.io.input.SVXManifest;
 import abfab3d.io.input.X3DReader;
 import abfab3d.io.input.STLReader;
 import abfab3d.io.input.WaveletRasterizer;
 
+import abfab3d.io.output.BinaryGridWriter;
 import abfab3d.io.output.GridSaver;
 import abfab3d.io.output.ShellResults;
 import abfab3d.io.output.MeshMakerMT;
@@ -51,6 +53,7 @@ import static abfab3d.core.Units.MM;
  * SVX format conversion tools.
  *
  * Converts between voxel and triangle formats.
+ * Voxel formats are svx and binary grid snapshot (agrid).
  *
  * @author Alan Hudson
  */
@@ -59,7 +62,7 @@ public class SVXConv {
             "SVX format converter \n" +
                     "usage: svxconv -input foo.svx -output bar.stl \n" +
                     " -input <input file path>\n" +
-                    " -output string (output + extension(svx,stl,x3d*))\n" +
+                    " -output string (output + extension(svx,agrid,stl,x3d*))\n" +
                     " -voxelSize float, voxel size in meters\n" +
                     " -meshSmoothingWidth float[0.5], width of output smooth in voxel size\n" +
                     " -meshErrorFactor float [0.1], max decimation error factor\n" +
@@ -176,6 +179,9 @@ public class SVXConv {
                 meshSmoothingWidth = Double.parseDouble(meshSmoothingWidth_st);
                 printf("Using user specified meshSmoothingWidth: %4.3f\n",meshSmoothingWidth);
             }
+        } else if (ext.equalsIgnoreCase("agrid")) {
+            BinaryGridReader reader = new BinaryGridReader();
+            grid = reader.load(input);
         } else if (ext.equalsIgnoreCase("stl") || ext.startsWith("x3d") || ext.startsWith("X3D")) {
             BoundingBoxCalculator bb = new BoundingBoxCalculator();
             TriangleProducer tp = null;
@@ -246,6 +252,9 @@ public class SVXConv {
         if (ext.equalsIgnoreCase("svx")) {
             SVXWriter writer = new SVXWriter();
             writer.write(grid, output);
+        } else if (ext.equalsIgnoreCase("agrid")) {
+            BinaryGridWriter writer = new BinaryGridWriter();
+            writer.write(grid, output);
         } else if (ext.equalsIgnoreCase("stl")) {
             TriangleMesh mesh = getMesh(grid,subvoxelResolution,meshMinVolume,meshMaxPartsCount);
 
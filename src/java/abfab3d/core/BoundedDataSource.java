@@ -0,0 +1,29 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2019
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.core;
+
+/**
+   data source which may know bounds containing the whole shape 
+
+   bounds returned by getBounds() of many data sources (like compositions or transformed shapes) may be too small 
+   and can not be used to skip calculations
+ */
+public interface BoundedDataSource extends DataSource {
+
+    /**
+       @return bounds which are known to contain the whole shape or null if such bounds are unknown. 
+       The bounds are valid after the data source is initialized
+     */
+    public Bounds getConservativeBounds();
+
+}
@@ -197,8 +197,9 @@ public class Box extends TransformableDataSource {
      * @param val The value in meters
      */
     public void setWidth(double val) {
-        Vector3d s = mp_size.getValue();
+        Vector3d s = new Vector3d(mp_size.getValue());
         s.x = val;
+        mp_size.setValue(s);
     }
 
     /**
@@ -206,8 +207,9 @@ public class Box extends TransformableDataSource {
      * @param val The value in meters
      */
     public void setHeight(double val) {
-        Vector3d s = mp_size.getValue();
+        Vector3d s = new Vector3d(mp_size.getValue());
         s.y = val;
+        mp_size.setValue(s);
     }
 
     /**
@@ -215,8 +217,9 @@ public class Box extends TransformableDataSource {
      * @param val The value in meters
      */
     public void setDepth(double val) {
-        Vector3d s = mp_size.getValue();
+        Vector3d s = new Vector3d(mp_size.getValue());
         s.z = val;
+        mp_size.setValue(s);
     }
 
     /**
@@ -283,6 +286,13 @@ public class Box extends TransformableDataSource {
 
     }
 
+    /**
+     * @noRefGuide
+     */
+    protected boolean hasExactBounds() {
+        return true;
+    }
+
     /**
      * @noRefGuide
      */
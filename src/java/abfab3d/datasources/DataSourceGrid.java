@@ -135,7 +135,7 @@ public class DataSourceGrid extends TransformableDataSource implements Cloneable
      */
     public void getDataLabel(StringBuilder sb) {
         // ignore transform
-        getParamString(getClass().getSimpleName(), m_aparam,sb);
+        sb.append(getParamFingerprint(getClass().getSimpleName(), m_aparam));
     }
 
     /**
@@ -144,7 +144,7 @@ public class DataSourceGrid extends TransformableDataSource implements Cloneable
      */
     public String getDataLabel() {
         // ignore transform
-        return getParamString(getClass().getSimpleName(), m_aparam);
+        return getParamFingerprint(getClass().getSimpleName(), m_aparam);
     }
 
     public DataSourceGrid(GridProducer prod) {
@@ -13,6 +13,12 @@ package abfab3d.datasources;
 
 import javax.vecmath.Vector3d;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import abfab3d.core.TriangleProducer;
 import abfab3d.core.AttributedTriangleProducer;
 import abfab3d.core.AttributedTriangleCollector;
@@ -25,7 +31,7 @@ import abfab3d.core.AttributeGrid;
 
 
 import abfab3d.param.*;
-import abfab3d.util.BoundingBoxCalculator;
+import abfab3d.util.AbFab3DGlobals;
 import abfab3d.util.PointSetCoordArrays;
 import abfab3d.util.MeshRasterizer;
 
@@ -83,6 +89,9 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
     //static final public int INTERPOLATION_COMBINED = IndexedDistanceInterpolator.INTERPOLATION_COMBINED;
     
     static final double MAX_DISTANCE_UNDEFINED = 1.e10;
+
+    // count of triangles rasterized by single task 
+    static final int TRIANGLES_CHUNK_SIZE = 5000;
     
     SNodeParameter mp_meshProducer = new SNodeParameter("meshProducer", "mesh producer", null);
     ObjectParameter mp_meshColorizer = new ObjectParameter("meshColorizer", "mesh colorizer", null);
@@ -101,6 +110,7 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
     LongParameter mp_maxGridSize = new LongParameter("maxGridSize", "Max grid size", 1000L * 1000 * 1000);
     LongParameter mp_minGridSize = new LongParameter("minGridSize", "Min grid size", 1000L);
     BooleanParameter mp_useCaching = new BooleanParameter("useCaching", "turn on/off data caching", true);
+    IntParameter mp_surfaceRefinement = new IntParameter("surfaceRefinement", "subdivision of voxels near surface, 1 - uniform grid", 1);
 
     Parameter[] m_aparams = new Parameter[]{
         mp_meshProducer,
@@ -119,7 +129,8 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
         mp_makeSolid,
         mp_maxGridSize,
         mp_minGridSize,
-        mp_useCaching
+        mp_useCaching,
+        mp_surfaceRefinement
     };
 
     protected String m_savedParamString = "";
@@ -129,6 +140,10 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
 
     // interpolator used to calculate distances 
     IndexedDistanceInterpolator m_distCalc;
+
+    // count of threads used during initialization, 0 - use AbFab3DGlobals settings 
+    // it is not a parameter, because it does not affect the result
+    protected int m_threadCount = 0;
     
     /**
        constructor with plain mesh producer 
@@ -153,6 +168,21 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
 
     }
 
+    /**
+       set count of threads to use during initialization 
+       @param count threads count, 0 - use all available processors (limited by AbFab3DGlobals.MAX_PROCESSOR_COUNT_KEY)
+     */
+    public void setThreadCount(int count){
+        m_threadCount = count;
+    }
+
+    /**
+       @return actual count of threads to be used during initialization 
+     */
+    public int getThreadCount(){
+        return AbFab3DGlobals.getThreadCount(m_threadCount);
+    }
+
     /**
        @return interpolator used to calculate distances 
      */
@@ -255,15 +285,18 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
 
         if(DEBUG)printf("%s.initAttributedMesh(%s)\n", getClass().getName(),atProducer);
 
-        int threadCount = 8;//getThreadCount();
+        int threadCount = getThreadCount();
+        // single pass over the mesh 
+        TriangleArray triangles = new TriangleArray(atProducer.getDataDimension());
+        atProducer.getAttTriangles(triangles);
         // find mesh bounds
-        Bounds gridBounds = calculateGridBounds(BoundingBoxCalculator.getBounds(atProducer));
+        Bounds gridBounds = calculateGridBounds(triangles.getBounds(threadCount));
         super.setBounds(gridBounds);
 
         if(DEBUG)printf("gridBounds: %s\n", gridBounds);
         double maxDistance = getMaxDistance(gridBounds);
         DataSource meshColorizer = (DataSource)mp_meshColorizer.getValue();
-        IndexedDistanceInterpolator distData = makeAttributedDistanceInterpolator(atProducer, meshColorizer,
+        IndexedDistanceInterpolator distData = makeAttributedDistanceInterpolator(triangles, meshColorizer,
                                                                                   gridBounds, maxDistance, 
                                                                                   mp_surfaceVoxelSize.getValue(), 
                                                                                   mp_shellHalfThickness.getValue(),
@@ -284,25 +317,38 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
 
     /**
        only use local params without transforms
+       @return fingerprint of local params used as cache key 
      */
     public String getLocalParamString(){
 
-        return getParamString(getClass().getSimpleName(), m_aparams);
+        return getParamFingerprint(getClass().getSimpleName(), m_aparams);
     } 
 
     protected int initPlainMesh(TriangleProducer producer){
 
-        int threadCount = 8;
+        int threadCount = getThreadCount();
+        // single pass over the mesh 
+        TriangleArray triangles = new TriangleArray(3);
+        producer.getTriangles(triangles);
         // find mesh bounds
-        Bounds gridBounds = calculateGridBounds(BoundingBoxCalculator.getBounds(producer));
+        Bounds gridBounds = calculateGridBounds(triangles.getBounds(threadCount));
         super.setBounds(gridBounds);
         double maxDistance = getMaxDistance(gridBounds);
         //TODO - use it 
         int interpolationType = mp_interpolationType.getValue();
        
         IndexedDistanceInterpolator distData;
-        if(mp_makeSolid.getValue()) {
-            distData = makeSolidInterpolator(producer, gridBounds, maxDistance, 
+        if(mp_surfaceRefinement.getValue() > 1) {
+            distData = makeSparseInterpolator(triangles, gridBounds, maxDistance, 
+                                              mp_surfaceVoxelSize.getValue(), 
+                                              mp_shellHalfThickness.getValue(),
+                                              mp_makeSolid.getValue(), 
+                                              mp_useMultiPass.getValue(), 
+                                              mp_extendDistance.getValue(),
+                                              mp_surfaceRefinement.getValue(),
+                                              threadCount);
+        } else if(mp_makeSolid.getValue()) {
+            distData = makeSolidInterpolator(triangles, gridBounds, maxDistance, 
                                             mp_surfaceVoxelSize.getValue(), 
                                             mp_shellHalfThickness.getValue(),
                                             false, // preserveZero 
@@ -310,7 +356,7 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
                                             mp_extendDistance.getValue(),
                                             threadCount);
         } else {
-            distData = makeSurfaceInterpolator(producer, gridBounds, maxDistance, 
+            distData = makeSurfaceInterpolator(triangles, gridBounds, maxDistance, 
                                                mp_surfaceVoxelSize.getValue(), 
                                                mp_shellHalfThickness.getValue(),
                                                false, // preserveZero 
@@ -318,9 +364,6 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
                                                mp_extendDistance.getValue(),
                                                threadCount);            
         }
-        //TODO
-        // handle mutli resolution case 
-        
         m_distCalc = distData;
         super.m_channelsCount = m_distCalc.getChannelsCount();
         
@@ -347,13 +390,43 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
 
 
 
+    /**
+       creates distance interpolator with voxels near surface subdivided into bricks of refinement^3 fine voxels 
+       surface points are rasterized with fine voxel size 
+       @param refinement subdivision of voxels near surface 
+     */
+    static IndexedDistanceInterpolator makeSparseInterpolator(TriangleArray triangles, 
+                                                              Bounds gridBounds, 
+                                                              double maxDistance, 
+                                                              double surfaceVoxelSize,
+                                                              double shellHalfThickness,
+                                                              boolean makeSolid,
+                                                              boolean useMultiPass, 
+                                                              boolean extendDistance, 
+                                                              int refinement,
+                                                              int threadCount
+                                                              ){
+        IndexedDistanceInterpolator coarse;
+        if(makeSolid) 
+            coarse = makeSolidInterpolator(triangles, gridBounds, maxDistance, surfaceVoxelSize/refinement, shellHalfThickness,
+                                           false, useMultiPass, extendDistance, threadCount);
+        else 
+            coarse = makeSurfaceInterpolator(triangles, gridBounds, maxDistance, surfaceVoxelSize/refinement, shellHalfThickness,
+                                             false, useMultiPass, extendDistance, threadCount);
+        
+        SparseDistanceInterpolator sparse = new SparseDistanceInterpolator(coarse.pnts, coarse.getIndexGrid(), maxDistance, extendDistance, refinement);
+        sparse.makeBricks(triangles, makeSolid, threadCount);
+        return sparse;
+
+    }
+
     /**
        creates distance interpolator for given triangle mesh with interior
-       @param producer triangle mesh
+       @param triangles triangle mesh
        @param gridBounds for generated
        @param maxDistance maximal distance to calculate 
      */
-    static IndexedDistanceInterpolator makeSolidInterpolator(TriangleProducer producer, 
+    static IndexedDistanceInterpolator makeSolidInterpolator(TriangleArray triangles, 
                                                                 Bounds gridBounds, 
                                                                 double maxDistance, 
                                                                 double surfaceVoxelSize,
@@ -383,21 +456,11 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
             surfaceBounds.translate(shift,shift,shift);
         }
 
-        // triangles rasterizer         
-        TriangleMeshSurfaceBuilder surfaceBuilder = new TriangleMeshSurfaceBuilder(surfaceBounds);        
-        
-        surfaceBuilder.initialize();
-
-        // aggregator of 2 triangle collectors 
-        TC2 tc2 = new TC2(interiorRasterizer, surfaceBuilder);
-        
-        // get mesh from producer 
-        producer.getTriangles(tc2);
+        // rasterize triangles into surface points and interior 
+        double pnts[][] = makeSurfacePoints(triangles, surfaceBounds, 3, interiorRasterizer, threadCount);
 
-        int pcount = surfaceBuilder.getPointCount();
+        int pcount = pnts[0].length;
         if(DEBUG)printf("DistanceToMeshDataSource pcount: %d  vs: %6.2f mm\n", pcount,voxelSize/MM);
-        double pnts[][] = new double[3][pcount];
-        surfaceBuilder.getPoints(pnts[0], pnts[1], pnts[2]);
         
         // builder of shell around rasterized points 
         PointSetShellBuilder shellBuilder = new PointSetShellBuilder(); 
@@ -426,7 +489,7 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
             if (DEBUG) printf("distance sweeping time: %d ms\n", time() - t0);
         }
         
-        setInteriorMask(indexGrid, interiorGrid, INTERIOR_MASK, preserveZero);
+        setInteriorMask(indexGrid, interiorGrid, INTERIOR_MASK, preserveZero, threadCount);
 
         return new IndexedDistanceInterpolator(pnts, indexGrid, maxDistance, extendDistance);        
 
@@ -528,6 +591,19 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
         this.mp_makeSolid.setValue(makeSolid);
     }
 
+    public int getSurfaceRefinement() {
+        return mp_surfaceRefinement.getValue();
+    }
+
+    /**
+       set subdivision of voxels near surface
+       voxels near surface are split into refinement^3 smaller voxels, other voxels stay coarse
+       colored meshes are always calculated on uniform grid 
+     */
+    public void setSurfaceRefinement(int refinement) {
+        this.mp_surfaceRefinement.setValue(refinement);
+    }
+
     public long getMaxGridSize() {
         return mp_maxGridSize.getValue();
     }
@@ -547,7 +623,7 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
     /**
        creates interpolator for mesh without interior
      */
-    static IndexedDistanceInterpolator makeSurfaceInterpolator(TriangleProducer producer, 
+    static IndexedDistanceInterpolator makeSurfaceInterpolator(TriangleArray triangles, 
                                                                Bounds gridBounds, 
                                                                double maxDistance, 
                                                                double surfaceVoxelSize,
@@ -573,18 +649,11 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
             surfaceBounds.translate(shift,shift,shift);
         }
 
-        // triangles rasterizer         
-        TriangleMeshSurfaceBuilder surfaceBuilder = new TriangleMeshSurfaceBuilder(surfaceBounds);        
-        
-        surfaceBuilder.initialize();
-        
-        // get mesh from producer 
-        producer.getTriangles(surfaceBuilder);
+        // rasterize triangles into surface points 
+        double pnts[][] = makeSurfacePoints(triangles, surfaceBounds, 3, null, threadCount);
 
-        int pcount = surfaceBuilder.getPointCount();
+        int pcount = pnts[0].length;
         if(DEBUG)printf("DistanceToMeshDataSource pcount: %d\n", pcount);
-        double pnts[][] = new double[3][pcount];
-        surfaceBuilder.getPoints(pnts[0], pnts[1], pnts[2]);
         
         // builder of shell around rasterized points 
         PointSetShellBuilder shellBuilder = new PointSetShellBuilder(); 
@@ -613,7 +682,7 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
 
     }
         
-    static IndexedDistanceInterpolator makeAttributedDistanceInterpolator(AttributedTriangleProducer atProducer, 
+    static IndexedDistanceInterpolator makeAttributedDistanceInterpolator(TriangleArray triangles, 
                                                                           DataSource meshColorizer,
                                                                           Bounds gridBounds, 
                                                                           double maxDistance, 
@@ -629,7 +698,7 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
         // z-buffer rasterizer to get mesh interior 
         MeshRasterizer interiorRasterizer = new MeshRasterizer(gridBounds, gridDim[0],gridDim[1],gridDim[2]);
         interiorRasterizer.setInteriorValue(INTERIOR_VALUE);
-        int dataDimension = atProducer.getDataDimension();        
+        int dataDimension = triangles.getDataDimension();        
         if(DEBUG) printf("dataDimension: %d\n", dataDimension);
         Bounds surfaceBounds = gridBounds.clone();
         double voxelSize = gridBounds.getVoxelSize();
@@ -645,23 +714,13 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
             surfaceBounds.translate(shift,shift,shift);
         }
 
-        // triangles rasterizer         
-        AttributedTriangleMeshSurfaceBuilder aSurfaceBuilder = new AttributedTriangleMeshSurfaceBuilder(surfaceBounds);        
-        aSurfaceBuilder.setDataDimension(dataDimension);
-        aSurfaceBuilder.initialize();
-
-        // aggregator of 2 triangle collectors 
-        TC2A tc2a = new TC2A(interiorRasterizer, aSurfaceBuilder);
-        
-        // get mesh from producer 
-        atProducer.getAttTriangles(tc2a);
-        
-        int pcount = aSurfaceBuilder.getPointCount();
-        if(DEBUG)printf("DistanceToMeshDataSource pcount: %d\n", pcount);
         //int pntsDimension = Math.max(dataDimension,6); 
         int pntsDimension = 6; //xyz + rgb
-        double pnts[][] = new double[pntsDimension][pcount];
-        aSurfaceBuilder.getPoints(pnts);
+        // rasterize triangles into surface points and interior 
+        double pnts[][] = makeSurfacePoints(triangles, surfaceBounds, pntsDimension, interiorRasterizer, threadCount);
+        
+        int pcount = pnts[0].length;
+        if(DEBUG)printf("DistanceToMeshDataSource pcount: %d\n", pcount);
         
         // builder of shell around rasterized points 
         PointSetShellBuilder shellBuilder = new PointSetShellBuilder(); 
@@ -690,7 +749,7 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
             printf("distance sweeping time: %d ms\n", time() - t0);
         }
         
-        setInteriorMask(indexGrid, interiorGrid, INTERIOR_MASK, preserveZero);
+        setInteriorMask(indexGrid, interiorGrid, INTERIOR_MASK, preserveZero, threadCount);
         if(meshColorizer != null){
             if(DEBUG)printf("(meshColorizer != null) conversion from texture coord to colors\n");
 
@@ -717,6 +776,71 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
 
     }
 
+    /**
+       rasterizes triangles into points on the surface grid and optionally into interior rasterizer 
+       chunks of triangles are rasterized in parallel into separate surface builders 
+       and points of chunks are concatenated in the order of triangles. 
+       The result is the same as for rasterization of all triangles by single surface builder. 
+       Interior rasterization is serial and runs concurrently with the surface rasterization.
+
+       @param triangles triangles to rasterize 
+       @param surfaceBounds bounds of the surface grid 
+       @param pntsDimension dimension of the returned points 
+       @param interiorRasterizer rasterizer of mesh interior (may be null)
+       @param threadCount count of threads to use 
+       @return points pnts[pntsDimension][pointsCount] in world units, first point is unused 
+     */
+    static double[][] makeSurfacePoints(TriangleArray triangles, Bounds surfaceBounds, int pntsDimension, 
+                                        MeshRasterizer interiorRasterizer, int threadCount){
+        
+        long t0 = time();
+        int triCount = triangles.getTriCount();
+        // at least one chunk is needed to get the unused first point 
+        int chunkCount = Math.max(1, (triCount + TRIANGLES_CHUNK_SIZE - 1)/TRIANGLES_CHUNK_SIZE);
+        double chunkPoints[][][] = new double[chunkCount][][];
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        Future<?> futures[] = new Future<?>[threadCount + 1];
+        try {
+            if(interiorRasterizer != null) 
+                futures[threadCount] = executor.submit(new InteriorRasterizer(triangles, interiorRasterizer));
+            AtomicInteger nextChunk = new AtomicInteger(0);
+            for(int i = 0; i < threadCount; i++){
+                futures[i] = executor.submit(new SurfaceRasterizer(triangles, surfaceBounds, nextChunk, chunkPoints));
+            }
+            for(int i = 0; i < futures.length; i++){
+                if(futures[i] != null) futures[i].get();
+            }
+        } catch(InterruptedException e){
+            throw new RuntimeException(e);
+        } catch(ExecutionException e){
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        // concatenate chunks points skipping the unused first point of each chunk
+        int pcount = 1;
+        for(int c = 0; c < chunkCount; c++)
+            pcount += chunkPoints[c][0].length - 1;
+
+        int dim = chunkPoints[0].length;
+        double pnts[][] = new double[pntsDimension][pcount];
+        for(int d = 0; d < dim; d++)
+            pnts[d][0] = chunkPoints[0][d][0];
+        int offset = 1;
+        for(int c = 0; c < chunkCount; c++){
+            int count = chunkPoints[c][0].length - 1;
+            for(int d = 0; d < dim; d++)
+                System.arraycopy(chunkPoints[c][d], 1, pnts[d], offset, count);
+            offset += count;
+            chunkPoints[c] = null;
+        }
+        if(DEBUG)printf("makeSurfacePoints() triangles: %d chunks: %d threads: %d points: %d time: %d ms\n", 
+                        triCount, chunkCount, threadCount, pcount, time() - t0);
+        return pnts;
+    }
+
     /**
        set mask bits into attributes of grid if interior grid value != 0
        it is used to store information on interior and value info in single grid 
@@ -728,12 +852,60 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
      */
     static public void setInteriorMask(AttributeGrid grid, AttributeGrid interior, long mask, boolean preserveZero){
 
-        int nx = grid.getWidth();
+        setInteriorMask(grid, interior, mask, preserveZero, 1);
+
+    }
+
+    /**
+       set mask bits into attributes of grid if interior grid value != 0
+       y-slices of the grid are processed in parallel 
+       @param threadCount count of threads to use 
+     */
+    static public void setInteriorMask(AttributeGrid grid, final AttributeGrid interior, final long mask, final boolean preserveZero, int threadCount){
+
         int ny = grid.getHeight();
+        threadCount = Math.max(1, Math.min(threadCount, ny));
+        if(threadCount == 1){
+            setInteriorMask(grid, interior, mask, preserveZero, 0, ny);
+            return;
+        }
+
+        final AttributeGrid fgrid = grid;
+        final int slabSize = (ny + threadCount - 1)/threadCount;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        Future<?> futures[] = new Future<?>[threadCount];
+        try {
+            for(int i = 0; i < threadCount; i++){
+                final int ymin = i*slabSize;
+                final int ymax = Math.min(ny, ymin + slabSize);
+                futures[i] = executor.submit(new Runnable(){
+                        public void run(){
+                            setInteriorMask(fgrid, interior, mask, preserveZero, ymin, ymax);
+                        }
+                    });
+            }
+            for(int i = 0; i < threadCount; i++){
+                futures[i].get();
+            }
+        } catch(InterruptedException e){
+            throw new RuntimeException(e);
+        } catch(ExecutionException e){
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+       set mask bits in y-slices [ymin, ymax)
+     */
+    static void setInteriorMask(AttributeGrid grid, AttributeGrid interior, long mask, boolean preserveZero, int ymin, int ymax){
+
+        int nx = grid.getWidth();
         int nz = grid.getDepth();
         boolean ignoreZero = !preserveZero;
 
-        for(int y = 0; y < ny; y++){
+        for(int y = ymin; y < ymax; y++){
             for(int x = 0; x < nx; x++){
                 for(int z = 0; z < nz; z++){
                     if(interior.getAttribute(x,y,z) != 0) {
@@ -801,63 +973,231 @@ public class DistanceToMeshDataSource extends TransformableDataSource {
 
 
     /**
-       aggregator for 2 triangle collector 
+       compact storage of mesh triangles 
+       it is filled by single pass over triangle producer 
+       and allows concurrent access to ranges of triangles
      */
-    static class TC2 implements TriangleCollector {
-        
-        TriangleCollector tc1;
-        TriangleCollector tc2;
+    static class TriangleArray implements TriangleCollector, AttributedTriangleCollector {
+
+        // dimension of vertex data 
+        int m_dim;
+        // size of triangle data 
+        int m_triSize;
+        int m_triCount = 0;
+        double m_data[];
+
+        TriangleArray(int dataDimension){
+            m_dim = dataDimension;
+            m_triSize = 3*m_dim;
+            m_data = new double[m_triSize*1000];
+        }
 
-        TC2(TriangleCollector tc1, TriangleCollector tc2){
-            this.tc1 = tc1;
-            this.tc2 = tc2;
-            
+        int getDataDimension(){
+            return m_dim;
         }
-        
+
+        int getTriCount(){
+            return m_triCount;
+        }
+
         /**
            interface of triangle consumer 
         */
         public boolean addTri(Vector3d v0,Vector3d v1,Vector3d v2){
-            
-            tc1.addTri(v0, v1, v2);
-            tc2.addTri(v0, v1, v2);
+            int offset = newTriangle();
+            addVertex(v0, offset);
+            addVertex(v1, offset + m_dim);
+            addVertex(v2, offset + 2*m_dim);
             return true;
-            
         }
-    } // class TC2 
 
-    // aggregator for TriangleCollector and AttributedTriangleCollector 
+        /**
+           interface of attributed triangle consumer 
+        */
+        public boolean addAttTri(Vec v0,Vec v1,Vec v2){
+            int offset = newTriangle();
+            System.arraycopy(v0.v, 0, m_data, offset, m_dim);
+            System.arraycopy(v1.v, 0, m_data, offset + m_dim, m_dim);
+            System.arraycopy(v2.v, 0, m_data, offset + 2*m_dim, m_dim);
+            return true;
+        }
 
-    static class TC2A implements AttributedTriangleCollector {
-        
-        TriangleCollector m_tc1;
-        AttributedTriangleCollector m_atc2;
-        
-        // work variables 
-        Vector3d m_p0 = new Vector3d();
-        Vector3d m_p1 = new Vector3d();
-        Vector3d m_p2 = new Vector3d();
+        private int newTriangle(){
+            int offset = m_triCount*m_triSize;
+            if(offset + m_triSize > m_data.length){
+                double data[] = new double[Math.max(m_data.length*2, offset + m_triSize)];
+                System.arraycopy(m_data, 0, data, 0, offset);
+                m_data = data;
+            }
+            m_triCount++;
+            return offset;
+        }
 
-        TC2A(TriangleCollector tc1, AttributedTriangleCollector atc2){
-            m_tc1 = tc1;
-            m_atc2 = atc2;            
+        private void addVertex(Vector3d v, int offset){
+            m_data[offset] = v.x;
+            m_data[offset+1] = v.y;
+            m_data[offset+2] = v.z;
         }
-        
+
         /**
-           interface of triangle consumer 
-        */
-        public boolean addAttTri(Vec v0,Vec v1,Vec v2){
-            
-            v0.get(m_p0);
-            v1.get(m_p1);
-            v2.get(m_p2);
+           send triangles [start, end) to collector
+         */
+        void getTriangles(int start, int end, TriangleCollector tc){
+            Vector3d v0 = new Vector3d(), v1 = new Vector3d(), v2 = new Vector3d();
+            for(int t = start; t < end; t++){
+                int offset = t*m_triSize;
+                v0.set(m_data[offset], m_data[offset+1], m_data[offset+2]);
+                offset += m_dim;
+                v1.set(m_data[offset], m_data[offset+1], m_data[offset+2]);
+                offset += m_dim;
+                v2.set(m_data[offset], m_data[offset+1], m_data[offset+2]);
+                tc.addTri(v0, v1, v2);
+            }
+        }
 
-            m_tc1.addTri(m_p0, m_p1, m_p2); 
-            m_atc2.addAttTri(v0, v1, v2);
-            return true;
-            
+        /**
+           send attributed triangles [start, end) to collector
+         */
+        void getAttTriangles(int start, int end, AttributedTriangleCollector atc){
+            Vec v0 = new Vec(m_dim), v1 = new Vec(m_dim), v2 = new Vec(m_dim);
+            for(int t = start; t < end; t++){
+                int offset = t*m_triSize;
+                System.arraycopy(m_data, offset, v0.v, 0, m_dim);
+                System.arraycopy(m_data, offset + m_dim, v1.v, 0, m_dim);
+                System.arraycopy(m_data, offset + 2*m_dim, v2.v, 0, m_dim);
+                atc.addAttTri(v0, v1, v2);
+            }
+        }
+
+        /**
+           calculates bounds of triangle vertices
+           ranges of triangles are processed in parallel 
+         */
+        Bounds getBounds(int threadCount){
+
+            threadCount = Math.max(1, Math.min(threadCount, m_triCount/TRIANGLES_CHUNK_SIZE));
+            final double bounds[][] = new double[threadCount][];
+            final int rangeSize = (m_triCount + threadCount - 1)/threadCount;
+            if(threadCount == 1){
+                bounds[0] = getBounds(0, m_triCount);
+            } else {
+                ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+                Future<?> futures[] = new Future<?>[threadCount];
+                try {
+                    for(int i = 0; i < threadCount; i++){
+                        final int index = i;
+                        futures[i] = executor.submit(new Runnable(){
+                                public void run(){
+                                    int start = index*rangeSize;
+                                    bounds[index] = getBounds(start, Math.min(m_triCount, start + rangeSize));
+                                }
+                            });
+                    }
+                    for(int i = 0; i < threadCount; i++){
+                        futures[i].get();
+                    }
+                } catch(InterruptedException e){
+                    throw new RuntimeException(e);
+                } catch(ExecutionException e){
+                    throw new RuntimeException(e.getCause());
+                } finally {
+                    executor.shutdown();
+                }
+            }
+            double b[] = bounds[0];
+            for(int i = 1; i < threadCount; i++){
+                for(int k = 0; k < 6; k += 2){
+                    b[k] = Math.min(b[k], bounds[i][k]);
+                    b[k+1] = Math.max(b[k+1], bounds[i][k+1]);
+                }
+            }
+            return new Bounds(b);
+        }
+
+        /**
+           @return bounds of vertices of triangles [start, end)
+         */
+        double[] getBounds(int start, int end){
+            double b[] = new double[]{
+                Double.MAX_VALUE,-Double.MAX_VALUE,
+                Double.MAX_VALUE,-Double.MAX_VALUE,
+                Double.MAX_VALUE,-Double.MAX_VALUE};
+            for(int v = 3*start; v < 3*end; v++){
+                int offset = v*m_dim;
+                for(int k = 0; k < 3; k++){
+                    double c = m_data[offset + k];
+                    if(c < b[2*k]) b[2*k] = c;
+                    if(c > b[2*k+1]) b[2*k+1] = c;
+                }
+            }
+            return b;
+        }
+    } // class TriangleArray 
+
+    /**
+       rasterizes chunks of triangles into surface points 
+     */
+    static class SurfaceRasterizer implements Runnable {
+
+        TriangleArray triangles;
+        Bounds surfaceBounds;
+        AtomicInteger nextChunk;
+        double chunkPoints[][][];
+
+        SurfaceRasterizer(TriangleArray triangles, Bounds surfaceBounds, AtomicInteger nextChunk, double chunkPoints[][][]){
+            this.triangles = triangles;
+            this.surfaceBounds = surfaceBounds;
+            this.nextChunk = nextChunk;
+            this.chunkPoints = chunkPoints;
+        }
+
+        public void run(){
+
+            int triCount = triangles.getTriCount();
+            int dim = triangles.getDataDimension();
+            int chunk;
+            while((chunk = nextChunk.getAndIncrement()) < chunkPoints.length){
+                int start = chunk*TRIANGLES_CHUNK_SIZE;
+                int end = Math.min(triCount, start + TRIANGLES_CHUNK_SIZE);
+                double pnts[][];
+                if(dim == 3){
+                    TriangleMeshSurfaceBuilder builder = new TriangleMeshSurfaceBuilder(surfaceBounds);
+                    builder.setEstimatedPointCount(8*(end - start) + 1);
+                    builder.initialize();
+                    triangles.getTriangles(start, end, builder);
+                    pnts = new double[3][builder.getPointCount()];
+                    builder.getPoints(pnts[0], pnts[1], pnts[2]);
+                } else {
+                    AttributedTriangleMeshSurfaceBuilder builder = new AttributedTriangleMeshSurfaceBuilder(surfaceBounds);
+                    builder.setDataDimension(dim);
+                    builder.setEstimatedPointCount(8*(end - start) + 1);
+                    builder.initialize();
+                    triangles.getAttTriangles(start, end, builder);
+                    pnts = new double[dim][builder.getPointCount()];
+                    builder.getPoints(pnts);
+                }
+                chunkPoints[chunk] = pnts;
+            }
+        }
+    } // class SurfaceRasterizer 
+
+    /**
+       rasterizes all triangles into interior rasterizer 
+     */
+    static class InteriorRasterizer implements Runnable {
+
+        TriangleArray triangles;
+        MeshRasterizer rasterizer;
+
+        InteriorRasterizer(TriangleArray triangles, MeshRasterizer rasterizer){
+            this.triangles = triangles;
+            this.rasterizer = rasterizer;
+        }
+
+        public void run(){
+            triangles.getTriangles(0, triangles.getTriCount(), rasterizer);
         }
-    } // class TC2A 
+    } // class InteriorRasterizer 
 
     static class CachedData {
 
@@ -220,10 +220,11 @@ public class DistanceToPointsDataSource extends TransformableDataSource {
 
     /**
        only use local params without transforms
+       @return fingerprint of local params used as cache key 
      */
     public String getLocalParamString(){
 
-        return getParamString(getClass().getSimpleName(), m_aparams);
+        return getParamFingerprint(getClass().getSimpleName(), m_aparams);
     } 
 
     protected int initPlainPoints(PointSet points){
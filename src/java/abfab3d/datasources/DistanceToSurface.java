@@ -30,6 +30,7 @@ import abfab3d.core.TriangleCollector;
 import abfab3d.core.AttributeGrid;
 
 
+import abfab3d.util.AbFab3DGlobals;
 import abfab3d.util.BoundingBoxCalculator;
 import abfab3d.util.PointSetCoordArrays;
 import abfab3d.util.MeshRasterizer;
@@ -131,6 +132,9 @@ public class DistanceToSurface extends TransformableDataSource {
     // interpolator used to calculate distances 
     IndexedDistanceInterpolator m_distCalc;
 
+    // count of threads used during initialization, 0 - use AbFab3DGlobals settings 
+    protected int m_threadCount = 0;
+
     /**
        constructor with plain mesh producer 
      */
@@ -223,10 +227,11 @@ public class DistanceToSurface extends TransformableDataSource {
 
     /**
        only use local params without transforms
+       @return fingerprint of local params used as cache key 
      */
     public String getLocalParamString(){
 
-        return getParamString(getClass().getSimpleName(), m_aparams);
+        return getParamFingerprint(getClass().getSimpleName(), m_aparams);
     } 
 
     protected PointSet getSurfacePoints(){
@@ -276,9 +281,19 @@ public class DistanceToSurface extends TransformableDataSource {
         return ResultCodes.RESULT_OK;
     }
     
-    int getThreadCount(){
-        //TODO 
-        return 8;
+    /**
+       set count of threads to use during initialization 
+       @param count threads count, 0 - use all available processors (limited by AbFab3DGlobals.MAX_PROCESSOR_COUNT_KEY)
+     */
+    public void setThreadCount(int count){
+        m_threadCount = count;
+    }
+
+    /**
+       @return actual count of threads to be used during initialization 
+     */
+    public int getThreadCount(){
+        return AbFab3DGlobals.getThreadCount(m_threadCount);
     }
 
     /**
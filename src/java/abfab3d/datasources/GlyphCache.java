@@ -0,0 +1,224 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.datasources;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import static abfab3d.core.Output.printf;
+
+/**
+   cache of rasterized antialiased glyphs
+
+   glyphs are keyed by font (which includes font size in pixels and style), glyph code
+   and subpixel phase of glyph origin quantized to 1/SUBPIXEL_STEPS of pixel.
+   Text image is composed from cached glyph coverage masks, so changing one character of text
+   requires rasterization of that character only.
+   Cache is bounded by total size of glyph bitmaps, least recently used glyphs are evicted.
+ */
+public class GlyphCache {
+
+    static final boolean DEBUG = false;
+
+    /** count of subpixel positions of glyph origin along each axis */
+    public static final int SUBPIXEL_STEPS = 4;
+
+    static final long DEFAULT_MAX_SIZE = 32*1024*1024;
+
+    private static GlyphCache sm_instance;
+
+    Cache<GlyphKey, GlyphBitmap> m_cache;
+
+    public GlyphCache(long maxSize){
+
+        m_cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxSize)
+            .weigher(new Weigher<GlyphKey, GlyphBitmap>(){
+                    public int weigh(GlyphKey key, GlyphBitmap glyph){
+                        return glyph.alpha.length + 64;
+                    }
+                })
+            .recordStats()
+            .build();
+    }
+
+    public static synchronized GlyphCache getInstance(){
+        if(sm_instance == null)
+            sm_instance = new GlyphCache(DEFAULT_MAX_SIZE);
+        return sm_instance;
+    }
+
+    /**
+       discard all glyphs
+     */
+    public void invalidateAll(){
+        m_cache.invalidateAll();
+    }
+
+    public CacheStats getStats(){
+        return m_cache.stats();
+    }
+
+    /**
+       @param font font with size in pixels
+       @param glyphCode glyph code in the font
+       @param sx x-phase of glyph origin in units of 1/SUBPIXEL_STEPS of pixel
+       @param sy y-phase of glyph origin in units of 1/SUBPIXEL_STEPS of pixel
+       @return coverage mask of the glyph with origin at given subpixel phase
+     */
+    public GlyphBitmap getGlyph(final Font font, final int glyphCode, final int sx, final int sy){
+
+        try {
+            return m_cache.get(new GlyphKey(font, glyphCode, sx, sy), new Callable<GlyphBitmap>(){
+                    public GlyphBitmap call(){
+                        return renderGlyph(font, glyphCode, sx, sy);
+                    }
+                });
+        } catch(ExecutionException e){
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+       draws glyphs of glyph vector into coverage buffer
+       @param gv glyph vector with glyph positions in pixels
+       @param dx x-offset of glyph vector origin in the buffer
+       @param dy y-offset of glyph vector origin in the buffer
+       @param coverage buffer of coverage values in the range [0,1]
+       @param width width of buffer
+       @param height height of buffer
+     */
+    public void drawGlyphVector(GlyphVector gv, double dx, double dy, float coverage[], int width, int height){
+
+        Font font = gv.getFont();
+        int count = gv.getNumGlyphs();
+        for(int i = 0; i < count; i++){
+            Point2D pnt = gv.getGlyphPosition(i);
+            // origin position in subpixel units
+            long qx = Math.round((pnt.getX() + dx)*SUBPIXEL_STEPS);
+            long qy = Math.round((pnt.getY() + dy)*SUBPIXEL_STEPS);
+            int x = (int)Math.floorDiv(qx, SUBPIXEL_STEPS);
+            int y = (int)Math.floorDiv(qy, SUBPIXEL_STEPS);
+            GlyphBitmap glyph = getGlyph(font, gv.getGlyphCode(i), (int)(qx - x*SUBPIXEL_STEPS), (int)(qy - y*SUBPIXEL_STEPS));
+            glyph.draw(coverage, width, height, x, y);
+        }
+    }
+
+    static GlyphBitmap renderGlyph(Font font, int glyphCode, int sx, int sy){
+
+        float fx = (float)sx/SUBPIXEL_STEPS;
+        float fy = (float)sy/SUBPIXEL_STEPS;
+        if(DEBUG) printf("GlyphCache.renderGlyph(%s, %d, %d, %d)\n", font.getFontName(), glyphCode, sx, sy);
+        FontRenderContext frc = new FontRenderContext(null, true, false);
+        GlyphVector gv = font.createGlyphVector(frc, new int[]{glyphCode});
+        Rectangle rect = gv.getGlyphPixelBounds(0, frc, fx, fy);
+        int w = rect.width + 2;
+        int h = rect.height + 2;
+        int x0 = rect.x - 1;
+        int y0 = rect.y - 1;
+        if(rect.width <= 0 || rect.height <= 0)
+            return new GlyphBitmap(0, 0, 0, 0, new byte[0]);
+
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = (Graphics2D)image.getGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.white);
+        g.drawGlyphVector(gv, fx - x0, fy - y0);
+        g.dispose();
+        byte alpha[] = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+        return new GlyphBitmap(x0, y0, w, h, alpha);
+    }
+
+    /**
+       coverage mask of a glyph
+     */
+    public static class GlyphBitmap {
+
+        // position of bitmap relative to integer part of glyph origin
+        int x0, y0;
+        int width, height;
+        byte alpha[];
+
+        GlyphBitmap(int x0, int y0, int width, int height, byte alpha[]){
+            this.x0 = x0;
+            this.y0 = y0;
+            this.width = width;
+            this.height = height;
+            this.alpha = alpha;
+        }
+
+        /**
+           composes glyph coverage over the buffer coverage
+         */
+        void draw(float coverage[], int bufferWidth, int bufferHeight, int x, int y){
+
+            for(int j = 0; j < height; j++){
+                int yy = y + y0 + j;
+                if(yy < 0 || yy >= bufferHeight)
+                    continue;
+                for(int i = 0; i < width; i++){
+                    int xx = x + x0 + i;
+                    if(xx < 0 || xx >= bufferWidth)
+                        continue;
+                    int a = alpha[i + j*width] & 0xFF;
+                    if(a == 0)
+                        continue;
+                    int offset = xx + yy*bufferWidth;
+                    float c = coverage[offset];
+                    coverage[offset] = c + (a/255.f)*(1.f - c);
+                }
+            }
+        }
+    }
+
+    static class GlyphKey {
+
+        Font font;
+        int glyphCode;
+        int sx, sy;
+
+        GlyphKey(Font font, int glyphCode, int sx, int sy){
+            this.font = font;
+            this.glyphCode = glyphCode;
+            this.sx = sx;
+            this.sy = sy;
+        }
+
+        public boolean equals(Object obj){
+            if(!(obj instanceof GlyphKey))
+                return false;
+            GlyphKey key = (GlyphKey)obj;
+            return key.glyphCode == glyphCode && key.sx == sx && key.sy == sy && key.font.equals(font);
+        }
+
+        public int hashCode(){
+            return ((font.hashCode()*31 + glyphCode)*31 + sx)*31 + sy;
+        }
+    }
+
+} // class GlyphCache
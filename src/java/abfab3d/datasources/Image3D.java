@@ -693,7 +693,7 @@ public class Image3D extends TransformableDataSource {
      * @return
      */
     public void getDataLabel(StringBuilder sb) {
-        getParamString(getClass().getSimpleName(), m_imageParams,sb);
+        sb.append(getParamFingerprint(getClass().getSimpleName(), m_imageParams));
     }
 
     /**
@@ -701,7 +701,7 @@ public class Image3D extends TransformableDataSource {
      * @return
      */
     public String getDataLabel() {
-        return getParamString(getClass().getSimpleName(), m_imageParams);
+        return getParamFingerprint(getClass().getSimpleName(), m_imageParams);
     }
 
     /**
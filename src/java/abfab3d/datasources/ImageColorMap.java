@@ -29,6 +29,8 @@ import abfab3d.param.EnumParameter;
 import abfab3d.grid.op.ImageToGrid2D;
 import abfab3d.grid.op.ImageLoader;
 
+import abfab3d.util.ImageMipMap;
+
 import javax.vecmath.Vector3d;
 
 import static abfab3d.core.Output.printf;
@@ -78,6 +80,7 @@ public class ImageColorMap extends TransformableDataSource {
     BooleanParameter mp_repeatY = new BooleanParameter("repeatY", "repeat image along Y", false);
     BooleanParameter mp_repeatZ = new BooleanParameter("repeatZ", "repeat image along Z", false);
     EnumParameter mp_projection = new EnumParameter("projection", "type of projection to use", sm_projectionNames, sm_projectionNames[0]);
+    BooleanParameter mp_filtering = new BooleanParameter("filtering", "average image over voxel footprint", false);
 
     Parameter m_aparams[] = new Parameter[]{
             mp_imageSource,
@@ -87,6 +90,7 @@ public class ImageColorMap extends TransformableDataSource {
             mp_repeatY,
             mp_repeatZ,
             mp_projection,
+            mp_filtering,
     };
 
     /** Params which require changes in the underlying image */
@@ -96,6 +100,9 @@ public class ImageColorMap extends TransformableDataSource {
 
     // 
     private Grid2D m_imageData;
+    // mipmap for filtering of image over voxel footprint
+    private ImageMipMap m_mipMap;
+    private boolean m_filtering;
 
     /**
      * Creates ImageColorMap from a file
@@ -207,6 +214,21 @@ public class ImageColorMap extends TransformableDataSource {
         return mp_repeatY.getValue();
     }
 
+    /**
+     * Set whether image is averaged over the voxel footprint.  Averaging removes aliasing
+     * of image details smaller than voxel.  Default is false.
+     */
+    public void setFiltering(boolean val) {
+        mp_filtering.setValue(val);
+    }
+
+    /**
+     * Get the filtering
+     */
+    public boolean getFiltering() {
+        return mp_filtering.getValue();
+    }
+
     /**
      * @noRefGuide
      */
@@ -241,7 +263,7 @@ public class ImageColorMap extends TransformableDataSource {
      * @return
      */
     public void getDataLabel(StringBuilder sb) {
-        getParamString(getClass().getSimpleName(), m_imageParams,sb);
+        sb.append(getParamFingerprint(getClass().getSimpleName(), m_imageParams));
     }
 
     /**
@@ -249,7 +271,7 @@ public class ImageColorMap extends TransformableDataSource {
      * @return
      */
     public String getDataLabel() {
-        return getParamString(getClass().getSimpleName(), m_imageParams);
+        return getParamFingerprint(getClass().getSimpleName(), m_imageParams);
     }
 
     /**
@@ -294,6 +316,19 @@ public class ImageColorMap extends TransformableDataSource {
         m_repeatX = mp_repeatX.getValue();
         m_repeatY = mp_repeatY.getValue();
 
+        m_filtering = mp_filtering.getValue();
+        m_mipMap = null;
+        if (m_filtering) {
+            String mipMapLabel = label + ".mipmap";
+            Object mo = ParamCache.getInstance().get(mipMapLabel);
+            if (mo == null) {
+                m_mipMap = makeMipMap(m_imageData);
+                ParamCache.getInstance().put(mipMapLabel, m_mipMap);
+            } else {
+                m_mipMap = (ImageMipMap) mo;
+            }
+        }
+
         // this may be different depending on the image 
         // good for general ARGB 
         m_channelsCount = 4;
@@ -302,6 +337,19 @@ public class ImageColorMap extends TransformableDataSource {
 
     }
 
+    private static ImageMipMap makeMipMap(Grid2D grid) {
+
+        int nx = grid.getWidth();
+        int ny = grid.getHeight();
+        int argb[] = new int[nx * ny];
+        for (int y = 0; y < ny; y++) {
+            for (int x = 0; x < nx; x++) {
+                argb[x + y * nx] = (int) grid.getAttribute(x, y);
+            }
+        }
+        return new ImageMipMap(argb, nx, ny);
+    }
+
     private Grid2D prepareImage() {
 
         Object obj = mp_imageSource.getValue(); 
@@ -425,6 +473,24 @@ public class ImageColorMap extends TransformableDataSource {
         // y in [0, imageSizeY]
         x *= m_imageSizeX;
         y *= m_imageSizeY;
+
+        if (m_filtering) {
+            // voxel footprint in pixels
+            double probe = pnt.getScaledVoxelSize() * Math.max(m_imageSizeX / m_sizeX, m_imageSizeY / m_sizeY);
+            if (probe > 1.) {
+                double color[] = dataValue.v;
+                m_mipMap.getPixel(x, y, probe, m_repeatX, m_repeatY, color);
+                // mipmap color is premultiplied by alpha
+                double a = color[3];
+                double norm = (a > 0.) ? 1. / a : 0.;
+                color[0] *= norm;
+                color[1] *= norm;
+                color[2] *= norm;
+                color[3] = a * NORM;
+                return ResultCodes.RESULT_OK;
+            }
+        }
+
         // half pixel shift 
         x -= 0.5;
         y -= 0.5;
@@ -215,7 +215,7 @@ public class ImageColorMap3D extends TransformableDataSource {
      * @return
      */
     public void getDataLabel(StringBuilder sb) {
-        getParamString(getClass().getSimpleName(), m_imageParams,sb);
+        sb.append(getParamFingerprint(getClass().getSimpleName(), m_imageParams));
     }
 
     /**
@@ -223,7 +223,7 @@ public class ImageColorMap3D extends TransformableDataSource {
      * @return
      */
     public String getDataLabel() {
-        return getParamString(getClass().getSimpleName(), m_imageParams);
+        return getParamFingerprint(getClass().getSimpleName(), m_imageParams);
     }
 
     /**
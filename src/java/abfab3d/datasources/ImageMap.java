@@ -45,6 +45,8 @@ import abfab3d.grid.op.Copy;
 
 import abfab3d.core.Vec;
 
+import abfab3d.util.SummedAreaTable;
+
 
 import static java.lang.Math.floor;
 import static java.lang.Math.max;
@@ -108,6 +110,7 @@ public class ImageMap extends TransformableDataSource {
     DoubleParameter mp_maxDist = new DoubleParameter("maxDist", "maximal distance to calculate distance transform", 20 * MM);
     BooleanParameter mp_useDistanceToImage = new BooleanParameter("useDistacneToImage", "Use distance to the image contour", false);
     DoubleParameter mp_imageThreshold = new DoubleParameter("imageThershold", "location of image contour", 0.5);
+    BooleanParameter mp_filtering = new BooleanParameter("filtering", "average image over voxel footprint", false);
 
     private static final double IMAGE_THRESHOLD = 0.5; // location of outline image contour 
 
@@ -122,7 +125,8 @@ public class ImageMap extends TransformableDataSource {
         mp_blurWidth,
         mp_maxDist,
         mp_useDistanceToImage,
-        mp_imageThreshold
+        mp_imageThreshold,
+        mp_filtering
 
     };
 
@@ -134,6 +138,9 @@ public class ImageMap extends TransformableDataSource {
 
     // 
     private Grid2D m_imageGrid;
+    // table for box filtering of image over voxel footprint 
+    private SummedAreaTable m_sat;
+    private boolean m_filtering;
     // converter to get physical value from grid attribute
     protected GridDataChannel m_dataChannel;
 
@@ -350,6 +357,21 @@ public class ImageMap extends TransformableDataSource {
         return mp_blurWidth.getValue();
     }
 
+    /**
+     * Set whether image is averaged over the voxel footprint.  Averaging removes aliasing
+     * of image details smaller than voxel.  Default is false.
+     */
+    public void setFiltering(boolean val) {
+        mp_filtering.setValue(val);
+    }
+
+    /**
+     * Get the filtering
+     */
+    public boolean getFiltering() {
+        return mp_filtering.getValue();
+    }
+
     /**
      * @noRefGuide
      */
@@ -378,7 +400,7 @@ public class ImageMap extends TransformableDataSource {
      * @return
      */
     public void getDataLabel(StringBuilder sb) {
-        getParamString(getClass().getSimpleName(), m_imageParams,sb);
+        sb.append(getParamFingerprint(getClass().getSimpleName(), m_imageParams));
     }
 
     /**
@@ -386,7 +408,7 @@ public class ImageMap extends TransformableDataSource {
      * @return
      */
     public String getDataLabel() {
-        return getParamString(getClass().getSimpleName(), m_imageParams);
+        return getParamFingerprint(getClass().getSimpleName(), m_imageParams);
     }
 
     /**
@@ -481,6 +503,20 @@ public class ImageMap extends TransformableDataSource {
         m_imageSizeX  = m_imageGrid.getWidth();
         m_imageSizeY  = m_imageGrid.getHeight();
 
+        m_filtering = mp_filtering.getValue();
+        m_sat = null;
+        if(m_filtering){
+            String satLabel = label + ".sat";
+            Object so = null;
+            if(CACHING_ENABLED) so = ParamCache.getInstance().get(satLabel);
+            if(so == null) {
+                m_sat = new SummedAreaTable(m_imageGrid, m_dataChannel);
+                if(CACHING_ENABLED)ParamCache.getInstance().put(satLabel, m_sat);
+            } else {
+                m_sat = (SummedAreaTable)so;
+            }
+        }
+
         return ResultCodes.RESULT_OK;
         
     }
@@ -587,6 +623,20 @@ public class ImageMap extends TransformableDataSource {
         x *= m_imageSizeX;
         y *= m_imageSizeY;
 
+        if(m_filtering){
+            // voxel footprint in pixels 
+            double vs = pnt.getScaledVoxelSize();
+            double fx = vs*m_imageSizeX/m_sizeX;
+            double fy = vs*m_imageSizeY/m_sizeY;
+            if(fx > 1. || fy > 1.){
+                fx = max(fx, 1.)/2;
+                fy = max(fy, 1.)/2;
+                double v = m_sat.getAverage(x - fx, y - fy, x + fx, y + fy, m_repeatX, m_repeatY);
+                dataValue.v[0] = v*m_valueFactor + m_valueOffset;
+                return ResultCodes.RESULT_OK;
+            }
+        }
+
         // half pixel shift 
         x -= 0.5;
         y -= 0.5;
@@ -0,0 +1,228 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.datasources;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import abfab3d.core.Bounds;
+import abfab3d.core.DataSource;
+import abfab3d.param.BaseParameterizable;
+import abfab3d.param.Parameter;
+import abfab3d.param.Parameterizable;
+import abfab3d.param.Shape;
+
+import static abfab3d.core.Output.printf;
+
+/**
+   tracks changes of the list of scene shapes between calls to update()
+
+   each call compares the shapes with the snapshot made by the previous call and returns
+   world space region where the data values of the shapes may have been changed.
+   Shapes are compared by param fingerprints in order of the list, so the shapes may be
+   new objects made by re-evaluation of the script with the same params.
+
+   changed region is union of old and new bounds of changed nodes.
+   Only bounds which are known to contain the whole shape are used, otherwise the changed region is unknown.
+   Changes inside of the Shape source and inside of untransformed Union are tracked per child,
+   the region of changed children is expanded by the blend width of the union.
+   Values of distance data sources change outside of the shape bounds as well,
+   the caller has to expand the region by max distance stored in the grid.
+ */
+public class ShapeChangeTracker {
+
+    static final boolean DEBUG = false;
+
+    // snapshot of the shapes made by last update()
+    Node m_shapes[];
+
+    /**
+       compares shapes with the shapes of the previous update and stores the new snapshot
+
+       @return bounds of the changed region, null if nothing is changed,
+       Bounds.INFINITE if the changed region is unknown or it is the first update
+     */
+    public Bounds update(List<? extends Parameterizable> shapes){
+
+        Node nodes[] = new Node[shapes.size()];
+        for(int i = 0; i < nodes.length; i++)
+            nodes[i] = makeNode(shapes.get(i));
+
+        Node old[] = m_shapes;
+        m_shapes = nodes;
+        if(old == null)
+            return Bounds.INFINITE;
+
+        Region region = new Region();
+        if(!addChanges(old, nodes, region))
+            return Bounds.INFINITE;
+
+        if(DEBUG)printf("ShapeChangeTracker changed: %s\n", region.bounds);
+        return region.bounds;
+    }
+
+    /**
+       forget the snapshot, next update returns Bounds.INFINITE
+     */
+    public void clear(){
+        m_shapes = null;
+    }
+
+    /**
+       adds changes between two lists of nodes to the region
+       @return false if changed region is unknown
+     */
+    static boolean addChanges(Node old[], Node nodes[], Region region){
+
+        int count = Math.max(old.length, nodes.length);
+        for(int i = 0; i < count; i++){
+            Node o = (i < old.length)? old[i]: null;
+            Node n = (i < nodes.length)? nodes[i]: null;
+            if(o == null || n == null) {
+                // added or removed node
+                if(!region.add((o != null)? o.bounds: n.bounds))
+                    return false;
+            } else if(!addChanges(o, n, region)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+       adds changes between old and new state of node to the region
+       @return false if changed region is unknown
+     */
+    static boolean addChanges(Node old, Node node, Region region){
+
+        if(old.fingerprint.equals(node.fingerprint))
+            return true;
+
+        if(old.children != null && node.children != null && old.ownFingerprint.equals(node.ownFingerprint)){
+            // params of the node itself are the same, compare children
+            Region childRegion = new Region();
+            if(addChanges(old.children, node.children, childRegion)){
+                if(childRegion.bounds != null){
+                    Bounds b = childRegion.bounds;
+                    if(node.blend > 0.)
+                        b.expand(node.blend);
+                    region.add(b);
+                }
+                return true;
+            }
+        }
+        // the whole node is changed
+        return region.add(old.bounds) && region.add(node.bounds);
+    }
+
+    /**
+       makes snapshot of the node
+     */
+    static Node makeNode(Object obj){
+
+        Node node = new Node();
+        if(obj instanceof BaseParameterizable)
+            node.fingerprint = ((BaseParameterizable)obj).getParamFingerprint();
+        else
+            node.fingerprint = String.valueOf(obj);
+
+        if(obj instanceof Shape){
+
+            Shape shape = (Shape)obj;
+            node.ownFingerprint = getOwnFingerprint(shape, "source");
+            node.children = new Node[]{makeNode(shape.getSource())};
+            node.bounds = node.children[0].bounds;
+
+        } else if(obj instanceof Union && ((Union)obj).makeTransform() == null){
+
+            Union union = (Union)obj;
+            node.ownFingerprint = getOwnFingerprint(union, "sources");
+            List<?> sources = (List<?>)union.getParam("sources").getValue();
+            node.children = new Node[sources.size()];
+            for(int i = 0; i < node.children.length; i++)
+                node.children[i] = makeNode(sources.get(i));
+            node.blend = union.getBlend();
+            node.bounds = getBounds(union);
+
+        } else if(obj instanceof DataSource){
+
+            node.bounds = getBounds((DataSource)obj);
+
+        }
+        return node;
+    }
+
+    /**
+       @return fingerprint of the params of the node except the param with children
+     */
+    static String getOwnFingerprint(BaseParameterizable node, String childrenParam){
+
+        Parameter params[] = node.getParams();
+        ArrayList<Parameter> own = new ArrayList<Parameter>(params.length);
+        for(int i = 0; i < params.length; i++){
+            if(!params[i].getName().equals(childrenParam))
+                own.add(params[i]);
+        }
+        return BaseParameterizable.getParamFingerprint(node.getClass().getSimpleName(), own.toArray(new Parameter[own.size()]));
+    }
+
+    /**
+       @return copy of the world bounds of data source or null if bounds are unknown
+     */
+    static Bounds getBounds(DataSource source){
+
+        // bounds of other sources may not contain the whole shape 
+        if(!ShapeList.hasConservativeBounds(source))
+            return null;
+        // the source may be not initialized yet, transform is taken from params 
+        if(((TransformableDataSource)source).makeTransform() != null)
+            return null;
+        return ((TransformableDataSource)source).getExactBounds();
+    }
+
+    /**
+       snapshot of a node
+     */
+    static class Node {
+
+        String fingerprint;
+        // fingerprint of node params without children
+        String ownFingerprint;
+        // world bounds, null if unknown
+        Bounds bounds;
+        // children which are tracked separately, null if the node is tracked as a whole
+        Node children[];
+        double blend;
+    }
+
+    /**
+       accumulated changed region
+     */
+    static class Region {
+
+        Bounds bounds;
+
+        /**
+           @return false if the added bounds are unknown
+         */
+        boolean add(Bounds b){
+            if(b == null)
+                return false;
+            if(bounds == null)
+                bounds = b.clone();
+            else
+                bounds.combine(b);
+            return true;
+        }
+    }
+}
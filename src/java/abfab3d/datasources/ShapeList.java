@@ -13,7 +13,9 @@
 package abfab3d.datasources;
 
 
+import abfab3d.core.Bounds;
 import abfab3d.core.DataSource;
+import abfab3d.core.VecTransform;
 import abfab3d.core.ResultCodes;
 import abfab3d.param.Shape;
 import abfab3d.core.Vec;
@@ -25,6 +27,10 @@ import abfab3d.param.SNodeListParameter;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.vecmath.Matrix4d;
+
+import static java.lang.Math.abs;
+
 import static abfab3d.core.MathUtil.blendMin;
 import static abfab3d.core.Output.printf;
 
@@ -44,8 +50,21 @@ public class ShapeList extends TransformableDataSource implements SNode {
         mp_shapes
     };
 
+    static final double SQRT3 = Math.sqrt(3.);
+    static final double SIMILARITY_EPS = 1.e-9;
+
     // internal variables
     private Shape vShapes[];
+    // bounds of shapes used for culling, null for shapes which can not be culled 
+    private Bounds vBounds[];
+    // distance values above this are not needed exactly 
+    private double m_cullDistance = Double.MAX_VALUE;
+    // per thread point and data used in distance calculation 
+    private ThreadLocal<Vec[]> m_work = new ThreadLocal<Vec[]>(){
+        protected Vec[] initialValue(){
+            return new Vec[2];
+        }
+    };
 
     /**
        Create empty union. Use add() method to add arbitrary number of shapes to the union.
@@ -99,6 +118,16 @@ public class ShapeList extends TransformableDataSource implements SNode {
         shapes.set(idx, src);
     }
 
+    /**
+       Set distance above which exact distance is not needed, for example max distance stored in a grid.  
+       Shapes with bounds farther than that distance or farther than already found closer shape are not evaluated. 
+       If all shapes are culled the distance value is cullDistance. 
+       @noRefGuide
+     */
+    public void setCullDistance(double cullDistance) {
+        m_cullDistance = cullDistance;
+    }
+
     /**
      * Clear the datasources
      */
@@ -113,8 +142,11 @@ public class ShapeList extends TransformableDataSource implements SNode {
     public int initialize(){
         super.initialize();
         vShapes = (Shape[])shapes.toArray(new Shape[shapes.size()]);
+        vBounds = new Bounds[vShapes.length];
         for(int i = 0; i < vShapes.length; i++){
-            initializeChild(vShapes[i].getSource());
+            DataSource ds = vShapes[i].getSource();
+            initializeChild(ds);
+            vBounds[i] = getCullingBounds(ds);
         }
 
         return ResultCodes.RESULT_OK;
@@ -177,29 +209,108 @@ public class ShapeList extends TransformableDataSource implements SNode {
         return ResultCodes.RESULT_OK;
     }
 
+    /**
+       bounds of shape in coordinates of this list or null if shape can not be culled 
+       only shapes whose bounds are known to contain the whole shape are culled, 
+       bounds of other sources (for example Composition or DataSourceMixer) may be too small. 
+       Transformed shapes are culled if the transform is made of translations, rotations, reflections and uniform scales, 
+       other transforms do not keep distance values comparable to the distance to the bounds. 
+       The shape has to be initialized. 
+     */
+    static Bounds getCullingBounds(DataSource ds){
+
+        if(!hasConservativeBounds(ds))
+            return null;
+        TransformableDataSource tds = (TransformableDataSource)ds;
+        Bounds bounds = tds.getConservativeBounds();
+        if(bounds == null)
+            return null;
+        VecTransform transform = tds.getTransform();
+        if(transform != null && !isSimilarity(TransformableDataSource.getAffineMatrix(transform)))
+            return null;
+        return bounds;
+    }
+
+    /**
+       @return true if untransformed bounds of the source are known to contain the whole shape 
+     */
+    static boolean hasConservativeBounds(DataSource ds){
+        return (ds instanceof TransformableDataSource) && ((TransformableDataSource)ds).hasExactBounds();
+    }
+
+    /**
+       @return true if the matrix is combination of translation, rotation, reflection and uniform scale 
+     */
+    static boolean isSimilarity(Matrix4d m){
+
+        if(m == null)
+            return false;
+        double c[][] = new double[][]{{m.m00, m.m10, m.m20},{m.m01, m.m11, m.m21},{m.m02, m.m12, m.m22}};
+        double s2 = dot(c[0], c[0]);
+        double eps = SIMILARITY_EPS*s2;
+        return (s2 > 0. && 
+                abs(dot(c[1], c[1]) - s2) <= eps && abs(dot(c[2], c[2]) - s2) <= eps && 
+                abs(dot(c[0], c[1])) <= eps && abs(dot(c[1], c[2])) <= eps && abs(dot(c[2], c[0])) <= eps);
+    }
+
+    static final double dot(double a[], double b[]){
+        return a[0]*b[0] + a[1]*b[1] + a[2]*b[2];
+    }
+
+    /**
+       distance from point to the bounds, 0 if point is inside 
+     */
+    static final double getBoundsDistance(Vec pnt, Bounds b){
+
+        double x = pnt.v[0], y = pnt.v[1], z = pnt.v[2];
+        double dx = Math.max(Math.max(b.xmin - x, x - b.xmax), 0.);
+        double dy = Math.max(Math.max(b.ymin - y, y - b.ymax), 0.);
+        double dz = Math.max(Math.max(b.zmin - z, z - b.zmax), 0.);
+        return Math.sqrt(dx*dx + dy*dy + dz*dz);
+    }
+
     public int getDistanceData(Vec pnt, Vec data) {
 
         int len = vShapes.length;
         Shape dss[] = vShapes;
+        Bounds bounds[] = vBounds;
         
         double value = Double.MAX_VALUE;
-        int matIdx = 0;
+        int matIdx = -1;
 
-        //TODO garbage collecton 
-        Vec pnt1 = new Vec(pnt);
+        Vec work[] = m_work.get();
+        if(work[0] == null || work[0].v.length != pnt.v.length) work[0] = new Vec(pnt.v.length);
+        if(work[1] == null || work[1].v.length != data.v.length) work[1] = new Vec(data.v.length);
+        Vec pnt1 = work[0];
+        Vec data1 = work[1];
 
         for(int i = 0; i < len; i++){
             
+            // distance values of shapes with culling bounds are at least the distance to the bounds divided by sqrt(3) 
+            if(bounds[i] != null && getBoundsDistance(pnt, bounds[i]) > SQRT3*Math.min(value, m_cullDistance))
+                continue;
+
             DataSource ds = dss[i].getSource();
             pnt1.set(pnt);
-            ds.getDataValue(pnt1, data);
+            ds.getDataValue(pnt1, data1);
 
-            if (data.v[0] < value) {
-                value = data.v[0];
+            if (data1.v[0] < value) {
+                value = data1.v[0];
                 matIdx = i;
+                // keep material channels of the closest shape 
+                data.set(data1);
             }
         }
         
+        if(matIdx < 0){
+            // all shapes are culled 
+            for(int k = 0; k < data.v.length; k++)
+                data.v[k] = 0;
+            data.v[0] = m_cullDistance;
+            data.materialIndex = (len > 0)? dss[0].getMaterialID(): 0;
+            return ResultCodes.RESULT_OK;
+        }
+
         data.v[0] = value;
 
         // store material index 
@@ -0,0 +1,490 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+package abfab3d.datasources;
+
+import javax.vecmath.Vector3d;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.core.Bounds;
+import abfab3d.core.ResultCodes;
+import abfab3d.core.TriangleCollector;
+import abfab3d.core.Vec;
+
+import abfab3d.util.AbFab3DGlobals;
+import abfab3d.util.MeshRasterizer;
+import abfab3d.util.RangeProcessor;
+import abfab3d.util.RangeRunnerMT;
+
+import static abfab3d.core.MathUtil.clamp;
+import static abfab3d.core.MathUtil.getDistance;
+import static abfab3d.core.MathUtil.lerp3;
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
+/**
+   two level sparse representation of distances via indices of closest points
+
+   voxels of the index grid near the surface are subdivided into bricks of refinement^3 fine voxels,
+   each fine voxel stores index of the closest point and interior bit.
+   Voxels far from the surface store index of the closest point as in IndexedDistanceInterpolator.
+   Distances are calculated at centers of fine voxels and are linearly interpolated between them,
+   the fine voxels of not subdivided voxels use the closest point of the voxel.
+   Memory grows as square of refinement, while it grows as cube of refinement for uniform grid of fine voxels.
+
+   the index grid voxels of bricks store brick number with BRICK_FLAG bit set instead of point index
+ */
+public class SparseDistanceInterpolator extends IndexedDistanceInterpolator {
+
+    static final boolean DEBUG = false;
+
+    static final long BRICK_FLAG = (1L << 30);
+    static final long BRICK_MASK = BRICK_FLAG - 1;
+    static final int INTERIOR_BIT = (int)INTERIOR_MASK;
+    static final int INDEX_BITS = (int)INDEX_MASK;
+    // voxels closer to the surface than that (in voxels) are subdivided,
+    // it includes voxels adjacent to voxels intersected by the surface
+    static final double BRICK_BAND = 1 + Math.sqrt(3)/2;
+    // max count of fine z-buffer columns used for interior rasterization at once
+    static final int MAX_SLAB_COLUMNS = 1 << 22;
+    // count of passes of closest point propagation between fine voxels
+    static final int PROPAGATION_PASSES = 2;
+
+    // subdivision of bricks
+    int m_refinement;
+    int m_brickSize;
+    int m_brickCount = 0;
+    // closest point indices and interior bits of fine voxels of all bricks
+    int m_bricks[] = new int[0];
+
+    // coarse grid size
+    int m_nx, m_ny, m_nz;
+    // max fine voxel coord
+    int m_fxmax, m_fymax, m_fzmax;
+    // fine voxel size
+    double m_fvs;
+    double m_fscale;
+    // coordinates of the first fine voxel center
+    double m_fxmin1, m_fymin1, m_fzmin1;
+    // coordinates of the last fine voxel center
+    double m_fxmax1, m_fymax1, m_fzmax1;
+
+    /**
+       @param pnts points coordinates
+       @param indexGrid grid of indices of closest points, it is modified by makeBricks()
+       @param maxDistance max distance stored in the grid
+       @param extendDistance extend distance beyond grid
+       @param refinement subdivision of voxels near surface
+     */
+    public SparseDistanceInterpolator(double pnts[][], AttributeGrid indexGrid, double maxDistance, boolean extendDistance, int refinement){
+
+        super(pnts, indexGrid, maxDistance, extendDistance);
+
+        m_refinement = Math.max(1, refinement);
+        m_brickSize = m_refinement*m_refinement*m_refinement;
+
+        m_nx = indexGrid.getWidth();
+        m_ny = indexGrid.getHeight();
+        m_nz = indexGrid.getDepth();
+        m_fxmax = m_nx*m_refinement - 1;
+        m_fymax = m_ny*m_refinement - 1;
+        m_fzmax = m_nz*m_refinement - 1;
+
+        Bounds bounds = indexGrid.getGridBounds();
+        m_fvs = indexGrid.getVoxelSize()/m_refinement;
+        m_fscale = 1./m_fvs;
+        double vs2 = m_fvs/2;
+        m_fxmin1 = bounds.xmin + vs2;
+        m_fymin1 = bounds.ymin + vs2;
+        m_fzmin1 = bounds.zmin + vs2;
+        m_fxmax1 = bounds.xmax - vs2;
+        m_fymax1 = bounds.ymax - vs2;
+        m_fzmax1 = bounds.zmax - vs2;
+    }
+
+    public int getRefinement(){
+        return m_refinement;
+    }
+
+    /**
+       @return count of subdivided voxels
+     */
+    public int getBrickCount(){
+        return m_brickCount;
+    }
+
+    /**
+       method of DataSource interface
+    */
+    public int getDataValue(Vec pnt, Vec data){
+
+        double
+            x = pnt.v[0],
+            y = pnt.v[1],
+            z = pnt.v[2];
+
+        // clampedPoint inside of bounding box of fine voxel centers
+        double
+            xc = clamp(x, m_fxmin1, m_fxmax1),
+            yc = clamp(y, m_fymin1, m_fymax1),
+            zc = clamp(z, m_fzmin1, m_fzmax1);
+
+        // point in fine grid units
+        double
+            gx = (xc - m_fxmin1)*m_fscale,
+            gy = (yc - m_fymin1)*m_fscale,
+            gz = (zc - m_fzmin1)*m_fscale;
+        int
+            ix = (int)gx,
+            iy = (int)gy,
+            iz = (int)gz;
+        double
+            dx = gx - ix,
+            dy = gy - iy,
+            dz = gz - iz;
+
+        double
+            d000 = getFineDistance(ix  , iy,   iz),
+            d100 = getFineDistance(ix+1, iy,   iz),
+            d110 = getFineDistance(ix+1, iy+1, iz),
+            d010 = getFineDistance(ix  , iy+1, iz),
+            d001 = getFineDistance(ix  , iy,   iz+1),
+            d101 = getFineDistance(ix+1, iy,   iz+1),
+            d111 = getFineDistance(ix+1, iy+1, iz+1),
+            d011 = getFineDistance(ix  , iy+1, iz+1);
+
+        double dist = lerp3(d000,d100,d010,d110,d001,d101,d011,d111,dx, dy, dz);
+        if(getExtendDistance()){
+            // approximate distance outside of grid calculated as distance to clampedPoint + distance from originalPoint to clampedPoint
+            dist += getDistance(x,y,z,xc, yc, zc);
+        }
+        data.v[0] = dist;
+        return ResultCodes.RESULT_OK;
+    }
+
+    /**
+       @return signed distance at the center of fine voxel
+     */
+    double getFineDistance(int fx, int fy, int fz){
+
+        fx = clamp(fx, 0, m_fxmax);
+        fy = clamp(fy, 0, m_fymax);
+        fz = clamp(fz, 0, m_fzmax);
+        int a = getFineAttribute(fx, fy, fz);
+        int ind = a & INDEX_BITS;
+        int sign = (a < 0)? -1: 1;
+        if(ind == UNDEFINED_INDEX)
+            return sign*getMaxDistance();
+        return sign*getDistance(m_fxmin1 + fx*m_fvs, m_fymin1 + fy*m_fvs, m_fzmin1 + fz*m_fvs,
+                                pnts[0][ind],pnts[1][ind],pnts[2][ind]);
+    }
+
+    /**
+       @return closest point index and interior bit of fine voxel
+     */
+    final int getFineAttribute(int fx, int fy, int fz){
+
+        int r = m_refinement;
+        int cx = fx/r, cy = fy/r, cz = fz/r;
+        long a = indexGrid.getAttribute(cx, cy, cz);
+        if((a & BRICK_FLAG) != 0)
+            return m_bricks[(int)(a & BRICK_MASK)*m_brickSize + ((fx - cx*r)*r + (fy - cy*r))*r + (fz - cz*r)];
+        return (int)a;
+    }
+
+    /**
+       subdivides voxels near surface into bricks and calculates closest points and interior of fine voxels
+       @param triangles mesh triangles used to calculate interior of fine voxels
+       @param makeSolid if true, interior of fine voxels is calculated
+       @param threadCount count of threads to use
+     */
+    void makeBricks(DistanceToMeshDataSource.TriangleArray triangles, boolean makeSolid, int threadCount){
+
+        long t0 = time();
+        threadCount = AbFab3DGlobals.getThreadCount(threadCount);
+        if(m_refinement < 2)
+            return;
+        if(pnts[0].length >= BRICK_FLAG){
+            if(DEBUG)printf("SparseDistanceInterpolator: too many points: %d\n", pnts[0].length);
+            return;
+        }
+
+        // voxels near surface
+        double vs = indexGrid.getVoxelSize();
+        Bounds bounds = indexGrid.getGridBounds();
+        double band = BRICK_BAND*vs;
+        IntList coarse = new IntList();
+        IntList coords = new IntList();
+        for(int y = 0; y < m_ny; y++){
+            for(int x = 0; x < m_nx; x++){
+                for(int z = 0; z < m_nz; z++){
+                    int a = (int)indexGrid.getAttribute(x, y, z);
+                    int ind = a & INDEX_BITS;
+                    if(ind == UNDEFINED_INDEX)
+                        continue;
+                    double d = getDistance(bounds.xmin + (x + 0.5)*vs, bounds.ymin + (y + 0.5)*vs, bounds.zmin + (z + 0.5)*vs,
+                                           pnts[0][ind],pnts[1][ind],pnts[2][ind]);
+                    if(d <= band){
+                        coarse.add(a);
+                        coords.add(x);
+                        coords.add(y);
+                        coords.add(z);
+                    }
+                }
+            }
+        }
+        int brickCount = coarse.size;
+        if(((long)brickCount)*m_brickSize > Integer.MAX_VALUE - 8){
+            if(DEBUG)printf("SparseDistanceInterpolator: too many bricks: %d\n", brickCount);
+            return;
+        }
+        for(int b = 0; b < brickCount; b++){
+            indexGrid.setAttribute(coords.data[3*b], coords.data[3*b+1], coords.data[3*b+2], BRICK_FLAG | b);
+        }
+        m_brickCount = brickCount;
+        m_bricks = new int[brickCount*m_brickSize];
+
+        BrickBuilder builder = new BrickBuilder(coarse.data, coords.data, brickCount);
+        builder.initFromVoxels(threadCount);
+        builder.addPoints();
+        for(int i = 0; i < PROPAGATION_PASSES; i++)
+            builder.propagate(threadCount);
+        if(makeSolid)
+            builder.makeInterior(triangles);
+
+        if(DEBUG)printf("SparseDistanceInterpolator bricks: %d refinement: %d time: %d ms\n", brickCount, m_refinement, time() - t0);
+    }
+
+    /**
+       calculates data of fine voxels
+     */
+    class BrickBuilder {
+
+        // original attributes of subdivided voxels
+        int coarse[];
+        // coords of subdivided voxels
+        int coords[];
+        int brickCount;
+        // distances from fine voxels to closest points
+        double dist[];
+
+        BrickBuilder(int coarse[], int coords[], int brickCount){
+            this.coarse = coarse;
+            this.coords = coords;
+            this.brickCount = brickCount;
+            dist = new double[m_bricks.length];
+        }
+
+        /**
+           @return original closest point index of voxel
+         */
+        int getCoarseIndex(int x, int y, int z){
+            long a = indexGrid.getAttribute(x, y, z);
+            if((a & BRICK_FLAG) != 0)
+                a = coarse[(int)(a & BRICK_MASK)];
+            return ((int)a) & INDEX_BITS;
+        }
+
+        /**
+           @return current closest point index of fine voxel
+         */
+        int getIndex(int src[], int fx, int fy, int fz){
+            int r = m_refinement;
+            int cx = fx/r, cy = fy/r, cz = fz/r;
+            long a = indexGrid.getAttribute(cx, cy, cz);
+            if((a & BRICK_FLAG) != 0)
+                return src[(int)(a & BRICK_MASK)*m_brickSize + ((fx - cx*r)*r + (fy - cy*r))*r + (fz - cz*r)];
+            return ((int)a) & INDEX_BITS;
+        }
+
+        /**
+           updates closest point of fine voxel if the point is closer
+         */
+        final void update(int dst[], int k, double x, double y, double z, int ind){
+            if(ind == UNDEFINED_INDEX)
+                return;
+            double d = getDistance(x, y, z, pnts[0][ind], pnts[1][ind], pnts[2][ind]);
+            if(dst[k] == UNDEFINED_INDEX || d < dist[k]){
+                dist[k] = d;
+                dst[k] = ind;
+            }
+        }
+
+        /**
+           uses closest points of the voxel and its neighbors
+         */
+        void initFromVoxels(int threadCount){
+
+            RangeProcessor procs[] = new RangeProcessor[threadCount];
+            for(int i = 0; i < threadCount; i++){
+                procs[i] = new RangeProcessor(){
+                        public void processRange(int start, int end){
+                            int r = m_refinement;
+                            for(int b = start; b < end; b++){
+                                int cx = coords[3*b], cy = coords[3*b+1], cz = coords[3*b+2];
+                                for(int ny = Math.max(0, cy-1); ny <= Math.min(m_ny-1, cy+1); ny++){
+                                    for(int nx = Math.max(0, cx-1); nx <= Math.min(m_nx-1, cx+1); nx++){
+                                        for(int nz = Math.max(0, cz-1); nz <= Math.min(m_nz-1, cz+1); nz++){
+                                            int ind = getCoarseIndex(nx, ny, nz);
+                                            for(int k = 0, ix = 0; ix < r; ix++){
+                                                for(int iy = 0; iy < r; iy++){
+                                                    for(int iz = 0; iz < r; iz++, k++){
+                                                        update(m_bricks, b*m_brickSize + k,
+                                                               m_fxmin1 + (cx*r + ix)*m_fvs, m_fymin1 + (cy*r + iy)*m_fvs, m_fzmin1 + (cz*r + iz)*m_fvs, ind);
+                                                    }
+                                                }
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    };
+            }
+            RangeRunnerMT.run(brickCount, 16, procs);
+        }
+
+        /**
+           each point updates fine voxels around it
+         */
+        void addPoints(){
+
+            int r = m_refinement;
+            int pcount = pnts[0].length;
+            for(int i = 1; i < pcount; i++){
+                double px = pnts[0][i], py = pnts[1][i], pz = pnts[2][i];
+                int gx = (int)Math.floor((px - m_fxmin1)*m_fscale);
+                int gy = (int)Math.floor((py - m_fymin1)*m_fscale);
+                int gz = (int)Math.floor((pz - m_fzmin1)*m_fscale);
+                for(int fy = Math.max(0, gy-1); fy <= Math.min(m_fymax, gy+2); fy++){
+                    for(int fx = Math.max(0, gx-1); fx <= Math.min(m_fxmax, gx+2); fx++){
+                        for(int fz = Math.max(0, gz-1); fz <= Math.min(m_fzmax, gz+2); fz++){
+                            int cx = fx/r, cy = fy/r, cz = fz/r;
+                            long a = indexGrid.getAttribute(cx, cy, cz);
+                            if((a & BRICK_FLAG) == 0)
+                                continue;
+                            int k = (int)(a & BRICK_MASK)*m_brickSize + ((fx - cx*r)*r + (fy - cy*r))*r + (fz - cz*r);
+                            update(m_bricks, k, m_fxmin1 + fx*m_fvs, m_fymin1 + fy*m_fvs, m_fzmin1 + fz*m_fvs, i);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+           fine voxels use closest points of the neighbors
+         */
+        void propagate(int threadCount){
+
+            final int src[] = m_bricks.clone();
+            RangeProcessor procs[] = new RangeProcessor[threadCount];
+            for(int i = 0; i < threadCount; i++){
+                procs[i] = new RangeProcessor(){
+                        public void processRange(int start, int end){
+                            int r = m_refinement;
+                            for(int b = start; b < end; b++){
+                                int cx = coords[3*b], cy = coords[3*b+1], cz = coords[3*b+2];
+                                for(int k = 0, ix = 0; ix < r; ix++){
+                                    for(int iy = 0; iy < r; iy++){
+                                        for(int iz = 0; iz < r; iz++, k++){
+                                            int fx = cx*r + ix, fy = cy*r + iy, fz = cz*r + iz;
+                                            double x = m_fxmin1 + fx*m_fvs, y = m_fymin1 + fy*m_fvs, z = m_fzmin1 + fz*m_fvs;
+                                            for(int ny = Math.max(0, fy-1); ny <= Math.min(m_fymax, fy+1); ny++){
+                                                for(int nx = Math.max(0, fx-1); nx <= Math.min(m_fxmax, fx+1); nx++){
+                                                    for(int nz = Math.max(0, fz-1); nz <= Math.min(m_fzmax, fz+1); nz++){
+                                                        update(m_bricks, b*m_brickSize + k, x, y, z, getIndex(src, nx, ny, nz));
+                                                    }
+                                                }
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    };
+            }
+            RangeRunnerMT.run(brickCount, 16, procs);
+        }
+
+        /**
+           rasterizes interior of fine voxels in slabs of voxels rows
+         */
+        void makeInterior(DistanceToMeshDataSource.TriangleArray triangles){
+
+            int r = m_refinement;
+            Bounds bounds = indexGrid.getGridBounds();
+            double vs = indexGrid.getVoxelSize();
+            int fnx = m_fxmax + 1, fnz = m_fzmax + 1;
+            int slabRows = (int)Math.max(1, Math.min(m_ny, MAX_SLAB_COLUMNS/((long)fnx*r)));
+            // bricks are ordered by y
+            int b = 0;
+            for(int y0 = 0; y0 < m_ny && b < brickCount; y0 += slabRows){
+                int y1 = Math.min(m_ny, y0 + slabRows);
+                if(coords[3*b+1] >= y1)
+                    continue;
+                Bounds slab = new Bounds(bounds.xmin, bounds.xmax, bounds.ymin + y0*vs, bounds.ymin + y1*vs, bounds.zmin, bounds.zmax);
+                MeshRasterizer rasterizer = new MeshRasterizer(slab, fnx, (y1 - y0)*r, fnz);
+                triangles.getTriangles(0, triangles.getTriCount(), new SlabFilter(rasterizer, slab.ymin, slab.ymax));
+                rasterizer.sort();
+                for(; b < brickCount && coords[3*b+1] < y1; b++){
+                    int cx = coords[3*b], cy = coords[3*b+1], cz = coords[3*b+2];
+                    for(int k = 0, ix = 0; ix < r; ix++){
+                        for(int iy = 0; iy < r; iy++){
+                            for(int iz = 0; iz < r; iz++, k++){
+                                if(rasterizer.isInterior(cx*r + ix, (cy - y0)*r + iy, cz*r + iz))
+                                    m_bricks[b*m_brickSize + k] |= INTERIOR_BIT;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    } // class BrickBuilder
+
+    /**
+       passes to rasterizer only triangles which intersect the slab
+     */
+    static class SlabFilter implements TriangleCollector {
+
+        TriangleCollector collector;
+        double ymin, ymax;
+
+        SlabFilter(TriangleCollector collector, double ymin, double ymax){
+            this.collector = collector;
+            this.ymin = ymin;
+            this.ymax = ymax;
+        }
+
+        public boolean addTri(Vector3d v0,Vector3d v1,Vector3d v2){
+            if(Math.max(v0.y, Math.max(v1.y, v2.y)) < ymin || Math.min(v0.y, Math.min(v1.y, v2.y)) > ymax)
+                return true;
+            return collector.addTri(v0, v1, v2);
+        }
+    }
+
+    /**
+       growable array of ints
+     */
+    static class IntList {
+
+        int data[] = new int[1024];
+        int size = 0;
+
+        void add(int value){
+            if(size == data.length){
+                int d[] = new int[2*size];
+                System.arraycopy(data, 0, d, 0, size);
+                data = d;
+            }
+            data[size++] = value;
+        }
+    }
+}
@@ -183,6 +183,13 @@ public class Sphere extends TransformableDataSource {
         m_bounds = new Bounds(centerX - r,centerX + r,centerY - r,centerY + r,centerZ - r,centerZ + r);
     }
 
+    /**
+     * @noRefGuide
+     */
+    protected boolean hasExactBounds() {
+        return true;
+    }
+
     /**
      * @noRefGuide
 
@@ -83,6 +83,8 @@ public class Text2D extends BaseParameterizable implements ImageProducer {
     
     static final boolean DEBUG = false;
     static final boolean CACHING_ENABLED = true;
+    // compose filled text from cached glyphs
+    static final boolean GLYPH_CACHING_ENABLED = true;
 
     public enum Fit {VERTICAL, HORIZONTAL, BOTH, NONE}
     public enum HorizAlign {LEFT, CENTER, RIGHT}
@@ -492,7 +494,7 @@ public class Text2D extends BaseParameterizable implements ImageProducer {
 
         if(DEBUG) printf("Text2D.initialize()\n");
 
-        String label = getParamString(getClass().getSimpleName(), m_param);
+        String label = getParamFingerprint(getClass().getSimpleName(), m_param);
         Object co = null;
         if(CACHING_ENABLED)co = ParamCache.getInstance().get(label);
         if (co == null) {
@@ -657,6 +659,13 @@ public class Text2D extends BaseParameterizable implements ImageProducer {
         int imageHeight = imageBounds.getGridHeight();
         if(DEBUG)printf("Text2D image size: [%d x %d]\n", imageWidth,imageHeight);
 
+        if(GLYPH_CACHING_ENABLED && mp_fill.getValue() && !mp_outline.getValue()){
+            // compose image from cached glyphs
+            BufferedImage image2 = makeImageFromGlyphs(gv, -textRect.getX() + inset,-textRect.getY() + inset, imageWidth, imageHeight, 
+                                                       mp_backgroundColor.getValue(), mp_fillColor.getValue());
+            return new CachedTextData(image2, imageBounds, textBounds, gv,voxelSize);
+        }
+
         BufferedImage image2 = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);        
         Graphics2D g2 = (Graphics2D)image2.getGraphics();
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
@@ -686,6 +695,41 @@ public class Text2D extends BaseParameterizable implements ImageProducer {
 
     }
 
+    /**
+       makes image of glyph vector composed from glyphs stored in GlyphCache 
+       @param dx x-offset of glyph vector origin in image pixels 
+       @param dy y-offset of glyph vector origin in image pixels 
+     */
+    static BufferedImage makeImageFromGlyphs(GlyphVector gv, double dx, double dy, int width, int height, Color background, Color fill){
+
+        float coverage[] = new float[width*height];
+        GlyphCache.getInstance().drawGlyphVector(gv, dx, dy, coverage, width, height);
+
+        int bg = background.toAWT().getRGB();
+        int fg = fill.toAWT().getRGB();
+        int data[] = new int[width*height];
+        for(int i = 0; i < data.length; i++){
+            float c = coverage[i];
+            if(c <= 0.f) data[i] = bg;
+            else if(c >= 1.f) data[i] = fg;
+            else data[i] = lerpARGB(bg, fg, c);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, data, 0, width);
+        return image;
+    }
+
+    static final int lerpARGB(int c0, int c1, float t){
+
+        int c = 0;
+        for(int shift = 0; shift < 32; shift += 8){
+            int v0 = (c0 >>> shift) & 0xFF;
+            int v1 = (c1 >>> shift) & 0xFF;
+            c |= ((int)(v0 + (v1 - v0)*t + 0.5f) & 0xFF) << shift;
+        }
+        return c;
+    }
+
     /**
        cashed text data 
      */
@@ -158,6 +158,7 @@ public class Torus extends TransformableDataSource {
      */
     public void setRin(double value){
         mp_rin.setValue(value);
+        boundsDirty = true;
     }
 
     /**
@@ -174,15 +175,27 @@ public class Torus extends TransformableDataSource {
      */
     protected void updateBounds() {
         double rout = mp_rout.getValue();
-        double rin = mp_rout.getValue();
+        double rin = mp_rin.getValue();
 
-        double r = rout + rin;
         Vector3d c = mp_center.getValue();
+        Vector3d a = new Vector3d(mp_axis.getValue());
+        a.normalize();
+        // spine circle extends by rout*sqrt(1-a_i^2) along each coordinate axis 
+        double rx = rout*Math.sqrt(Math.max(0, 1 - a.x*a.x)) + rin;
+        double ry = rout*Math.sqrt(Math.max(0, 1 - a.y*a.y)) + rin;
+        double rz = rout*Math.sqrt(Math.max(0, 1 - a.z*a.z)) + rin;
 
-        m_bounds = new Bounds(c.x - r,c.x + r,c.y - r,c.y + r,c.z - rin, c.z + rin);
+        m_bounds = new Bounds(c.x - rx,c.x + rx,c.y - ry,c.y + ry,c.z - rz, c.z + rz);
         boundsDirty = false;
     }
 
+    /**
+     * @noRefGuide
+     */
+    protected boolean hasExactBounds() {
+        return true;
+    }
+
     /**
      * @noRefGuide
      */
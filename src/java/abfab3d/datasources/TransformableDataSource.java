@@ -15,6 +15,9 @@ package abfab3d.datasources;
 import java.util.List;
 
 
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+import javax.vecmath.SingularMatrixException;
 import javax.vecmath.Vector3d;
 
 
@@ -26,12 +29,14 @@ import abfab3d.param.Parameterizable;
 import abfab3d.param.BaseSNodeFactory;
 
 
+import abfab3d.transforms.AffineTransform;
 import abfab3d.transforms.Rotation;
 import abfab3d.transforms.Scale;
 import abfab3d.transforms.Translation;
 import abfab3d.transforms.CompositeTransform;
 import abfab3d.transforms.TransformsFactory;
 
+import abfab3d.core.BoundedDataSource;
 import abfab3d.core.DataSource;
 import abfab3d.core.Initializable;
 import abfab3d.core.VecTransform;
@@ -61,7 +66,7 @@ import static abfab3d.core.Output.printf;
    @author Vladimir Bulatov
 
  */
-public abstract class TransformableDataSource extends BaseParameterizable implements DataSource, Initializable {
+public abstract class TransformableDataSource extends BaseParameterizable implements BoundedDataSource, Initializable {
 
     // type of data generated by this data source 
     protected int m_dataType = DATA_TYPE_DISTANCE;
@@ -330,6 +335,112 @@ public abstract class TransformableDataSource extends BaseParameterizable implem
         boundsDirty = false;
     }
 
+    /**
+     * Get the bounds which contain the whole initialized shape including its transform. 
+     * @noRefGuide
+     * @return the bounds or null if such bounds are unknown
+     */
+    public Bounds getConservativeBounds() {
+
+        Bounds bounds = getExactBounds();
+        if(bounds == null)
+            return null;
+        if(m_transform == null)
+            return bounds;
+        Matrix4d m = getAffineMatrix(m_transform);
+        if(m == null)
+            return null;
+        return transformBounds(bounds, m);
+    }
+
+    /**
+     * Subclasses return true if bounds made by updateBounds() contain the whole untransformed shape 
+     * and distance values outside of the bounds are not less than distance to the bounds divided by sqrt(3). 
+     * It holds for exact distance and for box distance, which is the largest of distances to the box faces. 
+     * @noRefGuide
+     */
+    protected boolean hasExactBounds() {
+        return false;
+    }
+
+    /**
+       @return copy of untransformed bounds made from current params if they contain the whole shape, null otherwise 
+     */
+    Bounds getExactBounds(){
+
+        if(!hasExactBounds())
+            return null;
+        // setters of params do not always mark bounds dirty 
+        updateBounds();
+        Bounds bounds = m_bounds;
+        // exterior sphere of negative radius has inverted bounds 
+        if(bounds == null || Bounds.isInfinite(bounds) || 
+           bounds.xmin > bounds.xmax || bounds.ymin > bounds.ymax || bounds.zmin > bounds.zmax)
+            return null;
+        return bounds.clone();
+    }
+
+    /**
+     * @noRefGuide
+     * @return matrix of initialized transform made of affine transforms or null if the transform is not affine
+     */
+    public static Matrix4d getAffineMatrix(VecTransform transform) {
+
+        Matrix4d m = getInverseAffineMatrix(transform);
+        if(m == null)
+            return null;
+        try {
+            m.invert();
+        } catch(SingularMatrixException e){
+            return null;
+        }
+        return m;
+    }
+
+    /**
+       data value is calculated at inverse transformed point, so the inverse matrices are composed 
+     */
+    static Matrix4d getInverseAffineMatrix(VecTransform transform){
+
+        if(transform instanceof AffineTransform){
+            Matrix4d m = new Matrix4d();
+            ((AffineTransform)transform).getInverseMatrix(m);
+            return m;
+        }
+        if(transform instanceof CompositeTransform){
+            // inverse of composite transform applies inverse of the last transform first 
+            Matrix4d m = new Matrix4d();
+            m.setIdentity();
+            VecTransform trans[] = ((CompositeTransform)transform).getTransformsArray();
+            for(int i = 0; i < trans.length; i++){
+                Matrix4d mt = getInverseAffineMatrix(trans[i]);
+                if(mt == null)
+                    return null;
+                m.mul(mt);
+            }
+            return m;
+        }
+        return null;
+    }
+
+    /**
+       @return bounds of the transformed corners of bounds 
+     */
+    static Bounds transformBounds(Bounds bounds, Matrix4d m){
+
+        double b[] = new double[]{Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE};
+        Vector3d corners[] = bounds.getCorners();
+        Point3d p = new Point3d();
+        for(int i = 0; i < corners.length; i++){
+            p.set(corners[i]);
+            m.transform(p);
+            b[0] = Math.min(b[0], p.x); b[1] = Math.max(b[1], p.x);
+            b[2] = Math.min(b[2], p.y); b[3] = Math.max(b[3], p.y);
+            b[4] = Math.min(b[4], p.z); b[5] = Math.max(b[5], p.z);
+        }
+        return new Bounds(b);
+    }
+
     /**
        
      */
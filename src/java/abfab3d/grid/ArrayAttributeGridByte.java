@@ -253,4 +253,8 @@ public class ArrayAttributeGridByte extends BaseAttributeGrid {
             System.arraycopy( data, 0, data, i, ((len - i) < i) ? (len - i) : i);
         }
     }
+
+    public byte[] getData() {
+        return data;
+    }
 }
@@ -212,5 +212,9 @@ public class ArrayAttributeGridLong extends BaseAttributeGrid {
         ArrayAttributeGridLong ret_val = new ArrayAttributeGridLong(this);
         return ret_val;
     }
+
+    public long[] getData() {
+        return data;
+    }
 }
 
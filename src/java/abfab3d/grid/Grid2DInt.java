@@ -125,6 +125,13 @@ public class Grid2DInt extends BaseGrid2D implements Grid2D {
         }
     }
 
+    /**
+       @return underlying data array, pixel (x,y) is stored at index x + y*width
+     */
+    public int[] getData() {
+        return data;
+    }
+
     /**
      * Clone the object.
      */
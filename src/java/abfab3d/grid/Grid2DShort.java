@@ -135,6 +135,13 @@ public class Grid2DShort extends BaseGrid2D implements Grid2D {
         data[idx] = (short) (attribute & MAX_USHORT);
     }
 
+    /**
+       @return underlying data array, pixel (x,y) is stored at index x + y*width
+     */
+    public short[] getData() {
+        return data;
+    }
+
     /**
      * Clone the object.
      */
@@ -0,0 +1,351 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.grid;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.core.Bounds;
+import abfab3d.core.DataSource;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.GridDataDesc;
+import abfab3d.core.Vec;
+
+import static abfab3d.core.Output.fmt;
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
+/**
+   makes grid of representation which fits into available memory
+
+   memory footprint of each representation is estimated from the grid size, bits of the data description
+   and surface area of the shape. The area is estimated from coarse sampling of the distance data source.
+   If there is no source, the shape is assumed to have the area of the grid box.
+
+   Representations in order of preference:
+   dense array on heap, dense array in direct memory, intervals grid.
+   If none fits, the smallest one is used.
+
+   Block based grids are not used, they share scratch coordinates between calls
+   and can not be filled and meshed by several threads.
+
+ */
+public class GridFactory {
+
+    static final boolean DEBUG = false;
+    static final long MB = 1 << 20;
+
+    public static final int GRID_ARRAY = 0;
+    public static final int GRID_ARRAY_LONG_INDEX = 1;
+    public static final int GRID_NIO = 2;
+    public static final int GRID_INTERVALS = 3;
+
+    static final String GRID_NAMES[] = {"array","arrayLongIndex","nio","intervals"};
+
+    // estimated bytes used by intervals grid per non empty row and per interval
+    static final int INTERVALS_ROW_BYTES = 40;
+    static final int INTERVALS_INTERVAL_BYTES = 6;
+    // estimated bytes used by array grid object itself
+    static final int GRID_OVERHEAD = 1024;
+
+    static final double DEFAULT_MEMORY_FRACTION = 0.8;
+    static final int DEFAULT_SAMPLES = 32;
+
+    protected DataSource m_source;
+    protected GridDataDesc m_dataDesc;
+    protected long m_maxHeapMemory = -1;
+    protected long m_maxDirectMemory = -1;
+    protected int m_sampleCount = DEFAULT_SAMPLES;
+    protected int m_forcedType = -1;
+
+    public GridFactory(){
+    }
+
+    /**
+       set data source with distance in channel 0, used to estimate surface area
+     */
+    public void setSource(DataSource source){
+        m_source = source;
+    }
+
+    /**
+       set data description of the grid, it defines bytes per voxel
+     */
+    public void setDataDesc(GridDataDesc dataDesc){
+        m_dataDesc = dataDesc;
+    }
+
+    /**
+       set max heap memory for the grid in bytes, by default it is fraction of currently available heap
+     */
+    public void setMaxHeapMemory(long maxMemory){
+        m_maxHeapMemory = maxMemory;
+    }
+
+    /**
+       set max direct memory for the grid in bytes, by default it is fraction of JVM max memory
+     */
+    public void setMaxDirectMemory(long maxMemory){
+        m_maxDirectMemory = maxMemory;
+    }
+
+    /**
+       set count of coarse samples along the largest side of the grid
+     */
+    public void setSampleCount(int count){
+        m_sampleCount = Math.max(2, count);
+    }
+
+    /**
+       make grid of given type instead of estimated one, -1 to estimate
+     */
+    public void setGridType(int type){
+        m_forcedType = type;
+    }
+
+    /**
+       memory estimate of grid representations
+     */
+    public static class Estimate {
+
+        public int nx, ny, nz;
+        public int bytesPerVoxel;
+        public double area;
+        // true if area was estimated from data source
+        public boolean sampled;
+        // estimated bytes of each representation, -1 if not applicable
+        public long memory[] = new long[GRID_NAMES.length];
+        public long maxHeapMemory;
+        public long maxDirectMemory;
+        // selected representation
+        public int gridType;
+
+        public long getVoxelCount(){
+            return ((long)nx)*ny*nz;
+        }
+
+        public long getMemory(){
+            return memory[gridType];
+        }
+
+        public String toString(){
+            StringBuilder sb = new StringBuilder();
+            sb.append(fmt("grid: %d x %d x %d (%d bytes) area: %7.2f cm^2%s selected: %s %d MB [",
+                          nx, ny, nz, bytesPerVoxel, area*1.e4, (sampled? "": "(assumed)"), GRID_NAMES[gridType], memory[gridType]/MB));
+            for(int i = 0; i < memory.length; i++){
+                if(i > 0) sb.append(", ");
+                sb.append(GRID_NAMES[i]);
+                sb.append(':');
+                if(memory[i] < 0) sb.append("n/a");
+                else sb.append(memory[i]/MB);
+            }
+            sb.append(fmt("] MB heap: %d MB direct: %d MB", maxHeapMemory/MB, maxDirectMemory/MB));
+            return sb.toString();
+        }
+    }
+
+    /**
+       makes empty grid with given bounds and voxel size
+       the data description is set on the grid if present
+     */
+    public AttributeGrid makeGrid(Bounds bounds, double voxelSize){
+
+        Estimate est = estimate(bounds, voxelSize);
+        printf("GridFactory %s\n", est);
+
+        AttributeGrid grid = makeGrid(est, voxelSize);
+        grid.setGridBounds(new double[]{
+                bounds.xmin, bounds.xmin + est.nx*voxelSize,
+                bounds.ymin, bounds.ymin + est.ny*voxelSize,
+                bounds.zmin, bounds.zmin + est.nz*voxelSize});
+        if(m_dataDesc != null)
+            grid.setDataDesc(m_dataDesc);
+        return grid;
+    }
+
+    /**
+       estimates memory of grid representations and selects one
+     */
+    public Estimate estimate(Bounds bounds, double voxelSize){
+
+        Estimate est = new Estimate();
+        est.nx = bounds.getWidthVoxels(voxelSize);
+        est.ny = bounds.getHeightVoxels(voxelSize);
+        est.nz = bounds.getDepthVoxels(voxelSize);
+        est.bytesPerVoxel = getBytesPerVoxel(m_dataDesc);
+        est.maxHeapMemory = getMaxHeapMemory();
+        est.maxDirectMemory = getMaxDirectMemory();
+
+        double sx = est.nx*voxelSize, sy = est.ny*voxelSize, sz = est.nz*voxelSize;
+        if(m_source != null){
+            est.area = estimateArea(m_source, bounds.xmin, bounds.ymin, bounds.zmin, sx, sy, sz, m_sampleCount);
+            est.sampled = true;
+        } else {
+            est.area = 2*(sx*sy + sy*sz + sz*sx);
+        }
+
+        long voxels = est.getVoxelCount();
+        int bpv = est.bytesPerVoxel;
+        long arrayMemory = voxels*bpv + GRID_OVERHEAD;
+
+        est.memory[GRID_ARRAY] = (voxels < Integer.MAX_VALUE)? arrayMemory: -1;
+        est.memory[GRID_ARRAY_LONG_INDEX] = (bpv <= 2 && voxels >= Integer.MAX_VALUE)? arrayMemory: -1;
+        est.memory[GRID_NIO] = (bpv == 1 && voxels < Integer.MAX_VALUE)? arrayMemory: -1;
+
+        if(bpv <= 4){
+            // each voxel in the layer of varying values around the surface starts new interval
+            double layer = 2*getSurfaceLayer(m_dataDesc, voxelSize);
+            double layerVoxels = Math.min(voxels, est.area*layer/(voxelSize*voxelSize*voxelSize));
+            long rows = ((long)est.nx)*est.ny;
+            est.memory[GRID_INTERVALS] = rows*INTERVALS_ROW_BYTES + (long)(layerVoxels*INTERVALS_INTERVAL_BYTES) + GRID_OVERHEAD;
+        } else {
+            est.memory[GRID_INTERVALS] = -1;
+        }
+
+        est.gridType = selectType(est);
+        return est;
+    }
+
+    /**
+       selects the first representation in order of preference which fits into memory or the smallest one
+     */
+    int selectType(Estimate est){
+
+        long mem[] = est.memory;
+        if(m_forcedType >= 0 && mem[m_forcedType] >= 0)
+            return m_forcedType;
+
+        if(mem[GRID_ARRAY] >= 0 && mem[GRID_ARRAY] <= est.maxHeapMemory)
+            return GRID_ARRAY;
+        if(mem[GRID_ARRAY_LONG_INDEX] >= 0 && mem[GRID_ARRAY_LONG_INDEX] <= est.maxHeapMemory)
+            return GRID_ARRAY_LONG_INDEX;
+        if(mem[GRID_NIO] >= 0 && mem[GRID_NIO] <= est.maxDirectMemory)
+            return GRID_NIO;
+        if(mem[GRID_INTERVALS] >= 0 && mem[GRID_INTERVALS] <= est.maxHeapMemory)
+            return GRID_INTERVALS;
+
+        // nothing fits, use the smallest heap representation
+        int best = -1;
+        for(int i = 0; i < mem.length; i++){
+            if(i == GRID_NIO || mem[i] < 0) continue;
+            if(best < 0 || mem[i] < mem[best])
+                best = i;
+        }
+        printf("GridFactory: no grid fits into memory, using %s\n", GRID_NAMES[best]);
+        return best;
+    }
+
+    AttributeGrid makeGrid(Estimate est, double vs){
+
+        int nx = est.nx, ny = est.ny, nz = est.nz;
+        int bpv = est.bytesPerVoxel;
+
+        switch(est.gridType){
+        default:
+        case GRID_ARRAY:
+            switch(bpv){
+            case 1: return new ArrayAttributeGridByte(nx, ny, nz, vs, vs);
+            case 2: return new ArrayAttributeGridShort(nx, ny, nz, vs, vs);
+            case 4: return new ArrayAttributeGridInt(nx, ny, nz, vs, vs);
+            default: return new ArrayAttributeGridLong(nx, ny, nz, vs, vs);
+            }
+        case GRID_ARRAY_LONG_INDEX:
+            if(bpv == 1) return new ArrayAttributeGridByteIndexLong(nx, ny, nz, vs, vs);
+            else return new ArrayAttributeGridShortIndexLong(nx, ny, nz, vs, vs);
+        case GRID_NIO:
+            return new NIOAttributeGridByte(nx, ny, nz, vs, vs);
+        case GRID_INTERVALS:
+            if(bpv <= 2) return new GridShortIntervals(nx, ny, nz, vs, vs);
+            else return new GridIntIntervals(nx, ny, nz, vs, vs);
+        }
+    }
+
+    long getMaxHeapMemory(){
+
+        if(m_maxHeapMemory >= 0)
+            return m_maxHeapMemory;
+        Runtime rt = Runtime.getRuntime();
+        long used = rt.totalMemory() - rt.freeMemory();
+        return (long)((rt.maxMemory() - used)*DEFAULT_MEMORY_FRACTION);
+    }
+
+    long getMaxDirectMemory(){
+
+        if(m_maxDirectMemory >= 0)
+            return m_maxDirectMemory;
+        // default limit of direct memory is the max heap size
+        return (long)(Runtime.getRuntime().maxMemory()*DEFAULT_MEMORY_FRACTION);
+    }
+
+    /**
+       @return bytes per voxel of grid for given data description
+     */
+    static int getBytesPerVoxel(GridDataDesc desc){
+
+        if(desc == null)
+            return 1;
+        int bits = desc.getBitCount();
+        if(bits <= 8) return 1;
+        if(bits <= 16) return 2;
+        if(bits <= 32) return 4;
+        return 8;
+    }
+
+    /**
+       @return half thickness of the layer around surface where voxel values vary
+     */
+    static double getSurfaceLayer(GridDataDesc desc, double voxelSize){
+
+        if(desc != null && desc.size() > 0){
+            GridDataChannel channel = desc.getChannel(0);
+            if(channel.getIType() == GridDataChannel.TYPE_DISTANCE){
+                double maxDist = Math.max(Math.abs(channel.getValue0()), Math.abs(channel.getValue1()));
+                return Math.max(maxDist, voxelSize);
+            }
+        }
+        return voxelSize;
+    }
+
+    /**
+       estimates surface area of shape from coarse samples of distance
+       volume of layer |distance| < h is about 2*h*area
+     */
+    public static double estimateArea(DataSource source, double x0, double y0, double z0, double sx, double sy, double sz, int sampleCount){
+
+        long t0 = time();
+        double cell = Math.max(sx, Math.max(sy, sz))/sampleCount;
+        int nx = Math.max(1, (int)Math.ceil(sx/cell));
+        int ny = Math.max(1, (int)Math.ceil(sy/cell));
+        int nz = Math.max(1, (int)Math.ceil(sz/cell));
+        double dx = sx/nx, dy = sy/ny, dz = sz/nz;
+        double h = Math.max(dx, Math.max(dy, dz));
+
+        Vec pnt = new Vec(3);
+        Vec value = new Vec(Math.max(1, source.getChannelsCount()));
+        int layerCount = 0;
+
+        for(int iy = 0; iy < ny; iy++){
+            for(int ix = 0; ix < nx; ix++){
+                for(int iz = 0; iz < nz; iz++){
+                    pnt.set(x0 + (ix + 0.5)*dx, y0 + (iy + 0.5)*dy, z0 + (iz + 0.5)*dz);
+                    pnt.setVoxelSize(h);
+                    source.getDataValue(pnt, value);
+                    if(Math.abs(value.v[0]) < h)
+                        layerCount++;
+                }
+            }
+        }
+
+        double area = ((double)layerCount/(nx*ny*nz))*(sx*sy*sz)/(2*h);
+        if(DEBUG) printf("estimateArea(%d x %d x %d) layer: %d area: %7.2f cm^2 %d ms\n", nx, ny, nz, layerCount, area*1.e4, time() - t0);
+        return area;
+    }
+}
@@ -44,7 +44,7 @@ public class NIOAttributeGridByte extends BaseAttributeGrid {
      * @param sheight The slice height in meters
      */
     public NIOAttributeGridByte(int w, int h, int d, double pixel, double sheight) {
-        this(w,h,d,pixel,sheight,null);
+        this(w,h,d,pixel,sheight,(InsideOutsideFunc)null);
     }
 
     /**
@@ -66,6 +66,26 @@ public class NIOAttributeGridByte extends BaseAttributeGrid {
         data = ByteBuffer.allocateDirect(height * width * depth).order(ByteOrder.nativeOrder());
     }
 
+    /**
+     * Constructor which uses existing buffer as grid data without copying.
+     * The buffer may be memory mapped file.
+     *
+     * @param w The number of voxels in width
+     * @param h The number of voxels in height
+     * @param d The number of voxels in depth
+     * @param pixel The size of the pixels
+     * @param sheight The slice height in meters
+     * @param buffer The grid data in y,x,z order
+     */
+    public NIOAttributeGridByte(int w, int h, int d, double pixel, double sheight, ByteBuffer buffer) {
+        super(w,h,d,pixel,sheight,null);
+
+        if(buffer.capacity() != (long)height * width * depth){
+            throw new IllegalArgumentException("Invalid buffer size: " + buffer.capacity() + " w: " + w + " h: " + h + " d: " + d);
+        }
+        data = buffer;
+    }
+
     /**
      * Create an empty grid of the specified size.  Reuses
      * the grid type and material type(byte, short, int).
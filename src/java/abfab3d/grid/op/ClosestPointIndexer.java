@@ -277,7 +277,21 @@ public class ClosestPointIndexer {
         int gpnt[] = new int[nm];
 
         // make 1D x transforms for each y row 
-        for(int iy = 0; iy < ny; iy++){
+        PI2_rows(0, ny, coordx, coordy, indexGrid, v, w, ipnt, value1, gpnt);
+        // make 1D y transforms for each x column 
+        PI2_columns(0, nx, coordx, coordy, indexGrid, v, w, ipnt, value1, gpnt);
+    }
+
+    /**
+       makes 1D x transforms for rows in the range [ymin, ymax) 
+       work arrays should have length max(nx,ny) + 1
+     */
+    public static void PI2_rows(int ymin, int ymax, double coordx[], double coordy[], Grid2D indexGrid, 
+                                int v[], double w[], int ipnt[], double value1[], int gpnt[]){
+        
+        int nx = indexGrid.getWidth();
+
+        for(int iy = ymin; iy < ymax; iy++){
             int pcnt = 0;
             // prepare 1D chain of points 
             for(int ix = 0; ix < nx; ix++){
@@ -297,9 +311,18 @@ public class ClosestPointIndexer {
                 }            
             }
         }
-        //if(true) return;
-        // make 1D y transforms for each x column 
-        for(int ix = 0; ix < nx; ix++){
+    }
+
+    /**
+       makes 1D y transforms for columns in the range [xmin, xmax) 
+       work arrays should have length max(nx,ny) + 1
+     */
+    public static void PI2_columns(int xmin, int xmax, double coordx[], double coordy[], Grid2D indexGrid, 
+                                   int v[], double w[], int ipnt[], double value1[], int gpnt[]){
+        
+        int ny = indexGrid.getHeight();
+
+        for(int ix = xmin; ix < xmax; ix++){
             int pcnt = 0;
             // prepare 1D chain of points 
             for(int iy = 0; iy < ny; iy++){
@@ -1719,9 +1742,22 @@ public class ClosestPointIndexer {
                                           double maxOutDistance,
                                           Grid2D distanceGrid){
 
-        int 
-            nx = indexGrid.getWidth(),
-            ny = indexGrid.getHeight();
+        makeDistanceGrid2DSlice(0, indexGrid.getHeight(), indexGrid, pntx, pnty, interiorGrid, maxInDistance, maxOutDistance, distanceGrid);
+    }
+
+    /**
+       calculates distance grid for rows in the range [ymin, ymax) 
+       @see #makeDistanceGrid2D
+     */
+    public static void makeDistanceGrid2DSlice(int ymin, int ymax, 
+                                               Grid2D indexGrid, 
+                                               double pntx[], double pnty[],
+                                               Grid2D interiorGrid,                                           
+                                               double maxInDistance, 
+                                               double maxOutDistance,
+                                               Grid2D distanceGrid){
+
+        int nx = indexGrid.getWidth();
         
         GridDataChannel distChannel = distanceGrid.getDataDesc().getChannel(0);
 
@@ -1730,7 +1766,7 @@ public class ClosestPointIndexer {
 
 
         Vector3d coord = new Vector3d();
-        for(int y = 0; y < ny; y++){
+        for(int y = ymin; y < ymax; y++){
             for(int x = 0; x < nx; x++){
                 int ind = (int)indexGrid.getAttribute(x,y);
                 if(ind > 0) {
@@ -26,6 +26,8 @@ import abfab3d.core.AttributeGrid;
 import abfab3d.core.Grid2D;
 
 import abfab3d.core.Bounds;
+import abfab3d.util.RangeProcessor;
+import abfab3d.util.RangeRunnerMT;
 import abfab3d.util.SliceManager;
 import abfab3d.util.Slice;
 import abfab3d.core.DataSource;
@@ -58,6 +60,8 @@ public class ClosestPointIndexerMT {
     static final boolean DEBUG_TIMING = false;
     static final boolean DEBUG = false;
     //static final double DEF_LAYER_THICKNESS = 1.8;
+    // rows or columns of 2D grid processed by thread at once 
+    static final int LINES_CHUNK = 8;
 
     
     /**
@@ -686,4 +690,102 @@ public class ClosestPointIndexerMT {
         }        
     } // static class SliceProcessorCombine
 
+    /**
+       MT version of ClosestPointIndexer.PI2()
+       rows are processed in parallel and after that columns are processed in parallel 
+     */
+    public static void PI2_MT(int npnt, double coordx[], double coordy[], Grid2D indexGrid, int threadCount){
+
+        if(threadCount <= 1) {
+            ClosestPointIndexer.PI2(npnt, coordx, coordy, indexGrid);
+            return;
+        }
+        long t0 = time();
+        RangeProcessor rows[] = new RangeProcessor[threadCount];
+        RangeProcessor columns[] = new RangeProcessor[threadCount];
+        for(int i = 0; i < threadCount; i++){
+            rows[i] = new PI2Processor(true, coordx, coordy, indexGrid);
+            columns[i] = new PI2Processor(false, coordx, coordy, indexGrid);
+        }
+        RangeRunnerMT.run(indexGrid.getHeight(), LINES_CHUNK, rows);
+        RangeRunnerMT.run(indexGrid.getWidth(), LINES_CHUNK, columns);
+        if(DEBUG_TIMING)printf("PI2_MT(%d x %d) threads: %d %d ms\n", indexGrid.getWidth(), indexGrid.getHeight(), threadCount, time() - t0);
+    }
+
+    /**
+       MT version of ClosestPointIndexer.makeDistanceGrid2D()
+     */
+    public static void makeDistanceGrid2D_MT(Grid2D indexGrid, 
+                                             double pntx[], double pnty[],
+                                             Grid2D interiorGrid,                                           
+                                             double maxInDistance, 
+                                             double maxOutDistance,
+                                             Grid2D distanceGrid, 
+                                             int threadCount){
+
+        RangeProcessor rows[] = new RangeProcessor[max(threadCount,1)];
+        for(int i = 0; i < rows.length; i++){
+            rows[i] = new DistanceGrid2DProcessor(indexGrid, pntx, pnty, interiorGrid, maxInDistance, maxOutDistance, distanceGrid);
+        }
+        RangeRunnerMT.run(indexGrid.getHeight(), LINES_CHUNK, rows);
+    }
+
+    /**
+       makes 1D transforms of rows or columns of 2D index grid 
+     */
+    static class PI2Processor implements RangeProcessor {
+
+        boolean rows;
+        double coordx[], coordy[];
+        Grid2D indexGrid;
+        // work arrays 
+        int v[], ipnt[], gpnt[];
+        double w[], value1[];
+
+        PI2Processor(boolean rows, double coordx[], double coordy[], Grid2D indexGrid){
+            this.rows = rows;
+            this.coordx = coordx;
+            this.coordy = coordy;
+            this.indexGrid = indexGrid;
+        }
+
+        public void processRange(int start, int end){
+            if(v == null){
+                int nm = max(indexGrid.getWidth(), indexGrid.getHeight());
+                v = new int[nm];
+                w = new double[nm+1];
+                ipnt = new int[nm+1];
+                value1 = new double[nm];
+                gpnt = new int[nm];
+            }
+            if(rows)
+                ClosestPointIndexer.PI2_rows(start, end, coordx, coordy, indexGrid, v, w, ipnt, value1, gpnt);
+            else 
+                ClosestPointIndexer.PI2_columns(start, end, coordx, coordy, indexGrid, v, w, ipnt, value1, gpnt);
+        }
+    } // static class PI2Processor
+
+    static class DistanceGrid2DProcessor implements RangeProcessor {
+
+        Grid2D indexGrid, interiorGrid, distanceGrid;
+        double pntx[], pnty[];
+        double maxInDistance, maxOutDistance;
+
+        DistanceGrid2DProcessor(Grid2D indexGrid, double pntx[], double pnty[], Grid2D interiorGrid,
+                                double maxInDistance, double maxOutDistance, Grid2D distanceGrid){
+            this.indexGrid = indexGrid;
+            this.pntx = pntx;
+            this.pnty = pnty;
+            this.interiorGrid = interiorGrid;
+            this.maxInDistance = maxInDistance;
+            this.maxOutDistance = maxOutDistance;
+            this.distanceGrid = distanceGrid;
+        }
+
+        public void processRange(int ymin, int ymax){
+            ClosestPointIndexer.makeDistanceGrid2DSlice(ymin, ymax, indexGrid, pntx, pnty, interiorGrid, 
+                                                        maxInDistance, maxOutDistance, distanceGrid);
+        }
+    } // static class DistanceGrid2DProcessor
+
 } // class ClosestPointIndexer_MT
@@ -0,0 +1,300 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.grid.op;
+
+import java.util.Arrays;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.core.Grid;
+import abfab3d.grid.ArrayAttributeGridInt;
+import abfab3d.grid.AttributeOperation;
+import abfab3d.grid.Operation;
+import abfab3d.grid.util.GridUtil;
+
+import abfab3d.util.AbFab3DGlobals;
+import abfab3d.util.RangeProcessor;
+import abfab3d.util.RangeRunnerMT;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.sqrt;
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
+/**
+   offset, dilation, erosion, opening and closing of density grid by thresholding of distance transform
+
+   surface points are found with subvoxel precision on the edges between voxels,
+   distance to the closest surface point is calculated for each voxel via separable closest point transform
+   which cost doesn't depend on offset distance unlike stamping of voxel shapes (DilationShapeMT, ErosionShapeMT)
+   or layered distance transform (DilationDistance, ErosionDistance)
+
+   new density is linear ramp of width one voxel centered at offset surface
+   surface extraction, distance transform and thresholding are run in parallel
+
+   grid attribute is density in the range [0, subvoxelResolution]
+   the grid is modified in place
+ */
+public class DistanceMorphologyOp implements Operation, AttributeOperation {
+
+    static final boolean DEBUG = false;
+
+    /** offset surface by signed distance, positive distance dilates, negative distance erodes */
+    public static final int OFFSET = 0;
+    /** offset surface outside by distance */
+    public static final int DILATE = 1;
+    /** offset surface inside by distance */
+    public static final int ERODE = 2;
+    /** erosion followed by dilation, removes features thinner than 2*distance */
+    public static final int OPEN = 3;
+    /** dilation followed by erosion, fills gaps narrower than 2*distance */
+    public static final int CLOSE = 4;
+
+    // y-slices processed by thread at once
+    static final int SLICES_CHUNK = 1;
+    // thickness of initial layer of closest points in voxels
+    static final double FIRST_LAYER_THICKNESS = 1.5;
+    // extra distance in voxels calculated beyond offset distance
+    static final double DISTANCE_MARGIN = 2.;
+
+    int m_mode;
+    double m_distance;
+    int m_subvoxelResolution;
+    int m_threadCount = 0;
+
+    /**
+       @param mode one of OFFSET, DILATE, ERODE, OPEN, CLOSE
+       @param distance offset distance in meters
+       @param subvoxelResolution max value of grid attribute
+     */
+    public DistanceMorphologyOp(int mode, double distance, int subvoxelResolution){
+
+        switch(mode){
+        default:
+            throw new IllegalArgumentException("unknown morphology mode: " + mode);
+        case OFFSET: case DILATE: case ERODE: case OPEN: case CLOSE:
+            break;
+        }
+        m_mode = mode;
+        m_distance = distance;
+        m_subvoxelResolution = subvoxelResolution;
+    }
+
+    /**
+       set count of threads to use, value less than 1 means use all available processors
+     */
+    public void setThreadCount(int count){
+        m_threadCount = count;
+    }
+
+    public int getThreadCount(){
+        return AbFab3DGlobals.getThreadCount(m_threadCount);
+    }
+
+    public Grid execute(Grid grid) {
+        throw new IllegalArgumentException("Not implemented.");
+    }
+
+    /**
+       performs the operation on the grid in place
+       @return the same grid
+     */
+    public AttributeGrid execute(AttributeGrid grid) {
+
+        long t0 = time();
+        double d = abs(m_distance)/grid.getVoxelSize();
+        switch(m_mode){
+        case OFFSET: offset(grid, m_distance/grid.getVoxelSize()); break;
+        case DILATE: offset(grid, d); break;
+        case ERODE:  offset(grid, -d); break;
+        case OPEN:   offset(grid, -d); offset(grid, d); break;
+        case CLOSE:  offset(grid, d); offset(grid, -d); break;
+        }
+        if(DEBUG) printf("DistanceMorphologyOp(mode: %d, %5.2f voxels) threads: %d %d ms\n", m_mode, d, getThreadCount(), time() - t0);
+        return grid;
+    }
+
+    /**
+       offsets surface of the grid by given distance in voxels
+     */
+    void offset(AttributeGrid grid, double distance){
+
+        if(distance == 0.)
+            return;
+
+        int nx = grid.getWidth();
+        int ny = grid.getHeight();
+        int nz = grid.getDepth();
+        int threadCount = getThreadCount();
+        // grid may be not safe for concurrent reads, in that case it is read in single thread
+        int readThreadCount = GridUtil.isConcurrentReadSafe(grid) ? threadCount : 1;
+        double iso = 0.5*m_subvoxelResolution;
+
+        // surface points in grid units
+        double slicePoints[][] = new double[ny][];
+        RangeProcessor finders[] = new RangeProcessor[readThreadCount];
+        for(int i = 0; i < readThreadCount; i++)
+            finders[i] = new SurfaceFinder(grid, iso, slicePoints);
+        RangeRunnerMT.run(ny, SLICES_CHUNK, finders);
+
+        int count = 0;
+        for(int y = 0; y < ny; y++)
+            count += slicePoints[y].length/3;
+        if(DEBUG) printf("surface points: %d\n", count);
+        if(count == 0)
+            return;
+
+        // point index 0 is not used
+        double pntx[] = new double[count+1];
+        double pnty[] = new double[count+1];
+        double pntz[] = new double[count+1];
+        int index = 1;
+        for(int y = 0; y < ny; y++){
+            double pnt[] = slicePoints[y];
+            for(int k = 0; k < pnt.length; k += 3, index++){
+                pntx[index] = pnt[k];
+                pnty[index] = pnt[k+1];
+                pntz[index] = pnt[k+2];
+            }
+        }
+        slicePoints = null;
+
+        double vs = grid.getVoxelSize();
+        AttributeGrid indexGrid = new ArrayAttributeGridInt(nx, ny, nz, vs, vs);
+        indexGrid.setGridBounds(grid.getGridBounds());
+        ClosestPointIndexer.initFirstLayer(indexGrid, pntx, pnty, pntz, FIRST_LAYER_THICKNESS);
+        ClosestPointIndexerMT.PI3_MT(pntx, pnty, pntz, abs(distance) + DISTANCE_MARGIN, indexGrid, threadCount);
+
+        RangeProcessor thresholders[] = new RangeProcessor[readThreadCount];
+        for(int i = 0; i < readThreadCount; i++)
+            thresholders[i] = new Thresholder(grid, indexGrid, pntx, pnty, pntz, iso, distance, m_subvoxelResolution);
+        RangeRunnerMT.run(ny, SLICES_CHUNK, thresholders);
+
+        // densities are stored in array based index grid, the grid itself may be not safe for concurrent writes
+        for(int y = 0; y < ny; y++){
+            for(int x = 0; x < nx; x++){
+                for(int z = 0; z < nz; z++){
+                    grid.setAttribute(x,y,z,indexGrid.getAttribute(x,y,z));
+                }
+            }
+        }
+    }
+
+    /**
+       finds points where density crosses iso value on the edges between neighboring voxel centers
+       points of each y-slice are stored in separate array to make result independent on threads
+     */
+    static class SurfaceFinder implements RangeProcessor {
+
+        AttributeGrid grid;
+        double iso;
+        double slicePoints[][];
+        double buffer[] = new double[300];
+        int count;
+
+        SurfaceFinder(AttributeGrid grid, double iso, double slicePoints[][]){
+            this.grid = grid;
+            this.iso = iso;
+            this.slicePoints = slicePoints;
+        }
+
+        public void processRange(int ymin, int ymax){
+
+            int nx = grid.getWidth();
+            int ny1 = grid.getHeight()-1;
+            int nz = grid.getDepth();
+            int nx1 = nx-1;
+            int nz1 = nz-1;
+            for(int y = ymin; y < ymax; y++){
+                count = 0;
+                for(int x = 0; x < nx; x++){
+                    for(int z = 0; z < nz; z++){
+                        double v0 = grid.getAttribute(x,y,z);
+                        if(x < nx1) check(v0, grid.getAttribute(x+1,y,z), x, y, z, 1, 0, 0);
+                        if(y < ny1) check(v0, grid.getAttribute(x,y+1,z), x, y, z, 0, 1, 0);
+                        if(z < nz1) check(v0, grid.getAttribute(x,y,z+1), x, y, z, 0, 0, 1);
+                    }
+                }
+                slicePoints[y] = Arrays.copyOf(buffer, count);
+            }
+        }
+
+        final void check(double v0, double v1, int x, int y, int z, int dx, int dy, int dz){
+
+            if((v0 > iso) == (v1 > iso))
+                return;
+            double t = (iso - v0)/(v1 - v0);
+            if(count + 3 > buffer.length)
+                buffer = Arrays.copyOf(buffer, 2*buffer.length);
+            // voxel centers are at half integer grid coordinates
+            buffer[count++] = x + 0.5 + t*dx;
+            buffer[count++] = y + 0.5 + t*dy;
+            buffer[count++] = z + 0.5 + t*dz;
+        }
+    }
+
+    /**
+       calculates density as ramp of signed distance to the offset surface
+       the density replaces the closest point index in the index grid
+     */
+    static class Thresholder implements RangeProcessor {
+
+        AttributeGrid grid;
+        AttributeGrid indexGrid;
+        double pntx[], pnty[], pntz[];
+        double iso;
+        double distance;
+        int subvoxelResolution;
+
+        Thresholder(AttributeGrid grid, AttributeGrid indexGrid, double pntx[], double pnty[], double pntz[],
+                    double iso, double distance, int subvoxelResolution){
+            this.grid = grid;
+            this.indexGrid = indexGrid;
+            this.pntx = pntx;
+            this.pnty = pnty;
+            this.pntz = pntz;
+            this.iso = iso;
+            this.distance = distance;
+            this.subvoxelResolution = subvoxelResolution;
+        }
+
+        public void processRange(int ymin, int ymax){
+
+            int nx = grid.getWidth();
+            int nz = grid.getDepth();
+            for(int y = ymin; y < ymax; y++){
+                for(int x = 0; x < nx; x++){
+                    for(int z = 0; z < nz; z++){
+                        boolean inside = (grid.getAttribute(x,y,z) > iso);
+                        int ind = (int)indexGrid.getAttribute(x,y,z);
+                        double dens;
+                        if(ind > 0){
+                            double dx = pntx[ind] - (x + 0.5);
+                            double dy = pnty[ind] - (y + 0.5);
+                            double dz = pntz[ind] - (z + 0.5);
+                            double dist = sqrt(dx*dx + dy*dy + dz*dz);
+                            if(inside) dist = -dist;
+                            dens = 0.5 + distance - dist;
+                            if(dens < 0.) dens = 0.;
+                            else if(dens > 1.) dens = 1.;
+                        } else {
+                            // farther than calculated distance range
+                            dens = (inside)? 1.: 0.;
+                        }
+                        indexGrid.setAttribute(x,y,z,(long)(dens*subvoxelResolution + 0.5));
+                    }
+                }
+            }
+        }
+    }
+
+} // class DistanceMorphologyOp
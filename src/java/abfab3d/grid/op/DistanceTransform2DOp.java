@@ -29,7 +29,10 @@ import abfab3d.param.Parameter;
 import abfab3d.param.DoubleParameter;
 import abfab3d.param.IntParameter;
 
+import abfab3d.util.AbFab3DGlobals;
 import abfab3d.util.PointMap;
+import abfab3d.util.RangeProcessor;
+import abfab3d.util.RangeRunnerMT;
 
 
 import static abfab3d.core.Output.printf;
@@ -119,6 +122,17 @@ public class DistanceTransform2DOp extends BaseParameterizable implements Operat
         mp_interpolation.setValue(interpolation);
     }
 
+    /**
+       set count of threads to use, value less than 1 means use all available processors 
+     */
+    public void setThreadCount(int count){
+        m_threadCount = count;
+    }
+
+    public int getThreadCount(){
+        return AbFab3DGlobals.getThreadCount(m_threadCount);
+    }
+
 
     //
     // local class variable 
@@ -134,6 +148,9 @@ public class DistanceTransform2DOp extends BaseParameterizable implements Operat
     // sign of input data inside of shape 
     private int m_interiorSign;
     int m_interpolation = INTERP_LINEAR;
+    int m_threadCount = 0;
+    // rows processed by thread at once 
+    static final int ROWS_CHUNK = 8;
 
     private GridDataChannel m_dataChannel;
     private PointMap m_points;
@@ -196,17 +213,19 @@ public class DistanceTransform2DOp extends BaseParameterizable implements Operat
             }
         }
 
+        int threadCount = getThreadCount();
         // distribute distances to the whole grid 
-        ClosestPointIndexer.PI2(pcnt, px, py, m_indexGrid);
+        ClosestPointIndexerMT.PI2_MT(pcnt, px, py, m_indexGrid, threadCount);
 
         ClosestPointIndexer.getPointsInWorldUnits(m_indexGrid, px, py);
 
-        Grid2D interiorGrid = makeInteriorGrid(grid, m_dataChannel, m_surfaceValue, m_interiorSign);
-        ClosestPointIndexer.makeDistanceGrid2D(m_indexGrid, px,py, 
-                                               interiorGrid,                                                
-                                               m_maxInDistance, 
-                                               m_maxOutDistance,
-                                               m_distanceGrid);
+        Grid2D interiorGrid = makeInteriorGrid(grid, m_dataChannel, m_surfaceValue, m_interiorSign, threadCount);
+        ClosestPointIndexerMT.makeDistanceGrid2D_MT(m_indexGrid, px,py, 
+                                                    interiorGrid,                                                
+                                                    m_maxInDistance, 
+                                                    m_maxOutDistance,
+                                                    m_distanceGrid, 
+                                                    threadCount);
         
         if(DEBUG)printf("DistanceTransformIndexed2D.execute() time: %d ms\n", (time() - t0));
         
@@ -322,25 +341,51 @@ public class DistanceTransform2DOp extends BaseParameterizable implements Operat
         }
     }
 
-    Grid2D makeInteriorGrid(Grid2D grid, GridDataChannel dataConverter, double threshold, int interiorSign){
+    static Grid2D makeInteriorGrid(Grid2D grid, GridDataChannel dataConverter, double threshold, int interiorSign, int threadCount){
 
-        int nx = grid.getWidth();
-        int ny = grid.getHeight();
         Grid2D interiorGrid = new Grid2DByte(grid.getGridBounds(),grid.getVoxelSize());
-        for(int y = 0; y < ny; y++){
-            for(int x = 0; x < nx; x++){
-                double d = interiorSign*(dataConverter.getValue(grid.getAttribute(x,y))-threshold);                
-                if(d <= 0.) {
-                    // exterior 
-                    interiorGrid.setAttribute(x,y,0);
-                } else {
-                    // interior 
-                    interiorGrid.setAttribute(x,y,1);
-                }
-            }
-        }        
+        RangeProcessor rows[] = new RangeProcessor[max(threadCount, 1)];
+        for(int i = 0; i < rows.length; i++){
+            rows[i] = new InteriorMaker(grid, dataConverter, threshold, interiorSign, interiorGrid);
+        }
+        RangeRunnerMT.run(grid.getHeight(), ROWS_CHUNK, rows);
         return interiorGrid;
     }
-    
+
+    /**
+       fills rows of interior grid 
+     */
+    static class InteriorMaker implements RangeProcessor {
+
+        Grid2D grid, interiorGrid;
+        GridDataChannel dataConverter;
+        double threshold;
+        int interiorSign;
+
+        InteriorMaker(Grid2D grid, GridDataChannel dataConverter, double threshold, int interiorSign, Grid2D interiorGrid){
+            this.grid = grid;
+            this.dataConverter = dataConverter;
+            this.threshold = threshold;
+            this.interiorSign = interiorSign;
+            this.interiorGrid = interiorGrid;
+        }
+
+        public void processRange(int ymin, int ymax){
+
+            int nx = grid.getWidth();
+            for(int y = ymin; y < ymax; y++){
+                for(int x = 0; x < nx; x++){
+                    double d = interiorSign*(dataConverter.getValue(grid.getAttribute(x,y))-threshold);                
+                    if(d <= 0.) {
+                        // exterior 
+                        interiorGrid.setAttribute(x,y,0);
+                    } else {
+                        // interior 
+                        interiorGrid.setAttribute(x,y,1);
+                    }
+                }
+            }        
+        }
+    } // class InteriorMaker 
     
 } // class DistanceTransformIndexed2D 
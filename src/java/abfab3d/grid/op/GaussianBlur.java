@@ -12,8 +12,6 @@
 
 package abfab3d.grid.op;
 
-import java.util.Arrays;
-
 import abfab3d.core.Bounds;
 import abfab3d.core.Grid2D;
 import abfab3d.core.GridDataChannel;
@@ -22,14 +20,29 @@ import abfab3d.core.MathUtil;
 import abfab3d.param.BaseParameterizable;
 import abfab3d.param.DoubleParameter;
 import abfab3d.param.Parameter;
+import abfab3d.grid.Grid2DInt;
+import abfab3d.grid.Grid2DShort;
 import abfab3d.grid.Operation2D;
 
+import abfab3d.util.AbFab3DGlobals;
+import abfab3d.util.RangeProcessor;
+import abfab3d.util.RangeRunnerMT;
+
 
 import static abfab3d.core.MathUtil.clamp;
 import static abfab3d.core.Units.MM;
 
+/**
+ * blurs Grid2D with gaussian kernel 
+ */
 public class GaussianBlur extends BaseParameterizable  implements Operation2D {
     
+    // rows processed by thread at once 
+    static final int ROWS_CHUNK = 8;
+    // columns processed by thread at once 
+    static final int COLUMNS_BLOCK = 16;
+
+    int m_threadCount = 0;
     
     DoubleParameter mp_blurWidth = new DoubleParameter("blurWidth", 0.1*MM);
     DoubleParameter mp_threshold = new DoubleParameter("threshold", "threshold for gaussian kernel", 0.001);
@@ -59,78 +72,171 @@ public class GaussianBlur extends BaseParameterizable  implements Operation2D {
         return grid;
     }
 
-    private int m_nx, m_ny;
-        
+    /**
+       set count of threads to use, value less than 1 means use all available processors 
+     */
+    public void setThreadCount(int count){
+        m_threadCount = count;
+    }
+
+    public int getThreadCount(){
+        return AbFab3DGlobals.getThreadCount(m_threadCount);
+    }
+
+    /**
+       convolutes the grid data with given kernel in x and y directions 
+       rows and columns are processed in parallel 
+     */
     public void convolute(Grid2D grid, GridDataChannel channel, double kernel[]){
         
-        m_nx = grid.getWidth();
-        m_ny = grid.getHeight();
-        int s = Math.max(m_nx, m_ny);
-        
-        double row[] = new double[s];
+        int nx = grid.getWidth();
+        int ny = grid.getHeight();
+        int threadCount = getThreadCount();
         
-        convoluteX(grid, channel, kernel, row);
-        convoluteY(grid, channel, kernel, row);
+        RangeProcessor rows[] = new RangeProcessor[threadCount];
+        RangeProcessor columns[] = new RangeProcessor[threadCount];
+        for(int i = 0; i < threadCount; i++){
+            rows[i] = new RowConvolver(grid, channel, kernel);
+            columns[i] = new ColumnConvolver(grid, channel, kernel);
+        }
+        RangeRunnerMT.run(ny, ROWS_CHUNK, rows);
+        RangeRunnerMT.run(nx, COLUMNS_BLOCK, columns);
         
     }
 
-    void convoluteX(Grid2D grid, GridDataChannel channel, double kernel[], double row[]){
-                
-        int w = m_nx;
-        int h = m_ny;
-        
+    /**
+       1D convolution with clamped boundary conditions 
+       @param in input values at in[inOffset + i*inStride]
+       @param out output values at out[outOffset + i*outStride]
+     */
+    static final void convolute1(double in[], int inOffset, int inStride, int n, double kernel[], double out[], int outOffset, int outStride){
+
         int ksize = kernel.length/2;
-        int w1 = w-1;
-
-        for(int y = 0; y < h; y++){
-            
-            // init accumulator array 
-            Arrays.fill(row, 0, w, 0.);
-            int offsety = y*w;
-
-            for(int x = 0; x < w; x++){
-                
-                for(int k = 0; k < kernel.length; k++){
-
-                    //int kx = x + k - ksize;
-                    int xx = x - (k-ksize); //offsety + x + k;
-
-                    xx = clamp(xx, 0, w1); // boundary conditions 
-                    row[x] += kernel[k] * channel.getValue(grid.getAttribute(xx,y)); 
-                }
-            }             
-            for(int x = 0; x < w; x++){
-                grid.setAttribute(x,y,channel.makeAtt(row[x]));
-            }                            
+        int klen = kernel.length;
+        int n1 = n-1;
+        for(int x = 0; x < n; x++){
+            double s = 0.;
+            for(int k = 0; k < klen; k++){
+                int xx = clamp(x - (k-ksize), 0, n1); // boundary conditions 
+                s += kernel[k] * in[inOffset + xx*inStride];
+            }
+            out[outOffset + x*outStride] = s;
         }
     }
-    
-    void convoluteY(Grid2D grid,  GridDataChannel channel, double kernel[], double row[]){
 
-        int w = m_nx;
-        int h = m_ny;
-        int ksize = kernel.length/2;
-        int h1 = h-1;
-
-        for(int x = 0; x < w; x++){
-            // init accumulator array 
-            Arrays.fill(row, 0, h, 0.);
-
-            for(int y = 0; y < h; y++){                
-                
-                for(int k = 0; k < kernel.length; k++){
-                    int yy = y - (k-ksize); 
-                    yy = clamp(yy, 0, h1); // boundary conditions 
-                    row[y] += kernel[k] * channel.getValue(grid.getAttribute(x,yy)); 
-                }
-            } 
-            
-            for(int y = 0; y < h; y++){
-                grid.setAttribute(x,y,channel.makeAtt(row[y]));
-            }                    
+    /**
+       convolutes rows of grid in x direction 
+     */
+    static class RowConvolver implements RangeProcessor {
+
+        Grid2D grid;
+        GridDataChannel channel;
+        double kernel[];
+        double row[];
+        double res[];
+        
+        RowConvolver(Grid2D grid, GridDataChannel channel, double kernel[]){
+            this.grid = grid;
+            this.channel = channel;
+            this.kernel = kernel;
+        }
+
+        public void processRange(int ymin, int ymax){
+
+            int nx = grid.getWidth();
+            if(row == null){
+                row = new double[nx];
+                res = new double[nx];
+            }
+            for(int y = ymin; y < ymax; y++){
+                getPixels(grid, channel, y*nx, 0, nx, row);
+                convolute1(row, 0, 1, nx, kernel, res, 0, 1);
+                setPixels(grid, channel, y*nx, 0, nx, res);
+            }
+        }
+    } // class RowConvolver 
+
+    /**
+       convolutes blocks of columns in y direction
+       block of columns is copied into work buffer in row order to have sequential memory access
+     */
+    static class ColumnConvolver implements RangeProcessor {
+
+        Grid2D grid;
+        GridDataChannel channel;
+        double kernel[];
+        double block[];
+        double res[];
+        
+        ColumnConvolver(Grid2D grid, GridDataChannel channel, double kernel[]){
+            this.grid = grid;
+            this.channel = channel;
+            this.kernel = kernel;
         }
-    } // convolute y 
 
+        public void processRange(int xmin, int xmax){
+
+            int nx = grid.getWidth();
+            int ny = grid.getHeight();
+            int bw = xmax - xmin;
+            if(block == null){
+                block = new double[COLUMNS_BLOCK*ny];
+                res = new double[COLUMNS_BLOCK*ny];
+            }
+            for(int y = 0; y < ny; y++){
+                getPixels(grid, channel, xmin + y*nx, y*bw, bw, block);
+            }
+            for(int x = 0; x < bw; x++){
+                convolute1(block, x, bw, ny, kernel, res, x, bw);
+            }
+            for(int y = 0; y < ny; y++){
+                setPixels(grid, channel, xmin + y*nx, y*bw, bw, res);
+            }
+        }
+    } // class ColumnConvolver 
+
+    /**
+       reads count consequitive pixels starting from pixel index start and stores their values in values[offset...]
+     */
+    static void getPixels(Grid2D grid, GridDataChannel channel, int start, int offset, int count, double values[]){
+
+        if(grid instanceof Grid2DShort){
+            short data[] = ((Grid2DShort)grid).getData();
+            for(int i = 0; i < count; i++)
+                values[offset + i] = channel.getValue(data[start + i] & 0xFFFF);
+        } else if(grid instanceof Grid2DInt){
+            int data[] = ((Grid2DInt)grid).getData();
+            for(int i = 0; i < count; i++)
+                values[offset + i] = channel.getValue(data[start + i] & 0xFFFFFFFFL);
+        } else {
+            int nx = grid.getWidth();
+            for(int i = 0; i < count; i++){
+                int p = start + i;
+                values[offset + i] = channel.getValue(grid.getAttribute(p % nx, p / nx));
+            }
+        }
+    }
 
+    /**
+       writes count consequitive pixels starting from pixel index start from values[offset...]
+     */
+    static void setPixels(Grid2D grid, GridDataChannel channel, int start, int offset, int count, double values[]){
+
+        if(grid instanceof Grid2DShort){
+            short data[] = ((Grid2DShort)grid).getData();
+            for(int i = 0; i < count; i++)
+                data[start + i] = (short)channel.makeAtt(values[offset + i]);
+        } else if(grid instanceof Grid2DInt){
+            int data[] = ((Grid2DInt)grid).getData();
+            for(int i = 0; i < count; i++)
+                data[start + i] = (int)channel.makeAtt(values[offset + i]);
+        } else {
+            int nx = grid.getWidth();
+            for(int i = 0; i < count; i++){
+                int p = start + i;
+                grid.setAttribute(p % nx, p / nx, channel.makeAtt(values[offset + i]));
+            }
+        }
+    }
 
 }
\ No newline at end of file
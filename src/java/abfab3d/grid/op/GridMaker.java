@@ -74,10 +74,14 @@ public class GridMaker implements Operation, AttributeOperation {
 
     // margin around the grid boundary to be kept empty
     protected int m_margin = 0; 
+    // world region of the grid to render, null to render whole grid 
+    protected Bounds m_region = null;
     // threads count to use 
     protected int m_threadCount = 0;
 
     private double voxelX, voxelY, voxelZ, offsetX, offsetY, offsetZ;
+    // range of voxels to render (exclusive) 
+    private int m_xmin, m_xmax, m_ymin, m_ymax, m_zmin, m_zmax;
     private int m_slizeSize = 2;
 
     // custom converter of Vec into long attribute
@@ -117,6 +121,17 @@ public class GridMaker implements Operation, AttributeOperation {
 
     }
 
+    /**
+       set world region of the grid to render. Voxels with centers outside of the region keep their values. 
+       It is used to update part of the grid after the change of the source. 
+       @param region region to render or null to render whole grid 
+     */
+    public void setRegion(Bounds region){
+
+        m_region = region;
+
+    }
+
     public void setThreadCount(int count){
         if (count < 1) {
             count = Runtime.getRuntime().availableProcessors();
@@ -279,6 +294,11 @@ public class GridMaker implements Operation, AttributeOperation {
         long t0 = time();
 
         makeTransform();
+        initRegion();
+        if(m_xmin >= m_xmax || m_ymin >= m_ymax || m_zmin >= m_zmax){
+            if(DEBUG)printf("GridMaker region is empty\n");
+            return;
+        }
         if(m_transform == null)
             m_transform = new Identity();
        
@@ -314,7 +334,7 @@ public class GridMaker implements Operation, AttributeOperation {
      */
     void makeGridMT(){
 
-        SliceSet slices = new SliceSet(m_margin, m_grid.getHeight()-m_margin, m_slizeSize);
+        SliceSet slices = new SliceSet(m_ymin, m_ymax, m_slizeSize);
 
         ExecutorService executor = Executors.newFixedThreadPool(m_threadCount);
         for(int i = 0; i < m_threadCount; i++){
@@ -341,18 +361,14 @@ public class GridMaker implements Operation, AttributeOperation {
             pntData = new Vec(POINT_DIMENSION),
             dataValue = new Vec(m_dataChannelsCount);
         if(DEBUG) printf("GridMaker.makeGridST(%d x %d x %d)\n", m_nx, m_ny, m_nz );
-        int margin = m_margin; 
-        int nx = m_nx, ny = m_ny, nz = m_nz;
-        
-        int nx1 = nx-margin;
-        int ny1 = ny-margin;
-        int nz1 = nz-margin;
+        // voxels of the region may have old values 
+        boolean clearVoxels = (m_region != null);
 
-        for(int iy = margin; iy < ny1; iy++){
+        for(int iy = m_ymin; iy < m_ymax; iy++){
 
-            for(int ix = margin; ix < nx1; ix++){
+            for(int ix = m_xmin; ix < m_xmax; ix++){
 
-                for(int iz = nz1-1; iz >= margin; iz--){ // this z-order to speed up creation of GridIntervals
+                for(int iz = m_zmax-1; iz >= m_zmin; iz--){ // this z-order to speed up creation of GridIntervals
                     
                     pntGrid.set(ix, iy, iz);
                     transformToWorldSpace(pntGrid, pntWorld);
@@ -367,13 +383,16 @@ public class GridMaker implements Operation, AttributeOperation {
                     }
                     //pntData.voxelSize = voxelSize;
 
-                    if(res != VecTransform.RESULT_OK)
-                        continue;
-                    res = m_dataSource.getDataValue(pntData, dataValue);
-                    if(res != VecTransform.RESULT_OK)
+                    if(res == VecTransform.RESULT_OK)
+                        res = m_dataSource.getDataValue(pntData, dataValue);
+                    if(res != VecTransform.RESULT_OK){
+                        // voxel without data is empty
+                        if(clearVoxels)
+                            m_grid.setAttribute(ix, iy, iz, 0);
                         continue;
+                    }
                     long vd = m_attributePacker.makeAttribute(dataValue);
-                    if(vd != 0)
+                    if(vd != 0 || clearVoxels)
                     m_grid.setData(ix, iy, iz, Grid.INSIDE, vd);
 
                 }
@@ -423,20 +442,14 @@ public class GridMaker implements Operation, AttributeOperation {
 
         void makeSlice(Slice slice){
             
-            int margin = m_margin; 
-            int nx = m_nx, ny = m_ny, nz = m_nz;
-            
-            int nx1 = nx-margin;
-            int ny1 = ny-margin;
-            int nz1 = nz-margin;
             int ymin = slice.ymin;
             int ymax = slice.ymax;
 
             for(int iy = ymin; iy <= ymax; iy++){
                 
-                for(int ix = margin; ix < nx1; ix++){
+                for(int ix = m_xmin; ix < m_xmax; ix++){
                     
-                    for(int iz = nz1-1; iz >= margin; iz--){ // this z-order to speed up creation of GridIntervals
+                    for(int iz = m_zmax-1; iz >= m_zmin; iz--){ // this z-order to speed up creation of GridIntervals
                         //TODO make grid.setData() in one call 
 
                         pntGrid.set(ix, iy, iz);
@@ -451,12 +464,15 @@ public class GridMaker implements Operation, AttributeOperation {
                                 printf("scale: %10.5f\n", s);
                             }
                         }
-                        if(res != VecTransform.RESULT_OK)
-                            continue;                        
-                        res = m_dataSource.getDataValue(pntData, dataValue);
+                        if(res == VecTransform.RESULT_OK)
+                            res = m_dataSource.getDataValue(pntData, dataValue);
 
-                        if(res != VecTransform.RESULT_OK)
+                        if(res != VecTransform.RESULT_OK){
+                            // voxels of the region may have old values 
+                            if(m_region != null)
+                                m_grid.setAttribute(ix, iy, iz, 0);
                             continue;
+                        }
 
                         long vd = m_attributePacker.makeAttribute(dataValue);
                         m_grid.setAttribute(ix, iy, iz, vd);
@@ -506,6 +522,26 @@ public class GridMaker implements Operation, AttributeOperation {
     }
 
     
+    /**
+       calculates range of voxels to render from margin and region 
+     */
+    protected void initRegion(){
+
+        m_xmin = m_margin; m_xmax = m_nx - m_margin;
+        m_ymin = m_margin; m_ymax = m_ny - m_margin;
+        m_zmin = m_margin; m_zmax = m_nz - m_margin;
+        if(m_region == null)
+            return;
+        // voxels with centers inside of region 
+        m_xmin = Math.max(m_xmin, (int)Math.ceil((m_region.xmin - offsetX)/voxelX));
+        m_xmax = Math.min(m_xmax, (int)Math.floor((m_region.xmax - offsetX)/voxelX) + 1);
+        m_ymin = Math.max(m_ymin, (int)Math.ceil((m_region.ymin - offsetY)/voxelY));
+        m_ymax = Math.min(m_ymax, (int)Math.floor((m_region.ymax - offsetY)/voxelY) + 1);
+        m_zmin = Math.max(m_zmin, (int)Math.ceil((m_region.zmin - offsetZ)/voxelZ));
+        m_zmax = Math.min(m_zmax, (int)Math.floor((m_region.zmax - offsetZ)/voxelZ) + 1);
+        if(DEBUG)printf("GridMaker region: [%d,%d) x [%d,%d) x [%d,%d)\n", m_xmin, m_xmax, m_ymin, m_ymax, m_zmin, m_zmax);
+    }
+
     static class SliceSet {
 
         Stack<Slice> slices;
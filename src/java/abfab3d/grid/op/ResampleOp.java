@@ -22,6 +22,10 @@ import abfab3d.param.BaseParameterizable;
 
 import abfab3d.grid.*;
 
+import abfab3d.util.AbFab3DGlobals;
+import abfab3d.util.RangeProcessor;
+import abfab3d.util.RangeRunnerMT;
+
 import static abfab3d.util.ImageUtil.us2i;
 
 /**
@@ -43,6 +47,11 @@ public class ResampleOp extends BaseParameterizable implements Operation2D {
 
     private int minificationWeighting;
 
+    // rows of destination processed by thread at once 
+    static final int ROWS_CHUNK = 8;
+
+    private int m_threadCount = 0;
+
     public ResampleOp(int width, int height) {
         this(width,height,WEIGHTING_MINIMUM);
     }
@@ -53,6 +62,13 @@ public class ResampleOp extends BaseParameterizable implements Operation2D {
         this.minificationWeighting = minificationWeighting;
     }
 
+    /**
+       set count of threads to use, value less than 1 means use all available processors 
+     */
+    public void setThreadCount(int count){
+        m_threadCount = count;
+    }
+
     /**
      * Execute an operation on a grid.  If the operation changes the grid
      * dimensions then a new one will be returned from the call.
@@ -84,22 +100,17 @@ public class ResampleOp extends BaseParameterizable implements Operation2D {
         double sr = Math.max(wr,hr);   // TODO: what todo about non square pixels
         Grid2DShort dest = (Grid2DShort) ssrc.createEmpty(width, height, src.getVoxelSize() / sr);
 
-        short[] val;
-
         switch(minificationWeighting) {
             case WEIGHTING_AVERAGE:
-                val = getScaledDownData(ssrc, width, height);
-                break;
             case WEIGHTING_MINIMUM:
-                val = getScaledDownDataBlack(ssrc,width,height);
-                break;
             case WEIGHTING_MAXIMUM:
-                val = getScaledDownDataWhite(ssrc,width,height);
                 break;
             default:
                 throw new IllegalArgumentException("Unsupported minificationWeighting: " + minificationWeighting);
         }
 
+        short[] val = getScaledDownData(ssrc, width, height, minificationWeighting, m_threadCount);
+
         dest.copyData(val);
 
         return dest;
@@ -107,40 +118,10 @@ public class ResampleOp extends BaseParameterizable implements Operation2D {
 
     /**
      scaled down image from input image
+     each destination pixel is set to average of pixels of the input image
      */
     public static short[] getScaledDownData(Grid2D src, int width, int height){
-
-
-        int inwidth = src.getWidth();
-        int inheight = src.getHeight();
-
-        short outData[] = new short[width * height];
-
-        for(int y = 0; y < height; y++){
-
-            int y0 = (y * inheight)/height;
-            int y1 = ((y + 1) * inheight)/height;
-
-            for(int x = 0; x < width; x++){
-
-                int x0 = (x * inwidth)/width;
-                int x1 = ((x + 1) * inwidth)/width;
-
-                int pv = 0; // pixel value
-                int count = (y1 - y0) * (x1-x0);
-
-                for(int yy = y0; yy < y1; yy++){
-                    for(int xx = x0; xx < x1; xx++){
-                        pv +=us2i((short)src.getAttribute(xx,yy));
-                    }
-                }
-
-                outData[x + y*width] = (short)(pv/count);
-            }
-        }
-
-        return outData;
-
+        return getScaledDownData(src, width, height, WEIGHTING_AVERAGE, 0);
     } //getScaledDownData
 
     /**
@@ -148,37 +129,7 @@ public class ResampleOp extends BaseParameterizable implements Operation2D {
      each destination pixel is set to darkest pixel of the input image
      */
     public static short[] getScaledDownDataBlack(Grid2D src, int width, int height){
-
-        int inwidth = src.getWidth();
-        int inheight = src.getHeight();
-        short outData[] = new short[width * height];
-
-        for(int y = 0; y < height; y++){
-
-            int y0 = (y * inheight)/height;
-            int y1 = ((y + 1) * inheight)/height;
-
-            for(int x = 0; x < width; x++){
-
-                int x0 = (x * inwidth)/width;
-                int x1 = ((x + 1) * inwidth)/width;
-
-                int pv = 0xFFFF; // pixel value
-
-                for(int yy = y0; yy < y1; yy++){
-                    for(int xx = x0; xx < x1; xx++){
-                        int v = us2i((short)src.getAttribute(xx,yy));
-                        if(v < pv)
-                            pv = v;
-                    }
-                }
-
-                outData[x + y*width] = (short)(pv);
-            }
-        }
-
-        return outData;
-
+        return getScaledDownData(src, width, height, WEIGHTING_MINIMUM, 0);
     } //getScaledDownDataBlack
 
     /**
@@ -186,37 +137,107 @@ public class ResampleOp extends BaseParameterizable implements Operation2D {
      each destination pixel is set to whitest pixel of the input image
      */
     public static short[] getScaledDownDataWhite(Grid2D src, int width, int height){
+        return getScaledDownData(src, width, height, WEIGHTING_MAXIMUM, 0);
+    } //getScaledDownDataWhite
 
-        int inwidth = src.getWidth();
-        int inheight = src.getHeight();
-        short outData[] = new short[width * height];
-
-        for(int y = 0; y < height; y++){
+    /**
+     scaled down image from input image
+     rows of destination image are calculated in parallel
+     @param weighting one of WEIGHTING_MINIMUM, WEIGHTING_AVERAGE, WEIGHTING_MAXIMUM
+     @param threadCount count of threads to use, value less than 1 means use all available processors
+     */
+    public static short[] getScaledDownData(Grid2D src, int width, int height, int weighting, int threadCount){
 
-            int y0 = (y * inheight)/height;
-            int y1 = ((y + 1) * inheight)/height;
+        short outData[] = new short[width * height];
+        threadCount = AbFab3DGlobals.getThreadCount(threadCount);
+        RangeProcessor rows[] = new RangeProcessor[threadCount];
+        for(int i = 0; i < threadCount; i++){
+            rows[i] = new RowScaler(src, width, height, weighting, outData);
+        }
+        RangeRunnerMT.run(height, ROWS_CHUNK, rows);
+        return outData;
 
-            for(int x = 0; x < width; x++){
+    } //getScaledDownData
 
-                int x0 = (x * inwidth)/width;
-                int x1 = ((x + 1) * inwidth)/width;
+    /**
+       calculates rows of scaled down image 
+     */
+    static class RowScaler implements RangeProcessor {
+
+        Grid2D src;
+        short srcData[];
+        int width, height, weighting;
+        short outData[];
+
+        RowScaler(Grid2D src, int width, int height, int weighting, short outData[]){
+            this.src = src;
+            if(src instanceof Grid2DShort)
+                srcData = ((Grid2DShort)src).getData();
+            this.width = width;
+            this.height = height;
+            this.weighting = weighting;
+            this.outData = outData;
+        }
 
-                int pv = 0x0000; // pixel value
+        final int getPixel(int x, int y){
+            if(srcData != null)
+                return srcData[x + y*src.getWidth()] & 0xFFFF;
+            else
+                return us2i((short)src.getAttribute(x,y));
+        }
 
-                for(int yy = y0; yy < y1; yy++){
-                    for(int xx = x0; xx < x1; xx++){
-                        int v = us2i((short)src.getAttribute(xx,yy));
-                        if(v > pv)
-                            pv = v;
+        public void processRange(int ymin, int ymax){
+
+            int inwidth = src.getWidth();
+            int inheight = src.getHeight();
+
+            for(int y = ymin; y < ymax; y++){
+
+                int y0 = (y * inheight)/height;
+                int y1 = ((y + 1) * inheight)/height;
+
+                for(int x = 0; x < width; x++){
+
+                    int x0 = (x * inwidth)/width;
+                    int x1 = ((x + 1) * inwidth)/width;
+                    int pv; // pixel value
+
+                    switch(weighting){
+                    default:
+                    case WEIGHTING_AVERAGE:
+                        pv = 0;
+                        for(int yy = y0; yy < y1; yy++){
+                            for(int xx = x0; xx < x1; xx++){
+                                pv += getPixel(xx,yy);
+                            }
+                        }
+                        pv /= (y1 - y0) * (x1-x0);
+                        break;
+                    case WEIGHTING_MINIMUM:
+                        pv = 0xFFFF;
+                        for(int yy = y0; yy < y1; yy++){
+                            for(int xx = x0; xx < x1; xx++){
+                                int v = getPixel(xx,yy);
+                                if(v < pv)
+                                    pv = v;
+                            }
+                        }
+                        break;
+                    case WEIGHTING_MAXIMUM:
+                        pv = 0x0000;
+                        for(int yy = y0; yy < y1; yy++){
+                            for(int xx = x0; xx < x1; xx++){
+                                int v = getPixel(xx,yy);
+                                if(v > pv)
+                                    pv = v;
+                            }
+                        }
+                        break;
                     }
+                    outData[x + y*width] = (short)(pv);
                 }
-
-                outData[x + y*width] = (short)(pv);
             }
         }
-
-        return outData;
-
-    } //getScaledDownDataWhite
+    } // class RowScaler
 
 }
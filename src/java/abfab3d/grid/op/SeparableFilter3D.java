@@ -0,0 +1,284 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.grid.op;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.core.Grid;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.MathUtil;
+
+import abfab3d.param.BaseParameterizable;
+import abfab3d.param.DoubleParameter;
+import abfab3d.param.IntParameter;
+import abfab3d.param.Parameter;
+import abfab3d.grid.AttributeOperation;
+import abfab3d.grid.Operation;
+import abfab3d.grid.util.GridUtil;
+
+import abfab3d.util.AbFab3DGlobals;
+import abfab3d.util.RangeProcessor;
+import abfab3d.util.RangeRunnerMT;
+
+import static abfab3d.core.MathUtil.clamp;
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+import static abfab3d.core.Units.MM;
+
+/**
+   separable 3D filter of AttributeGrid data
+
+   the grid is filtered in place by 1D filters along x, y and z lines, lines are processed in parallel
+   FILTER_GAUSSIAN convolves with gaussian kernel with sigma equal to filter width
+   FILTER_BOX averages over window of half width equal to filter width using running sums,
+   its cost doesn't depend on the width. Several box iterations approximate gaussian filter.
+   boundary values are extended outside of the grid
+ */
+public class SeparableFilter3D extends BaseParameterizable implements Operation, AttributeOperation {
+
+    static final boolean DEBUG = false;
+
+    public static final int FILTER_GAUSSIAN = 0;
+    public static final int FILTER_BOX = 1;
+
+    // lines processed by thread at once
+    static final int LINES_CHUNK = 64;
+
+    int m_filterType;
+    int m_threadCount = 0;
+
+    DoubleParameter mp_width = new DoubleParameter("width", "gaussian sigma or box half width", 0.1*MM);
+    DoubleParameter mp_threshold = new DoubleParameter("threshold", "threshold for gaussian kernel", 0.001);
+    IntParameter mp_iterations = new IntParameter("iterations", "count of box filter iterations", 1);
+
+    Parameter m_aparam[] = new Parameter[]{
+        mp_width,
+        mp_threshold,
+        mp_iterations,
+    };
+
+    /**
+       @param filterType FILTER_GAUSSIAN or FILTER_BOX
+       @param width gaussian sigma or box half width in meters
+     */
+    public SeparableFilter3D(int filterType, double width){
+
+        if(filterType != FILTER_GAUSSIAN && filterType != FILTER_BOX)
+            throw new IllegalArgumentException("unknown filter type: " + filterType);
+        addParams(m_aparam);
+        m_filterType = filterType;
+        mp_width.setValue(width);
+    }
+
+    /**
+       set count of box filter passes
+     */
+    public void setIterations(int iterations){
+        mp_iterations.setValue(iterations);
+    }
+
+    /**
+       set count of threads to use, value less than 1 means use all available processors
+     */
+    public void setThreadCount(int count){
+        m_threadCount = count;
+    }
+
+    public int getThreadCount(){
+        return AbFab3DGlobals.getThreadCount(m_threadCount);
+    }
+
+    public Grid execute(Grid grid) {
+        throw new IllegalArgumentException("Not implemented.");
+    }
+
+    /**
+       filters the first data channel of the grid in place, bits of other channels are preserved
+       @return the same grid
+     */
+    public AttributeGrid execute(AttributeGrid grid) {
+
+        long t0 = time();
+        GridDataChannel channel = grid.getDataDesc().getChannel(0);
+        double width = mp_width.getValue()/grid.getVoxelSize();
+        double kernel[] = null;
+        int radius = 0;
+        int passes = 0;
+        switch(m_filterType){
+        default:
+        case FILTER_GAUSSIAN:
+            kernel = MathUtil.getGaussianKernel(width, mp_threshold.getValue());
+            if(kernel.length > 1)
+                passes = 1;
+            break;
+        case FILTER_BOX:
+            radius = (int)Math.round(width);
+            if(radius > 0)
+                passes = mp_iterations.getValue();
+            break;
+        }
+        if(passes > 0){
+            // grid implementations are not safe for concurrent writes,
+            // values are filtered in parallel in a buffer and written back in single thread
+            float data[] = readChannel(grid, channel);
+            for(int i = 0; i < passes; i++)
+                filter(grid, data, kernel, radius);
+            writeChannel(grid, channel, data);
+        }
+        if(DEBUG) printf("SeparableFilter3D(%d, %5.2f voxels) threads: %d %d ms\n", m_filterType, width, getThreadCount(), time() - t0);
+        return grid;
+    }
+
+    /**
+       @return values of the channel in YXZ order
+     */
+    float[] readChannel(final AttributeGrid grid, final GridDataChannel channel){
+
+        final int nx = grid.getWidth();
+        final int nz = grid.getDepth();
+        final float data[] = new float[nx*grid.getHeight()*nz];
+        // reading from grids which are not safe for concurrent reads is done in single thread
+        int threadCount = GridUtil.isConcurrentReadSafe(grid) ? getThreadCount() : 1;
+        RangeProcessor readers[] = new RangeProcessor[threadCount];
+        for(int i = 0; i < threadCount; i++){
+            readers[i] = new RangeProcessor(){
+                    public void processRange(int start, int end){
+                        for(int y = start; y < end; y++){
+                            for(int x = 0; x < nx; x++){
+                                int offset = (y*nx + x)*nz;
+                                for(int z = 0; z < nz; z++)
+                                    data[offset + z] = (float)channel.getValue(grid.getAttribute(x,y,z));
+                            }
+                        }
+                    }
+                };
+        }
+        RangeRunnerMT.run(grid.getHeight(), 1, readers);
+        return data;
+    }
+
+    /**
+       writes values into the channel keeping bits of other channels
+     */
+    static void writeChannel(AttributeGrid grid, GridDataChannel channel, float data[]){
+
+        int nx = grid.getWidth();
+        int ny = grid.getHeight();
+        int nz = grid.getDepth();
+        long otherBits = ~(channel.getMask() << channel.getShift());
+        for(int y = 0; y < ny; y++){
+            for(int x = 0; x < nx; x++){
+                int offset = (y*nx + x)*nz;
+                for(int z = 0; z < nz; z++){
+                    long att = grid.getAttribute(x,y,z);
+                    grid.setAttribute(x,y,z, (att & otherBits) | channel.makeAtt(data[offset + z]));
+                }
+            }
+        }
+    }
+
+    /**
+       filters data along x, y and z lines
+       @param kernel convolution kernel, if null box filter of given radius is used
+     */
+    void filter(AttributeGrid grid, float data[], double kernel[], int boxRadius){
+
+        int nx = grid.getWidth();
+        int ny = grid.getHeight();
+        int nz = grid.getDepth();
+        int threadCount = getThreadCount();
+        int lineCounts[] = new int[]{ny*nz, nx*nz, nx*ny};
+        for(int axis = 0; axis < 3; axis++){
+            RangeProcessor filters[] = new RangeProcessor[threadCount];
+            for(int i = 0; i < threadCount; i++)
+                filters[i] = new LineFilter(data, nx, ny, nz, axis, kernel, boxRadius);
+            RangeRunnerMT.run(lineCounts[axis], LINES_CHUNK, filters);
+        }
+    }
+
+    /**
+       1D box filter with extended boundary values calculated with running sum
+       @param in input values
+       @param n count of values
+       @param radius half width of the window
+       @param out output values
+     */
+    static final void boxFilter1(double in[], int n, int radius, double out[]){
+
+        int n1 = n-1;
+        double norm = 1./(2*radius + 1);
+        double sum = 0.;
+        for(int k = -radius; k <= radius; k++)
+            sum += in[clamp(k, 0, n1)];
+        for(int x = 0; x < n; x++){
+            out[x] = sum*norm;
+            sum += in[clamp(x + radius + 1, 0, n1)] - in[clamp(x - radius, 0, n1)];
+        }
+    }
+
+    /**
+       filters lines parallel to one of the axes
+       line index is in the plane orthogonal to the axis
+       each line is written by single thread
+     */
+    static class LineFilter implements RangeProcessor {
+
+        float data[];
+        int nx, ny, nz;
+        int axis;
+        double kernel[];
+        int boxRadius;
+        double line[];
+        double res[];
+
+        LineFilter(float data[], int nx, int ny, int nz, int axis, double kernel[], int boxRadius){
+            this.data = data;
+            this.nx = nx;
+            this.ny = ny;
+            this.nz = nz;
+            this.axis = axis;
+            this.kernel = kernel;
+            this.boxRadius = boxRadius;
+        }
+
+        public void processRange(int start, int end){
+
+            int n = 0, nu = 0, stride = 0;
+            switch(axis){
+            case 0: n = nx; nu = ny; stride = nz; break;
+            case 1: n = ny; nu = nx; stride = nx*nz; break;
+            case 2: n = nz; nu = nx; stride = 1; break;
+            }
+            if(line == null){
+                line = new double[n];
+                res = new double[n];
+            }
+            for(int k = start; k < end; k++){
+                int u = k % nu;
+                int v = k / nu;
+                int offset = 0;
+                switch(axis){
+                case 0: offset = u*nx*nz + v; break; // u = y, v = z
+                case 1: offset = u*nz + v; break;    // u = x, v = z
+                case 2: offset = (v*nx + u)*nz; break; // u = x, v = y
+                }
+                for(int i = 0; i < n; i++) line[i] = data[offset + i*stride];
+                if(kernel != null)
+                    GaussianBlur.convolute1(line, 0, 1, n, kernel, res, 0, 1);
+                else
+                    boxFilter1(line, n, boxRadius, res);
+                for(int i = 0; i < n; i++) data[offset + i*stride] = (float)res[i];
+            }
+        }
+    }
+
+} // class SeparableFilter3D
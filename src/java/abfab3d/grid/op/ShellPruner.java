@@ -0,0 +1,372 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.grid.op;
+
+import java.util.Arrays;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.grid.DensityMaker;
+import abfab3d.grid.GridMask;
+import abfab3d.grid.util.GridUtil;
+import abfab3d.util.AbFab3DGlobals;
+import abfab3d.util.RangeProcessor;
+import abfab3d.util.RangeRunnerMT;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
+/**
+   finds connected components of the grid and makes mask of components which are rejected as small shells
+
+   voxels with non zero density are occupied. Occupied voxels are connected if they are closer
+   than 2*smoothingRadius + 1 (in max norm), so the isosurface of the smoothed grid of one component
+   does not touch other components and each mesh shell belongs to exactly one component.
+
+   components are found as runs of occupied voxels along z-axis joined by union-find
+   memory used is proportional to the count of runs, not to the grid size
+
+   in exact mode only the components with the upper bound of the shell volume below the min shell volume are rejected,
+   the final selection of shells is expected to be done on the mesh.
+   otherwise the components are selected as shells using volume estimated from the voxel density
+
+ */
+public class ShellPruner {
+
+    static final boolean DEBUG = false;
+
+    static final double VOLUME_UNDEFINED = -Double.MAX_VALUE;
+    static final int SHELLS_COUNT_UNDEFINED = Integer.MAX_VALUE;
+
+    DensityMaker m_densityMaker;
+    double m_minShellVolume = VOLUME_UNDEFINED;
+    int m_maxShellsCount = SHELLS_COUNT_UNDEFINED;
+    int m_minShellCount = 0;
+    int m_smoothingRadius = 0;
+    boolean m_exact = true;
+    int m_threadCount = 0;
+
+    int m_componentsCount;
+    int m_prunedCount;
+
+    /**
+       @param densityMaker converts grid attribute into density
+     */
+    public ShellPruner(DensityMaker densityMaker){
+        m_densityMaker = densityMaker;
+    }
+
+    public void setMinShellVolume(double value){
+        m_minShellVolume = value;
+    }
+
+    public void setMaxShellsCount(int value){
+        m_maxShellsCount = value;
+    }
+
+    /**
+       no components are rejected if components count is less than or equal to this value
+     */
+    public void setMinShellCount(int value){
+        m_minShellCount = value;
+    }
+
+    /**
+       set half size of smoothing kernel applied to the grid before the isosurface extraction in voxels
+     */
+    public void setSmoothingRadius(int value){
+        m_smoothingRadius = Math.max(0, value);
+    }
+
+    /**
+       if true, only components which are certainly rejected by the mesh shell selection are masked
+     */
+    public void setExact(boolean value){
+        m_exact = value;
+    }
+
+    public void setThreadCount(int count){
+        m_threadCount = count;
+    }
+
+    /**
+       @return count of components found by the last execute()
+     */
+    public int getComponentsCount(){
+        return m_componentsCount;
+    }
+
+    /**
+       @return count of components rejected by the last execute()
+     */
+    public int getPrunedCount(){
+        return m_prunedCount;
+    }
+
+    /**
+       @return mask of voxels of rejected components or null if no components are rejected
+     */
+    public GridMask execute(AttributeGrid grid){
+
+        long t0 = time();
+        m_componentsCount = 0;
+        m_prunedCount = 0;
+
+        if(m_exact && m_minShellCount > 0){
+            // shell count on the mesh can not be predicted, removal of components may change the selection
+            return null;
+        }
+
+        int nx = grid.getWidth(), ny = grid.getHeight(), nz = grid.getDepth();
+        double vs = grid.getVoxelSize();
+        double voxelVolume = vs*vs*grid.getSliceHeight();
+
+        // runs of occupied voxels along z, slice by slice in y
+        RunList slices[] = new RunList[ny];
+        int threads = AbFab3DGlobals.getThreadCount(m_threadCount);
+        // grid may be not safe for concurrent reads, in that case it is read in single thread
+        if(!GridUtil.isConcurrentReadSafe(grid))
+            threads = 1;
+        RangeProcessor processors[] = new RangeProcessor[threads];
+        for(int i = 0; i < threads; i++)
+            processors[i] = new RunFinder(grid, slices);
+        RangeRunnerMT.run(ny, 1, processors);
+
+        // rowStart[x + y*nx] is index of first run of the row
+        int rowStart[] = new int[nx*ny + 1];
+        int runCount = 0;
+        for(int y = 0; y < ny; y++){
+            RunList slice = slices[y];
+            int k = 0;
+            for(int x = 0; x < nx; x++){
+                rowStart[x + y*nx] = runCount + k;
+                while(k < slice.size && slice.data[3*k] == x) k++;
+            }
+            runCount += slice.size;
+        }
+        rowStart[nx*ny] = runCount;
+
+        int z0[] = new int[runCount];
+        int z1[] = new int[runCount];
+        double mass[] = new double[runCount];
+        for(int y = 0, n = 0; y < ny; y++){
+            RunList slice = slices[y];
+            for(int k = 0; k < slice.size; k++, n++){
+                z0[n] = slice.data[3*k+1];
+                z1[n] = slice.data[3*k+2];
+                mass[n] = slice.mass[k];
+            }
+            slices[y] = null;
+        }
+
+        int parent[] = new int[runCount];
+        for(int i = 0; i < runCount; i++)
+            parent[i] = i;
+
+        int reach = 2*m_smoothingRadius + 1;
+        for(int y = 0; y < ny; y++){
+            for(int x = 0; x < nx; x++){
+                int rs = rowStart[x + y*nx], re = rowStart[x + y*nx + 1];
+                for(int i = rs; i < re; i++){
+                    if(i > rs && z0[i] - z1[i-1] <= reach)
+                        union(parent, i, i-1);
+                    // previous rows in the neighborhood
+                    for(int dy = -reach; dy <= 0; dy++){
+                        int y1 = y + dy;
+                        if(y1 < 0) continue;
+                        int dxmax = (dy == 0)? -1: reach;
+                        for(int dx = -reach; dx <= dxmax; dx++){
+                            int x1 = x + dx;
+                            if(x1 < 0 || x1 >= nx) continue;
+                            int row = x1 + y1*nx;
+                            for(int j = rowStart[row]; j < rowStart[row+1]; j++){
+                                if(z0[j] > z1[i] + reach) break;
+                                if(z1[j] >= z0[i] - reach)
+                                    union(parent, i, j);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // component of each run and component statistics
+        int component[] = new int[runCount];
+        int compCount = 0;
+        for(int i = 0; i < runCount; i++){
+            int r = find(parent, i);
+            if(r == i)
+                component[i] = compCount++;
+        }
+        double compMass[] = new double[compCount];
+        long compVoxels[] = new long[compCount];
+        int compBounds[] = new int[6*compCount];
+        for(int c = 0; c < compCount; c++){
+            compBounds[6*c] = compBounds[6*c+2] = compBounds[6*c+4] = Integer.MAX_VALUE;
+            compBounds[6*c+1] = compBounds[6*c+3] = compBounds[6*c+5] = Integer.MIN_VALUE;
+        }
+        for(int y = 0; y < ny; y++){
+            for(int x = 0; x < nx; x++){
+                for(int i = rowStart[x + y*nx]; i < rowStart[x + y*nx + 1]; i++){
+                    int c = component[find(parent, i)];
+                    component[i] = c;
+                    compMass[c] += mass[i];
+                    compVoxels[c] += z1[i] - z0[i] + 1;
+                    int b = 6*c;
+                    compBounds[b] = Math.min(compBounds[b], x);
+                    compBounds[b+1] = Math.max(compBounds[b+1], x);
+                    compBounds[b+2] = Math.min(compBounds[b+2], y);
+                    compBounds[b+3] = Math.max(compBounds[b+3], y);
+                    compBounds[b+4] = Math.min(compBounds[b+4], z0[i]);
+                    compBounds[b+5] = Math.max(compBounds[b+5], z1[i]);
+                }
+            }
+        }
+        m_componentsCount = compCount;
+
+        boolean pruned[] = new boolean[compCount];
+        if(m_exact){
+            // isosurface of smoothed grid is inside of cells touching voxels closer than smoothingRadius to the component
+            // one more voxel is added to account for decimation
+            int margin = m_smoothingRadius + 2;
+            long cube = (2*margin + 1);
+            cube = cube*cube*cube;
+            for(int c = 0; c < compCount; c++){
+                int b = 6*c;
+                long boxVoxels = ((long)(compBounds[b+1] - compBounds[b] + 1 + 2*margin))*
+                    (compBounds[b+3] - compBounds[b+2] + 1 + 2*margin)*(compBounds[b+5] - compBounds[b+4] + 1 + 2*margin);
+                double maxVolume = Math.min(boxVoxels, compVoxels[c]*cube)*voxelVolume;
+                if(maxVolume < m_minShellVolume){
+                    pruned[c] = true;
+                    m_prunedCount++;
+                }
+            }
+        } else if(compCount > m_minShellCount){
+            // components of large enough volume sorted by volume
+            Integer order[] = new Integer[compCount];
+            for(int c = 0; c < compCount; c++)
+                order[c] = c;
+            final double volume[] = compMass;
+            Arrays.sort(order, new java.util.Comparator<Integer>(){
+                    public int compare(Integer a, Integer b){
+                        return Double.compare(volume[b], volume[a]);
+                    }
+                });
+            int kept = 0;
+            for(int k = 0; k < compCount; k++){
+                int c = order[k];
+                if(compMass[c]*voxelVolume >= m_minShellVolume && kept < m_maxShellsCount){
+                    kept++;
+                } else {
+                    pruned[c] = true;
+                    m_prunedCount++;
+                }
+            }
+        }
+
+        if(DEBUG)
+            printf("ShellPruner: runs: %d components: %d pruned: %d %d ms\n", runCount, compCount, m_prunedCount, time() - t0);
+
+        if(m_prunedCount == 0)
+            return null;
+
+        GridMask mask = new GridMask(nx, ny, nz);
+        for(int y = 0; y < ny; y++){
+            for(int x = 0; x < nx; x++){
+                for(int i = rowStart[x + y*nx]; i < rowStart[x + y*nx + 1]; i++){
+                    if(pruned[component[i]]){
+                        for(int z = z0[i]; z <= z1[i]; z++)
+                            mask.set(x, y, z, 1);
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+
+    static final int find(int parent[], int i){
+        while(parent[i] != i){
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    static final void union(int parent[], int i, int j){
+        int ri = find(parent, i);
+        int rj = find(parent, j);
+        if(ri < rj) parent[rj] = ri;
+        else if(rj < ri) parent[ri] = rj;
+    }
+
+    /**
+       runs of one y-slice stored as triples (x, z0, z1) in order of x and z
+     */
+    static class RunList {
+
+        int data[] = new int[96];
+        double mass[] = new double[32];
+        int size = 0;
+
+        void add(int x, int z0, int z1, double m){
+            if(size == mass.length){
+                data = Arrays.copyOf(data, 6*size);
+                mass = Arrays.copyOf(mass, 2*size);
+            }
+            data[3*size] = x;
+            data[3*size+1] = z0;
+            data[3*size+2] = z1;
+            mass[size] = m;
+            size++;
+        }
+    }
+
+    /**
+       finds runs of occupied voxels in y-slices
+     */
+    class RunFinder implements RangeProcessor {
+
+        AttributeGrid grid;
+        RunList slices[];
+
+        RunFinder(AttributeGrid grid, RunList slices[]){
+            this.grid = grid;
+            this.slices = slices;
+        }
+
+        public void processRange(int start, int end){
+
+            int nx = grid.getWidth(), nz = grid.getDepth();
+            for(int y = start; y < end; y++){
+                RunList runs = new RunList();
+                for(int x = 0; x < nx; x++){
+                    int z0 = -1;
+                    double m = 0;
+                    for(int z = 0; z < nz; z++){
+                        double d = m_densityMaker.makeDensity(grid.getAttribute(x, y, z));
+                        if(d > 0.){
+                            if(z0 < 0) z0 = z;
+                            m += d;
+                        } else if(z0 >= 0){
+                            runs.add(x, z0, z-1, m);
+                            z0 = -1;
+                            m = 0;
+                        }
+                    }
+                    if(z0 >= 0)
+                        runs.add(x, z0, nz-1, m);
+                }
+                slices[y] = runs;
+            }
+        }
+    }
+}
@@ -29,6 +29,11 @@ import abfab3d.util.ColorMapper;
 
 import abfab3d.core.AttributeGrid;
 import abfab3d.core.GridDataChannel;
+import abfab3d.grid.ArrayAttributeGridByte;
+import abfab3d.grid.ArrayAttributeGridInt;
+import abfab3d.grid.ArrayAttributeGridLong;
+import abfab3d.grid.ArrayAttributeGridShort;
+import abfab3d.grid.NIOAttributeGridByte;
 
 
 import static abfab3d.core.MathUtil.lerp2;
@@ -63,6 +68,20 @@ public class GridUtil  {
          }         
      }
 
+     /**
+        @return true if getAttribute() of the grid may be called from several threads at once. 
+        Only plain array grids are known to be safe, other grids (like block based grids) use shared scratch data
+      */
+     public static boolean isConcurrentReadSafe(AttributeGrid grid){
+
+         Class<?> cls = grid.getClass();
+         return (cls == ArrayAttributeGridByte.class || 
+                 cls == ArrayAttributeGridShort.class || 
+                 cls == ArrayAttributeGridInt.class || 
+                 cls == ArrayAttributeGridLong.class || 
+                 cls == NIOAttributeGridByte.class);
+     }
+
      /**
         returns count of different voxels in the grids 
       */
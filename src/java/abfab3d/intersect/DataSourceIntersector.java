@@ -17,7 +17,11 @@ import javax.vecmath.Vector3d;
 
 import abfab3d.core.*;
 
+
+import abfab3d.util.AbFab3DGlobals;
 import abfab3d.util.PointSetArray;
+import abfab3d.util.RangeProcessor;
+import abfab3d.util.RangeRunnerMT;
 
 import abfab3d.param.Parameter;
 import abfab3d.param.IntParameter;
@@ -28,6 +32,7 @@ import abfab3d.param.BaseParameterizable;
 
 import static abfab3d.core.Output.printf;
 import static abfab3d.core.Output.fmt;
+import static abfab3d.core.Output.time;
 import static abfab3d.core.Units.MM;
 
 
@@ -41,6 +46,11 @@ public class DataSourceIntersector extends BaseParameterizable{
 
     static final boolean DEBUG = false;
     static final double UNIT = MM;
+    // count of regula falsi iterations after the surface is crossed 
+    static final int REFINE_STEPS = 6;
+    // step of normal calculation relative to voxel size 
+    static final double NORMAL_DELTA = 0.1;
+    static final int RAYS_CHUNK_SIZE = 16;
 
     public static final int RESULT_INTERSECTION_FOUND = 1;
     public static final int RESULT_INITIAL_INTERSECTION = 2;
@@ -56,6 +66,8 @@ public class DataSourceIntersector extends BaseParameterizable{
     DoubleParameter mp_voxelSize = new DoubleParameter("voxelSize",0.5*MM);
     IntParameter mp_maxSteps = new IntParameter("maxStepsCount",1000);
     IntParameter mp_dimension = new IntParameter("dimension",3);
+    IntParameter mp_threadCount = new IntParameter("threadCount",0);
+    IntParameter mp_fieldResolution = new IntParameter("fieldResolution",64);
 
     
     Parameter m_params[] = {
@@ -64,9 +76,16 @@ public class DataSourceIntersector extends BaseParameterizable{
         mp_maxDistance,
         mp_voxelSize,
         mp_dimension,
-        mp_maxSteps
+        mp_maxSteps,
+        mp_threadCount,
+        mp_fieldResolution
     };
 
+    // coarse distance field of the shape for bulk queries, the shape and its fingerprint  
+    CoarseField m_field;
+    DataSource m_fieldShape;
+    String m_fieldKey;
+
     
     public DataSourceIntersector(){
         super.addParams(m_params);
@@ -83,44 +102,113 @@ public class DataSourceIntersector extends BaseParameterizable{
 
         initialize(dataSource);
 
+        return traceRay(dataSource, start, direction, new Vec(3), new Vec(dataSource.getChannelsCount()));
+
+    }
+
+    /**
+       calculates intersections of many rays with surface of data source on several threads
+       
+       @param dataSource initialized data source with signed distance in data channel 0, it has to be thread safe 
+       @param starts ray starts (x0,y0,z0, x1,y1,z1, ...)
+       @param directions ray directions 
+       @param count count of rays
+       @param codes result codes of rays 
+       @param points location of intersection of each ray, ray start if there is no intersection
+       @param normals surface normal at intersection, zero if there is no intersection 
+     */
+    public void getShapeRayIntersections(DataSource dataSource, double starts[], double directions[], int count, 
+                                         int codes[], double points[], double normals[]){
+        
+        int threads = AbFab3DGlobals.getThreadCount(mp_threadCount.getValue());
+        RangeProcessor processors[] = new RangeProcessor[threads];
+        for(int i = 0; i < threads; i++)
+            processors[i] = new RayProcessor(dataSource, starts, directions, codes, points, normals);
+        
+        RangeRunnerMT.run(count, RAYS_CHUNK_SIZE, processors);
+
+    }
+
+    /**
+       traces rays of the range, each instance is used by one thread 
+     */
+    class RayProcessor implements RangeProcessor {
+
+        DataSource source;
+        double starts[], directions[], points[], normals[];
+        int codes[];
+        Vec pnt = new Vec(3);
+        Vec value;
+        Vector3d start = new Vector3d();
+        Vector3d dir = new Vector3d();
+
+        RayProcessor(DataSource source, double starts[], double directions[], int codes[], double points[], double normals[]){
+            this.source = source;
+            this.starts = starts;
+            this.directions = directions;
+            this.codes = codes;
+            this.points = points;
+            this.normals = normals;
+            value = new Vec(source.getChannelsCount());
+        }
+
+        public void processRange(int begin, int end){
+
+            for(int i = begin; i < end; i++){
+                int k = 3*i;
+                start.set(starts[k], starts[k+1], starts[k+2]);
+                dir.set(directions[k], directions[k+1], directions[k+2]);
+                Result res = traceRay(source, start, dir, pnt, value);
+                codes[i] = res.code;
+                points[k] = res.end.x;
+                points[k+1] = res.end.y;
+                points[k+2] = res.end.z;
+                normals[k] = res.normal.x;
+                normals[k+1] = res.normal.y;
+                normals[k+2] = res.normal.z;
+            }
+        }
+    }
+
+    /**
+       sphere tracing of ray from start, initialized data source is expected
+
+       step along the ray is the distance value clamped to [minStep, max(minStep, maxStep)]
+       so minStep larger than maxStep (like in pixel units) gives fixed steps of minStep
+       after the surface is crossed the intersection point is refined by regula falsi
+     */
+    Result traceRay(DataSource dataSource, Vector3d start, Vector3d direction, Vec pnt, Vec value){
+
         int maxSteps = mp_maxSteps.getValue();
-        int dataChannelIndex = 0;
-        double step = mp_minStep.getValue();
+        double minStep = mp_minStep.getValue();
+        double maxStep = Math.max(minStep, mp_maxStep.getValue());
         double maxDistance = mp_maxDistance.getValue();
 
-        Vec pnt = new Vec(3);
-        Vec value = new Vec(dataSource.getChannelsCount());
+        double len = direction.length();
+        if(len < EPS) 
+            throw new RuntimeException(fmt("bad direction vector: (%e %e %e)",direction.x,direction.y,direction.z));
+        double dx = direction.x/len, dy = direction.y/len, dz = direction.z/len;
+        double x0 = start.x, y0 = start.y, z0 = start.z;
 
-        pnt.set(start);
-        dataSource.getDataValue(pnt, value);
-        double dist0 = 0; // distance to travel along the ray 
-        double value0 = value.v[dataChannelIndex];  // value at that point 
+        double dist0 = 0; // distance traveled along the ray 
+        double value0 = getValue(dataSource, x0, y0, z0, pnt, value);  // value at that point 
         if(value0 < 0){
-            return new Result(RESULT_INITIAL_INTERSECTION, start,start);
+            return new Result(RESULT_INITIAL_INTERSECTION, start, start, getNormal(dataSource, x0, y0, z0, pnt, value));
         }
-        Vector3d dir = new Vector3d();
 
         for(int i = 1; i < maxSteps; i++){
 
-            double dist1 = i * step;                
+            double dist1 = dist0 + Math.min(maxStep, Math.max(minStep, value0));
             
             if(dist1 > maxDistance) 
                 return new Result(RESULT_MAX_DISTANCE_SURPASSED, start, start); 
             
-            dir.set(direction);
-            dir.scale(dist1);
-            pnt.set(start);
-            pnt.addSet(dir);
-            dataSource.getDataValue(pnt, value);            
-            double value1 = value.v[dataChannelIndex];
+            double value1 = getValue(dataSource, x0 + dx*dist1, y0 + dy*dist1, z0 + dz*dist1, pnt, value);
 
             if(value1 < 0){
-                double d = dist0 - value0*(dist1-dist0)/(value1 - value0);
-                Vector3d end = new Vector3d(start);
-                dir.set(direction);
-                dir.scale(d);   
-                end.add(dir);
-                return new Result(RESULT_INTERSECTION_FOUND, end, end);
+                double d = refineRoot(dataSource, x0, y0, z0, dx, dy, dz, dist0, value0, dist1, value1, pnt, value);
+                Vector3d end = new Vector3d(x0 + dx*d, y0 + dy*d, z0 + dz*d);
+                return new Result(RESULT_INTERSECTION_FOUND, end, end, getNormal(dataSource, end.x, end.y, end.z, pnt, value));
             } 
             
             dist0 = dist1;
@@ -132,6 +220,56 @@ public class DataSourceIntersector extends BaseParameterizable{
 
     }
 
+    /**
+       finds zero of value on the ray between dist0 (value0 >= 0) and dist1 (value1 < 0) using Illinois variant of regula falsi
+     */
+    double refineRoot(DataSource dataSource, double x0, double y0, double z0, double dx, double dy, double dz, 
+                      double dist0, double value0, double dist1, double value1, Vec pnt, Vec value){
+
+        int side = 0;
+        for(int k = 0; k < REFINE_STEPS; k++){
+            double d = dist0 - value0*(dist1 - dist0)/(value1 - value0);
+            double v = getValue(dataSource, x0 + dx*d, y0 + dy*d, z0 + dz*d, pnt, value);
+            if(v < 0){
+                dist1 = d;
+                value1 = v;
+                if(side == -1) value0 /= 2;
+                side = -1;
+            } else {
+                dist0 = d;
+                value0 = v;
+                if(side == 1) value1 /= 2;
+                side = 1;
+            }
+        }
+        return dist0 - value0*(dist1 - dist0)/(value1 - value0);
+    }
+
+    final double getValue(DataSource dataSource, double x, double y, double z, Vec pnt, Vec value){
+
+        pnt.set(x, y, z);
+        dataSource.getDataValue(pnt, value);
+        return value.v[0];
+
+    }
+
+    /**
+       @return normalized gradient of distance at given point 
+     */
+    Vector3d getNormal(DataSource dataSource, double x, double y, double z, Vec pnt, Vec value){
+
+        double delta = NORMAL_DELTA*mp_voxelSize.getValue();
+        Vector3d normal = new Vector3d(
+            getValue(dataSource, x + delta, y, z, pnt, value) - getValue(dataSource, x - delta, y, z, pnt, value),
+            getValue(dataSource, x, y + delta, z, pnt, value) - getValue(dataSource, x, y - delta, z, pnt, value),
+            getValue(dataSource, x, y, z + delta, pnt, value) - getValue(dataSource, x, y, z - delta, pnt, value));
+        double len = normal.length();
+        if(len > 0.) 
+            normal.scale(1./len);
+        return normal;
+
+    }
+
     /**
        calculates point of first intersection of probe with given surface of data source 
        
@@ -147,6 +285,109 @@ public class DataSourceIntersector extends BaseParameterizable{
         initialize(shape);
         initialize(probe);
 
+        return intersectShapes(shape, probe, start, direction, null);
+
+    }
+
+    /**
+       calculates intersections of probe with shape for many queries on several threads
+
+       a coarse distance field of the shape is made once and shared by all queries (and by later calls with the same shape)
+       positions of the probe where the field proves there is no contact are skipped without evaluation of the shape
+       the field assumes that the shape returns signed distance which does not exceed the distance to its surface
+       the results are the same as from getShapesIntersection() called for each query
+       
+       @param shape static shape, it has to be thread safe 
+       @param probe probe to move, it has to be thread safe 
+       @param starts initial locations of probe (x0,y0,z0, x1,y1,z1, ...)
+       @param directions directions of probe movement 
+       @param count count of queries
+       @param codes result codes of queries 
+       @param locations locations of probe at contact 
+       @param contacts points of contact 
+     */
+    public void getShapesIntersections(DataSource shape, DataSource probe, double starts[], double directions[], int count, 
+                                       int codes[], double locations[], double contacts[]){
+
+        initialize(shape);
+        initialize(probe);
+
+        CoarseField field = getField(shape, getQueryBounds(probe, starts, directions, count));
+
+        int threads = AbFab3DGlobals.getThreadCount(mp_threadCount.getValue());
+        RangeProcessor processors[] = new RangeProcessor[threads];
+        for(int i = 0; i < threads; i++)
+            processors[i] = new ProbeProcessor(shape, probe, field, starts, directions, codes, locations, contacts);
+        
+        RangeRunnerMT.run(count, 1, processors);
+
+    }
+
+    /**
+       calculates intersections of probe with shape for many queries 
+
+       @param starts initial locations of probe (x0,y0,z0, x1,y1,z1, ...)
+       @param directions directions of probe movement 
+       @return results of all queries 
+     */
+    public Results getShapesIntersections(DataSource shape, DataSource probe, double starts[], double directions[]){
+
+        int count = starts.length/3;
+        Results res = new Results(count);
+        getShapesIntersections(shape, probe, starts, directions, count, res.codes, res.locations, res.contacts);
+        return res;
+
+    }
+
+    /**
+       processes range of probe queries, each instance is used by one thread 
+     */
+    class ProbeProcessor implements RangeProcessor {
+
+        DataSource shape, probe;
+        CoarseField field;
+        double starts[], directions[], locations[], contacts[];
+        int codes[];
+        Vector3d start = new Vector3d();
+        Vector3d dir = new Vector3d();
+
+        ProbeProcessor(DataSource shape, DataSource probe, CoarseField field, double starts[], double directions[], 
+                       int codes[], double locations[], double contacts[]){
+            this.shape = shape;
+            this.probe = probe;
+            this.field = field;
+            this.starts = starts;
+            this.directions = directions;
+            this.codes = codes;
+            this.locations = locations;
+            this.contacts = contacts;
+        }
+
+        public void processRange(int begin, int end){
+
+            for(int i = begin; i < end; i++){
+                int k = 3*i;
+                start.set(starts[k], starts[k+1], starts[k+2]);
+                dir.set(directions[k], directions[k+1], directions[k+2]);
+                Result res = intersectShapes(shape, probe, start, dir, field);
+                codes[i] = res.code;
+                locations[k] = res.end.x;
+                locations[k+1] = res.end.y;
+                locations[k+2] = res.end.z;
+                contacts[k] = res.contact.x;
+                contacts[k+1] = res.contact.y;
+                contacts[k+2] = res.contact.z;
+            }
+        }
+    }
+
+    /**
+       march of the probe front surface along the direction, shape and probe are expected to be initialized 
+       
+       @param field coarse distance field of the shape used to skip steps or null 
+     */
+    Result intersectShapes(DataSource shape, DataSource probe, Vector3d start, Vector3d direction, CoarseField field){
+
         double voxelSize = mp_voxelSize.getValue();
         double len = direction.length();
         if(len < EPS) 
@@ -215,6 +456,8 @@ public class DataSourceIntersector extends BaseParameterizable{
         Vector3d probeRayStart = new Vector3d();
         //printf("front surface points search (%d^2)\n", 2*nu+1);
         PointSetArray frontPoints = new PointSetArray();
+        Vec ppnt = new Vec(3);
+        Vec pvalue = new Vec(probe.getChannelsCount());
 
         for(int ib = -nb; ib <= nb; ib++){
             double ub = ib*voxelSize;
@@ -228,7 +471,7 @@ public class DataSourceIntersector extends BaseParameterizable{
                 //printf("ia: %d\n", ia);
                 //printValuesOnRay(probe, 0, probeRayStart, probeDir, 3*voxelSize, 50);
 
-                Result res = getShapeRayIntersection(probe, probeRayStart, probeDir);
+                Result res = traceRay(probe, probeRayStart, probeDir, ppnt, pvalue);
                 switch(res.code){
                 case RESULT_INTERSECTION_FOUND: 
                     if(DEBUG)printf("start: %s -> end: %s contact: %s  radius:%7.3f\n",
@@ -261,10 +504,11 @@ public class DataSourceIntersector extends BaseParameterizable{
         Vector3d dir = new Vector3d();
         Vector3d pnt = new Vector3d();
         Vector3d minValuePoint1 = new Vector3d();
+        int index0 = 0; // step index of value0 
         //
         // find first intersection of moving front surface with the shape
         //
-        for(int i = 1; i < maxSteps; i++){
+        for(int i = 1; i < maxSteps; ){
 
             double dist1 = i * step;                
             
@@ -275,9 +519,29 @@ public class DataSourceIntersector extends BaseParameterizable{
             pnt.set(start);
             pnt.add(dir);
 
+            if(field != null){
+                double bound = field.getMinValue(frontPoints, pnt);
+                if(bound > 0){
+                    // positions closer than the bound have no contact 
+                    int skip = (int)Math.ceil(bound/step);
+                    for(int k = 0; k < skip && i < maxSteps && i * step <= maxDistance; k++)
+                        i++;
+                    continue;
+                }
+            }
+
             double value1 = getMinValue(shape, frontPoints, pnt, minValuePoint1);
 
             if(value1 < 0){
+                if(index0 != i-1){
+                    // previous position was skipped 
+                    dist0 = (i-1) * step;
+                    dir.set(direction);
+                    dir.scale(dist0);
+                    pnt.set(start);
+                    pnt.add(dir);
+                    value0 = getMinValue(shape, frontPoints, pnt, minValuePoint0);
+                }
                 double t = -value0/(value1-value0);
                 double d = dist0 + t*(dist1-dist0);
                 Vector3d end = new Vector3d(start);
@@ -290,13 +554,217 @@ public class DataSourceIntersector extends BaseParameterizable{
             
             dist0 = dist1;
             value0 = value1;
+            index0 = i;
             minValuePoint0.set(minValuePoint1);
+            i++;
         }
 
         return new Result(RESULT_MAX_STEPS_EXCEEDED,new Vector3d(start), new Vector3d(0,0,0));
         
     }
 
+    /**
+       @return bounds of all points visited by probe surface in the queries 
+     */
+    Bounds getQueryBounds(DataSource probe, double starts[], double directions[], int count){
+
+        Bounds probeBounds = probe.getBounds();
+        double maxDistance = mp_maxDistance.getValue();
+        Bounds bounds = null;
+        for(int i = 0; i < count; i++){
+            int k = 3*i;
+            double len = Math.sqrt(directions[k]*directions[k] + directions[k+1]*directions[k+1] + directions[k+2]*directions[k+2]);
+            if(len < EPS) 
+                continue;
+            double s = maxDistance/len;
+            double x1 = starts[k] + s*directions[k], y1 = starts[k+1] + s*directions[k+1], z1 = starts[k+2] + s*directions[k+2];
+            Bounds b = new Bounds(Math.min(starts[k], x1) + probeBounds.xmin, Math.max(starts[k], x1) + probeBounds.xmax,
+                                  Math.min(starts[k+1], y1) + probeBounds.ymin, Math.max(starts[k+1], y1) + probeBounds.ymax,
+                                  Math.min(starts[k+2], z1) + probeBounds.zmin, Math.max(starts[k+2], z1) + probeBounds.zmax);
+            if(bounds == null) bounds = b;
+            else bounds.combine(b);
+        }
+        return bounds;
+    }
+
+    /**
+       @return coarse distance field of the shape covering given query bounds or null if the field is not used
+     */
+    synchronized CoarseField getField(DataSource shape, Bounds queryBounds){
+
+        int resolution = mp_fieldResolution.getValue();
+        if(resolution <= 0 || queryBounds == null)
+            return null;
+
+        // bounds of compositions and other sources may not contain the shape 
+        Bounds shapeBounds = (shape instanceof BoundedDataSource)? ((BoundedDataSource)shape).getConservativeBounds(): null;
+        String key = (shape instanceof BaseParameterizable)? ((BaseParameterizable)shape).getParamFingerprint(): "";
+        if(m_field != null && m_fieldShape == shape && key.equals(m_fieldKey) && 
+           m_field.resolution == resolution && m_field.covers(queryBounds, shapeBounds))
+            return m_field;
+
+        long t0 = time();
+        m_field = new CoarseField(shape, queryBounds, shapeBounds, resolution, AbFab3DGlobals.getThreadCount(mp_threadCount.getValue()));
+        m_fieldShape = shape;
+        m_fieldKey = key;
+        if(DEBUG)printf("coarse field: %d x %d x %d cell: %7.3f mm %d ms\n", 
+                        m_field.nx, m_field.ny, m_field.nz, m_field.cell/UNIT, time() - t0);
+        return m_field;
+    }
+
+    /**
+       values of shape distance on coarse grid used as lower bound of the distance
+
+       the values at grid nodes differ from distance at a point inside of cell by at most the cell diagonal 
+       and so does their trilinear interpolation
+       if conservative shape bounds are known, the grid covers only their part and the distance to the bounds is used outside of the grid
+     */
+    static class CoarseField {
+
+        int resolution;
+        int nx, ny, nz;
+        double xmin, ymin, zmin, cell;
+        // bounds of grid nodes 
+        Bounds box;
+        // shape bounds expanded by one cell or null if unknown 
+        Bounds shapeBox;
+        double error;
+        double data[];
+
+        CoarseField(DataSource shape, Bounds queryBounds, Bounds shapeBounds, int resolution, int threads){
+
+            this.resolution = resolution;
+            Bounds b = queryBounds.clone();
+            double margin = b.getSizeMax()/resolution;
+            if(!Bounds.isInfinite(shapeBounds)){
+                shapeBox = shapeBounds.clone();
+                shapeBox.expand(margin);
+                b = intersect(b, shapeBox);
+            }
+            cell = Math.max(b.getSizeMax()/resolution, EPS);
+            nx = (int)Math.ceil(b.getSizeX()/cell) + 1;
+            ny = (int)Math.ceil(b.getSizeY()/cell) + 1;
+            nz = (int)Math.ceil(b.getSizeZ()/cell) + 1;
+            xmin = b.xmin;
+            ymin = b.ymin;
+            zmin = b.zmin;
+            box = new Bounds(xmin, xmin + (nx-1)*cell, ymin, ymin + (ny-1)*cell, zmin, zmin + (nz-1)*cell);
+            error = cell*Math.sqrt(3);
+            data = new double[nx*ny*nz];
+
+            RangeProcessor processors[] = new RangeProcessor[threads];
+            for(int i = 0; i < threads; i++)
+                processors[i] = new SliceMaker(shape);
+            RangeRunnerMT.run(nz, 1, processors);
+        }
+
+        /**
+           evaluates shape at the nodes of z-slices 
+         */
+        class SliceMaker implements RangeProcessor {
+
+            DataSource shape;
+            Vec pnt = new Vec(3);
+            Vec value;
+
+            SliceMaker(DataSource shape){
+                this.shape = shape;
+                value = new Vec(shape.getChannelsCount());
+            }
+
+            public void processRange(int begin, int end){
+                for(int iz = begin; iz < end; iz++){
+                    for(int iy = 0; iy < ny; iy++){
+                        int offset = (iz*ny + iy)*nx;
+                        for(int ix = 0; ix < nx; ix++){
+                            pnt.set(xmin + ix*cell, ymin + iy*cell, zmin + iz*cell);
+                            shape.getDataValue(pnt, value);
+                            data[offset + ix] = value.v[0];
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+           @return true if the field covers all points of query bounds which may be closer to the shape than the field box
+         */
+        boolean covers(Bounds queryBounds, Bounds shapeBounds){
+            Bounds b = queryBounds;
+            if(!Bounds.isInfinite(shapeBounds)){
+                if(shapeBox == null) 
+                    return false;
+                b = intersect(queryBounds, shapeBox);
+            }
+            return contains(box, b);
+        }
+
+        /**
+           @return lower bound of shape distance at the point 
+         */
+        final double getValue(double x, double y, double z){
+
+            if(x < box.xmin || x > box.xmax || y < box.ymin || y > box.ymax || z < box.zmin || z > box.zmax){
+                if(shapeBox == null) 
+                    return -Double.MAX_VALUE;
+                return getBoxDistance(x, y, z, shapeBox);
+            }
+            double gx = (x - xmin)/cell, gy = (y - ymin)/cell, gz = (z - zmin)/cell;
+            int ix = Math.min((int)gx, nx-2), iy = Math.min((int)gy, ny-2), iz = Math.min((int)gz, nz-2);
+            if(ix < 0 || iy < 0 || iz < 0) 
+                // degenerate grid 
+                return -Double.MAX_VALUE;
+            double dx = gx - ix, dy = gy - iy, dz = gz - iz;
+            int i000 = (iz*ny + iy)*nx + ix;
+            int i010 = i000 + nx;
+            int i001 = i000 + nx*ny;
+            int i011 = i001 + nx;
+            double v00 = data[i000] + dx*(data[i000+1] - data[i000]);
+            double v10 = data[i010] + dx*(data[i010+1] - data[i010]);
+            double v01 = data[i001] + dx*(data[i001+1] - data[i001]);
+            double v11 = data[i011] + dx*(data[i011+1] - data[i011]);
+            double v0 = v00 + dy*(v10 - v00);
+            double v1 = v01 + dy*(v11 - v01);
+            return v0 + dz*(v1 - v0) - error;
+        }
+
+        /**
+           @return lower bound of minimal shape distance of translated point set
+         */
+        final double getMinValue(PointSetArray points, Vector3d translation){
+
+            double minValue = Double.MAX_VALUE;
+            Vector3d pp = new Vector3d();
+            for(int k = 0; k < points.size(); k++){
+                points.getPoint(k, pp);
+                double v = getValue(pp.x + translation.x, pp.y + translation.y, pp.z + translation.z);
+                if(v < minValue){
+                    minValue = v;
+                    if(v <= 0.) 
+                        break;
+                }
+            }
+            return minValue;
+        }
+
+        static Bounds intersect(Bounds a, Bounds b){
+            return new Bounds(Math.max(a.xmin, b.xmin), Math.max(Math.min(a.xmax, b.xmax), Math.max(a.xmin, b.xmin)), 
+                              Math.max(a.ymin, b.ymin), Math.max(Math.min(a.ymax, b.ymax), Math.max(a.ymin, b.ymin)), 
+                              Math.max(a.zmin, b.zmin), Math.max(Math.min(a.zmax, b.zmax), Math.max(a.zmin, b.zmin)));
+        }
+
+        static boolean contains(Bounds a, Bounds b){
+            return b.xmin >= a.xmin && b.xmax <= a.xmax && b.ymin >= a.ymin && b.ymax <= a.ymax && b.zmin >= a.zmin && b.zmax <= a.zmax;
+        }
+
+        static final double getBoxDistance(double x, double y, double z, Bounds b){
+            double dx = Math.max(Math.max(b.xmin - x, x - b.xmax), 0.);
+            double dy = Math.max(Math.max(b.ymin - y, y - b.ymax), 0.);
+            double dz = Math.max(Math.max(b.zmin - z, z - b.zmax), 0.);
+            return Math.sqrt(dx*dx + dy*dy + dz*dz);
+        }
+    }
+
     /**
        return minimal distance from shape of point set
      */
@@ -359,6 +827,47 @@ public class DataSourceIntersector extends BaseParameterizable{
     }
 
 
+    /**
+       results of bulk intersection search in primitive arrays 
+     */
+    public static class Results {
+
+        int codes[];
+        double locations[];
+        double contacts[];
+
+        Results(int count){
+            codes = new int[count];
+            locations = new double[3*count];
+            contacts = new double[3*count];
+        }
+
+        public int getCount(){
+            return codes.length;
+        }
+
+        /**
+           return result codes of queries 
+         */
+        public int[] getCodes(){
+            return codes;
+        }
+
+        /**
+           return locations of probe at contact (x0,y0,z0, x1,y1,z1, ...)
+         */
+        public double[] getLocations(){
+            return locations;
+        }
+
+        /**
+           return points of contact (x0,y0,z0, x1,y1,z1, ...)
+         */
+        public double[] getContacts(){
+            return contacts;
+        }
+    }
+
     /**
        class describes result of intersection search 
      */
@@ -367,11 +876,17 @@ public class DataSourceIntersector extends BaseParameterizable{
         int code;
         Vector3d end; // end point of ray to to move probe 
         Vector3d contact; // point or contact between shapes
+        Vector3d normal; // surface normal at the contact point 
         
         Result(int code, Vector3d end, Vector3d contact){
+            this(code, end, contact, new Vector3d());
+        }                    
+
+        Result(int code, Vector3d end, Vector3d contact, Vector3d normal){
             this.code = code;
             this.end = end;
             this.contact = contact;
+            this.normal = normal;
         }                    
 
         /**
@@ -388,6 +903,13 @@ public class DataSourceIntersector extends BaseParameterizable{
             return contact;
         }
 
+        /**
+           return surface normal at the point of contact, zero vector if it is unknown
+         */
+        public Vector3d getNormal(){
+            return normal;
+        }
+
         public int getCode(){
             return code;
         }
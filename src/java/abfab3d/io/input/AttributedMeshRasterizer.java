@@ -18,7 +18,7 @@ public class AttributedMeshRasterizer {
 
     public AttributeGrid rasterizeMesh(AttributedMesh mesh) {
         GridLoader loader = new GridLoader();
-        loader.setThreadCount(0);
+        loader.setThreadCount(m_threadCount);
         loader.setMaxInDistance(m_maxDistance);
         loader.setMaxOutDistance(m_maxDistance);
         loader.setMargins(m_margins);
@@ -0,0 +1,365 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2016
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.io.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.GridDataDesc;
+import abfab3d.grid.ArrayAttributeGridByte;
+import abfab3d.grid.ArrayAttributeGridByteIndexLong;
+import abfab3d.grid.ArrayAttributeGridInt;
+import abfab3d.grid.ArrayAttributeGridLong;
+import abfab3d.grid.ArrayAttributeGridShort;
+import abfab3d.grid.ArrayAttributeGridShortIndexLong;
+import abfab3d.grid.GridDataChannelFloat;
+import abfab3d.grid.NIOAttributeGridByte;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.fmt;
+import static abfab3d.core.Output.time;
+
+/**
+ * Reads grid written by BinaryGridWriter.
+ *
+ * Grid with 1 byte per voxel stored without compression and uniform blocks is loaded
+ * as NIOAttributeGridByte which uses memory mapped file data directly.
+ * Other grids are loaded into ArrayAttributeGrid of corresponding voxel size.
+ *
+ * @see abfab3d.io.output.BinaryGridWriter
+ */
+public class BinaryGridReader {
+
+    private static final boolean DEBUG = false;
+
+    static final int MAGIC = 0x44524741; // "AGRD"
+    static final int VERSION = 1;
+    static final int COMPRESSION_NONE = 0;
+    static final int BLOCK_RAW = 0, BLOCK_UNIFORM = 1, BLOCK_DEFLATE = 2;
+    static final int CHANNEL_UNSIGNED = 0, CHANNEL_SIGNED_SHORT = 1, CHANNEL_FLOAT = 2;
+    static final int BLOCK_ENTRY_SIZE = 5;
+    static final int MAX_HEADER_SIZE = 1 << 16;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** use memory mapped file data as grid data if possible */
+    private boolean useMapping = true;
+
+    /**
+     * Set whether grid with 1 byte per voxel may use memory mapped file directly.
+     * Modifications of mapped grid are not written to the file.
+     * Grid mapped from read only file can not be modified.
+     */
+    public void setMemoryMapping(boolean value) {
+        useMapping = value;
+    }
+
+    /**
+     * Load a grid from file
+     *
+     * @param path The file path
+     * @return loaded grid
+     */
+    public AttributeGrid load(String path) throws IOException {
+
+        long t0 = time();
+        // private mapping needs writable channel, the file itself is never modified
+        boolean writable = new File(path).canWrite();
+        RandomAccessFile file = new RandomAccessFile(path, (writable)? "rw": "r");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate((int)Math.min(channel.size(), MAX_HEADER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            header.flip();
+
+            Header hd;
+            try {
+                hd = readHeader(header);
+            } catch(BufferUnderflowException e){
+                throw new IOException("truncated header in: " + path);
+            }
+
+            long tableOffset = header.position();
+            ByteBuffer table = ByteBuffer.allocate(hd.blockCount*BLOCK_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, table, tableOffset);
+            table.flip();
+            long payloadOffset = (tableOffset + table.limit() + 7) & ~7L;
+
+            boolean raw = true;
+            for(int b = 0; b < hd.blockCount; b++){
+                if(table.get(b*BLOCK_ENTRY_SIZE) != BLOCK_RAW){
+                    raw = false;
+                    break;
+                }
+            }
+            AttributeGrid grid;
+            if(raw && useMapping && hd.voxelBytes == 1 && hd.voxelCount < Integer.MAX_VALUE){
+                // zero copy grid
+                MappedByteBuffer data = channel.map((writable)? FileChannel.MapMode.PRIVATE: FileChannel.MapMode.READ_ONLY, 
+                                                    payloadOffset, hd.voxelCount);
+                grid = new NIOAttributeGridByte(hd.nx, hd.ny, hd.nz, hd.voxelSize, hd.sliceHeight, data);
+            } else if(raw && hd.voxelCount*hd.voxelBytes < Integer.MAX_VALUE){
+                // single bulk copy of mapped data
+                grid = makeGrid(hd);
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, payloadOffset, hd.voxelCount*hd.voxelBytes);
+                data.order(ByteOrder.LITTLE_ENDIAN);
+                setBlock(grid, hd, 0, (int)hd.voxelCount, data);
+            } else {
+                grid = makeGrid(hd);
+                readBlocks(channel, grid, hd, table, payloadOffset);
+            }
+            grid.setGridBounds(hd.bounds);
+            if(hd.dataDesc != null)
+                grid.setDataDesc(hd.dataDesc);
+
+            if(DEBUG)printf("BinaryGridReader.load(%s) %s %d ms\n", path, grid.getClass().getSimpleName(), time() - t0);
+            return grid;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+       header of grid file
+     */
+    static class Header {
+        int nx, ny, nz;
+        long voxelCount;
+        double voxelSize, sliceHeight;
+        double bounds[] = new double[6];
+        int voxelBytes;
+        int blockSize;
+        int compression;
+        int blockCount;
+        GridDataDesc dataDesc;
+    }
+
+    static Header readHeader(ByteBuffer header) throws IOException {
+
+        if(header.getInt() != MAGIC)
+            throw new IOException("not a binary grid file");
+        int version = header.getInt();
+        if(version != VERSION)
+            throw new IOException(fmt("unsupported binary grid version: %d", version));
+
+        Header hd = new Header();
+        hd.nx = header.getInt();
+        hd.ny = header.getInt();
+        hd.nz = header.getInt();
+        hd.voxelCount = (long)hd.nx * hd.ny * hd.nz;
+        hd.voxelSize = header.getDouble();
+        hd.sliceHeight = header.getDouble();
+        for(int i = 0; i < 6; i++)
+            hd.bounds[i] = header.getDouble();
+        hd.voxelBytes = header.getInt();
+        hd.blockSize = header.getInt();
+        hd.compression = header.getInt();
+        if(hd.voxelBytes != 1 && hd.voxelBytes != 2 && hd.voxelBytes != 4 && hd.voxelBytes != 8)
+            throw new IOException(fmt("unsupported voxel size: %d bytes", hd.voxelBytes));
+
+        int channelCount = header.getInt();
+        if(channelCount > 0)
+            hd.dataDesc = new GridDataDesc();
+        for(int i = 0; i < channelCount; i++){
+            int kind = header.getInt();
+            String type = readString(header);
+            String name = readString(header);
+            int bits = header.getInt();
+            int shift = header.getInt();
+            double value0 = header.getDouble();
+            double value1 = header.getDouble();
+            double unit = header.getDouble();
+            switch(kind){
+            case CHANNEL_FLOAT:
+                hd.dataDesc.addChannel(new GridDataChannelFloat(type, name, shift));
+                break;
+            case CHANNEL_SIGNED_SHORT:
+                hd.dataDesc.addChannel(new GridDataChannel(type, name, unit, value0, value1));
+                break;
+            default:
+                hd.dataDesc.addChannel(new GridDataChannel(type, name, bits, shift, value0, value1));
+                break;
+            }
+        }
+        hd.blockCount = header.getInt();
+        return hd;
+    }
+
+    static String readString(ByteBuffer buffer){
+        byte b[] = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(b);
+        return new String(b, UTF8);
+    }
+
+    /**
+       makes empty grid to store voxels of given size
+     */
+    static AttributeGrid makeGrid(Header hd){
+
+        if(hd.voxelCount >= Integer.MAX_VALUE){
+            switch(hd.voxelBytes){
+            case 1: return new ArrayAttributeGridByteIndexLong(hd.nx, hd.ny, hd.nz, hd.voxelSize, hd.sliceHeight);
+            case 2: return new ArrayAttributeGridShortIndexLong(hd.nx, hd.ny, hd.nz, hd.voxelSize, hd.sliceHeight);
+            default: throw new IllegalArgumentException(fmt("grid is too large: %d x %d x %d", hd.nx, hd.ny, hd.nz));
+            }
+        }
+        switch(hd.voxelBytes){
+        case 1: return new ArrayAttributeGridByte(hd.nx, hd.ny, hd.nz, hd.voxelSize, hd.sliceHeight);
+        case 2: return new ArrayAttributeGridShort(hd.nx, hd.ny, hd.nz, hd.voxelSize, hd.sliceHeight);
+        case 4: return new ArrayAttributeGridInt(hd.nx, hd.ny, hd.nz, hd.voxelSize, hd.sliceHeight);
+        default: return new ArrayAttributeGridLong(hd.nx, hd.ny, hd.nz, hd.voxelSize, hd.sliceHeight);
+        }
+    }
+
+    /**
+       reads blocks one by one into the grid
+     */
+    static void readBlocks(FileChannel channel, AttributeGrid grid, Header hd, ByteBuffer table, long offset) throws IOException {
+
+        int blockBytes = hd.blockSize*hd.voxelBytes;
+        ByteBuffer block = ByteBuffer.allocate(blockBytes).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer packed = null;
+        Inflater inflater = null;
+        try {
+            for(int b = 0; b < hd.blockCount; b++){
+
+                int mode = table.get();
+                int length = table.getInt();
+                long start = (long)b*hd.blockSize;
+                int count = (int)Math.min(hd.blockSize, hd.voxelCount - start);
+                block.clear();
+                switch(mode){
+                case BLOCK_RAW:
+                    block.limit(length);
+                    readFully(channel, block, offset);
+                    block.flip();
+                    setBlock(grid, hd, start, count, block);
+                    break;
+                case BLOCK_UNIFORM:
+                    block.limit(length);
+                    readFully(channel, block, offset);
+                    block.flip();
+                    fillBlock(grid, hd, start, count, block);
+                    break;
+                case BLOCK_DEFLATE:
+                    if(inflater == null){
+                        inflater = new Inflater();
+                        packed = ByteBuffer.allocate(blockBytes);
+                    }
+                    packed.clear();
+                    packed.limit(length);
+                    readFully(channel, packed, offset);
+                    inflater.reset();
+                    inflater.setInput(packed.array(), 0, length);
+                    try {
+                        block.limit(inflater.inflate(block.array(), 0, count*hd.voxelBytes));
+                    } catch(DataFormatException e){
+                        throw new IOException("corrupted block: " + b, e);
+                    }
+                    setBlock(grid, hd, start, count, block);
+                    break;
+                default:
+                    throw new IOException(fmt("unknown block mode: %d", mode));
+                }
+                offset += length;
+            }
+        } finally {
+            if(inflater != null)
+                inflater.end();
+        }
+    }
+
+    /**
+       copy voxels from block into grid voxels with storage index in range [start, start + count)
+     */
+    static void setBlock(AttributeGrid grid, Header hd, long start, int count, ByteBuffer block){
+
+        int s = (int)start;
+        if(grid instanceof ArrayAttributeGridByte){
+            block.get(((ArrayAttributeGridByte)grid).getData(), s, count);
+        } else if(grid instanceof ArrayAttributeGridShort){
+            block.asShortBuffer().get(((ArrayAttributeGridShort)grid).getData(), s, count);
+        } else if(grid instanceof ArrayAttributeGridInt){
+            block.asIntBuffer().get(((ArrayAttributeGridInt)grid).getData(), s, count);
+        } else if(grid instanceof ArrayAttributeGridLong){
+            block.asLongBuffer().get(((ArrayAttributeGridLong)grid).getData(), s, count);
+        } else {
+            long nz = hd.nz;
+            long sliceSize = hd.nx*nz;
+            for(long i = start; i < start + count; i++){
+                int y = (int)(i / sliceSize);
+                long r = i - y*sliceSize;
+                int x = (int)(r / nz);
+                int z = (int)(r - x*nz);
+                grid.setAttribute(x,y,z, getVoxel(block, hd.voxelBytes));
+            }
+        }
+    }
+
+    /**
+       fills grid voxels with storage index in range [start, start + count) with single value
+     */
+    static void fillBlock(AttributeGrid grid, Header hd, long start, int count, ByteBuffer block){
+
+        long value = getVoxel(block, hd.voxelBytes);
+        int s = (int)start;
+        if(grid instanceof ArrayAttributeGridByte){
+            Arrays.fill(((ArrayAttributeGridByte)grid).getData(), s, s + count, (byte)value);
+        } else if(grid instanceof ArrayAttributeGridShort){
+            Arrays.fill(((ArrayAttributeGridShort)grid).getData(), s, s + count, (short)value);
+        } else if(grid instanceof ArrayAttributeGridInt){
+            Arrays.fill(((ArrayAttributeGridInt)grid).getData(), s, s + count, (int)value);
+        } else if(grid instanceof ArrayAttributeGridLong){
+            Arrays.fill(((ArrayAttributeGridLong)grid).getData(), s, s + count, value);
+        } else {
+            long nz = hd.nz;
+            long sliceSize = hd.nx*nz;
+            for(long i = start; i < start + count; i++){
+                int y = (int)(i / sliceSize);
+                long r = i - y*sliceSize;
+                int x = (int)(r / nz);
+                int z = (int)(r - x*nz);
+                grid.setAttribute(x,y,z, value);
+            }
+        }
+    }
+
+    static long getVoxel(ByteBuffer block, int voxelBytes){
+        switch(voxelBytes){
+        case 1: return block.get() & 0xFFL;
+        case 2: return block.getShort() & 0xFFFFL;
+        case 4: return block.getInt() & 0xFFFFFFFFL;
+        default: return block.getLong();
+        }
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()){
+            int n = channel.read(buffer, position);
+            if(n < 0)
+                throw new IOException("unexpected end of file");
+            position += n;
+        }
+    }
+}
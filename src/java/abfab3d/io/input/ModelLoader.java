@@ -451,6 +451,8 @@ public class ModelLoader extends BaseParameterizable implements GridProducer {
      */
     public DistanceToMeshDataSource getDistanceToMeshDataSource() {
 
+        DistanceToMeshDataSource dmds;
+
         if (mp_attributeLoading.getValue()) {
             AttributedTriangleProducer mesh = getMesh();
             DataSource ac = null;
@@ -459,10 +461,12 @@ public class ModelLoader extends BaseParameterizable implements GridProducer {
             } else {
                 ac = ((AttributedMesh) mesh).getAttributeCalculator();
             }
-            return new DistanceToMeshDataSource(mesh, ac);
+            dmds = new DistanceToMeshDataSource(mesh, ac);
         } else {
-            return new DistanceToMeshDataSource(getMesh());
+            dmds = new DistanceToMeshDataSource(getMesh());
         }
+        dmds.setThreadCount(mp_threadCount.getValue());
+        return dmds;
 
     }
 
@@ -533,25 +537,10 @@ public class ModelLoader extends BaseParameterizable implements GridProducer {
 
     protected String getValueHash() {
 
-        // TODO: transform should likely be a parameter but need to think through
-        // TODO: we need to get a value hash of trans not its default memory address
-        String trans = null;
-        if (m_transform instanceof Parameterizable) {
-            trans = ((Parameterizable) m_transform).getParamString();
-        } else {
-            if (m_transform == null) {
-                trans = "null";
-            } else {
-                trans = m_transform.toString();
-            }
-        }
-
-        StringBuilder sb = new StringBuilder();
-        getParamString(sb);
-        sb.append(",");
-        sb.append(m_transform == null ? "trans=null" : "trans=" + trans);
-
-        return sb.toString();
+        ParamFingerprint fp = new ParamFingerprint();
+        getParamFingerprint(fp);
+        getTransformFingerprint(fp);
+        return fp.toString();
     }
 
     /**
@@ -560,26 +549,28 @@ public class ModelLoader extends BaseParameterizable implements GridProducer {
      */
     protected String getValueHashForMesh() {
 
+        ParamFingerprint fp = new ParamFingerprint();
+        getParamFingerprint(getClass().getSimpleName(),m_meshParams,fp);
+        getTransformFingerprint(fp);
+        return fp.toString();
+    }
+
+    /**
+       adds fingerprint of transform to fp
+     */
+    void getTransformFingerprint(ParamFingerprint fp){
+
         // TODO: transform should likely be a parameter but need to think through
-        // TODO: we need to get a value hash of trans not its default memory address
-        String trans = null;
-        if (m_transform instanceof Parameterizable) {
-            trans = ((Parameterizable) m_transform).getParamString();
+        if (m_transform instanceof BaseParameterizable) {
+            ((BaseParameterizable) m_transform).getParamFingerprint(fp);
+        } else if (m_transform instanceof Parameterizable) {
+            fp.update(((Parameterizable) m_transform).getParamString());
+        } else if (m_transform == null) {
+            fp.update("trans=null");
         } else {
-            if (m_transform == null) {
-                trans = "null";
-            } else {
-                trans = m_transform.toString();
-            }
+            // memory address makes the fingerprint transient
+            fp.update(m_transform.toString());
         }
-
-        StringBuilder sb = new StringBuilder();
-        getParamString(getClass().getSimpleName(),m_meshParams,sb);
-
-        sb.append(",");
-        sb.append(m_transform == null ? "trans=null" : "trans=" + trans);
-
-        return sb.toString();
     }
 
     public void setTransform(VecTransform trans) {
@@ -20,6 +20,7 @@ import abfab3d.grid.ArrayAttributeGridInt;
 import abfab3d.core.AttributeGrid;
 import abfab3d.core.Bounds;
 import abfab3d.grid.GridShortIntervals;
+import abfab3d.util.AbFab3DGlobals;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -50,6 +51,18 @@ public class SVXReader {
     /** The manifest for the last load call */
     private SVXManifest mf;
 
+    /** count of threads used to decode slices, 0 means use all available processors */
+    private int threadCount = 0;
+
+    /**
+     * Set count of threads used to decode slices.
+     *
+     * @param count threads count, 0 means use all available processors
+     */
+    public void setThreadCount(int count) {
+        threadCount = count;
+    }
+
     /**
      * Load a SVX file into a grid.
      *
@@ -112,6 +125,7 @@ public class SVXReader {
                     chan.getType().getId() == Channel.Type.BLUE.getId() ||
                     chan.getType().getId() == Channel.Type.DISTANCE_COLOR.getId()) {
                     SlicesReader sr = new SlicesReader();
+                    sr.setThreadCount(AbFab3DGlobals.getThreadCount(threadCount));
                     sr.readSlices(grid,zip,chan.getSlicesPath(),0,0,mf.getGridSizeY());
                 }
             }
@@ -21,11 +21,18 @@ import java.awt.image.DataBufferByte;
 
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
 import abfab3d.core.AttributeGrid;
 import abfab3d.core.Output;
+import abfab3d.grid.util.GridUtil;
 import abfab3d.util.ImageUtil;
 
 import static abfab3d.core.Output.printf;
@@ -48,11 +55,21 @@ public class SlicesReader {
 
     int m_orientation = ORIENTATION_Y;
     String fileTemplate = "slice%04d.png";
+    // count of threads used to decode slices from zip file 
+    int m_threadCount = 1;
 
     public SlicesReader(){
 
     }
 
+    /**
+       set count of threads used to decode slices read from zip file
+     */
+    public void setThreadCount(int count){
+        if(count < 1) count = 1;
+        m_threadCount = count;
+    }
+
     public void setOrientation(){
 
     }
@@ -132,6 +149,12 @@ public class SlicesReader {
 
         long t0 = time();
         if (DEBUG) printf("Reading slices: %d\n",count);
+        // grids other than plain array grids are not safe for concurrent access 
+        if(m_threadCount > 1 && count > 1 && GridUtil.isConcurrentReadSafe(grid)){
+            readSlicesMT(grid, zip, fileTemplate, firstFile, firstSlice, count, orientation);
+            if(DEBUG_TIMING) printTiming("readSlicesMT", count, time() - t0);
+            return 0;
+        }
         for(int i=0; i < count; i++) {
             String fname = Output.fmt(fileTemplate, i+firstFile);
             if(DEBUG) printf("reading: %s\n", fname);
@@ -147,10 +170,106 @@ public class SlicesReader {
             readSlice(is, grid, i + firstSlice, orientation);
         }
 
-        printf("readSlice %d ms\n",(time() - t0));
+        if(DEBUG_TIMING) printTiming("readSlices", count, time() - t0);
         return 0;
     }
 
+    /**
+       decodes slices in parallel. Each slice is decoded directly into the grid 
+     */
+    void readSlicesMT(AttributeGrid grid, ZipFile zip, String fileTemplate,
+                      int firstFile, int firstSlice, int count, int orientation) throws IOException {
+
+        int threadCount = Math.min(m_threadCount, count);
+        AtomicInteger nextSlice = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            Future<?> futures[] = new Future<?>[threadCount];
+            for(int i = 0; i < threadCount; i++){
+                futures[i] = executor.submit(new SliceDecoder(grid, zip, fileTemplate, firstFile, firstSlice, count, orientation, nextSlice));
+            }
+            for(int i = 0; i < threadCount; i++){
+                try {
+                    futures[i].get();
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new IOException("slices reading interrupted");
+                } catch(ExecutionException e){
+                    Throwable cause = e.getCause();
+                    if(cause instanceof IOException)
+                        throw (IOException)cause;
+                    if(cause instanceof RuntimeException)
+                        throw (RuntimeException)cause;
+                    if(cause instanceof Error)
+                        throw (Error)cause;
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static void printTiming(String name, int count, long time){
+        time = Math.max(time, 1);
+        printf("%s %d slices %d ms (%5.1f slices/sec)\n", name, count, time, count*1000./time);
+    }
+
+    /**
+       decodes slices taken from common slice counter 
+     */
+    class SliceDecoder implements Callable<Object> {
+
+        AttributeGrid grid;
+        ZipFile zip;
+        String fileTemplate;
+        int firstFile;
+        int firstSlice;
+        int count;
+        int orientation;
+        AtomicInteger nextSlice;
+
+        SliceDecoder(AttributeGrid grid, ZipFile zip, String fileTemplate, int firstFile, int firstSlice, 
+                     int count, int orientation, AtomicInteger nextSlice){
+            this.grid = grid;
+            this.zip = zip;
+            this.fileTemplate = fileTemplate;
+            this.firstFile = firstFile;
+            this.firstSlice = firstSlice;
+            this.count = count;
+            this.orientation = orientation;
+            this.nextSlice = nextSlice;
+        }
+
+        public Object call() throws IOException {
+            try {
+                while(true){
+                    int i = nextSlice.getAndIncrement();
+                    if(i >= count)
+                        break;
+                    String fname = Output.fmt(fileTemplate, i+firstFile);
+                    ZipEntry entry = zip.getEntry(fname);
+                    if (entry == null) 
+                        throw new IOException(fmt("Cannot find slice file: %s",fname));
+                    InputStream is = zip.getInputStream(entry);
+                    try {
+                        readSlice(is, grid, i + firstSlice, orientation);
+                    } finally {
+                        is.close();
+                    }
+                }
+            } catch(IOException e){
+                // stop other decoders 
+                nextSlice.set(count);
+                throw e;
+            } catch(RuntimeException e){
+                nextSlice.set(count);
+                throw e;
+            }
+            return null;
+        }
+    }
+
     /**
        read single slice from input stream
      */
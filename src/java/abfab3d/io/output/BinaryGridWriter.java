@@ -0,0 +1,326 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2016
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+package abfab3d.io.output;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.GridDataDesc;
+import abfab3d.grid.ArrayAttributeGridByte;
+import abfab3d.grid.ArrayAttributeGridInt;
+import abfab3d.grid.ArrayAttributeGridLong;
+import abfab3d.grid.ArrayAttributeGridShort;
+import abfab3d.grid.GridDataChannelFloat;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
+/**
+ * Writes a grid in binary snapshot format used for fast saving and loading of intermediate grids.
+ *
+ * File layout (little endian)
+ * <pre>
+ *   int magic, int version
+ *   int nx, ny, nz
+ *   double voxelSize, sliceHeight, bounds[6]
+ *   int voxelBytes (1,2,4 or 8), int blockSize (voxels per block), int compression
+ *   int channelCount
+ *   channels: int kind, string type, string name, int bits, int shift, double value0, value1, unit
+ *   int blockCount
+ *   blocks table: byte mode, int length
+ *   padding to 8 bytes
+ *   blocks payload
+ * </pre>
+ * strings are stored as short length followed by UTF-8 bytes
+ *
+ * voxels are stored in the grid storage order (y,x,z) split into blocks of blockSize voxels.
+ * blocks are stored raw, as single value (if all voxels of the block are equal) or deflated.
+ * uncompressed file without uniform blocks has contiguous payload which can be memory mapped
+ *
+ * @see abfab3d.io.input.BinaryGridReader
+ */
+public class BinaryGridWriter {
+
+    static final boolean DEBUG = false;
+
+    public static final int MAGIC = 0x44524741; // "AGRD"
+    public static final int VERSION = 1;
+
+    public static final int
+        COMPRESSION_NONE = 0,
+        COMPRESSION_DEFLATE = 1;
+
+    static final int
+        BLOCK_RAW = 0,
+        BLOCK_UNIFORM = 1,
+        BLOCK_DEFLATE = 2;
+
+    static final int
+        CHANNEL_UNSIGNED = 0,
+        CHANNEL_SIGNED_SHORT = 1,
+        CHANNEL_FLOAT = 2;
+
+    static final int BLOCK_ENTRY_SIZE = 5;
+    static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    int m_compression = COMPRESSION_NONE;
+    boolean m_uniformBlocks = false;
+    int m_blockSize = DEFAULT_BLOCK_SIZE;
+
+    public BinaryGridWriter(){
+    }
+
+    /**
+       set compression of blocks (COMPRESSION_NONE or COMPRESSION_DEFLATE)
+       deflate compression uses fastest compression level
+     */
+    public void setCompression(int compression){
+        if(compression != COMPRESSION_NONE && compression != COMPRESSION_DEFLATE)
+            throw new IllegalArgumentException("unknown compression: " + compression);
+        m_compression = compression;
+    }
+
+    /**
+       if true blocks with all voxels equal are stored as single value
+     */
+    public void setUniformBlocks(boolean value){
+        m_uniformBlocks = value;
+    }
+
+    /**
+       set count of voxels in single block
+     */
+    public void setBlockSize(int size){
+        if(size < 1)
+            throw new IllegalArgumentException("block size has to be positive: " + size);
+        m_blockSize = size;
+    }
+
+    /**
+     * Writes a grid to a file
+     * @param grid grid to write
+     * @param path output file path
+     */
+    public void write(AttributeGrid grid, String path) throws IOException {
+
+        long t0 = time();
+        int nx = grid.getWidth();
+        int ny = grid.getHeight();
+        int nz = grid.getDepth();
+        long voxelCount = (long)nx * ny * nz;
+        int voxelBytes = getVoxelBytes(grid);
+        int blockSize = m_blockSize;
+        long blockCount = (voxelCount + blockSize - 1) / blockSize;
+        if(blockCount*BLOCK_ENTRY_SIZE > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("too many blocks: " + blockCount + " increase block size");
+
+        ByteBuffer header = makeHeader(grid, voxelBytes, blockSize, (int)blockCount);
+
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            writeFully(channel, header);
+            long tableOffset = channel.position();
+            int tableLength = (int)blockCount*BLOCK_ENTRY_SIZE;
+            ByteBuffer table = ByteBuffer.allocate(tableLength).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(align8(tableOffset + tableLength));
+
+            ByteBuffer block = ByteBuffer.allocate(blockSize*voxelBytes).order(ByteOrder.LITTLE_ENDIAN);
+            Deflater deflater = null;
+            ByteBuffer packed = null;
+            if(m_compression == COMPRESSION_DEFLATE){
+                deflater = new Deflater(Deflater.BEST_SPEED);
+                packed = ByteBuffer.allocate(block.capacity());
+            }
+            int uniformCount = 0;
+            for(int b = 0; b < blockCount; b++){
+
+                long start = (long)b*blockSize;
+                int count = (int)Math.min(blockSize, voxelCount - start);
+                block.clear();
+                getBlock(grid, start, count, voxelBytes, block);
+                block.flip();
+
+                ByteBuffer out = block;
+                int mode = BLOCK_RAW;
+                if(m_uniformBlocks && isUniform(block, voxelBytes)){
+                    block.limit(voxelBytes);
+                    mode = BLOCK_UNIFORM;
+                    uniformCount++;
+                } else if(deflater != null){
+                    deflater.reset();
+                    deflater.setInput(block.array(), 0, block.limit());
+                    deflater.finish();
+                    int len = deflater.deflate(packed.array(), 0, packed.capacity());
+                    // store block raw if it does not compress
+                    if(deflater.finished() && len < block.limit()){
+                        packed.clear();
+                        packed.limit(len);
+                        out = packed;
+                        mode = BLOCK_DEFLATE;
+                    }
+                }
+                table.put((byte)mode);
+                table.putInt(out.remaining());
+                writeFully(channel, out);
+            }
+            if(deflater != null)
+                deflater.end();
+            table.flip();
+            channel.position(tableOffset);
+            writeFully(channel, table);
+            if(DEBUG)printf("BinaryGridWriter.write(%s) blocks: %d uniform: %d size: %d %d ms\n",
+                            path, blockCount, uniformCount, file.length(), time() - t0);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+       @return count of bytes used to store single voxel
+     */
+    static int getVoxelBytes(AttributeGrid grid){
+
+        if(grid instanceof ArrayAttributeGridByte) return 1;
+        if(grid instanceof ArrayAttributeGridShort) return 2;
+        if(grid instanceof ArrayAttributeGridInt) return 4;
+        if(grid instanceof ArrayAttributeGridLong) return 8;
+
+        GridDataDesc desc = grid.getDataDesc();
+        int bits = (desc != null)? desc.getBitCount(): 8;
+        if(bits <= 8) return 1;
+        if(bits <= 16) return 2;
+        if(bits <= 32) return 4;
+        return 8;
+    }
+
+    ByteBuffer makeHeader(AttributeGrid grid, int voxelBytes, int blockSize, int blockCount){
+
+        GridDataDesc desc = grid.getDataDesc();
+        int channelCount = (desc != null)? desc.size(): 0;
+        byte names[][] = new byte[2*channelCount][];
+        int size = 5*4 + 8*8 + 4*4 + 4;
+        for(int i = 0; i < channelCount; i++){
+            GridDataChannel channel = desc.getChannel(i);
+            names[2*i] = channel.getType().getBytes(UTF8);
+            names[2*i+1] = channel.getName().getBytes(UTF8);
+            size += 4 + 2 + names[2*i].length + 2 + names[2*i+1].length + 2*4 + 3*8;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(grid.getWidth());
+        header.putInt(grid.getHeight());
+        header.putInt(grid.getDepth());
+        header.putDouble(grid.getVoxelSize());
+        header.putDouble(grid.getSliceHeight());
+        double bounds[] = new double[6];
+        grid.getGridBounds(bounds);
+        for(int i = 0; i < 6; i++)
+            header.putDouble(bounds[i]);
+        header.putInt(voxelBytes);
+        header.putInt(blockSize);
+        header.putInt(m_compression);
+        header.putInt(channelCount);
+        for(int i = 0; i < channelCount; i++){
+            GridDataChannel channel = desc.getChannel(i);
+            int kind = CHANNEL_UNSIGNED;
+            if(channel instanceof GridDataChannelFloat) kind = CHANNEL_FLOAT;
+            else if(channel.isSignedShort()) kind = CHANNEL_SIGNED_SHORT;
+            header.putInt(kind);
+            header.putShort((short)names[2*i].length);
+            header.put(names[2*i]);
+            header.putShort((short)names[2*i+1].length);
+            header.put(names[2*i+1]);
+            header.putInt(channel.getBitCount());
+            header.putInt(channel.getShift());
+            header.putDouble(channel.getValue0());
+            header.putDouble(channel.getValue1());
+            // conversion factor of signed short channel
+            header.putDouble((kind == CHANNEL_SIGNED_SHORT)? (channel.getValue(1) - channel.getValue(0)): 0.);
+        }
+        header.putInt(blockCount);
+        header.flip();
+        return header;
+    }
+
+    /**
+       copy voxels with storage index in range [start, start + count) into block
+     */
+    static void getBlock(AttributeGrid grid, long start, int count, int voxelBytes, ByteBuffer block){
+
+        int s = (int)start;
+        if(grid instanceof ArrayAttributeGridByte){
+            block.put(((ArrayAttributeGridByte)grid).getData(), s, count);
+        } else if(grid instanceof ArrayAttributeGridShort){
+            block.asShortBuffer().put(((ArrayAttributeGridShort)grid).getData(), s, count);
+            block.position(2*count);
+        } else if(grid instanceof ArrayAttributeGridInt){
+            block.asIntBuffer().put(((ArrayAttributeGridInt)grid).getData(), s, count);
+            block.position(4*count);
+        } else if(grid instanceof ArrayAttributeGridLong){
+            block.asLongBuffer().put(((ArrayAttributeGridLong)grid).getData(), s, count);
+            block.position(8*count);
+        } else {
+            // generic grid
+            long nz = grid.getDepth();
+            long sliceSize = grid.getWidth()*nz;
+            for(long i = start; i < start + count; i++){
+                int y = (int)(i / sliceSize);
+                long r = i - y*sliceSize;
+                int x = (int)(r / nz);
+                int z = (int)(r - x*nz);
+                long a = grid.getAttribute(x,y,z);
+                switch(voxelBytes){
+                case 1: block.put((byte)a); break;
+                case 2: block.putShort((short)a); break;
+                case 4: block.putInt((int)a); break;
+                default: block.putLong(a); break;
+                }
+            }
+        }
+    }
+
+    /**
+       @return true if all voxels of block are equal
+     */
+    static boolean isUniform(ByteBuffer block, int voxelBytes){
+
+        byte data[] = block.array();
+        int len = block.limit();
+        for(int i = voxelBytes; i < len; i++){
+            if(data[i] != data[i % voxelBytes])
+                return false;
+        }
+        return true;
+    }
+
+    static long align8(long offset){
+        return (offset + 7) & ~7L;
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+}
@@ -33,6 +33,7 @@ import abfab3d.grid.ArrayAttributeGridInt;
 import abfab3d.grid.DensityMakerFromDensityChannel;
 import abfab3d.grid.DensityMakerFromDistanceChannel;
 
+import abfab3d.grid.op.ShellPruner;
 import abfab3d.grid.util.ExecutionStoppedException;
 
 import abfab3d.mesh.WingedEdgeTriangleMesh;
@@ -44,6 +45,7 @@ import abfab3d.mesh.MeshDecimator;
 
 import abfab3d.util.FileUtil;
 import abfab3d.core.Bounds;
+import abfab3d.core.MathUtil;
 import abfab3d.core.Units;
 import abfab3d.core.LongConverter;
 import abfab3d.util.DefaultLongConverter;
@@ -91,15 +93,32 @@ public class GridSaver {
     final static public double VOLUME_UNDEFINED = -Double.MAX_VALUE;
     final static public int SHELLS_COUNT_UNDEFINED = Integer.MAX_VALUE;
 
+    /** small shells are removed from the mesh only */
+    final static public int SHELL_PRUNING_NONE = 0;
+    /** components of the grid which can only make removed shells are masked before meshing, shells are selected on the mesh */
+    final static public int SHELL_PRUNING_EXACT = 1;
+    /** shells are selected as components of the grid using volume estimated from voxel density */
+    final static public int SHELL_PRUNING_FAST = 2;
+
     /** Skipp shell removal entirely if shell count is less than or equal to this value */
     int m_minShellCount = 0;
 
     int m_maxShellsCount = SHELLS_COUNT_UNDEFINED;
     double m_minShellVolume = VOLUME_UNDEFINED;
+    int m_shellPruning = SHELL_PRUNING_EXACT;
+
+    // mesh maker with blocks of the last mesh, used to update the mesh after grid change
+    boolean m_retainMesh = false;
+    MeshMakerMT m_meshMaker;
+    String m_meshMakerKey;
+    // region of the grid changed since the last mesh
+    Bounds m_changedBounds = Bounds.INFINITE;
 
     int m_maxThreads = 0;
     int m_maxTrianglesCount = 2000000;
     int m_maxDecimationCount = 10;
+    int m_decimationAlgorithm = MeshMakerMT.DECIMATION_RANDOM;
+    int m_decimationThreads = 1;
     int m_svr = 255;
 
     double m_isosurfaceValue;
@@ -196,6 +215,35 @@ public class GridSaver {
         m_minShellCount = value;
     }
 
+    /**
+       set how small shells are removed before the mesh is made 
+       SHELL_PRUNING_NONE, SHELL_PRUNING_EXACT or SHELL_PRUNING_FAST
+     */
+    public void setShellPruning(int value) {
+        m_shellPruning = value;
+    }
+
+    /**
+       keep blocks of the mesh between calls to getMesh(), so the mesh of the same grid can be updated 
+       after part of the grid was changed. See setChangedBounds()
+     */
+    public void setRetainMesh(boolean value) {
+        m_retainMesh = value;
+        if(!value){
+            m_meshMaker = null;
+            m_meshMakerKey = null;
+        }
+    }
+
+    /**
+       set world bounds of the grid region changed since the previous mesh was made, it is used with retained mesh only. 
+       Bounds.INFINITE (default) if the whole grid may be changed, null if the grid is not changed. 
+       The bounds are reset to Bounds.INFINITE after the mesh is made. 
+     */
+    public void setChangedBounds(Bounds bounds) {
+        m_changedBounds = bounds;
+    }
+
     public void setMaxThreads(int value) {
         m_maxThreads = value;
     }
@@ -204,6 +252,20 @@ public class GridSaver {
         m_minShellVolume = value;
     }
 
+    /**
+       set decimation algorithm MeshMakerMT.DECIMATION_RANDOM or MeshMakerMT.DECIMATION_PRIORITY
+     */
+    public void setDecimationAlgorithm(int value) {
+        m_decimationAlgorithm = value;
+    }
+
+    /**
+       set count of threads used to decimate each block with MeshMakerMT.DECIMATION_PRIORITY
+     */
+    public void setDecimationThreads(int value) {
+        m_decimationThreads = value;
+    }
+
     public static int getOutputType(String fname) {
 
         fname = fname.toLowerCase();
@@ -360,6 +422,7 @@ public class GridSaver {
         TrianglePacker tp = new TrianglePacker();
         tp.setGap(m_texTriGap);
         tp.setTexturePixelSize(vs*m_texPixelSize);
+        tp.setThreadCount(m_maxThreads);
 
         mesh.getTriangles(tp);
    
@@ -420,6 +483,7 @@ public class GridSaver {
         TrianglePacker tp = new TrianglePacker();
         tp.setGap(m_texTriGap);
         tp.setTexturePixelSize(vs*m_texPixelSize);
+        tp.setThreadCount(m_maxThreads);
 
         mesh.getTriangles(tp);
 
@@ -635,22 +699,50 @@ public class GridSaver {
         if (DEBUG) printf("GridSaver.getMesh().  m_meshErrorFactor: %f\n", m_meshErrorFactor);
         double maxDecimationError = m_meshErrorFactor * voxelSize * voxelSize;
 
-        MeshMakerMT meshmaker = new MeshMakerMT();
+        // retained mesh maker can be reused if it was made with the same params 
+        String meshMakerKey = fmt("%s;%s;%g;%g;%d;%d;%d;%g", grid.getDataDesc(), getDensityMaker(grid, m_isosurfaceValue).getClass().getName(), 
+                                  m_meshSmoothingWidth, maxDecimationError, m_maxDecimationCount, m_decimationAlgorithm, m_maxTrianglesCount, m_isosurfaceValue);
+        boolean updateMesh = (m_retainMesh && m_meshMaker != null && meshMakerKey.equals(m_meshMakerKey));
+        MeshMakerMT meshmaker = updateMesh? m_meshMaker: new MeshMakerMT();
+        if(m_retainMesh){
+            m_meshMaker = meshmaker;
+            m_meshMakerKey = meshMakerKey;
+        }
         meshmaker.setThreadCount(m_maxThreads);
         meshmaker.setSmoothingWidth(m_meshSmoothingWidth);
         meshmaker.setMaxDecimationError(maxDecimationError);
         meshmaker.setMaxDecimationCount(m_maxDecimationCount);               
-        meshmaker.setDensityMaker(getDensityMaker(grid, m_isosurfaceValue));
+        meshmaker.setDecimationAlgorithm(m_decimationAlgorithm);
+        meshmaker.setDecimationThreadCount(m_decimationThreads);
+        DensityMaker densityMaker = getDensityMaker(grid, m_isosurfaceValue);
+        meshmaker.setDensityMaker(densityMaker);
         meshmaker.setMaxTriangles(m_maxTrianglesCount);
         if(false)printSlice(grid);
+
+        boolean selectShells = (m_minShellVolume != VOLUME_UNDEFINED || m_maxShellsCount != SHELLS_COUNT_UNDEFINED);
+        if (selectShells && m_shellPruning != SHELL_PRUNING_NONE) {
+            ShellPruner pruner = new ShellPruner(densityMaker);
+            pruner.setMinShellVolume(m_minShellVolume);
+            pruner.setMaxShellsCount(m_maxShellsCount);
+            pruner.setMinShellCount(m_minShellCount);
+            pruner.setThreadCount(m_maxThreads);
+            pruner.setExact(m_shellPruning == SHELL_PRUNING_EXACT);
+            if (m_meshSmoothingWidth > 0.) 
+                pruner.setSmoothingRadius((MathUtil.getGaussianKernel(m_meshSmoothingWidth).length - 1)/2);
+            meshmaker.setVoxelMask(pruner.execute(grid));
+        }
         IndexedTriangleSetBuilder its = new IndexedTriangleSetBuilder(160000);
-        meshmaker.makeMesh(grid, its);
+        if(updateMesh) 
+            meshmaker.updateMesh(grid, m_changedBounds, its);
+        else 
+            meshmaker.makeMesh(grid, its);
+        m_changedBounds = Bounds.INFINITE;
 
         if (DEBUG) printf("decimated mesh vertices: %d faces: %d\n", its.getVertexCount(), its.getFaceCount());
 
         WingedEdgeTriangleMesh mesh = new WingedEdgeTriangleMesh(its.getVertices(), its.getFaces());
 
-        if (m_minShellVolume != VOLUME_UNDEFINED || m_maxShellsCount != SHELLS_COUNT_UNDEFINED) {
+        if (selectShells && m_shellPruning != SHELL_PRUNING_FAST) {
             ShellResults sr = GridSaver.getLargestShells(mesh, m_maxShellsCount, m_minShellVolume, m_minShellCount);
             mesh = sr.getLargestShell();
             int regions_removed = sr.getShellsRemoved();
@@ -19,6 +19,7 @@ import abfab3d.core.AttributeGrid;
 import abfab3d.core.Grid;
 import abfab3d.grid.DensityMaker;
 import abfab3d.grid.DensityMakerSubvoxel;
+import abfab3d.grid.GridBit;
 
 import abfab3d.core.TriangleCollector;
 
@@ -1106,7 +1107,10 @@ public class IsosurfaceMaker {
            return data at the grid point 
            does averaging
          */
-        double getGridData(int gx, int gy, int gz){
+        /**
+           @return normalized data at the grid point: -1 inside, 1 outside 
+         */
+        protected double getGridData(int gx, int gy, int gz){
 
             double sum =0; 
             double norm = 0;
@@ -1181,6 +1185,8 @@ public class IsosurfaceMaker {
         //int gridMaxAttributeValue = 0;
         //double dGridMaxAttributeValue = 1.;
         DensityMaker m_densityMaker = new DensityMakerSubvoxel(1);
+        // voxels to be treated as outside 
+        GridBit m_voxelMask;
 
         boolean containsIsosurface = false;
         /**
@@ -1194,9 +1200,26 @@ public class IsosurfaceMaker {
             }
             grid.getGridBounds(this.bounds);
 
-            gnx = grid.getWidth();
-            gny = grid.getHeight();
-            gnz = grid.getDepth();
+            init(grid.getWidth(), grid.getHeight(), grid.getDepth());
+
+        }
+
+        /**
+           slices of virtual grid of given bounds and size 
+           subclasses supply the data via getGridData()
+         */
+        protected BlockSmoothingSlices(double bounds[], int nx, int ny, int nz){
+
+            System.arraycopy(bounds, 0, this.bounds, 0, 6);
+            init(nx, ny, nz);
+
+        }
+
+        private void init(int nx, int ny, int nz){
+
+            gnx = nx;
+            gny = ny;
+            gnz = nz;
             
             gdx = (bounds[1] - bounds[0])/(gnx-1);
             gdy = (bounds[3] - bounds[2])/(gny-1);
@@ -1230,6 +1253,16 @@ public class IsosurfaceMaker {
             m_densityMaker = densityMaker;
 
         }
+
+        /**
+           set mask of grid voxels to be treated as empty, null to use all voxels
+         */
+        public void setVoxelMask(GridBit mask){
+
+            m_voxelMask = mask;
+
+        }
+
         /**
            
            block bounds are given in integer cordinates of voxels 
@@ -1472,10 +1505,15 @@ public class IsosurfaceMaker {
         }
 
 
-        double getGridData(int gx, int gy, int gz){
+        /**
+           @return normalized data at the grid point: -1 inside, 1 outside 
+         */
+        protected double getGridData(int gx, int gy, int gz){
 
             if(gx <  0 || gy < 0 || gz < 0 || gx >= gnx || gy >= gny || gz >= gnz){
                 return 1.; // outside
+            } else if(m_voxelMask != null && m_voxelMask.get(gx,gy,gz) != 0){
+                return 1.; // masked out 
             } else {
                 
                 // normalize output to interval (-1, 1) 
@@ -22,14 +22,19 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
+import abfab3d.core.Bounds;
+import abfab3d.core.DataSource;
 import abfab3d.core.Grid;
 import abfab3d.core.ResultCodes;
+import abfab3d.core.Vec;
 import abfab3d.grid.DensityMaker;
 import abfab3d.grid.DensityMakerSubvoxel;
+import abfab3d.grid.GridBit;
 
 import abfab3d.mesh.EdgeTester;
 import abfab3d.mesh.IndexedTriangleSetBuilder;
 import abfab3d.mesh.MeshDecimator;
+import abfab3d.mesh.MeshDecimatorPQ;
 import abfab3d.mesh.WingedEdgeTriangleMesh;
 
 import abfab3d.util.AbFab3DGlobals;
@@ -38,6 +43,7 @@ import abfab3d.core.TriangleCollector;
 
 
 
+import static abfab3d.core.MathUtil.step10;
 import static abfab3d.core.Output.fmt;
 import static abfab3d.core.Output.printf;
 import static abfab3d.core.Output.time;
@@ -63,6 +69,11 @@ public class MeshMakerMT {
 
     public static final int RESULT_OK = 0;
 
+    // random candidates edge selection 
+    public static final int DECIMATION_RANDOM = 0;
+    // global priority queue of quadric errors
+    public static final int DECIMATION_PRIORITY = 1;
+
     protected int m_threadCount = 1;
 
     // size of block of grid to make in one chunk 
@@ -82,14 +93,24 @@ public class MeshMakerMT {
     
     // converter from grid attribute into density 
     protected DensityMaker m_densityMaker = new DensityMakerSubvoxel(255); 
+    protected GridBit m_voxelMask;
 
 
     protected int m_maxDecimationCount = 7;
 
+    protected int m_decimationAlgorithm = DECIMATION_RANDOM;
+    // threads used by single decimator inside of a block
+    protected int m_decimationThreadCount = 1;
+
     // Maximum allowed triangles.  Will relax maxDecimationError to achieve
     protected int m_maxTriangles = Integer.MAX_VALUE;
     protected EdgeTester m_edgeTester;
 
+    // octree of blocks of the last mesh made from a grid, it is used to update the mesh 
+    protected GridBlock m_rootBlock;
+    protected int m_rootGridSize[];
+    protected GridBit m_rootVoxelMask;
+
     public MeshMakerMT() {
         m_threadCount = ((Number)AbFab3DGlobals.get(AbFab3DGlobals.MAX_PROCESSOR_COUNT_KEY)).intValue();
     }
@@ -127,6 +148,15 @@ public class MeshMakerMT {
 
     }
 
+    /**
+       sets mask of grid voxels which are treated as empty, null to use all voxels 
+     */
+    public void setVoxelMask(GridBit mask) {
+
+        m_voxelMask = mask;
+
+    }
+
     public void setMaxDecimationError(double value) {
 
         m_maxDecimationError = value;
@@ -161,6 +191,42 @@ public class MeshMakerMT {
     }
 
 
+    /**
+       set decimation algorithm to use 
+       DECIMATION_RANDOM 
+       or 
+       DECIMATION_PRIORITY
+     */
+    public void setDecimationAlgorithm(int algorithm){
+
+        m_decimationAlgorithm = algorithm;
+    }
+
+    /**
+       set count of threads used by each DECIMATION_PRIORITY decimator to process its block 
+       blocks are already decimated in m_threadCount threads, so it is useful for large blocks only
+       values <= 1 mean single threaded decimation of each block 
+     */
+    public void setDecimationThreadCount(int count){
+
+        m_decimationThreadCount = count;
+    }
+
+    /**
+       @return new decimator for selected decimation algorithm 
+     */
+    protected MeshDecimator makeDecimator(){
+        switch(m_decimationAlgorithm){
+        default: 
+        case DECIMATION_RANDOM: 
+            return new MeshDecimator();
+        case DECIMATION_PRIORITY: 
+            MeshDecimatorPQ decimator = new MeshDecimatorPQ();
+            decimator.setThreadCount(m_decimationThreadCount);
+            return decimator;
+        }
+    }
+
     /**
        set interpolation algorith to use 
        INTERPOLATION_LINEAR
@@ -198,6 +264,79 @@ public class MeshMakerMT {
                 
         //blocks.dump();
 
+        processBlocks(grid, blocks);
+
+        printf("MESH_EXTRACTION_TIME: %d ms\n", (time() - t0));
+
+        // last block has the final mesh 
+        GridBlock block = blocks.getLast(); 
+        if(true){
+            //printf("    lastBlock: %s\n", block);
+            printf("    origFaceCount: %d\n", block.origFaceCount);
+            printf("    finalFaceCount: %d\n", block.finalFaceCount);
+        }
+        m_rootBlock = block;
+        m_rootGridSize = new int[]{grid.getWidth(), grid.getHeight(), grid.getDepth()};
+        m_rootVoxelMask = m_voxelMask;
+
+        block.writeTriangles(tc);        
+        return ResultCodes.RESULT_OK;
+
+    }
+
+    /**
+       updates the mesh made by previous call to makeMesh() after part of the grid was changed. 
+       Only blocks which depend on changed voxels are remade, the other blocks are reused. 
+       If there is no previous mesh of the grid of the same size, the whole mesh is made. 
+       Blocks depend on voxels of the voxel mask as well, so the changes of the mask are detected here. 
+
+       @param grid the grid of the previous mesh with updated voxels 
+       @param changed world bounds of changed voxels, null if no voxel is changed, Bounds.INFINITE if the whole grid may be changed
+       @param tc collector of triangles
+     */
+    public int updateMesh(Grid grid, Bounds changed, TriangleCollector tc) {
+
+        if(m_rootBlock == null || version != VERSION2 || 
+           m_rootGridSize[0] != grid.getWidth() || m_rootGridSize[1] != grid.getHeight() || m_rootGridSize[2] != grid.getDepth())
+            return makeMesh(grid, tc);
+        
+        status = StatusType.SUCCESS;
+        long t0 = time();
+        int region[] = getVoxelRegion(grid, changed);
+        region = addMaskChanges(region, m_rootVoxelMask, m_voxelMask, m_rootGridSize);
+        m_rootVoxelMask = m_voxelMask;
+
+        if(region != null){
+
+            // blocks are sampled with padding used for smoothing 
+            int pad = 1;
+            if (m_smoothingWidth > 0.) 
+                pad = (MathUtil.getGaussianKernel(m_smoothingWidth).length + 1)/2;
+
+            GridBlockSet blocks = new GridBlockSet();
+            int maxLevel = markChangedBlocks(m_rootBlock, region, pad, blocks);
+            if(blocks.size() > 0){
+                blocks.sort();
+                blocks.faceCounts = new AtomicInteger[maxLevel + 1];
+                for(int i = 0; i < blocks.faceCounts.length; i++)
+                    blocks.faceCounts[i] = new AtomicInteger(0);
+                blocks.currentLevel = blocks.getFirst().level;
+                printf("MeshMakerMT.updateMesh() remaking blocks: %d\n", blocks.size());
+                processBlocks(grid, blocks);
+            }
+        }
+
+        printf("MESH_UPDATE_TIME: %d ms\n", (time() - t0));
+        m_rootBlock.writeTriangles(tc);
+        return ResultCodes.RESULT_OK;
+
+    }
+
+    /**
+       runs block processors on the set of blocks 
+     */
+    protected void processBlocks(Grid grid, GridBlockSet blocks){
+
         ExecutorService executor = Executors.newFixedThreadPool(m_threadCount);
 
         BlockProcessor threads[] = new BlockProcessor[m_threadCount];
@@ -222,17 +361,159 @@ public class MeshMakerMT {
         } catch (Exception e) {
             e.printStackTrace();
         }
+    }
 
-        printf("MESH_EXTRACTION_TIME: %d ms\n", (time() - t0));
+    /**
+       resets blocks of octree which depend on voxels of the region and adds changed leaf blocks to the set 
+       @return max level of the changed leaf blocks or -1 if block is not changed 
+     */
+    static int markChangedBlocks(GridBlock block, int region[], int pad, GridBlockSet blocks){
 
-        // last block has the final mesh 
-        GridBlock block = blocks.getLast(); 
-        if(true){
-            //printf("    lastBlock: %s\n", block);
-            printf("    origFaceCount: %d\n", block.origFaceCount);
-            printf("    finalFaceCount: %d\n", block.finalFaceCount);
+        if(block.xmin - pad > region[1] || block.xmax + pad < region[0] ||
+           block.ymin - pad > region[3] || block.ymax + pad < region[2] ||
+           block.zmin - pad > region[5] || block.zmax + pad < region[4])
+            return -1;
+
+        int maxLevel = -1;
+        if(block.hasChildren()){
+            int changedCount = 0;
+            for(int i = 0; i < block.children.length; i++){
+                GridBlock child = block.children[i];
+                if(child != null){
+                    int level = markChangedBlocks(child, region, pad, blocks);
+                    if(level >= 0){
+                        changedCount++;
+                        maxLevel = Math.max(maxLevel, level);
+                    }
+                }
+            }
+            if(changedCount == 0)
+                return -1;
+            // unchanged children are finished already 
+            block.finishedChildCount = block.childCount - changedCount;
+        } else {
+            blocks.add(block);
+            maxLevel = block.level;
         }
-        block.writeTriangles(tc);        
+        block.its = null;
+        block.faces = null;
+        block.vertices = null;
+        block.origFaceCount = 0;
+        block.finalFaceCount = 0;
+        return maxLevel;
+    }
+
+    /**
+       @return inclusive range of voxels with centers inside of bounds [xmin, xmax, ymin, ymax, zmin, zmax] or null if bounds are null or don't intersect the grid 
+     */
+    static int[] getVoxelRegion(Grid grid, Bounds bounds){
+
+        if(bounds == null)
+            return null;
+        double gb[] = new double[6];
+        grid.getGridBounds(gb);
+        int n[] = new int[]{grid.getWidth(), grid.getHeight(), grid.getDepth()};
+        double b[] = new double[]{bounds.xmin, bounds.xmax, bounds.ymin, bounds.ymax, bounds.zmin, bounds.zmax};
+        int region[] = new int[6];
+        for(int k = 0; k < 3; k++){
+            double vs = (gb[2*k+1] - gb[2*k])/n[k];
+            region[2*k] = Math.max(0, (int)Math.ceil((b[2*k] - gb[2*k])/vs - 0.5));
+            region[2*k+1] = Math.min(n[k]-1, (int)Math.floor((b[2*k+1] - gb[2*k])/vs - 0.5));
+            if(region[2*k] > region[2*k+1])
+                return null;
+        }
+        return region;
+    }
+
+    /**
+       @return region expanded by bounds of voxels where the masks differ 
+     */
+    static int[] addMaskChanges(int region[], GridBit mask0, GridBit mask1, int n[]){
+
+        if(mask0 == mask1)
+            return region;
+        for(int y = 0; y < n[1]; y++){
+            for(int x = 0; x < n[0]; x++){
+                for(int z = 0; z < n[2]; z++){
+                    long m0 = (mask0 != null)? mask0.get(x,y,z): 0;
+                    long m1 = (mask1 != null)? mask1.get(x,y,z): 0;
+                    if(m0 == m1) 
+                        continue;
+                    if(region == null){
+                        region = new int[]{x, x, y, y, z, z};
+                    } else {
+                        region[0] = Math.min(region[0], x); region[1] = Math.max(region[1], x);
+                        region[2] = Math.min(region[2], y); region[3] = Math.max(region[3], y);
+                        region[4] = Math.min(region[4], z); region[5] = Math.max(region[5], z);
+                    }
+                }
+            }
+        }
+        return region;
+    }
+
+    /**
+     * extracts mesh directly from the data source without making a grid.
+     * <p/>
+     * The source is sampled at voxel centers of the grid covering the bounds one block at a time.
+     * Each block is converted into isosurface, decimated and passed to the triangle collector right away,
+     * so only samples of blocks being processed are kept in memory.
+     * Blocks are not joined for a second round of decimation, the mesh has more triangles along block
+     * boundaries than the mesh made from a grid.
+     * Triangle collector is called from one thread at a time.
+     *
+     * @param source data source with signed distance in channel 0 (negative inside)
+     * @param bounds bounds of the grid
+     * @param voxelSize size of grid voxel
+     * @param tc collector of triangles
+     */
+    public int makeMesh(DataSource source, Bounds bounds, double voxelSize, TriangleCollector tc) {
+
+        status = StatusType.SUCCESS;
+
+        int nx = bounds.getWidthVoxels(voxelSize);
+        int ny = bounds.getHeightVoxels(voxelSize);
+        int nz = bounds.getDepthVoxels(voxelSize);
+        double gridBounds[] = new double[]{
+            bounds.xmin, bounds.xmin + nx*voxelSize,
+            bounds.ymin, bounds.ymin + ny*voxelSize,
+            bounds.zmin, bounds.zmin + nz*voxelSize};
+
+        printf("Mesh maker from data source (%d x %d x %d) threads: %d\n", nx, ny, nz, m_threadCount);
+        long t0 = time();
+
+        GridBlockSet blocks = makeBlocks(nx, ny, nz, m_blockSize);
+
+        ExecutorService executor = Executors.newFixedThreadPool(m_threadCount);
+
+        BlockProcessor threads[] = new BlockProcessor[m_threadCount];
+        double smoothKernel[] = null;
+        if (m_smoothingWidth > 0.) {
+            smoothKernel = MathUtil.getGaussianKernel(m_smoothingWidth);
+        }
+
+        for (int i = 0; i < m_threadCount; i++) {
+            DataSourceSlices slicer = new DataSourceSlices(source, gridBounds, nx, ny, nz, voxelSize);
+            threads[i] = new BlockProcessor(slicer, gridBounds, nx, ny, nz, blocks, smoothKernel);
+            threads[i].setOutput(tc);
+            if (m_edgeTester != null) {
+                threads[i].setEdgeTester((EdgeTester) (m_edgeTester.clone()));
+            }
+            executor.submit(threads[i]);
+        }
+
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        printf("MESH_EXTRACTION_TIME: %d ms\n", (time() - t0));
+        if(DEBUG)
+            printf("finalFaceCount: %d\n", blocks.faceCounts[0].get());
+
         return ResultCodes.RESULT_OK;
 
     }
@@ -417,6 +698,10 @@ public class MeshMakerMT {
             iy = iy1;
         }
 
+        // all blocks are on level 0 
+        blocks.faceCounts = new AtomicInteger[]{new AtomicInteger(0)};
+        blocks.currentLevel = 0;
+
         System.out.println("***Total blocks made: " + blocks.gridBlocks.size() + " min tris is: " + (blocks.gridBlocks.size() * 100));
         return blocks;
 
@@ -814,6 +1099,8 @@ public class MeshMakerMT {
         long origNumTriangles;
 
         EdgeTester edgeTester;
+        // if not null finished blocks are written here and released 
+        TriangleCollector output;
 
         BlockProcessor(Grid grid,
                        GridBlockSet blocks,
@@ -825,9 +1112,32 @@ public class MeshMakerMT {
             this.gridBounds = new double[6];
             grid.getGridBounds(gridBounds);
 
-            gnx = grid.getWidth();
-            gny = grid.getHeight();
-            gnz = grid.getDepth();
+            slicer = new IsosurfaceMaker.BlockSmoothingSlices(grid);
+            slicer.setDensityMaker(m_densityMaker);
+            slicer.setVoxelMask(m_voxelMask);
+
+            init(grid.getWidth(), grid.getHeight(), grid.getDepth(), smoothKernel);
+        }
+
+        BlockProcessor(IsosurfaceMaker.BlockSmoothingSlices slicer,
+                       double gridBounds[],
+                       int nx, int ny, int nz,
+                       GridBlockSet blocks,
+                       double smoothKernel[]
+        ) {
+
+            this.blocks = blocks;
+            this.gridBounds = gridBounds;
+            this.slicer = slicer;
+
+            init(nx, ny, nz, smoothKernel);
+        }
+
+        private void init(int nx, int ny, int nz, double smoothKernel[]){
+
+            gnx = nx;
+            gny = ny;
+            gnz = nz;
             gxmin = gridBounds[0];
             gymin = gridBounds[2];
             gzmin = gridBounds[4];
@@ -835,9 +1145,6 @@ public class MeshMakerMT {
             gdy = (gridBounds[3] - gridBounds[2]) / gny;
             gdz = (gridBounds[5] - gridBounds[4]) / gnz;
 
-            slicer = new IsosurfaceMaker.BlockSmoothingSlices(grid);
-            slicer.setDensityMaker(m_densityMaker);
-
             this.smoothKernel = smoothKernel;
             
             this.threadName = "thread" + threadCount.getAndIncrement();
@@ -849,6 +1156,25 @@ public class MeshMakerMT {
 
         }
 
+        void setOutput(TriangleCollector output) {
+
+            this.output = output;
+
+        }
+
+        /**
+           writes block triangles to output and releases them 
+         */
+        void flushBlock(GridBlock block) {
+
+            synchronized(output){
+                block.writeTriangles(output);
+            }
+            block.its = null;
+            block.faces = null;
+            block.vertices = null;
+        }
+
         public void run() {
             origNumTriangles = 0;
             // make isosurface extrator
@@ -863,17 +1189,13 @@ public class MeshMakerMT {
                 
                 try {
                     if(block.hasChildren()) {
-                        if (mesh == null) {
-                            printf("Has children but no mesh?  Building block instead of join\n");
-
-                            //throw new IllegalArgumentException("Has children but no mesh?\n");
-                            buildAndDecimate(block);
-                            continue;
-                        }
                         joinAndDecimate(block);
                     } else
                         buildAndDecimate(block);
 
+                    if(output != null)
+                        flushBlock(block);
+
                 } catch (Exception e) {
 
                     e.printStackTrace();
@@ -976,7 +1298,7 @@ public class MeshMakerMT {
             //intf("mesh created: %d ms\n", (time() - t0));
 
             if (decimator == null) {
-                decimator = new MeshDecimator();
+                decimator = makeDecimator();
                 if (edgeTester != null) {
                     decimator.setEdgeTester(edgeTester);
                 }
@@ -1024,7 +1346,12 @@ public class MeshMakerMT {
             if(DEBUG)
                 printf("joinAndDecimate(%s)\n", block);
 
-            its.clear();
+            // children may be processed by other threads 
+            if (its == null) {
+                its = new IndexedTriangleSetBuilder();
+            } else {
+                its.clear();
+            }
 
             for(int i = 0; i < block.children.length; i++){
                 GridBlock child = block.children[i];
@@ -1057,8 +1384,21 @@ public class MeshMakerMT {
             vertices = its.getVertices(vertices);
             faces = its.getFaces(faces);
 
-            mesh.clear();
-            mesh.setFaces(vertices, vertexCount, faces, faceCount);
+            if (mesh == null) {
+                mesh = new WingedEdgeTriangleMesh(vertices, vertexCount, faces, faceCount);
+                if (edgeTester != null) {
+                    edgeTester.initialize(mesh);
+                }
+            } else {
+                mesh.clear();
+                mesh.setFaces(vertices, vertexCount, faces, faceCount);
+            }
+            if (decimator == null) {
+                decimator = makeDecimator();
+                if (edgeTester != null) {
+                    decimator.setEdgeTester(edgeTester);
+                }
+            }
             
             int iterations = m_maxDecimationCount;
 
@@ -1092,6 +1432,42 @@ public class MeshMakerMT {
 
     } // class BlockProcessor
 
+    /**
+     * block slices sampled from data source at centers of grid voxels
+     */
+    static class DataSourceSlices extends IsosurfaceMaker.BlockSmoothingSlices {
+
+        DataSource source;
+        double voxelSize;
+        double pointVoxelSize;
+        Vec pnt = new Vec(3);
+        Vec value;
+
+        DataSourceSlices(DataSource source, double gridBounds[], int nx, int ny, int nz, double voxelSize){
+
+            super(gridBounds, nx, ny, nz);
+            this.source = source;
+            this.voxelSize = voxelSize;
+            // same thickness of transitional layer as used by GridMaker 
+            this.pointVoxelSize = voxelSize * Math.sqrt(3) / 2.0;
+            value = new Vec(Math.max(1, source.getChannelsCount()));
+            
+        }
+
+        protected double getGridData(int gx, int gy, int gz){
+
+            if(gx <  0 || gy < 0 || gz < 0 || gx >= gnx || gy >= gny || gz >= gnz)
+                return 1.; // outside
+
+            pnt.set(gxmin + (gx + 0.5)*voxelSize, gymin + (gy + 0.5)*voxelSize, gzmin + (gz + 0.5)*voxelSize);
+            pnt.setVoxelSize(pointVoxelSize);
+            source.getDataValue(pnt, value);
+
+            return 1 - 2*step10(value.v[0], 0., voxelSize);
+
+        }
+    } // class DataSourceSlices 
+
     /**
      * Decimate a block further
      */
@@ -1175,7 +1551,7 @@ public class MeshMakerMT {
             //intf("mesh created: %d ms\n", (time() - t0));
 
             if (decimator == null) {
-                decimator = new MeshDecimator();
+                decimator = makeDecimator();
                 decimator.setMaxCollapseError(m_maxDecimationError);
                 if (edgeTester != null) {
                     decimator.setEdgeTester(edgeTester);
@@ -15,19 +15,26 @@ package abfab3d.io.output;
 import javax.vecmath.Vector3d;
 import java.util.Hashtable;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 
 import javax.imageio.ImageIO;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors; 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 // external imports
@@ -45,6 +52,7 @@ import abfab3d.core.MathUtil;
 import abfab3d.util.AbFab3DGlobals;
 import abfab3d.util.SliceCalculator;
 import abfab3d.util.SimpleSliceCalculator;
+import abfab3d.util.CoherentSliceCalculator;
 
 import abfab3d.param.Parameter;
 import abfab3d.param.SNodeParameter;
@@ -59,8 +67,6 @@ import abfab3d.param.EnumParameter;
 
 
 import abfab3d.util.ImageUtil;
-import abfab3d.util.SliceManager;
-import abfab3d.util.Slice;
 
 
 import abfab3d.grid.op.ImageLoader;
@@ -89,6 +95,13 @@ public class PolyJetWriter extends BaseParameterizable {
 
     static final int MAX_DATA_DIMENSION = 8;
 
+    // max size of buffer used to calculate data of slice regions 
+    static final int MAX_REGION_BUFFER_SIZE = 1 << 20;
+    // margins around model bounds (in pixels) 
+    static final int REGION_MARGIN = 2;
+    // count of consecutive slices processed by single thread 
+    static final int SLICES_CHUNK = 8;
+
 
     // named PolyJet materials 
     public static final String S_WHITE = "VeroPureWht";
@@ -186,6 +199,10 @@ public class PolyJetWriter extends BaseParameterizable {
     DoubleParameter mp_sliceThickness = new DoubleParameter("sliceThickness", DEFAULT_SLICE_THICKNESS);
     DoubleParameter mp_materialsRatio = new DoubleParameter("materialsRatio", 1.);
     BooleanParameter mp_makeMaterialsMarker = new BooleanParameter("materialsMarker",true);
+    IntParameter mp_encoderThreadCount = new IntParameter("encoderThreadCount", "count of threads to encode and write slices, 0 - quarter of threadCount", 0);
+    BooleanParameter mp_useModelBounds = new BooleanParameter("useModelBounds", "skip calculation of slice data outside of model bounds, the bounds have to contain transformed model", false);
+    BooleanParameter mp_coherentSlices = new BooleanParameter("coherentSlices", "skip evaluation far from surface using distance coherence of slices", false);
+    DoubleParameter mp_occupancyCellSize = new DoubleParameter("occupancyCellSize", "size of cells of coarse occupancy pre-pass, 0 - no pre-pass", 0.);
     
     
     Parameter m_aparam[] = new Parameter[]{
@@ -209,6 +226,10 @@ public class PolyJetWriter extends BaseParameterizable {
         mp_makeMaterialsMarker,
         mp_sliceThickness,
         mp_materialsRatio,
+        mp_encoderThreadCount,
+        mp_useModelBounds,
+        mp_occupancyCellSize,
+        mp_coherentSlices,
     };
 
     public PolyJetWriter(){
@@ -262,6 +283,18 @@ public class PolyJetWriter extends BaseParameterizable {
     SliceCalculator m_slicer;
     int m_firstSlice = 0;
 
+    // region of slices which may be occupied by the model {ixmin, ixmax, iymin, iymax, izmin, izmax}
+    int m_region[];
+    // coarse occupancy grid of the region 
+    boolean m_occupancy[];
+    // ranges of pixels covered by occupancy cells in each direction 
+    int m_cellStart[][], m_cellEnd[][];
+    double m_cellSize;
+    // encoded empty slice 
+    byte m_blankSlice[];
+    // first error happened during writing 
+    AtomicReference<Throwable> m_error;
+
     int m_ditheringType = DITHERING_FLOYD_STEINBERG;
     static final double DUMPING_FACTOR = 0.999;//0.98 error diffusion dumping factor 
 
@@ -278,6 +311,8 @@ public class PolyJetWriter extends BaseParameterizable {
         SliceCalculator slicer = null;
         if(obj != null && obj instanceof SliceCalculator) {
             slicer = (SliceCalculator)obj;
+        } else if(mp_coherentSlices.getValue()){
+            slicer = new CoherentSliceCalculator(MAX_DATA_DIMENSION);
         } else {
             slicer = new SimpleSliceCalculator(MAX_DATA_DIMENSION);                        
         }
@@ -343,67 +378,262 @@ public class PolyJetWriter extends BaseParameterizable {
         
 
         int threads = AbFab3DGlobals.getThreadCount(mp_threadCount.getValue());
-        if(DEBUG) printf(" PolyJetWriter  writing: %d slices threads:%d\n", slicesCount, threads);
+        int encoderThreads = mp_encoderThreadCount.getValue();
+        if(encoderThreads <= 0) encoderThreads = max(1, threads/4);
+        if(DEBUG) printf(" PolyJetWriter  writing: %d slices threads:%d encoderThreads: %d\n", slicesCount, threads, encoderThreads);
+
+        initRegions(threads);
+        m_blankSlice = null;
+        m_error = new AtomicReference<Throwable>();
+
+        // slices are calculated by slice makers and passed to separate encoder threads 
+        // pool of images limits the count of slices waiting for encoding 
+        BlockingQueue<BufferedImage> imagePool = new ArrayBlockingQueue<BufferedImage>(threads + encoderThreads);
+        for(int i = 0; i < threads + encoderThreads; i++){
+            imagePool.add(new BufferedImage(m_nx, m_ny, BufferedImage.TYPE_INT_ARGB));
+        }
+        
+        AtomicInteger nextSlice = new AtomicInteger(0);
+        ExecutorService encoder = Executors.newFixedThreadPool(encoderThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for(int i = 0; i < threads; i++){
+            executor.submit(new SliceMaker(nextSlice, slicesCount, imagePool, encoder));
+        }
+        awaitTermination(executor);
+        // all slices are submitted to encoder 
+        awaitTermination(encoder);
 
-        if(threads == 1) {
-            
-            double sliceData[] = new double[m_nx*m_ny*m_materialCount];
-            BufferedImage image =  new BufferedImage(m_nx, m_ny, BufferedImage.TYPE_INT_ARGB);
-            DataBufferInt db = (DataBufferInt)image.getRaster().getDataBuffer();
-            int[] imageData = db.getData();
-            for(int iz = 0; iz <  slicesCount; iz++){            
-                processSlice(iz, sliceData, imageData, image);
-            }
-        } else {
-            SliceManager manager = new SliceManager(slicesCount);            
-            ExecutorService executor = Executors.newFixedThreadPool(threads);
-            
-            for(int i = 0; i < threads; i++){
-                double sliceData[] = new double[m_nx*m_ny*m_materialCount];
-                BufferedImage image =  new BufferedImage(m_nx, m_ny, BufferedImage.TYPE_INT_ARGB);
-                DataBufferInt db = (DataBufferInt)image.getRaster().getDataBuffer();
-                int[] imageData = db.getData();
-                
-                SliceMaker sliceProcessor = new SliceMaker(manager,sliceData, imageData, image);
-                
-                executor.submit(sliceProcessor);
+        Throwable error = m_error.get();
+        if(error != null) 
+            throw new RuntimeException(fmt("PolyJetWriter: failed to write slices into %s", m_outFolder), error);
+
+        printf("PolyJetWriter write() done %d ms\n", (time()-t0));
+    }
+
+    static void awaitTermination(ExecutorService executor){
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+       calculates region of slices which may be occupied by the model 
+       region is limited by model bounds and by optional coarse occupancy grid 
+       model bounds are used only if requested, bounds of transformed shapes and compositions may not contain the whole model 
+     */
+    void initRegions(int threads){
+
+        m_region = new int[]{0, m_nx, 0, m_ny, 0, m_nz};
+        m_occupancy = null;
+
+        Bounds mb = (mp_useModelBounds.getValue())? m_model.getBounds(): null;
+        if(mb != null){
+            m_region[0] = clamp((int)Math.floor((mb.xmin - m_bounds.xmin)/m_vsx) - REGION_MARGIN, 0, m_nx);
+            m_region[1] = clamp((int)Math.ceil((mb.xmax - m_bounds.xmin)/m_vsx) + 1 + REGION_MARGIN, 0, m_nx);
+            m_region[2] = clamp((int)Math.floor((mb.ymin - m_bounds.ymin)/m_vsy) - REGION_MARGIN, 0, m_ny);
+            m_region[3] = clamp((int)Math.ceil((mb.ymax - m_bounds.ymin)/m_vsy) + 1 + REGION_MARGIN, 0, m_ny);
+            m_region[4] = clamp((int)Math.floor((mb.zmin - m_bounds.zmin)/m_sliceThickness - 0.5) - REGION_MARGIN, 0, m_nz);
+            m_region[5] = clamp((int)Math.ceil((mb.zmax - m_bounds.zmin)/m_sliceThickness - 0.5) + 1 + REGION_MARGIN, 0, m_nz);
+        }
+        if(DEBUG) printf("PolyJetWriter region: [%d,%d) x [%d,%d) x [%d,%d)\n", 
+                         m_region[0],m_region[1],m_region[2],m_region[3],m_region[4],m_region[5]);
+
+        double cellSize = mp_occupancyCellSize.getValue();
+        if(cellSize > 0. && !isEmpty(m_region)) 
+            makeOccupancy(cellSize, threads);
+    }
+
+    static boolean isEmpty(int region[]){
+        return (region[0] >= region[1]) || (region[2] >= region[3]) || (region[4] >= region[5]);
+    }
+
+    /**
+       calculates coarse occupancy grid of cells of given size covering the region
+       cell is occupied if distance to the model at the cell center is less than half diagonal of the cell 
+       it assumes that first channel of the model is signed distance which does not overestimate the real distance
+     */
+    void makeOccupancy(double cellSize, int threads){
+
+        long t0 = time();
+        // each cell has to contain at least one pixel in each direction 
+        cellSize = max(cellSize, max(m_sliceThickness, max(m_vsx, m_vsy)));
+        m_cellSize = cellSize;
+        m_cellStart = new int[3][];
+        m_cellEnd = new int[3][];
+        double pixelSize[] = new double[]{m_vsx, m_vsy, m_sliceThickness};
+        int cellCount[] = new int[3];
+        for(int k = 0; k < 3; k++){
+            int pmin = m_region[2*k];
+            int pmax = m_region[2*k+1];
+            int count = (int)((pmax - 1 - pmin)*pixelSize[k]/cellSize) + 1;
+            int start[] = new int[count];
+            int end[] = new int[count];
+            for(int p = pmax-1; p >= pmin; p--){
+                int c = min(count-1, (int)((p - pmin)*pixelSize[k]/cellSize));
+                if(end[c] == 0) end[c] = p + 1;
+                start[c] = p;
             }
-            executor.shutdown();
-            
-            try {
-                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            m_cellStart[k] = start;
+            m_cellEnd[k] = end;
+            cellCount[k] = count;
+        }
+        final int ncx = cellCount[0], ncy = cellCount[1], ncz = cellCount[2];
+        final double x0 = m_bounds.xmin + m_region[0]*m_vsx;
+        final double y0 = m_bounds.ymin + m_region[2]*m_vsy;
+        final double z0 = m_bounds.zmin + (m_region[4]+0.5)*m_sliceThickness;
+        final double cs = cellSize;
+        final double threshold = 0.5*sqrt(3)*cellSize;
+        final boolean occupancy[] = new boolean[ncx*ncy*ncz];
+        final AtomicInteger nextLayer = new AtomicInteger(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for(int i = 0; i < threads; i++){
+            executor.submit(new Runnable(){
+                    public void run(){
+                        Vec pnt = new Vec(3);
+                        Vec data = new Vec(MAX_DATA_DIMENSION);
+                        int cz;
+                        while((cz = nextLayer.getAndIncrement()) < ncz){
+                            for(int cy = 0; cy < ncy; cy++){
+                                for(int cx = 0; cx < ncx; cx++){
+                                    pnt.set(x0 + (cx+0.5)*cs, y0 + (cy+0.5)*cs, z0 + (cz+0.5)*cs);
+                                    m_model.getDataValue(pnt, data);
+                                    occupancy[cx + ncx*(cy + ncy*cz)] = (data.v[0] <= threshold);
+                                }
+                            }
+                        }
+                    }
+                });
+        }
+        awaitTermination(executor);
+        m_occupancy = occupancy;
+        if(DEBUG) printf("PolyJetWriter occupancy: [%d x %d x %d] %d ms\n", ncx, ncy, ncz, time() - t0);
+    }
+
+    /**
+       @return rectangles {ixmin, ixmax, iymin, iymax} of slice which may be occupied by model 
+     */
+    ArrayList<int[]> getSliceRegions(int iz){
+
+        ArrayList<int[]> regions = new ArrayList<int[]>();
+        if(isEmpty(m_region) || iz < m_region[4] || iz >= m_region[5])
+            return regions;
+
+        if(m_occupancy == null){
+            regions.add(new int[]{m_region[0],m_region[1],m_region[2],m_region[3]});
+            return regions;
+        }
+
+        int ncx = m_cellStart[0].length;
+        int ncy = m_cellStart[1].length;
+        int ncz = m_cellStart[2].length;
+        int cz = min(ncz - 1, (int)((iz - m_region[4])*m_sliceThickness/m_cellSize));
+        for(int cy = 0; cy < ncy; cy++){
+            int offset = ncx*(cy + ncy*cz);
+            int cx = 0;
+            while(cx < ncx){
+                if(!m_occupancy[offset + cx]){
+                    cx++;
+                    continue;
+                }
+                // run of occupied cells 
+                int cx1 = cx;
+                while(cx1 + 1 < ncx && m_occupancy[offset + cx1 + 1]) cx1++;
+                regions.add(new int[]{m_cellStart[0][cx], m_cellEnd[0][cx1], m_cellStart[1][cy], m_cellEnd[1][cy]});
+                cx = cx1 + 1;
             }
-            
         }
-        printf("PolyJetWriter write() done %d ms\n", (time()-t0));
+        return regions;
     }
 
-    
-    protected void processSlice(int iz, double sliceData[], int imageData[], BufferedImage image){
+    /**
+       calculates data of slice inside of given regions
+       voxels outside of regions are set to exterior 
+     */
+    protected void calculateSliceData(int iz, ArrayList<int[]> regions, double sliceData[], double regionData[]){
 
-        iz += m_firstSlice;
-        if(DEBUG) printf("slice:%d\n",iz);
-        Vector3d origin = new Vector3d(m_bounds.xmin,m_bounds.ymin,m_bounds.zmin + m_sliceThickness*(iz+0.5));
+        double z = m_bounds.zmin + m_sliceThickness*(iz+0.5);
+        Vector3d origin = new Vector3d(m_bounds.xmin,m_bounds.ymin,z);
         try {
-            m_slicer.getSliceData(m_model, origin, m_eu, m_ev, m_nx, m_ny, m_materialCount, sliceData);
+            if(regions.size() == 1 && isFullSlice(regions.get(0))){
+                m_slicer.getSliceData(m_model, origin, m_eu, m_ev, m_nx, m_ny, m_materialCount, sliceData);
+                return;
+            }
+            // exterior 
+            Arrays.fill(sliceData, 0.);
+            for(int i = 0; i < sliceData.length; i += m_materialCount)
+                sliceData[i] = 1.;
+
+            for(int r = 0; r < regions.size(); r++){
+                int rect[] = regions.get(r);
+                int width = rect[1] - rect[0];
+                int rowSize = width*m_materialCount;
+                int rows = max(1, regionData.length/rowSize);
+                for(int iy = rect[2]; iy < rect[3]; iy += rows){
+                    int height = min(rows, rect[3] - iy);
+                    origin.set(m_bounds.xmin + rect[0]*m_vsx, m_bounds.ymin + iy*m_vsy, z);
+                    m_slicer.getSliceData(m_model, origin, m_eu, m_ev, width, height, m_materialCount, regionData);
+                    for(int j = 0; j < height; j++){
+                        System.arraycopy(regionData, j*rowSize, sliceData, voxelOffset(rect[0], iy + j), rowSize);
+                    }
+                }
+            }
         } catch(Exception e){
             e.printStackTrace();
         }
+    }
+
+    final boolean isFullSlice(int rect[]){
+        return rect[0] == 0 && rect[1] == m_nx && rect[2] == 0 && rect[3] == m_ny;
+    }
+
+    /**
+       calculates single slice and submits it to encoder 
+     */
+    protected void processSlice(int iz, double sliceData[], double regionData[], 
+                                BlockingQueue<BufferedImage> imagePool, ExecutorService encoder) throws InterruptedException {
+
+        iz += m_firstSlice;
+        if(DEBUG) printf("slice:%d\n",iz);
+        String outPath = fmt("%s/%s_%d.png", m_outFolder, m_outPrefix, iz);
+        boolean makeMarker = (iz == 0) && mp_makeMaterialsMarker.getValue();
+
+        ArrayList<int[]> regions = getSliceRegions(iz);
+        if(regions.size() == 0 && !makeMarker){
+            // empty slice 
+            encoder.submit(new SliceWriter(null, outPath, imagePool));
+            return;
+        }
+        calculateSliceData(iz, regions, sliceData, regionData);
+
+        BufferedImage image = imagePool.take();
+        int imageData[] = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
         makeImage(sliceData, imageData); 
-        if((iz == 0) && mp_makeMaterialsMarker.getValue()){
+        if(makeMarker){
             for(int i = 0; i < m_materialMarker.length; i++){
                 imageData[i] = m_materialMarker[i];
             }
         }
-        String outPath = fmt("%s/%s_%d.png", m_outFolder, m_outPrefix, iz);
+        encoder.submit(new SliceWriter(image, outPath, imagePool));
+    }
 
-        try {
-            ImageIO.write(image, "png", new File(outPath));
-        } catch(Exception e){
-            throw new RuntimeException(fmt("exception while writing to %s", outPath));
-        }        
+    /**
+       @return PNG encoded empty slice 
+     */
+    synchronized byte[] getBlankSlice() throws IOException {
+
+        if(m_blankSlice == null){
+            BufferedImage image =  new BufferedImage(m_nx, m_ny, BufferedImage.TYPE_INT_ARGB);
+            Arrays.fill(((DataBufferInt)image.getRaster().getDataBuffer()).getData(), m_backgroundColor);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            m_blankSlice = out.toByteArray();
+        }
+        return m_blankSlice;
     }
 
     /*
@@ -690,31 +920,78 @@ public class PolyJetWriter extends BaseParameterizable {
     }   
 
     /**
-       MT runner which makes single slice
+       MT runner which makes slices 
      */
     class SliceMaker implements Runnable{
 
-        SliceManager manager;
-        double sliceData[];
-        int imageData[];
-        BufferedImage image;
-        SliceMaker(SliceManager manager, double sliceData[], int imageData[], BufferedImage image){
-            this.manager = manager;
-            this.sliceData = sliceData;
-            this.imageData = imageData;
-            this.image = image;
+        AtomicInteger nextSlice;
+        int slicesCount;
+        BlockingQueue<BufferedImage> imagePool;
+        ExecutorService encoder;
+
+        SliceMaker(AtomicInteger nextSlice, int slicesCount, BlockingQueue<BufferedImage> imagePool, ExecutorService encoder){
+            this.nextSlice = nextSlice;
+            this.slicesCount = slicesCount;
+            this.imagePool = imagePool;
+            this.encoder = encoder;
         }
         
         public void run(){
-            while(true){
-                Slice slice = manager.getNextSlice();
-                if(slice == null)
-                    break;
-                processSlice(slice.smin, sliceData, imageData, image);
-            } 
+            double sliceData[] = new double[m_nx*m_ny*m_materialCount];
+            double regionData[] = new double[max(m_nx*m_materialCount, min(sliceData.length, MAX_REGION_BUFFER_SIZE))];
+            try {
+                int chunk;
+                // thread processes chunks of consecutive slices to keep slices coherence 
+                while(m_error.get() == null && (chunk = nextSlice.getAndIncrement())*SLICES_CHUNK < slicesCount){
+                    int end = min(slicesCount, (chunk+1)*SLICES_CHUNK);
+                    for(int iz = chunk*SLICES_CHUNK; iz < end; iz++){
+                        processSlice(iz, sliceData, regionData, imagePool, encoder);
+                    }
+                } 
+            } catch(Throwable t){
+                m_error.compareAndSet(null, t);
+            }
         }       
     }
 
+    /**
+       writes slice image into file and returns image into pool 
+     */
+    class SliceWriter implements Runnable{
+
+        BufferedImage image;
+        String outPath;
+        BlockingQueue<BufferedImage> imagePool;
+
+        /**
+           @param image slice image, null for empty slice
+         */
+        SliceWriter(BufferedImage image, String outPath, BlockingQueue<BufferedImage> imagePool){
+            this.image = image;
+            this.outPath = outPath;
+            this.imagePool = imagePool;
+        }
+
+        public void run(){
+            try {
+                if(image != null){
+                    ImageIO.write(image, "png", new File(outPath));
+                } else {
+                    FileOutputStream out = new FileOutputStream(outPath);
+                    try {
+                        out.write(getBlankSlice());
+                    } finally {
+                        out.close();
+                    }
+                }
+            } catch(Throwable t){
+                m_error.compareAndSet(null, new IOException(fmt("exception while writing to %s", outPath), t));
+            } finally {
+                if(image != null) imagePool.add(image);
+            }
+        }
+    }
+
     /**
        Converts RGBA data into mix of materials 
        
@@ -14,6 +14,7 @@ package abfab3d.io.output;
 import abfab3d.core.AttributeGrid;
 import abfab3d.core.GridDataDesc;
 import abfab3d.core.GridDataChannel;
+import abfab3d.util.AbFab3DGlobals;
 import org.apache.commons.io.IOUtils;
 
 
@@ -38,6 +39,7 @@ public class SVXWriter {
 
 
     int m_orientation = DEFAULT_ORIENTATION;
+    int m_threadCount = 0;
 
     public SVXWriter(){
         this(DEFAULT_ORIENTATION);
@@ -47,6 +49,14 @@ public class SVXWriter {
         m_orientation = orientation;
     }
 
+    /**
+       set count of threads used to encode slices 
+       @param count threads count, 0 means use all available processors 
+     */
+    public void setThreadCount(int count){
+        m_threadCount = count;
+    }
+
     /**
      * Writes a grid out to an svx file
      * @param grid
@@ -79,7 +89,6 @@ public class SVXWriter {
     public void write(AttributeGrid grid, OutputStream os) {
         ZipOutputStream zos = null;
 
-        printf("here1\n");
         try {
 
             zos = new ZipOutputStream(os);
@@ -90,6 +99,7 @@ public class SVXWriter {
             zos.closeEntry();
 
             SlicesWriter sw = new SlicesWriter();
+            sw.setThreadCount(AbFab3DGlobals.getThreadCount(m_threadCount));
             GridDataDesc attDesc = grid.getDataDesc();
 
             for(int i = 0; i < attDesc.size(); i++){
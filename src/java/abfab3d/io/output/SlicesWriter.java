@@ -27,22 +27,32 @@ import java.awt.image.IndexColorModel;
 import java.awt.RenderingHints;
 
 import java.io.OutputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 
 import abfab3d.core.AttributeGrid;
 import abfab3d.core.Grid;
 import abfab3d.core.LongConverter;
+import abfab3d.grid.util.GridUtil;
 import abfab3d.util.DefaultLongConverter;
 
 
 import static abfab3d.core.MathUtil.clamp;
 import static abfab3d.core.Output.fmt;
 import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
 
 
 /**
@@ -98,6 +108,9 @@ public class SlicesWriter {
     /** Skip if the slice % modSkip == 0 and modeSkip != 0 */
     int m_modSkip;
 
+    // count of threads used to encode slices written to zip stream
+    int m_threadCount = 1;
+
     public void setBounds(int xmin, int xmax, int ymin, int ymax, int zmin, int zmax){
 
         this.xmin = xmin;
@@ -173,6 +186,15 @@ public class SlicesWriter {
 
     }
 
+    /**
+       set count of threads used to encode slices written into zip stream 
+       slices are encoded in parallel and written in order as STORED zip entries
+     */
+    public void setThreadCount(int count){
+        if(count < 1) count = 1;
+        m_threadCount = count;
+    }
+
     /**
 
      */
@@ -245,6 +267,12 @@ public class SlicesWriter {
 
         if(DEBUG) printf("SlicesWriter.writeSlices(%s)\n",fileTemplate);
 
+        // grids which are not safe for concurrent reads are written in single thread 
+        if(m_threadCount > 1 && (os instanceof ZipOutputStream) && GridUtil.isConcurrentReadSafe(grid)){
+            writeSlicesMT(grid, (ZipOutputStream)os, fileTemplate, firstSlice, firstFile, sliceCount, orientation, voxelBitCount, voxelDataConverter);
+            return;
+        }
+
         int imgSize[] = getSliceSize(grid, orientation);
         int voxelByteCount = getVoxelByteCount(voxelBitCount);
         int dataBitCount = getDataBitCount(voxelBitCount);
@@ -275,6 +303,92 @@ public class SlicesWriter {
         }        
     }
    
+    /**
+       encodes slices in parallel and writes them to zip in slice order 
+       encoded images are already compressed and are stored without additional compression 
+     */
+    void writeSlicesMT(final AttributeGrid grid, ZipOutputStream zos, String fileTemplate,
+                       int firstSlice, int firstFile, int sliceCount, 
+                       final int orientation, final int voxelBitCount, final LongConverter voxelDataConverter) throws IOException {
+
+        long t0 = time();
+        final int imgSize[] = getSliceSize(grid, orientation);
+        final int dataBitCount = getDataBitCount(voxelBitCount);
+        // limit count of encoded slices held in memory 
+        int maxPending = 2*m_threadCount;
+
+        // each thread reuses its own slice image 
+        final ThreadLocal<BufferedImage> images = new ThreadLocal<BufferedImage>();
+        ExecutorService executor = Executors.newFixedThreadPool(m_threadCount);
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>(maxPending);
+        CRC32 crc = new CRC32();
+        int next = 0;
+        try {
+            for(int i = 0; i < sliceCount; i++){
+                while(next < sliceCount && pending.size() < maxPending){
+                    final int slice = next + firstSlice;
+                    pending.add(executor.submit(new Callable<byte[]>() {
+                            public byte[] call() throws IOException {
+                                BufferedImage image = images.get();
+                                if(image == null){
+                                    image = makeImage(imgSize[0], imgSize[1], voxelBitCount);
+                                    images.set(image);
+                                }
+                                return encodeSlice(image, grid, slice, orientation, voxelBitCount, voxelDataConverter, dataBitCount);
+                            }
+                        }));
+                    next++;
+                }
+                byte data[] = getResult(pending.remove());
+
+                ZipEntry ze = new ZipEntry(fmt(fileTemplate, i + firstFile));
+                crc.reset();
+                crc.update(data, 0, data.length);
+                ze.setMethod(ZipEntry.STORED);
+                ze.setSize(data.length);
+                ze.setCompressedSize(data.length);
+                ze.setCrc(crc.getValue());
+                zos.putNextEntry(ze);
+                zos.write(data);
+                zos.closeEntry();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if(DEBUG) {
+            long t = Math.max(time() - t0, 1);
+            printf("writeSlicesMT(%s) threads: %d slices: %d %d ms (%5.1f slices/sec)\n", 
+                   fileTemplate, m_threadCount, sliceCount, t, sliceCount*1000./t);
+        }
+    }
+
+    /**
+       renders single slice into image and returns encoded image 
+     */
+    byte[] encodeSlice(BufferedImage image, AttributeGrid grid, int slice, int orientation, 
+                       int voxelBitCount, LongConverter voxelDataConverter, int dataBitCount) throws IOException {
+
+        byte[] sliceData = ((DataBufferByte)(image.getRaster().getDataBuffer())).getData();
+        makeSliceData(image.getWidth(), image.getHeight(), slice, orientation, grid, voxelBitCount, voxelDataConverter, sliceData, dataBitCount);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(sliceData.length/4 + 64);
+        ImageIO.write(image, m_imageFileType, bos);
+        return bos.toByteArray();
+    }
+
+    static byte[] getResult(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("slice encoding interrupted");
+        } catch(ExecutionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) 
+                throw (IOException)cause;
+            throw new IOException("slice encoding failed", cause);
+        }
+    }
+
     /**
        convert grid data into single slice 
        
@@ -120,18 +120,28 @@ public class TextureRenderer {
                                    tex[2][0],tex[2][1]);       
     }
 
+    /**
+       restricts rendering to the rectangle of texture pixels [u0, u1) x [v0, v1)
+       pixels outside of the rectangle are not written 
+       it allows several renderers to work in parallel on non overlapping tiles of the same texture 
+     */
+    public void setClip(int u0, int v0, int u1, int v1){
+
+        m_pixelRenderer.setClip(Math.max(u0, 0), Math.max(v0, 0), Math.min(u1, m_nu), Math.min(v1, m_nv));
+
+    }
    
     /**
        renders individual pixels of texture 
+       per pixel work does no allocations 
      */
     class TexturePixelRenderer implements TriangleRenderer.PixelRenderer {
 
         double pnt[]= new double[3];
-        double color[][] = new double[8][3];
-        double icolor[] = new double[3];
-        double colorChannel[] = new double[8];
         double m_scaleFactor = 1;
         double m_xmin, m_ymin, m_zmin;
+        // clip rectangle 
+        int m_u0, m_v0, m_u1, m_v1;
 
         TexturePixelRenderer(){
 
@@ -140,6 +150,14 @@ public class TextureRenderer {
             m_xmin = bounds.xmin;
             m_ymin = bounds.ymin;
             m_zmin = bounds.zmin;
+            setClip(0, 0, m_nu, m_nv);
+        }
+
+        void setClip(int u0, int v0, int u1, int v1){
+            m_u0 = u0;
+            m_v0 = v0;
+            m_u1 = u1;
+            m_v1 = v1;
         }
 
         /**
@@ -148,7 +166,7 @@ public class TextureRenderer {
         public void setPixel(int u, int v){
 
             // transform pixel into 3D space 
-            if(u < 0 || u >= m_nu || v < 0 || v >= m_nv)
+            if(u < m_u0 || u >= m_u1 || v < m_v0 || v >= m_v1)
                 return;
 
             m_triInterpolator.interpolate(u+0.5, v+0.5, pnt);
@@ -169,95 +187,67 @@ public class TextureRenderer {
                 dy = y - iy,
                 dz = z - iz;
 
-            //printf("%3d,%3d,%3d\n", iz, iy, iz);
-            getPointColor(ix,   iy,   iz,color[0]);
-            getPointColor(ix+1, iy,   iz,color[1]);
-            getPointColor(ix,   iy+1, iz,color[2]);
-            getPointColor(ix+1, iy+1, iz,color[3]);
-            getPointColor(ix,   iy,   iz+1,color[4]);
-            getPointColor(ix+1, iy,   iz+1,color[5]);
-            getPointColor(ix,   iy+1, iz+1,color[6]);
-            getPointColor(ix+1, iy+1, iz+1,color[7]);
+            long 
+                c0 = getPointColor(ix,   iy,   iz),
+                c1 = getPointColor(ix+1, iy,   iz),
+                c2 = getPointColor(ix,   iy+1, iz),
+                c3 = getPointColor(ix+1, iy+1, iz),
+                c4 = getPointColor(ix,   iy,   iz+1),
+                c5 = getPointColor(ix+1, iy,   iz+1),
+                c6 = getPointColor(ix,   iy+1, iz+1),
+                c7 = getPointColor(ix+1, iy+1, iz+1);
 
-            interpolateColors(dx, dy, dz, color, icolor);
+            double 
+                x1 = 1-dx,
+                y1 = 1-dy,
+                z1 = 1-dz;
 
-            //if(DEBUG && color[0][0] != color[1][0] && debugCount-- > 0) 
-            //    printf("u: %3d v: %3d (%7.5f %7.5f %7.5f): (%4.2f %4.2f %4.2f %4.2f %4.2f %4.2f %4.2f %4.2f): %4.2f\n", u, v, 
-            //           dx, dy, dz, 
-            //           color[0][0],color[1][0],color[2][0],color[3][0],color[4][0],color[5][0],color[6][0],color[7][0], icolor[0]);
+            double 
+                r = interpolateChannel(dx, dy, dz, x1, y1, z1, 0, c0, c1, c2, c3, c4, c5, c6, c7),
+                g = interpolateChannel(dx, dy, dz, x1, y1, z1, 8, c0, c1, c2, c3, c4, c5, c6, c7),
+                b = interpolateChannel(dx, dy, dz, x1, y1, z1, 16, c0, c1, c2, c3, c4, c5, c6, c7);
 
             // write pixel into textureGrid 
-            m_textureGrid.setAttribute(u, 0, v, makeAtt(icolor));   
+            m_textureGrid.setAttribute(u, 0, v, makeAtt(r, g, b));   
         }
 
         // TODO - shall thid be done by output data channel ? 
-        long makeAtt(double c[]){
-//            return (((int)(c[0]*255))& 0xFF) | ((((int)(c[1]*255))&0xFF)<<8) | ((((int)(c[2]*255))&0xFF)<<16);
+        final long makeAtt(double r, double g, double b){
 
-            return (((int)(c[2]*255))& 0xFF) | ((((int)(c[1]*255))&0xFF)<<8) | ((((int)(c[0]*255))&0xFF)<<16);
+            return (((int)(b*255))& 0xFF) | ((((int)(g*255))&0xFF)<<8) | ((((int)(r*255))&0xFF)<<16);
         }
 
-        // get color of the given voxel 
-        void getPointColor(int x, int y, int z, double color[]){
+        // get packed color of the given voxel 
+        final long getPointColor(int x, int y, int z){
 
             if(x < 0) x = -x;
             if(y < 0) y = -y;
             if(z < 0) z = -z;
             if(x >= m_nx) x = x % m_nx;
             if(y >= m_ny) y = y % m_ny;
-            if(z >= m_nz) z = z % m_ny;
-            getColorComponents(m_colorMaker.get(m_dataGrid.getAttribute(x,y,z)), color); 
+            if(z >= m_nz) z = z % m_nz;
+            return m_colorMaker.get(m_dataGrid.getAttribute(x,y,z)); 
             
         }
         
-        void getColorComponents(long c, double color[]){
-
-            color[0] = ((c      ) & 0xFF)/255.;
-            color[1] = ((c >>  8) & 0xFF)/255.;
-            color[2] = ((c >> 16) & 0xFF)/255.;
-
-        }
-
         //
-        // interpolate colors between vertices of a cube 
+        // interpolate single color channel between vertices of a cube 
         //
-        final void interpolateColors(double x, double y, double z, double c[][], double ic[]){
-            
-            //if(x < 0 || x > 1 || y < 0 || y > 1 || z < 0 || z > 1)
-            //    throw new RuntimeException(fmt("bad params:%5.3f %5.3f %5.3f",x,y,z));
-
-            double 
-                x1 = 1-x,
-                y1 = 1-y,
-                z1 = 1-z;
-            
-            copyColor(c, 0, colorChannel);
-            ic[0] = interpolateColor(x, y, z, x1, y1, z1,colorChannel);
-            copyColor(c, 1, colorChannel);
-            ic[1] = interpolateColor(x, y, z, x1, y1, z1, colorChannel);
-            copyColor(c, 2, colorChannel);
-            ic[2] = interpolateColor(x, y, z, x1, y1, z1, colorChannel);            
-        }
-
-        final void copyColor(double c[][], int cindex, double channel[]){
-            
-            for(int k =0; k < channel.length; k++){
-                channel[k] = c[k][cindex];
-            }            
-        }
-
-        //
-        // interpolate single color channel 
-        //
-        final double interpolateColor(double x, double y, double z, 
-                                      double x1, double y1, double z1, double c[]){
+        final double interpolateChannel(double x, double y, double z, 
+                                        double x1, double y1, double z1, int shift,
+                                        long c0, long c1, long c2, long c3, long c4, long c5, long c6, long c7){
             return 
-                //x1 * c[0] + x * c[1];
-                //z1 * c[0] + z * c[4];            
-            x1 *(y1 * (z1 * c[0] + z  * c[4]) +  y*(z1 * c[2] + z * c[6])) +   
-               x  *(y1 * (z1 * c[1] + z  * c[5]) +  y*(z1 * c[3] + z * c[7]));
+                x1 *(y1 * (z1 * channel(c0,shift) + z  * channel(c4,shift)) +  y*(z1 * channel(c2,shift) + z * channel(c6,shift))) +   
+                x  *(y1 * (z1 * channel(c1,shift) + z  * channel(c5,shift)) +  y*(z1 * channel(c3,shift) + z * channel(c7,shift)));
         }
 
     } //   class TexturePixelRenderer 
 
-}//    class TextureRenderer 
\ No newline at end of file
+    //
+    // value of 8 bit color channel in packed color 
+    //
+    static final double channel(long c, int shift){
+        return ((c >> shift) & 0xFF)/255.;
+    }
+
+}//    class TextureRenderer
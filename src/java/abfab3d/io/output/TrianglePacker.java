@@ -17,6 +17,11 @@ import java.awt.Color;
 import java.awt.geom.GeneralPath;
 
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.vecmath.Vector3d;
 import javax.vecmath.Vector2d;
@@ -27,11 +32,14 @@ import abfab3d.core.LongConverter;
 import abfab3d.core.TriangleCollector;
 import abfab3d.core.TriangleProducer;
 import abfab3d.util.RectPacking;
+import abfab3d.util.AbFab3DGlobals;
 
 import abfab3d.core.AttributeGrid;
+import abfab3d.grid.util.GridUtil;
 
 import static abfab3d.core.Output.printf;
 import static abfab3d.core.Output.time;
+import static abfab3d.core.MathUtil.extendTriangle;
 
 /**
    class responsible for packing and rendering textured triangles into 2D texure image 
@@ -64,8 +72,28 @@ public class TrianglePacker implements TriangleCollector, TriangleProducer {
     // rectangles packer 
     RectPacking m_packer; 
     double m_pixelSize = 1;
+    // count of threads used for rendering 
+    int m_threadCount = 1;
+    // size of texture tiles rendered in parallel (in pixels)
+    int m_tileSize = 256;
     
     public TrianglePacker(){
+        m_threadCount = AbFab3DGlobals.getThreadCount(0);
+    }
+
+    /**
+       set count of threads used to render textured triangles 
+       values less than 1 mean to use all available processors 
+     */
+    public void setThreadCount(int count){
+        m_threadCount = AbFab3DGlobals.getThreadCount(count);
+    }
+
+    /**
+       set size of texture tiles which are rendered in parallel 
+     */
+    public void setTileSize(int size){
+        m_tileSize = Math.max(size, 16);
     }
 
     public void setTexturePixelSize(double pixelSize){
@@ -278,6 +306,10 @@ public class TrianglePacker implements TriangleCollector, TriangleProducer {
 
     /**
        render triangles into texture 
+
+       if thread count is more than 1 the texture is split into non overlapping square tiles. 
+       triangles are binned into tiles which they overlap and each tile is rendered by single thread.
+       pixels are written in the same order as in single threaded rendering, so the result is identical
        
        @param dataGrid 3D grid used to make colors
        @param texGrid 2D grid (3D grid with single y-slice) to accept the texture 
@@ -285,15 +317,131 @@ public class TrianglePacker implements TriangleCollector, TriangleProducer {
      */
     public void renderTexturedTriangles(AttributeGrid dataGrid, LongConverter colorMaker, AttributeGrid texGrid, double extWidth){
         
-        TextureRenderer tr = new TextureRenderer(dataGrid, colorMaker, texGrid);
+        long t0 = time();
+        int nu = texGrid.getWidth();
+        int nv = texGrid.getDepth();
+        int tilesU = (nu + m_tileSize - 1)/m_tileSize;
+        int tilesV = (nv + m_tileSize - 1)/m_tileSize;
+        int tileCount = tilesU*tilesV;
+        // grids which are not safe for concurrent reads are rendered in single thread 
+        int maxThreads = (GridUtil.isConcurrentReadSafe(dataGrid) && GridUtil.isConcurrentReadSafe(texGrid))? m_threadCount: 1;
+
+        if(maxThreads <= 1 || tileCount <= 1){
+            TextureRenderer tr = new TextureRenderer(dataGrid, colorMaker, texGrid);
+            renderTriangles(tr, null, 0, m_triCount, extWidth);
+            if(DEBUG)printf("renderTexturedTriangles() %d ms\n", time()-t0);
+            return;
+        }
+
+        // bin triangles into tiles. triangles are stored in tiles in increasing order
+        int tileStart[] = new int[tileCount+1];
+        int tileBounds[] = new int[4*m_triCount];
+        double tex[][] = new double[3][2];
+        double extTri[][] = new double[3][2];
+        double lines[][] = new double[3][3];
+        for(int k = 0; k < m_triCount; k++){
+            getTileBounds(k, extWidth, tilesU, tilesV, tileBounds, tex, extTri, lines);
+            int k4 = 4*k;
+            for(int tv = tileBounds[k4+2]; tv <= tileBounds[k4+3]; tv++){
+                for(int tu = tileBounds[k4]; tu <= tileBounds[k4+1]; tu++){
+                    tileStart[tu + tv*tilesU + 1]++;
+                }
+            }
+        }
+        for(int t = 0; t < tileCount; t++){
+            tileStart[t+1] += tileStart[t];
+        }
+        int tileTri[] = new int[tileStart[tileCount]];
+        int tilePos[] = new int[tileCount];
+        System.arraycopy(tileStart, 0, tilePos, 0, tileCount);
+        for(int k = 0; k < m_triCount; k++){
+            int k4 = 4*k;
+            for(int tv = tileBounds[k4+2]; tv <= tileBounds[k4+3]; tv++){
+                for(int tu = tileBounds[k4]; tu <= tileBounds[k4+1]; tu++){
+                    tileTri[tilePos[tu + tv*tilesU]++] = k;
+                }
+            }
+        }
+
+        int threadCount = Math.min(maxThreads, tileCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        AtomicInteger nextTile = new AtomicInteger(0);
+        try {
+            Future<?> futures[] = new Future<?>[threadCount];
+            for(int i = 0; i < threadCount; i++){
+                futures[i] = executor.submit(new TileRenderer(new TextureRenderer(dataGrid, colorMaker, texGrid), nextTile, 
+                                                              tileStart, tileTri, tilesU, extWidth));
+            }
+            for(int i = 0; i < threadCount; i++){
+                try {
+                    futures[i].get();
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("texture rendering interrupted");
+                } catch(ExecutionException e){
+                    Throwable cause = e.getCause();
+                    if(cause instanceof RuntimeException)
+                        throw (RuntimeException)cause;
+                    if(cause instanceof Error)
+                        throw (Error)cause;
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if(DEBUG)printf("renderTexturedTriangles() tiles: %d threads: %d %d ms\n", tileCount, threadCount, time()-t0);
+    }
+
+    /**
+       calculates range of tiles covered by bounds of rendered (possibly extended) triangle 
+       result is stored in bounds[4*k] as (tuMin, tuMax, tvMin, tvMax)
+     */
+    private void getTileBounds(int k, double extWidth, int tilesU, int tilesV, int bounds[], 
+                               double tex[][], double extTri[][], double lines[][]){
+
+        int texindex = 6*k;
+        tex[0][0] = m_texCoord[texindex];
+        tex[0][1] = m_texCoord[texindex+1];
+        tex[1][0] = m_texCoord[texindex+2];
+        tex[1][1] = m_texCoord[texindex+3];
+        tex[2][0] = m_texCoord[texindex+4];
+        tex[2][1] = m_texCoord[texindex+5];
+        double t[][] = tex;
+        if(extWidth != 0.0){
+            extendTriangle(tex, extWidth, lines, extTri);
+            t = extTri;
+        }
+        // one pixel margin for rounding of pixel centers 
+        double 
+            umin = Math.min(t[0][0], Math.min(t[1][0], t[2][0])) - 1,
+            umax = Math.max(t[0][0], Math.max(t[1][0], t[2][0])) + 1,
+            vmin = Math.min(t[0][1], Math.min(t[1][1], t[2][1])) - 1,
+            vmax = Math.max(t[0][1], Math.max(t[1][1], t[2][1])) + 1;
+        int k4 = 4*k;
+        bounds[k4]   = clamp((int)Math.floor(umin/m_tileSize), 0, tilesU-1);
+        bounds[k4+1] = clamp((int)Math.floor(umax/m_tileSize), 0, tilesU-1);
+        bounds[k4+2] = clamp((int)Math.floor(vmin/m_tileSize), 0, tilesV-1);
+        bounds[k4+3] = clamp((int)Math.floor(vmax/m_tileSize), 0, tilesV-1);
+    }
+
+    static final int clamp(int x, int min, int max){
+        return (x < min)? min: ((x > max)? max: x);
+    }
+
+    /**
+       renders triangles with indices from list[start] to list[end-1] 
+       or triangles with indices from start to end-1 if list is null
+     */
+    void renderTriangles(TextureRenderer tr, int list[], int start, int end, double extWidth){
 
         double tri[][] = new double[3][3];
         double tex[][] = new double[3][2];
         double extTri[][] = new double[3][2];
         double triLines[][] = new double[3][3];
 
-
-        for(int k = 0; k < m_triCount; k++){
+        for(int i = start; i < end; i++){
+            int k = (list != null)? list[i]: i;
             int tindex = 3*k;
             Vector3d 
                 v0 = m_tri.get(tindex),
@@ -317,6 +465,44 @@ public class TrianglePacker implements TriangleCollector, TriangleProducer {
                 tr.renderTriangleExtended(tri, tex, extWidth, extTri, triLines);
         }
     }
+
+    /**
+       renders tiles of texture taken from common tiles counter 
+     */
+    class TileRenderer implements Runnable {
+
+        TextureRenderer renderer;
+        AtomicInteger nextTile;
+        int tileStart[];
+        int tileTri[];
+        int tilesU;
+        double extWidth;
+        
+        TileRenderer(TextureRenderer renderer, AtomicInteger nextTile, int tileStart[], int tileTri[], int tilesU, double extWidth){
+            this.renderer = renderer;
+            this.nextTile = nextTile;
+            this.tileStart = tileStart;
+            this.tileTri = tileTri;
+            this.tilesU = tilesU;
+            this.extWidth = extWidth;
+        }
+
+        public void run(){
+            
+            int tileCount = tileStart.length-1;
+            while(true){
+                int t = nextTile.getAndIncrement();
+                if(t >= tileCount)
+                    break;
+                if(tileStart[t] == tileStart[t+1])
+                    continue;
+                int u0 = (t % tilesU)*m_tileSize;
+                int v0 = (t / tilesU)*m_tileSize;
+                renderer.setClip(u0, v0, u0 + m_tileSize, v0 + m_tileSize);
+                renderTriangles(renderer, tileTri, tileStart[t], tileStart[t+1], extWidth);
+            }
+        }
+    } // class TileRenderer 
     
     
     /**
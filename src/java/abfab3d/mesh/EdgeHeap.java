@@ -0,0 +1,238 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2012
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+package abfab3d.mesh;
+
+
+/**
+   indexed binary min heap of edge keys ordered by edge cost
+
+   keys are integers in range [0, keyCount)
+   each key can be present in the heap at most once
+   cost of key present in the heap can be updated in O(log(n))
+
+   several heaps may share the same array of key positions if they use disjoint sets of keys
+*/
+public class EdgeHeap {
+
+    public static final int NO_DATA = -1;
+
+    // heap ordered keys
+    int m_keys[];
+    // costs of keys in heap order
+    double m_costs[];
+    // position of each key in heap or NO_DATA
+    int m_position[];
+    // count of keys in the heap
+    int m_size;
+
+    /**
+       heap which can hold keys in range [0, keyCount)
+     */
+    public EdgeHeap(int keyCount){
+        this(keyCount, makePositions(keyCount));
+    }
+
+    /**
+       heap with capacity for given count of keys which uses external array of key positions
+       positions of keys used by this heap have to be initialized to NO_DATA
+     */
+    public EdgeHeap(int capacity, int position[]){
+
+        m_keys = new int[Math.max(capacity,1)];
+        m_costs = new double[m_keys.length];
+        m_position = position;
+        m_size = 0;
+
+    }
+
+    /**
+       allocates array of key positions suitable for sharing between several heaps
+     */
+    public static int[] makePositions(int keyCount){
+
+        int pos[] = new int[keyCount];
+        java.util.Arrays.fill(pos, NO_DATA);
+        return pos;
+
+    }
+
+    public int size(){
+        return m_size;
+    }
+
+    public boolean isEmpty(){
+        return (m_size == 0);
+    }
+
+    public boolean contains(int key){
+        return (m_position[key] != NO_DATA);
+    }
+
+    /**
+       @return cost of the key or Double.MAX_VALUE if key is not in the heap
+     */
+    public double getCost(int key){
+        int pos = m_position[key];
+        if(pos == NO_DATA)
+            return Double.MAX_VALUE;
+        return m_costs[pos];
+    }
+
+    /**
+       @return the key with minimal cost or NO_DATA if heap is empty
+     */
+    public int peek(){
+        if(m_size == 0)
+            return NO_DATA;
+        return m_keys[0];
+    }
+
+    /**
+       @return minimal cost or Double.MAX_VALUE if heap is empty
+     */
+    public double peekCost(){
+        if(m_size == 0)
+            return Double.MAX_VALUE;
+        return m_costs[0];
+    }
+
+    /**
+       removes the key with minimal cost and returns it
+       @return the key or NO_DATA if heap is empty
+     */
+    public int pop(){
+
+        if(m_size == 0)
+            return NO_DATA;
+        int key = m_keys[0];
+        removeAt(0);
+        return key;
+
+    }
+
+    /**
+       inserts new key or updates the cost of key already present in the heap
+     */
+    public void put(int key, double cost){
+
+        int pos = m_position[key];
+        if(pos == NO_DATA){
+            if(m_size == m_keys.length)
+                grow();
+            pos = m_size++;
+            m_keys[pos] = key;
+            m_costs[pos] = cost;
+            m_position[key] = pos;
+            siftUp(pos);
+        } else {
+            double oldCost = m_costs[pos];
+            m_costs[pos] = cost;
+            if(cost < oldCost)
+                siftUp(pos);
+            else
+                siftDown(pos);
+        }
+    }
+
+    /**
+       removes key from the heap
+       @return true if key was present in the heap
+     */
+    public boolean remove(int key){
+
+        int pos = m_position[key];
+        if(pos == NO_DATA)
+            return false;
+        removeAt(pos);
+        return true;
+
+    }
+
+    /**
+       removes all keys
+     */
+    public void clear(){
+        for(int i = 0; i < m_size; i++){
+            m_position[m_keys[i]] = NO_DATA;
+        }
+        m_size = 0;
+    }
+
+    private void removeAt(int pos){
+
+        int key = m_keys[pos];
+        m_position[key] = NO_DATA;
+        int last = --m_size;
+        if(pos == last)
+            return;
+
+        m_keys[pos] = m_keys[last];
+        m_costs[pos] = m_costs[last];
+        m_position[m_keys[pos]] = pos;
+        if(pos > 0 && m_costs[pos] < m_costs[(pos-1) >> 1])
+            siftUp(pos);
+        else
+            siftDown(pos);
+    }
+
+    private void siftUp(int pos){
+
+        int key = m_keys[pos];
+        double cost = m_costs[pos];
+        while(pos > 0){
+            int parent = (pos-1) >> 1;
+            if(m_costs[parent] <= cost)
+                break;
+            m_keys[pos] = m_keys[parent];
+            m_costs[pos] = m_costs[parent];
+            m_position[m_keys[pos]] = pos;
+            pos = parent;
+        }
+        m_keys[pos] = key;
+        m_costs[pos] = cost;
+        m_position[key] = pos;
+    }
+
+    private void siftDown(int pos){
+
+        int key = m_keys[pos];
+        double cost = m_costs[pos];
+        int half = m_size >> 1;
+        while(pos < half){
+            int child = 2*pos + 1;
+            int right = child + 1;
+            if(right < m_size && m_costs[right] < m_costs[child])
+                child = right;
+            if(cost <= m_costs[child])
+                break;
+            m_keys[pos] = m_keys[child];
+            m_costs[pos] = m_costs[child];
+            m_position[m_keys[pos]] = pos;
+            pos = child;
+        }
+        m_keys[pos] = key;
+        m_costs[pos] = cost;
+        m_position[key] = pos;
+    }
+
+    private void grow(){
+
+        int n = m_keys.length*2;
+        int keys[] = new int[n];
+        double costs[] = new double[n];
+        System.arraycopy(m_keys, 0, keys, 0, m_size);
+        System.arraycopy(m_costs, 0, costs, 0, m_size);
+        m_keys = keys;
+        m_costs = costs;
+    }
+
+}
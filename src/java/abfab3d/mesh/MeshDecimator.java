@@ -681,6 +681,13 @@ public class MeshDecimator {
             this.quadrics = quadrics;
         }
 
+        /**
+           use mesh with vertex quadrics already initialized by another ErrorQuadric 
+         */
+        void setMesh(TriangleMesh mesh){
+            m_mesh = mesh;
+        }
+
         public void init(TriangleMesh mesh){
             m_mesh = mesh;
 
@@ -0,0 +1,565 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2012
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+package abfab3d.mesh;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Point3d;
+
+import abfab3d.util.EdgeCollapseParams;
+import abfab3d.util.EdgeCollapseResult;
+import abfab3d.util.StructMixedData;
+import abfab3d.util.TriangleMesh;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
+/**
+   decimator to reduce face count of triangle mesh
+
+   priority queue version
+
+   each internal vertex has Quadric accumulated from surrounding faces.
+   all collapsable edges are kept in indexed binary heap ordered by quadric error of collapse.
+   the edge with globally minimal error is collapsed first.
+   after collapse the merged quadric is assigned to the remaining vertex and
+   costs of all edges incident to that vertex are updated in the heap.
+   decimation stops when target face count is reached or minimal error exceeds maxCollapseError
+
+   if thread count is greater than 1 the mesh is split into slabs along the longest axis.
+   each slab is decimated by separate thread with its own heap. Vertices adjacent to other slab
+   (partition border) are locked and their edges are not collapsed during parallel pass.
+   the remaining faces are removed in final pass with single global heap which includes border edges.
+
+ */
+public class MeshDecimatorPQ extends MeshDecimator {
+
+    static final boolean DEBUG = false;
+
+    // minimal count of collapsable edges per thread to use parallel pass
+    static final int MIN_PARTITION_EDGES = 10000;
+    // max length of vertex ring traversal
+    static final int MAX_RING_SIZE = 1000;
+    // partition of all edges, used by final pass
+    static final int PARTITION_ALL = -1;
+
+    protected int m_threadCount = 1;
+
+    // key of each collapsable edge is stored in Edge.userData
+    // edge for each key
+    protected int m_keyEdges[];
+    // count of keys
+    protected int m_keyCount;
+    // heap positions shared by partition heaps
+    protected int m_heapPositions[];
+    // partition of each vertex
+    protected int m_vertexPartition[];
+    // true if vertex has neighbors in other partition
+    protected boolean m_borderVertex[];
+
+    // statistics
+    protected int m_heapUpdateCount;
+
+    /**
+       the instance of the MeshDecimatorPQ can be reused for several meshes
+     */
+    public MeshDecimatorPQ(){
+
+    }
+
+    /**
+       set count of threads to use for parallel partitioned pass
+       values <= 1 mean single threaded decimation
+     */
+    public void setThreadCount(int count){
+
+        m_threadCount = count;
+
+    }
+
+    /**
+       @return count of threads used for parallel partitioned pass
+     */
+    public int getThreadCount(){
+
+        return m_threadCount;
+
+    }
+
+    /**
+       decimates the mesh to have targetFaceCount
+
+       returns final face count of the mesh
+     */
+    public int processMesh(TriangleMesh mesh, int targetFaceCount){
+
+        long t0 = time();
+        m_mesh = mesh;
+        m_faceCount = mesh.getFaceCount();
+        m_origFaceCount = m_faceCount;
+        m_surfacePinchCount = 0;
+        m_faceFlipCount = 0;
+        m_longEdgeCount = 0;
+        m_ignoreCount = 0;
+        m_edgeTestCount = 0;
+        m_attemptCount = 0;
+        m_collapseCount = 0;
+        m_heapUpdateCount = 0;
+        m_maxError = 0;
+
+        int partCount = Math.max(1, m_threadCount);
+        // vertex quadrics and one scratch quadric per partition
+        quadrics = new StructMixedData(new Quadric(), mesh.getVertexCount() + partCount + 1);
+
+        ErrorQuadric errorFunction = new ErrorQuadric(quadrics);
+        errorFunction.init(m_mesh);
+        m_errorFunction = errorFunction;
+
+        initEdgeKeys();
+
+        if(m_keyCount < MINIMAL_EDGE_COUNT || m_faceCount <= targetFaceCount) {
+            m_mesh = null;
+            m_errorFunction = null;
+            return m_faceCount;
+        }
+
+        if(DEBUG) printf("MeshDecimatorPQ init: %d ms\n", (time() - t0));
+
+        if(partCount > 1 && m_keyCount > partCount * MIN_PARTITION_EDGES) {
+            processPartitions(partCount, targetFaceCount);
+        } else {
+            m_vertexPartition = null;
+            m_borderVertex = null;
+        }
+
+        if(m_faceCount > targetFaceCount) {
+            // final pass over all remaining edges
+            m_vertexPartition = null;
+            m_borderVertex = null;
+            m_heapPositions = EdgeHeap.makePositions(m_keyCount);
+            PartitionRunner runner = new PartitionRunner(PARTITION_ALL, m_faceCount - targetFaceCount, Quadric.create(quadrics));
+            runner.run();
+            addStat(runner);
+        }
+
+        if(DEBUG) printf("MeshDecimatorPQ done: %d ms\n", (time() - t0));
+
+        if(m_printStat){
+            printStat();
+        }
+
+        int actualFaceCount = mesh.getFaceCount();
+
+        // release references for faster garbage collection
+        m_errorFunction = null;
+        m_mesh = null;
+        m_keyEdges = null;
+        m_heapPositions = null;
+        m_vertexPartition = null;
+        m_borderVertex = null;
+
+        return actualFaceCount;
+
+    }
+
+    public void printStat() {
+        super.printStat();
+        printf("   heap updates: %d\n", m_heapUpdateCount);
+        printf("   max error: %10.3e\n", m_maxError);
+    }
+
+    /**
+       assigns keys to edges with both vertices having quadrics
+     */
+    protected void initEdgeKeys(){
+
+        StructMixedData edges = m_mesh.getEdges();
+        StructMixedData halfEdges = m_mesh.getHalfEdges();
+        StructMixedData vertices = m_mesh.getVertices();
+
+        int ecount = m_mesh.getEdgeCount();
+        if(m_keyEdges == null || m_keyEdges.length < ecount)
+            m_keyEdges = new int[ecount];
+
+        int count = 0;
+
+        for(int e = m_mesh.getStartEdge(); e != NO_DATA; e = Edge.getNext(edges, e)){
+
+            int he = Edge.getHe(edges, e);
+            if(he == NO_DATA) {
+                continue;
+            }
+            int start = HalfEdge.getStart(halfEdges, he);
+            int end = HalfEdge.getEnd(halfEdges, he);
+            if(Vertex.getUserData(vertices, start) == NO_DATA || Vertex.getUserData(vertices, end) == NO_DATA){
+                // boundary edge
+                Edge.setUserData(NO_DATA, edges, e);
+            } else {
+                Edge.setUserData(count, edges, e);
+                m_keyEdges[count++] = e;
+            }
+        }
+        m_keyCount = count;
+    }
+
+    /**
+       runs parallel decimation of spatial partitions of the mesh
+     */
+    protected void processPartitions(int partCount, int targetFaceCount){
+
+        long t0 = time();
+
+        makeVertexPartitions(partCount);
+
+        // count collapsable edges in each partition
+        int partEdges[] = new int[partCount];
+        int totalEdges = 0;
+        StructMixedData edges = m_mesh.getEdges();
+        StructMixedData halfEdges = m_mesh.getHalfEdges();
+        for(int k = 0; k < m_keyCount; k++){
+            int he = Edge.getHe(edges, m_keyEdges[k]);
+            int p = getEdgePartition(halfEdges, he);
+            if(p != NO_DATA){
+                partEdges[p]++;
+                totalEdges++;
+            }
+        }
+
+        int facesToRemove = m_faceCount - targetFaceCount;
+
+        m_heapPositions = EdgeHeap.makePositions(m_keyCount);
+
+        PartitionRunner runners[] = new PartitionRunner[partCount];
+        for(int p = 0; p < partCount; p++){
+            int quota = (int)(((long)facesToRemove * partEdges[p])/Math.max(totalEdges,1));
+            runners[p] = new PartitionRunner(p, quota, Quadric.create(quadrics));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(partCount);
+        for(int p = 0; p < partCount; p++){
+            executor.submit(runners[p]);
+        }
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for(int p = 0; p < partCount; p++){
+            addStat(runners[p]);
+        }
+
+        if(DEBUG) printf("MeshDecimatorPQ parallel pass: %d ms, faces: %d\n", (time() - t0), m_faceCount);
+
+    }
+
+    /**
+       split vertices into slabs with equal vertex count along the longest axis of mesh bounds
+       marks vertices which have neighbors in other slab as border vertices
+     */
+    protected void makeVertexPartitions(int partCount){
+
+        StructMixedData vertices = m_mesh.getVertices();
+        StructMixedData halfEdges = m_mesh.getHalfEdges();
+
+        double bounds[] = new double[]{Double.MAX_VALUE,-Double.MAX_VALUE,Double.MAX_VALUE,-Double.MAX_VALUE,Double.MAX_VALUE,-Double.MAX_VALUE};
+        double pnt[] = new double[3];
+        int vcount = 0;
+        for(int v = m_mesh.getStartVertex(); v != NO_DATA; v = Vertex.getNext(vertices, v)){
+            Vertex.getPoint(vertices, v, pnt);
+            for(int i = 0; i < 3; i++){
+                if(pnt[i] < bounds[2*i]) bounds[2*i] = pnt[i];
+                if(pnt[i] > bounds[2*i+1]) bounds[2*i+1] = pnt[i];
+            }
+            vcount++;
+        }
+        int axis = 0;
+        for(int i = 1; i < 3; i++){
+            if(bounds[2*i+1] - bounds[2*i] > bounds[2*axis+1] - bounds[2*axis])
+                axis = i;
+        }
+
+        double coord[] = new double[vcount];
+        vcount = 0;
+        for(int v = m_mesh.getStartVertex(); v != NO_DATA; v = Vertex.getNext(vertices, v)){
+            Vertex.getPoint(vertices, v, pnt);
+            coord[vcount++] = pnt[axis];
+        }
+        java.util.Arrays.sort(coord);
+        double slabs[] = new double[partCount-1];
+        for(int p = 1; p < partCount; p++){
+            slabs[p-1] = coord[(int)(((long)vcount * p)/partCount)];
+        }
+
+        int vsize = vertices.getLength();
+        m_vertexPartition = new int[vsize];
+        m_borderVertex = new boolean[vsize];
+
+        for(int v = m_mesh.getStartVertex(); v != NO_DATA; v = Vertex.getNext(vertices, v)){
+            Vertex.getPoint(vertices, v, pnt);
+            int p = 0;
+            while(p < slabs.length && pnt[axis] >= slabs[p])
+                p++;
+            m_vertexPartition[v] = p;
+        }
+
+        for(int v = m_mesh.getStartVertex(); v != NO_DATA; v = Vertex.getNext(vertices, v)){
+
+            int p = m_vertexPartition[v];
+            int start = Vertex.getLink(vertices, v);
+            if(start == NO_DATA){
+                m_borderVertex[v] = true;
+                continue;
+            }
+            int he = start;
+            int count = MAX_RING_SIZE;
+            do {
+                if(m_vertexPartition[HalfEdge.getEnd(halfEdges, he)] != p){
+                    m_borderVertex[v] = true;
+                    break;
+                }
+                he = nextAround(halfEdges, he);
+            } while(he != start && he != NO_DATA && --count > 0);
+
+            if(he == NO_DATA || count <= 0)
+                m_borderVertex[v] = true;
+        }
+    }
+
+    /**
+       @return partition, which can collapse the edge or NO_DATA if edge is locked
+     */
+    protected final int getEdgePartition(StructMixedData halfEdges, int he){
+
+        if(m_vertexPartition == null)
+            return PARTITION_ALL;
+
+        int v0 = HalfEdge.getStart(halfEdges, he);
+        int v1 = HalfEdge.getEnd(halfEdges, he);
+        if(m_borderVertex[v0] || m_borderVertex[v1])
+            return NO_DATA;
+        int p = m_vertexPartition[v0];
+        if(m_vertexPartition[v1] != p)
+            return NO_DATA;
+        return p;
+
+    }
+
+    /**
+       next half edge around the start vertex of given half edge
+     */
+    static final int nextAround(StructMixedData halfEdges, int he){
+
+        int twin = HalfEdge.getTwin(halfEdges, he);
+        if(twin == NO_DATA)
+            return NO_DATA;
+        return HalfEdge.getNext(halfEdges, twin);
+
+    }
+
+    protected synchronized void addStat(PartitionRunner runner){
+
+        m_faceCount -= runner.collapsedFaces;
+        m_collapseCount += runner.collapsedEdges;
+        m_attemptCount += runner.attemptCount;
+        m_surfacePinchCount += runner.surfacePinchCount;
+        m_faceFlipCount += runner.faceFlipCount;
+        m_longEdgeCount += runner.longEdgeCount;
+        m_ignoreCount += runner.largeErrorCount;
+        m_edgeTestCount += runner.edgeTestCount;
+        m_heapUpdateCount += runner.heapUpdateCount;
+        if(runner.maxError > m_maxError)
+            m_maxError = runner.maxError;
+
+    }
+
+    /**
+       decimates single partition of the mesh using own heap
+     */
+    class PartitionRunner implements Runnable {
+
+        int partition;
+        // count of faces to remove
+        int quota;
+
+        int collapsedFaces;
+        int collapsedEdges;
+        int attemptCount;
+        int surfacePinchCount;
+        int faceFlipCount;
+        int longEdgeCount;
+        int largeErrorCount;
+        int edgeTestCount;
+        int heapUpdateCount;
+        double maxError;
+
+        EdgeHeap heap;
+        ErrorQuadric errorFunction;
+        EdgeData edgeData;
+        EdgeCollapseResult ecresult = new EdgeCollapseResult();
+        EdgeCollapseParams ecparam = new EdgeCollapseParams();
+
+        /**
+           @param partition partition to process or PARTITION_ALL
+           @param quota count of faces to remove
+           @param scratchQuadric quadric in quadrics storage used for calculations by this runner
+         */
+        PartitionRunner(int partition, int quota, int scratchQuadric){
+
+            this.partition = partition;
+            this.quota = quota;
+            edgeData = new EdgeData(scratchQuadric);
+
+        }
+
+        public void run(){
+
+            errorFunction = new ErrorQuadric(quadrics);
+            errorFunction.setMesh(m_mesh);
+            ecparam.maxEdgeLength2 = m_maxEdgeLength2;
+
+            StructMixedData edges = m_mesh.getEdges();
+            StructMixedData halfEdges = m_mesh.getHalfEdges();
+
+            int capacity = (partition == PARTITION_ALL)? m_keyCount : m_keyCount/Math.max(1,m_threadCount);
+            heap = new EdgeHeap(capacity, m_heapPositions);
+
+            for(int k = 0; k < m_keyCount; k++){
+                int e = m_keyEdges[k];
+                int he = Edge.getHe(edges, e);
+                if(he == NO_DATA)
+                    continue;
+                if(partition != PARTITION_ALL && getEdgePartition(halfEdges, he) != partition)
+                    continue;
+                updateCost(k, e);
+            }
+
+            try {
+                while(collapsedFaces < quota && !heap.isEmpty()){
+
+                    if(heap.peekCost() > m_maxCollapseError){
+                        largeErrorCount++;
+                        break;
+                    }
+                    int key = heap.pop();
+                    collapse(key, edges);
+                }
+            } finally {
+                heap.clear();
+            }
+        }
+
+        /**
+           calculates collapse cost of edge and puts it into the heap
+         */
+        final void updateCost(int key, int edge){
+
+            edgeData.edge = edge;
+            edgeData.index = key;
+            errorFunction.calculateError(edgeData);
+            if(edgeData.errorValue == Double.MAX_VALUE){
+                heap.remove(key);
+            } else {
+                heap.put(key, edgeData.errorValue);
+            }
+            heapUpdateCount++;
+
+        }
+
+        /**
+           tries to collapse edge with given key
+         */
+        final void collapse(int key, StructMixedData edges){
+
+            int edge = m_keyEdges[key];
+            if(Edge.getHe(edges, edge) == NO_DATA)
+                return;
+
+            if(m_edgeTester != null){
+                if(!m_edgeTester.canCollapse(edge))
+                    return;
+                edgeTestCount++;
+            }
+
+            edgeData.edge = edge;
+            edgeData.index = key;
+            // calculates new vertex location and merged quadric in the scratch quadric
+            errorFunction.calculateError(edgeData);
+
+            ecresult.reset();
+            attemptCount++;
+            boolean res;
+            if(partition == PARTITION_ALL){
+                res = m_mesh.collapseEdge(edge, edgeData.point, ecparam, ecresult);
+            } else {
+                // mesh keeps global lists of vertices, edges and faces
+                synchronized(m_mesh){
+                    res = m_mesh.collapseEdge(edge, edgeData.point, ecparam, ecresult);
+                }
+            }
+
+            if(!res){
+                switch(ecresult.returnCode){
+                case EdgeCollapseResult.FAILURE_SURFACE_PINCH:
+                    surfacePinchCount++;
+                    break;
+                case EdgeCollapseResult.FAILURE_FACE_FLIP:
+                    faceFlipCount++;
+                    break;
+                case EdgeCollapseResult.FAILURE_LONG_EDGE:
+                    longEdgeCount++;
+                    break;
+                }
+                // the edge will be returned into heap if its neighborhood changes
+                return;
+            }
+
+            collapsedFaces += ecresult.faceCount;
+
+            StructMixedData vertices = m_mesh.getVertices();
+            StructMixedData halfEdges = m_mesh.getHalfEdges();
+
+            int v1 = ecresult.insertedVertex;
+            Quadric.set(quadrics, edgeData.vertexUserData, quadrics, Vertex.getUserData(vertices, v1));
+
+            int removed[] = ecresult.removedEdges;
+            for(int i = 0; i < removed.length; i++){
+                int k = Edge.getUserData(edges, removed[i]);
+                if(k != NO_DATA)
+                    heap.remove(k);
+            }
+            collapsedEdges += removed.length;
+
+            if(edgeData.errorValue > maxError)
+                maxError = edgeData.errorValue;
+
+            // update costs of edges incident to the moved vertex
+            int start = Vertex.getLink(vertices, v1);
+            int he = start;
+            int count = MAX_RING_SIZE;
+            do {
+                int e = HalfEdge.getEdge(halfEdges, he);
+                int k = Edge.getUserData(edges, e);
+                if(k != NO_DATA && (partition == PARTITION_ALL || getEdgePartition(halfEdges, he) == partition)){
+                    updateCost(k, e);
+                }
+                he = nextAround(halfEdges, he);
+            } while(he != start && he != NO_DATA && --count > 0);
+        }
+
+    } // class PartitionRunner
+
+} // class MeshDecimatorPQ
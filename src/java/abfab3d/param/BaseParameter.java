@@ -12,8 +12,10 @@
 
 package abfab3d.param;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static abfab3d.core.Output.printf;
 import static abfab3d.core.Output.fmt;
@@ -54,6 +56,15 @@ public abstract class BaseParameter implements Parameter {
 
     protected Vector<Editor> m_editors;
 
+    // counter of all parameter modifications, versions of parameters are taken from it
+    static final AtomicLong sm_modCount = new AtomicLong();
+
+    // version of the last modification of the value
+    private volatile long m_version;
+
+    // memoized fingerprint of the parameter
+    private volatile ParamFingerprint.Memo m_fingerprint;
+
 	public BaseParameter(String name, String desc) {
 
         this.name = name;
@@ -161,6 +172,7 @@ public abstract class BaseParameter implements Parameter {
 
         this.value = value;
         changed = true;
+        fireParamChanged();
         updateUI();
     }
 
@@ -304,4 +316,134 @@ public abstract class BaseParameter implements Parameter {
         }
         m_editors.add(editor);
     }
+
+    /**
+       marks value of this parameter as modified
+       has to be called after each modification of the value
+     */
+    public void fireParamChanged(){
+
+        m_version = sm_modCount.incrementAndGet();
+    }
+
+    /**
+       @return version of the last modification of this parameter or of any of its child nodes.
+       versions are taken from one global counter, so any modification in the subtree increases the version
+     */
+    public long getParamVersion(){
+
+        return Math.max(m_version, getObjectVersion(value));
+    }
+
+    /**
+       @return version of the last modification of child object
+     */
+    static long getObjectVersion(Object obj){
+
+        if(obj instanceof List){
+            List<?> list = (List<?>)obj;
+            long version = 0;
+            for(int i = 0; i < list.size(); i++)
+                version = Math.max(version, getObjectVersion(list.get(i)));
+            return version;
+        } else if(obj instanceof BaseParameterizable){
+            return ((BaseParameterizable)obj).getParamVersion();
+        } else if(obj instanceof BaseParameter){
+            return ((BaseParameter)obj).getParamVersion();
+        }
+        return 0;
+    }
+
+    /**
+       appends fingerprint of name and value of this parameter to fp.
+       fingerprint is memoized until value is changed via setValue() or other modifiers of the parameter
+       or any parameter of child nodes is changed.
+       values are expected to be immutable, in place modification of value object has to be followed by setValue() or fireParamChanged()
+       @return true if fingerprint is memoized, false if it depends on data which can not be tracked
+     */
+    public boolean getParamFingerprint(ParamFingerprint fp){
+
+        long version = getParamVersion();
+        ParamFingerprint.Memo memo = m_fingerprint;
+        if(memo != null && memo.version == version){
+            fp.update(memo.fingerprint);
+            return true;
+        }
+        ParamFingerprint pfp = new ParamFingerprint();
+        pfp.update(name);
+        boolean stable = getValueFingerprint(pfp);
+        if(stable)
+            m_fingerprint = new ParamFingerprint.Memo(pfp, version);
+        fp.update(pfp);
+        return stable;
+    }
+
+    /**
+       appends fingerprint of the value to fp
+       @return true if fingerprint may be memoized
+     */
+    protected boolean getValueFingerprint(ParamFingerprint fp){
+
+        Object val = value;
+        if(val instanceof List){
+            List<?> list = (List<?>)val;
+            int len = list.size();
+            fp.update((long)len);
+            boolean stable = true;
+            for(int i = 0; i < len; i++){
+                if(!getObjectFingerprint(list.get(i), fp))
+                    stable = false;
+            }
+            return stable;
+        }
+        if(val instanceof BaseParameterizable || val instanceof Parameter)
+            return getObjectFingerprint(val, fp);
+
+        // plain value, hash the same string which is used in param string
+        StringBuilder sb = new StringBuilder();
+        getParamString(sb);
+        fp.update(sb);
+        return !(val instanceof SourceWrapper || val instanceof Parameterizable || val instanceof Map);
+    }
+
+    /**
+       appends fingerprint of child object to fp
+       @return true if fingerprint may be memoized
+     */
+    protected boolean getObjectFingerprint(Object obj, ParamFingerprint fp){
+
+        if(obj instanceof BaseParameterizable){
+            return ((BaseParameterizable)obj).getParamFingerprint(fp);
+        } else if(obj instanceof BaseParameter){
+            return ((BaseParameter)obj).getParamFingerprint(fp);
+        } else if(obj instanceof Parameter){
+            fp.update(((Parameter)obj).getParamString());
+            return false;
+        } else if(obj instanceof Parameterizable){
+            fp.update(((Parameterizable)obj).getParamString());
+            return false;
+        } else if(obj instanceof SourceWrapper){
+            fp.update(((SourceWrapper)obj).getParamString());
+            return false;
+        } else if(obj == null){
+            fp.update("null");
+            return true;
+        } else {
+            fp.update(obj.toString());
+            return !(obj instanceof Map);
+        }
+    }
+
+    /**
+       appends fingerprint of any parameter to fp
+       @return true if fingerprint may be memoized
+     */
+    public static boolean getParamFingerprint(Parameter param, ParamFingerprint fp){
+
+        if(param instanceof BaseParameter)
+            return ((BaseParameter)param).getParamFingerprint(fp);
+        fp.update(param.getName());
+        fp.update(param.getParamString());
+        return false;
+    }
 }
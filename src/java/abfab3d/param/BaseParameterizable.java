@@ -14,6 +14,7 @@ package abfab3d.param;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import abfab3d.core.Initializable;
 
@@ -29,6 +30,16 @@ public class BaseParameterizable implements Parameterizable, SNode {
 
     protected Map<String, Parameter> m_paramMap = new LinkedHashMap<String,Parameter>();
     protected Parameter m_paramArray[];
+
+    // version of the last change of the params set
+    private volatile long m_version;
+
+    // memoized fingerprint of the node
+    private volatile ParamFingerprint.Memo m_fingerprint;
+
+    // classes which have param string calculated from params only
+    static ConcurrentHashMap<Class<?>, Boolean> sm_structuralClasses = new ConcurrentHashMap<Class<?>, Boolean>();
+
     /**
      * Get the parameter definition and value.
      *
@@ -89,6 +100,7 @@ public class BaseParameterizable implements Parameterizable, SNode {
         }        
         m_paramArray = null;
         initParamArray();
+        structureChanged();
     }
 
     /**
@@ -98,16 +110,19 @@ public class BaseParameterizable implements Parameterizable, SNode {
     public void addParams(Map<String,Parameter> mparam){
         m_paramMap.putAll(mparam);
         m_paramArray = null;
+        structureChanged();
     }
 
     public void addParam(Parameter p) {
         m_paramMap.put(p.getName(),p);
         m_paramArray = null;
+        structureChanged();
     }
 
     public void removeParam(String name) {
         m_paramMap.remove(name);
         m_paramArray = null;
+        structureChanged();
     }
 
     /**
@@ -116,6 +131,28 @@ public class BaseParameterizable implements Parameterizable, SNode {
     public void clearParams(){
         m_paramMap.clear();
         m_paramArray = null;
+        structureChanged();
+    }
+
+    /**
+       marks structure of this node as modified 
+     */
+    void structureChanged(){
+        m_version = BaseParameter.sm_modCount.incrementAndGet();
+    }
+
+    /**
+       @return version of the last modification of any parameter of this node or of its child nodes
+     */
+    public long getParamVersion(){
+
+        initParamArray();
+        long version = m_version;
+        for(int i = 0; i < m_paramArray.length; i++){
+            if(m_paramArray[i] instanceof BaseParameter)
+                version = Math.max(version, ((BaseParameter)m_paramArray[i]).getParamVersion());
+        }
+        return version;
     }
 
     /**
@@ -196,12 +233,102 @@ public class BaseParameterizable implements Parameterizable, SNode {
         return sb.toString();
     }
 
+    /**
+       @return fingerprint of the node to be used as cache key instead of full param string 
+       fingerprint is memoized until any parameter of this node or of its child nodes is changed
+     */
+    public String getParamFingerprint(){
+        ParamFingerprint fp = new ParamFingerprint();
+        getParamFingerprint(fp);
+        return fp.toString();
+    }
+
+    /**
+       appends fingerprint of this node to fp
+       @return true if fingerprint is memoized, false if it depends on data which can not be tracked
+     */
+    public boolean getParamFingerprint(ParamFingerprint fp){
+
+        long version = getParamVersion();
+        ParamFingerprint.Memo memo = m_fingerprint;
+        if(memo != null && memo.version == version){
+            fp.update(memo.fingerprint);
+            return true;
+        }
+        ParamFingerprint nfp = new ParamFingerprint();
+        boolean stable;
+        if(isParamStringStructural()){
+            initParamArray();
+            stable = getParamFingerprint(getClass().getSimpleName(), m_paramArray, nfp);
+        } else {
+            // subclass adds to param string something which is not tracked 
+            nfp.update(getParamString());
+            stable = false;
+        }
+        if(stable)
+            m_fingerprint = new ParamFingerprint.Memo(nfp, version);
+        fp.update(nfp);
+        return stable;
+    }
+
+    /**
+       @return true if param string of this class depends on params only 
+       subclasses which override getParamString() but don't add anything to it outside of params may override it to return true 
+     */
+    protected boolean isParamStringStructural(){
+
+        Class<?> cls = getClass();
+        Boolean res = sm_structuralClasses.get(cls);
+        if(res == null){
+            try {
+                res = Boolean.valueOf(cls.getMethod("getParamString", StringBuilder.class).getDeclaringClass() == BaseParameterizable.class && 
+                                  cls.getMethod("getParamString").getDeclaringClass() == BaseParameterizable.class);
+            } catch(NoSuchMethodException e){
+                res = Boolean.FALSE;
+            }
+            sm_structuralClasses.put(cls, res);
+        }
+        return res.booleanValue();
+    }
+
+    /**
+       appends fingerprint of the named set of params to fp
+       @return true if all params have memoized fingerprints
+     */
+    public static boolean getParamFingerprint(String name, Parameter[] params, ParamFingerprint fp){
+
+        fp.update(name);
+        fp.update((long)params.length);
+        boolean stable = true;
+        for(int i = 0; i < params.length; i++){
+            if(!BaseParameter.getParamFingerprint(params[i], fp))
+                stable = false;
+        }
+        return stable;
+    }
+
+    /**
+       @return fingerprint of the named set of params to be used as cache key
+     */
+    public static String getParamFingerprint(String name, Parameter[] params){
+
+        ParamFingerprint fp = new ParamFingerprint();
+        getParamFingerprint(name, params, fp);
+        return fp.toString();
+    }
+
     public void getDataLabel(StringBuilder sb){
-        getParamString(getClass().getSimpleName(),m_paramArray,sb);
+        sb.append(getDataLabel());
     }
 
+    /**
+       @return fingerprint of all params of this node
+     */
     public String getDataLabel() {
-        return getParamString(getClass().getSimpleName(),m_paramArray);
+        if(isParamStringStructural()) 
+            return getParamFingerprint();
+        initParamArray();
+        return getParamFingerprint(getClass().getSimpleName(),m_paramArray);
     }
 
 
@@ -245,6 +245,8 @@ public class DoubleParameter extends NumberParameter {
     public void setStringValue(String str){
         if(DEBUG)printf("%s.setStringValue(%s)\n", this.getClass().getName(), str);
         value = new Double(str);
+        changed = true;
+        fireParamChanged();
     }
 
 }
@@ -128,6 +128,7 @@ public class EnumParameter extends BaseParameter {
             throw new RuntimeException(fmt("invalid index value: %d", index));
         m_index = index;
         value = m_values[index];
+        fireParamChanged();
     }
 
     public final int getIndex() {
@@ -111,6 +111,7 @@ public class IntParameter extends NumberParameter {
 
         this.value = val;
         changed = true;
+        fireParamChanged();
         updateUI();
 
     }
@@ -128,7 +129,6 @@ public class IntParameter extends NumberParameter {
         int d = 0;
         if (val instanceof Number) {
             d = ((Number) val).intValue();
-            this.value = val;        
         } else {
             throw new IllegalArgumentException(fmt("Unsupported type for Integer: %s, %s in param: %s", val, val.getClass().getName(),getName()));
         }
@@ -155,6 +155,8 @@ public class IntParameter extends NumberParameter {
     public void setStringValue(String str){
         
         value = new Integer(str);
+        changed = true;
+        fireParamChanged();
 
     }
 
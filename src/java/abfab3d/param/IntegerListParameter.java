@@ -70,6 +70,7 @@ public class IntegerListParameter extends ListParameter {
         for(int i=0; i < val.length; i++) {
             ((List)value).add(new IntParameter(getName(), getDesc(), val[i], ((IntParameter) def).getMinRange(), ((IntParameter) def).getMaxRange()));
         }
+        fireParamChanged();
     }
 
     public int[] getValue(int[] val) {
@@ -118,6 +118,7 @@ public class LocationParameter extends BaseParameter implements Cloneable {
         validate(value);
 
         this.value = value;
+        fireParamChanged();
     }
     
     @Override
@@ -138,10 +139,12 @@ public class LocationParameter extends BaseParameter implements Cloneable {
     	validatePoint(val);
 
         ((Location)value).setPoint(val);
+        fireParamChanged();
     }
 
     public void setNormal(Vector3d val) {
         ((Location)value).setNormal(val);
+        fireParamChanged();
     }
 
     public Vector3d getPoint() {
@@ -98,6 +98,7 @@ public class LongParameter extends NumberParameter {
 
         this.value = val;
         changed = true;
+        fireParamChanged();
 
     }
 
@@ -114,7 +115,6 @@ public class LongParameter extends NumberParameter {
         long d = 0;
         if (val instanceof Number) {
             d = ((Number) val).longValue();
-            this.value = val;        
         } else {
             throw new IllegalArgumentException("Unsupported type for Long: " + val + " in param: " + getName());
         }
@@ -0,0 +1,171 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.param;
+
+/**
+ * Stable 128 bit hash of parameters used as compact cache key instead of full param string.
+ *
+ * The hash is calculated from two independent 64 bit lanes and depends only on the content fed into it,
+ * so it is the same between runs and can be used for disk caches.
+ * If any hashed string contains memory reference (symbol '@') the fingerprint is marked as transient
+ * and its string form ends with '@', which prevents storing it in disk caches.
+ */
+public class ParamFingerprint {
+
+    static final long SEED0 = 0x9E3779B97F4A7C15L;
+    static final long SEED1 = 0x632BE59BD9B4E019L;
+    static final long K0 = 0x87C37B91114253D5L;
+    static final long K1 = 0x4CF5AD432745937FL;
+    static final long K2 = 0xC2B2AE3D27D4EB4FL;
+    static final long K3 = 0x165667B19E3779F9L;
+
+    static final char HEX[] = "0123456789abcdef".toCharArray();
+
+    long m_h0 = SEED0;
+    long m_h1 = SEED1;
+    boolean m_transient = false;
+
+    public ParamFingerprint(){
+    }
+
+    /**
+       reset to initial state
+     */
+    public void reset(){
+        m_h0 = SEED0;
+        m_h1 = SEED1;
+        m_transient = false;
+    }
+
+    public ParamFingerprint update(long value){
+
+        m_h0 = Long.rotateLeft(m_h0 ^ (value * K0), 31) * K1 + K2;
+        m_h1 = Long.rotateLeft(m_h1 + (value * K2), 27) * K3 ^ K0;
+        return this;
+    }
+
+    public ParamFingerprint update(double value){
+        return update(Double.doubleToLongBits(value));
+    }
+
+    /**
+       adds chars of the string, strings are length prefixed to distinguish "ab","c" from "a","bc"
+     */
+    public ParamFingerprint update(CharSequence str){
+
+        if(str == null)
+            return update(-1L);
+        int len = str.length();
+        update((long)len);
+        long v = 0;
+        int i = 0;
+        for(; i + 4 <= len; i += 4){
+            v = ((long)str.charAt(i)) | ((long)str.charAt(i+1) << 16) | ((long)str.charAt(i+2) << 32) | ((long)str.charAt(i+3) << 48);
+            checkReference(v);
+            update(v);
+        }
+        if(i < len){
+            v = 0;
+            for(int k = 0; i < len; i++, k += 16){
+                v |= ((long)str.charAt(i)) << k;
+            }
+            checkReference(v);
+            update(v);
+        }
+        return this;
+    }
+
+    /**
+       adds another fingerprint
+     */
+    public ParamFingerprint update(ParamFingerprint fp){
+
+        update(fp.m_h0);
+        update(fp.m_h1);
+        m_transient |= fp.m_transient;
+        return this;
+    }
+
+    /**
+       @return true if hashed content contains memory references
+     */
+    public boolean isTransient(){
+        return m_transient;
+    }
+
+    /**
+       @return two 64 bit halves of the fingerprint
+     */
+    public long[] getValue(){
+        return new long[]{fmix(m_h0 + m_h1), fmix(m_h1 ^ (m_h0 * K3))};
+    }
+
+    /**
+       @return 32 hex digits of the fingerprint followed by '@' if the fingerprint is transient
+     */
+    public String toString(){
+
+        long v[] = getValue();
+        char str[] = new char[m_transient? 33: 32];
+        for(int i = 0; i < 16; i++){
+            str[i] = HEX[(int)(v[0] >>> (60 - 4*i)) & 0xF];
+            str[16 + i] = HEX[(int)(v[1] >>> (60 - 4*i)) & 0xF];
+        }
+        if(m_transient)
+            str[32] = '@';
+        return new String(str);
+    }
+
+    public boolean equals(Object obj){
+        if(!(obj instanceof ParamFingerprint))
+            return false;
+        ParamFingerprint fp = (ParamFingerprint)obj;
+        return fp.m_h0 == m_h0 && fp.m_h1 == m_h1 && fp.m_transient == m_transient;
+    }
+
+    public int hashCode(){
+        return (int)(fmix(m_h0 ^ m_h1));
+    }
+
+    final void checkReference(long chars){
+
+        for(int k = 0; k < 64; k += 16){
+            if(((chars >>> k) & 0xFFFF) == '@')
+                m_transient = true;
+        }
+    }
+
+    static final long fmix(long k){
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB9FE1A85EC53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    /**
+       fingerprint memoized together with version of parameters it was calculated from 
+     */
+    static final class Memo {
+
+        final ParamFingerprint fingerprint;
+        final long version;
+
+        Memo(ParamFingerprint fingerprint, long version){
+            this.fingerprint = fingerprint;
+            this.version = version;
+        }
+    }
+
+} // class ParamFingerprint
@@ -73,6 +73,7 @@ public class SNodeListParameter extends BaseParameter {
 
     public void add(Parameterizable source){
         ((List) value).add(source);
+        fireParamChanged();
     }
 
     /**
@@ -81,6 +82,7 @@ public class SNodeListParameter extends BaseParameter {
     public void set(Parameterizable node){
         ((List) value).clear();
         ((List) value).add(node);
+        fireParamChanged();
     }
 
     /**
@@ -88,6 +90,7 @@ public class SNodeListParameter extends BaseParameter {
      */
     public void set(int index, Parameterizable source){
         ((List) value).set(index, source);
+        fireParamChanged();
     }
 
     /**
@@ -112,10 +115,12 @@ public class SNodeListParameter extends BaseParameter {
      */
     public void remove(int index){
         ((List) value).remove(index);
+        fireParamChanged();
     }
 
     public void clear() {
         ((List) value).clear();
+        fireParamChanged();
     }
 
     public void setValue(Object val) {
@@ -128,6 +133,7 @@ public class SNodeListParameter extends BaseParameter {
         }
 
         changed = true;
+        fireParamChanged();
     }
 
     /**
@@ -51,10 +51,12 @@ public class StringListParameter extends ListParameter {
 
     public void add(String str){
         getList().add(str);
+        fireParamChanged();
     }
 
     public void clear(){
         getList().clear();
+        fireParamChanged();
     }
 
     public int size(){
@@ -112,6 +114,7 @@ public class StringListParameter extends ListParameter {
         }
         
         changed = true;
+        fireParamChanged();
         updateUI();
     }
 
@@ -78,6 +78,7 @@ public class UserDefinedParameter extends BaseParameter {
         this.value = lhm;
 
         changed = true;
+        fireParamChanged();
     }
     
     @Override
@@ -92,6 +93,7 @@ public class UserDefinedParameter extends BaseParameter {
      */
     public void setPropertyValue(String name, Parameter val) {
         ((Map)this.value).put(name,val);
+        fireParamChanged();
     }
 
     /**
@@ -121,6 +123,7 @@ public class UserDefinedParameter extends BaseParameter {
         props.put(name,val);
         ((Map)defaultValue).put(name, val);
         ((Map)value).put(name, val);
+        fireParamChanged();
     }
 
     public Parameter getProperty(String name) {
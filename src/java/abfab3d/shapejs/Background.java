@@ -279,7 +279,7 @@ public class Background extends BaseParameterizable implements Initializable {
      * @return
      */
     public void getDataLabel(StringBuilder sb) {
-        getParamString(getClass().getSimpleName(), m_imageParams,sb);
+        sb.append(getParamFingerprint(getClass().getSimpleName(), m_imageParams));
     }
 
     /**
@@ -287,6 +287,6 @@ public class Background extends BaseParameterizable implements Initializable {
      * @return
      */
     public String getDataLabel() {
-        return getParamString(getClass().getSimpleName(), m_imageParams);
+        return getParamFingerprint(getClass().getSimpleName(), m_imageParams);
     }
 }
@@ -15,10 +15,9 @@
 package abfab3d.shapejs;
 
 import abfab3d.core.*;
-import abfab3d.grid.ArrayAttributeGridByte;
-import abfab3d.grid.ArrayAttributeGridInt;
-import abfab3d.grid.GridIntIntervals;
-import abfab3d.grid.GridShortIntervals;
+import abfab3d.datasources.ShapeChangeTracker;
+import abfab3d.datasources.ShapeList;
+import abfab3d.grid.GridFactory;
 import abfab3d.grid.op.GridMaker;
 import abfab3d.io.output.*;
 import abfab3d.param.ParamMap;
@@ -28,7 +27,9 @@ import abfab3d.shapejs.Scene;
 import abfab3d.util.AbFab3DGlobals;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,8 +46,27 @@ import static abfab3d.core.Units.MM;
  */
 public abstract class BaseShapeJSExecutor implements ShapeJSExecutor {
     private static final boolean DEBUG = true;
+
+    /**
+     * Configuration key to export STL directly from the scene sources without making a grid.
+     * Only a few blocks of samples are kept in memory, small shells are not removed.
+     */
+    public static final String GRIDLESS_MESH = "gridlessMesh";
+
+    /**
+     * Configuration key to keep the grid and the mesh of the last saved model.  When the next saved scene differs
+     * by params of a few shapes, only the region of changed shapes is rendered and meshed again.
+     */
+    public static final String RETAIN_GRID = "retainGrid";
+
     private HashMap params = new HashMap();
 
+    // grid and mesh of the last saved model
+    private AttributeGrid savedGrid;
+    private String savedGridKey;
+    private GridSaver savedGridSaver;
+    private ShapeChangeTracker changeTracker = new ShapeChangeTracker();
+
     public BaseShapeJSExecutor() {
         AbFab3DGlobals.put(AbFab3DGlobals.MAX_PROCESSOR_COUNT_KEY, Runtime.getRuntime().availableProcessors());
     }
@@ -133,7 +153,6 @@ public abstract class BaseShapeJSExecutor implements ShapeJSExecutor {
 
     public void saveModel(Scene scene, OutputStream os, String format) {
         try {
-            AttributeGrid grid = createGrid(scene);
             MaterialType mtype;
 
             mtype = MaterialType.SINGLE_MATERIAL;
@@ -146,7 +165,22 @@ public abstract class BaseShapeJSExecutor implements ShapeJSExecutor {
                 mtype = COLOR_MATERIAL;
             }
 
-            fillGrid(scene, mtype, grid);
+            if (!writeTextured && format.equalsIgnoreCase("stl") && isGridlessMesh()) {
+                saveModelGridless(scene, os);
+                return;
+            }
+
+            boolean retainGrid = isRetainGrid();
+            GridSaver saver;
+            AttributeGrid grid;
+            if (retainGrid) {
+                saver = getSavedGridSaver();
+                grid = updateSavedGrid(scene, mtype, saver);
+            } else {
+                saver = new GridSaver();
+                grid = createGrid(scene);
+                fillGrid(scene, mtype, grid);
+            }
 
             float texPixelSize = 0.75f;
             float texTriGap = 1.8f; // lower then this we see pronounced triangle lines
@@ -155,7 +189,6 @@ public abstract class BaseShapeJSExecutor implements ShapeJSExecutor {
             if (DEBUG) printf(" rendering grid: %s\n", grid);
 
 
-            GridSaver saver = new GridSaver();
             saver.setWriteTexturedMesh(writeTextured);
             saver.setTexPixelSize(texPixelSize);
             saver.setTexTriGap(texTriGap);
@@ -191,33 +224,150 @@ public abstract class BaseShapeJSExecutor implements ShapeJSExecutor {
         }
     }
 
-    protected void fillGrid(Scene scene, MaterialType mtype, AttributeGrid grid) {
-        if (DEBUG) printf(" filling grid: %s\n", grid);
+    private boolean isGridlessMesh() {
+        return isParamSet(GRIDLESS_MESH);
+    }
 
-        boolean writeTextured = (mtype == COLOR_MATERIAL);
+    private boolean isRetainGrid() {
+        return isParamSet(RETAIN_GRID);
+    }
 
-        List<Parameterizable> sources = scene.getSource();
+    private boolean isParamSet(String key) {
+        Object val = params.get(key);
+        if (val instanceof Boolean) return (Boolean) val;
 
-        // TODO: Not sure if handling multiple sources is correct to just call grid maker multiple times?
-        for (Parameterizable src : sources) {
-            Shape shape = (Shape) src;
-            DataSource ds = shape.getSource();
+        return (val != null) && Boolean.parseBoolean(val.toString());
+    }
 
-            if (ds instanceof Initializable) {
-                ((Initializable) ds).initialize();
+    private synchronized GridSaver getSavedGridSaver() {
+        if (savedGridSaver == null) {
+            savedGridSaver = new GridSaver();
+            savedGridSaver.setRetainMesh(true);
+        }
+        return savedGridSaver;
+    }
+
+    /**
+     * Update the grid of the last saved model to the scene.  Shapes are compared with the shapes of the last
+     * saved scene and only the region of changed shapes is rendered again.  The changed region is passed to the
+     * saver, so only the mesh blocks of that region are made again.
+     */
+    protected synchronized AttributeGrid updateSavedGrid(Scene scene, MaterialType mtype, GridSaver saver) {
+
+        Bounds bounds = scene.getBounds();
+        String key = fmt("%s;%s", bounds, mtype);
+
+        if (savedGrid == null || !key.equals(savedGridKey)) {
+            // release old grid before making new one
+            savedGrid = null;
+            savedGrid = createGrid(scene);
+            savedGridKey = key;
+            changeTracker.clear();
+        }
+        Bounds changed = changeTracker.update(scene.getSource());
+
+        if (changed != null) {
+            if (changed != Bounds.INFINITE) {
+                // distances stored in the grid change near the surface of changed shapes
+                GridDataChannel channel = savedGrid.getDataChannel();
+                double margin = 2 * savedGrid.getVoxelSize();
+                if (channel.getIType() == GridDataChannel.TYPE_DISTANCE)
+                    margin += Math.max(Math.abs(channel.getValue0()), Math.abs(channel.getValue1()));
+                changed = changed.clone();
+                changed.expand(margin);
+            }
+            if (DEBUG) printf(" updating grid region: %s\n", changed);
+            try {
+                fillGrid(scene, mtype, savedGrid, changed);
+            } catch (RuntimeException e) {
+                // grid is partially updated
+                savedGrid = null;
+                throw e;
             }
+        } else {
+            if (DEBUG) printf(" grid is not changed\n");
+        }
+        saver.setChangedBounds(changed);
 
-            if (writeTextured) {
-                // TODO: Suspect we need to specify custom packers here
-                GridMaker maker = new GridMaker();
-                maker.setSource(shape.getSource());
-                maker.execute(grid);
-            } else {
-                GridMaker maker = new GridMaker();
-                maker.setSource(shape.getSource());
-                maker.execute(grid);
+        return savedGrid;
+    }
+
+    /**
+     * Save STL mesh extracted from the scene sources block by block.  Triangles are streamed into a
+     * temporary file as blocks are finished since the triangle count goes into the STL header.
+     */
+    protected void saveModelGridless(Scene scene, OutputStream os) throws IOException {
+
+        Bounds bounds = scene.getBounds();
+        double vs = bounds.getVoxelSize();
+
+        ShapeList source = makeSceneSource(scene);
+        // samples farther than a voxel from the surface are clamped by the mesh maker
+        source.setCullDistance(2 * vs);
+
+        MeshMakerMT meshmaker = new MeshMakerMT();
+        meshmaker.setSmoothingWidth(scene.getMeshSmoothingWidth());
+        meshmaker.setMaxDecimationError(scene.getMeshErrorFactor() * vs * vs);
+        meshmaker.setMaxDecimationCount(10);
+
+        long t0 = time();
+        File tmp = File.createTempFile("gridless", ".stl");
+        try {
+            STLWriter stl = new STLWriter(tmp.getPath());
+            if (System.getProperty("os.name").toLowerCase().indexOf("mac") != -1) {
+                stl.setGenerateNormals(true);
             }
+            meshmaker.makeMesh(source, bounds, vs, stl);
+            stl.close();
+
+            Files.copy(tmp.toPath(), os);
+        } finally {
+            tmp.delete();
+        }
+        printf("gridless file saved %d ms\n", (time() - t0));
+    }
+
+    /**
+     * Fill the grid with all shapes of the scene in one pass.  Each voxel gets the distance and material
+     * of the closest shape, shapes farther than the max distance stored in the grid are not evaluated.
+     */
+    protected void fillGrid(Scene scene, MaterialType mtype, AttributeGrid grid) {
+        fillGrid(scene, mtype, grid, null);
+    }
+
+    /**
+     * Fill the region of the grid with all shapes of the scene.  Voxels outside of the region are not changed.
+     *
+     * @param region world region to fill or null to fill the whole grid
+     */
+    protected void fillGrid(Scene scene, MaterialType mtype, AttributeGrid grid, Bounds region) {
+        if (DEBUG) printf(" filling grid: %s\n", grid);
+
+        ShapeList source = makeSceneSource(scene);
+
+        GridDataChannel channel = grid.getDataChannel();
+        if (channel.getIType() == GridDataChannel.TYPE_DISTANCE) {
+            source.setCullDistance(Math.max(Math.abs(channel.getValue0()), Math.abs(channel.getValue1())));
         }
+
+        GridMaker maker = new GridMaker();
+        maker.setSource(source);
+        maker.setRegion(region);
+        maker.execute(grid);
+    }
+
+    /**
+     * Make a combined source of all shapes of the scene
+     */
+    protected ShapeList makeSceneSource(Scene scene) {
+        ShapeList source = new ShapeList();
+
+        for (Parameterizable src : scene.getSource()) {
+            source.add((Shape) src);
+        }
+        source.initialize();
+
+        return source;
     }
 
     protected AttributeGrid createGrid(Scene scene) {
@@ -225,71 +375,62 @@ public abstract class BaseShapeJSExecutor implements ShapeJSExecutor {
         Bounds bounds = scene.getBounds();
 
         Material mat = scene.getShapes().get(0).getMaterial();
+        DataSource source = makeSceneSource(scene);
 
         switch (mat.getMaterialType()) {
 
             default:
             case SINGLE_MATERIAL:
-                //return createDensityGrid(bounds);
-                return createDistanceGrid(bounds);
+                //return createDensityGrid(bounds, source);
+                return createDistanceGrid(bounds, source);
 
             case COLOR_MATERIAL:
-                //return createDBGRGrid(bounds);
-                return createDistBGRGrid(bounds);
+                //return createDBGRGrid(bounds, source);
+                return createDistBGRGrid(bounds, source);
 
         }
     }
 
+    /**
+     * Make a grid with the representation which fits into memory
+     *
+     * @param source The distance source used to estimate the surface area or null
+     */
+    protected AttributeGrid createGrid(Bounds bounds, GridDataDesc desc, DataSource source) {
+
+        GridFactory factory = new GridFactory();
+        factory.setDataDesc(desc);
+        factory.setSource(source);
+
+        return factory.makeGrid(bounds, bounds.getVoxelSize());
+    }
+
     protected AttributeGrid createDistanceGrid(Bounds bounds) {
+        return createDistanceGrid(bounds, null);
+    }
+
+    protected AttributeGrid createDistanceGrid(Bounds bounds, DataSource source) {
 
         if (DEBUG) printf("BaseShapeJSExecutor.createDistanceGrid(Bounds bounds)\n");
-        double vs = bounds.getVoxelSize();
-        long nx = bounds.getWidthVoxels(vs);
-        long ny = bounds.getHeightVoxels(vs);
-        long nz = bounds.getDepthVoxels(vs);
-
-        AttributeGrid grid = null;
-        if (nx * ny * nz < Integer.MAX_VALUE)
-            grid = new ArrayAttributeGridByte(bounds, vs, vs);
-        else
-            grid = new GridShortIntervals(bounds, vs, vs);
         double maxDist = 1 * MM;
 
-        grid.setDataDesc(new GridDataDesc(new GridDataChannel(GridDataChannel.DISTANCE, "dist", 8, 0, -maxDist, maxDist)));
-
-        return grid;
+        return createGrid(bounds, new GridDataDesc(new GridDataChannel(GridDataChannel.DISTANCE, "dist", 8, 0, -maxDist, maxDist)), source);
     }
 
     public AttributeGrid createDensityGrid(Bounds bounds) {
+        return createDensityGrid(bounds, null);
+    }
 
-        double vs = bounds.getVoxelSize();
-        long nx = bounds.getWidthVoxels(vs);
-        long ny = bounds.getHeightVoxels(vs);
-        long nz = bounds.getDepthVoxels(vs);
-
-        AttributeGrid grid = null;
-        if (nx * ny * nz < Integer.MAX_VALUE)
-            grid = new ArrayAttributeGridByte(bounds, vs, vs);
-        else
-            grid = new GridShortIntervals(bounds, vs, vs);
-
-        grid.setDataDesc(new GridDataDesc(new GridDataChannel(GridDataChannel.DENSITY, "dens", 8, 0, 0.0, 1.0)));
+    public AttributeGrid createDensityGrid(Bounds bounds, DataSource source) {
 
-        return grid;
+        return createGrid(bounds, new GridDataDesc(new GridDataChannel(GridDataChannel.DENSITY, "dens", 8, 0, 0.0, 1.0)), source);
     }
 
     public AttributeGrid createDistBGRGrid(Bounds bounds) {
+        return createDistBGRGrid(bounds, null);
+    }
 
-        double vs = bounds.getVoxelSize();
-        long nx = bounds.getWidthVoxels(vs);
-        long ny = bounds.getHeightVoxels(vs);
-        long nz = bounds.getDepthVoxels(vs);
-        AttributeGrid grid;
-
-        if (nx * ny * nz * 4 < Integer.MAX_VALUE)
-            grid = new ArrayAttributeGridInt(bounds, vs, vs);
-        else
-            grid = new GridIntIntervals(bounds, vs, vs);
+    public AttributeGrid createDistBGRGrid(Bounds bounds, DataSource source) {
 
         // make data description for the grid 
         GridDataDesc at = new GridDataDesc();
@@ -302,26 +443,17 @@ public abstract class BaseShapeJSExecutor implements ShapeJSExecutor {
         at.addChannel(new GridDataChannel(GridDataChannel.COLOR_GREEN, "2_green", bitCount, 16, 0., 1.));
         at.addChannel(new GridDataChannel(GridDataChannel.COLOR_BLUE, "3_blue", bitCount, 8, 0., 1.));
 
-        return grid;
+        return createGrid(bounds, at, source);
     }
 
 
     public AttributeGrid createDBGRGrid(Bounds bounds) {
+        return createDBGRGrid(bounds, null);
+    }
 
-        double vs = bounds.getVoxelSize();
-        long nx = bounds.getWidthVoxels(vs);
-        long ny = bounds.getHeightVoxels(vs);
-        long nz = bounds.getDepthVoxels(vs);
-        AttributeGrid grid;
-
-        if (nx * ny * nz * 4 < Integer.MAX_VALUE)
-            grid = new ArrayAttributeGridInt(bounds, vs, vs);
-        else
-            grid = new GridIntIntervals(bounds, vs, vs);
-
-        grid.setDataDesc(GridDataDesc.getDensBGR());
+    public AttributeGrid createDBGRGrid(Bounds bounds, DataSource source) {
 
-        return grid;
+        return createGrid(bounds, GridDataDesc.getDensBGR(), source);
     }
 
     /**
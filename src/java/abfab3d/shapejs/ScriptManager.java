@@ -34,7 +34,14 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import static abfab3d.core.Output.fmt;
@@ -67,6 +74,12 @@ public class ScriptManager {
     private static MaterialMapper matMapper;
     private static URIMapper uriMapper = null;
 
+    // max count of concurrent uri downloads
+    private static final int DOWNLOAD_THREAD_COUNT = 8;
+    private static ExecutorService downloadExecutor;
+    // downloads in progress by uri
+    private static final ConcurrentHashMap<String, Future<String>> pendingDownloads = new ConcurrentHashMap<>();
+
     static {
         Map<String, String> aMap = new HashMap<String, String>();
         aMap.put("urn:shapeways:stockImage:shapeways_logo", IMAGES_DIR + "/shapeways_logo.png");
@@ -460,6 +473,9 @@ public class ScriptManager {
     /**
      * Download any uri parameters containing a fully qualified url.  Updates sensitiveData flags if urls are sensitive
      *
+     * Remote, data and stock media uris are resolved in parallel on a shared bounded pool.  Concurrent requests
+     * for the same uri from different jobs share one download.
+     *
      * @param resources
      * @param changedParams The changed params or null for all
      * @return The resolved parameters, feed these through updateParams
@@ -468,8 +484,8 @@ public class ScriptManager {
         Map<String, Object> ret_val = new HashMap<>();
 
         Map<String, Parameter> evalParams = resources.getParams();
-        String workingDirName = null;
-        String workingDirPath = null;
+        Map<String, Future<String>> pending = new LinkedHashMap<>();
+        Map<String, String> pendingUrls = new HashMap<>();
         String urlStr = null;
 
         for (Map.Entry<String, Parameter> entry : evalParams.entrySet()) {
@@ -511,147 +527,15 @@ public class ScriptManager {
                         continue;
                     }
 
-                    String localPath = null;
-                    boolean cache = false;
                     // TODO: We should really be parsing the URI into components instead of using starts and ends with
-//                    printf("*** uri, %s : %s\n", key, urlStr);
-                    if (urlStr.startsWith("http://") || urlStr.startsWith("https://")) {
-                        if (urlStr.contains("www.shapeways.com/models/get-base")) {
-                            URL yourl = new URL(urlStr);
-                            // Remove query params
-                            URI uri = new URI(yourl.getProtocol(), yourl.getUserInfo(), yourl.getHost(), yourl.getPort(), yourl.getPath(), "", yourl.getRef());
-
-                            // TODO: this will get cleaned regularly?  not sure what todo here
-                            String basedir = createDirInTmpDir("shapeways");
-
-                            String filename = uri.toString().replaceAll("[:\\\\/*\"?|<>'.;]", "");
-
-                            workingDirPath = basedir + File.separator + filename;
-
-                            File f = new File(workingDirPath);
-
-                            if (f.exists()) {
-                                // already downloaded, assume its all good
-                                localPath = URIUtils.getUrlFilename(key, urlStr, workingDirPath, true);
-                                printf("Found local copy, localPath is: %s\n", localPath);
-                            } else {
-                                printf("Can't find local copy.  url: %s  path: %s\n", urlStr, workingDirPath);
-
-                                long t0 = System.currentTimeMillis();
-                                localPath = URIUtils.writeUrlToFile(key, urlStr, workingDirPath, true);
-                                printf("Download of: %s took: %s ms\n", urlStr, (System.currentTimeMillis() - t0));
-                                if (localPath == null) {
-                                    printf("Could not save url.  key: %s  url: %s  dir: %s\n", key, urlStr, workingDirPath);
-                                    throw new IllegalArgumentException("Could not resolve uri: %s to disk: " + urlStr);
-                                }
-                            }
-                        }
-
-                        if (localPath == null) {
-                            workingDirPath = Files.createTempDirectory("downloaduri").toAbsolutePath().toString();
-                            long t0 = System.currentTimeMillis();
-                            localPath = URIUtils.writeUrlToFile(key, urlStr, workingDirPath, false);
-                            printf("Download of: %s took: %s ms\n", urlStr, (System.currentTimeMillis() - t0));
-                            if (localPath == null) {
-                                printf("Could not save url.  key: %s  url: %s  dir: %s\n", key, urlStr, workingDirPath);
-                                throw new IllegalArgumentException("Could not resolve uri: %s to disk: " + urlStr);
-                            }
-                        }
-
-                        // TODO: This handles a case with portal needing to write base64 file data to a
-                        // .base64 file. Will want to rethink this in the future.
-                        if (localPath.endsWith(BASE64_FILE_EXTENSION)) {
-                            String base64 = FileUtils.readFileToString(new File(localPath), "UTF-8");
-
-                            if (base64 == null || base64.length() == 0) {
-                                printf("Failed to parse base64: %s  from file: %s\n", base64, localPath);
-                            }
-                            localPath = URIUtils.writeDataURIToFile(key, base64, workingDirPath);
-                        } else {
-                            cache = true;
-                        }
-
-                        ret_val.put(key, localPath);
-//                		System.out.println("*** uri, " + key + " : " + up.getValue());
-                    } else if (urlStr.startsWith("data:")) {
-                        if (workingDirName == null) {
-                            workingDirPath = Files.createTempDirectory("downloaddata").toAbsolutePath().toString();
-                        }
-                        localPath = URIUtils.writeDataURIToFile(key, urlStr, workingDirPath);
-                        ret_val.put(key, localPath);
-                    } else if (urlStr.startsWith("urn:shapeways:")) {
-
-                        if (media.get(urlStr) == null) {
-                            throw new Exception("Invalid media resource: " + urlStr);
-                        }
-
-                        // Export stock media file to tmp dir
-                        localPath = TMP_DIR + media.get(urlStr);
-                        File f = new File(localPath);
-                        if (!f.exists()) {
-                            exportMediaResources();
-                            if (!f.exists()) {
-                                throw new Exception("Error exporting media resource: " + urlStr);
-                            }
-                        }
-
-                        ret_val.put(key, localPath);
-                        cache = true;
+                    if (urlStr.startsWith("http://") || urlStr.startsWith("https://") ||
+                        urlStr.startsWith("data:") || urlStr.startsWith("urn:shapeways:")) {
+                        pending.put(key, resolveURIAsync(key, urlStr));
+                        pendingUrls.put(key, urlStr);
                     } else {
-                    	// Url is a relate file path. Must have a libDirs
-                        List<String> libDirs = resources.getLibDirs();
-                    	if (libDirs == null || libDirs.size() < 1) {
-                            printf("downloadURI: No libDir specified, skipping param: %s, val: %s\n", key, urlStr);
-                    	} else {
-                    		// Two possible scenarios here:
-                    		// 1. The url val is already an absolute path -> skip this part
-                    		// 2. The url val is a relative path -> convert to absolute path
-                            
-                    		File f = new File(urlStr);
-
-                            // TODO - search in multiple lib locations 
-                            // now search in first one only 
-                    		String libDir = libDirs.get(0);
-                        	if (!skipRelativePath && !f.isAbsolute()) {
-                        		File baseDir = new File(libDir);
-                            	f = new File(libDir + File.separator + urlStr);
-                            	
-                            	// Relative url file must be in the baseDir
-                            	boolean isChild = URIUtils.isInSubDirectory(baseDir, f);
-                            	
-                            	if (!isChild) {
-                            		printf("Uri file is not in base directory.\n  baseDir: %s\n  file: %s\n",
-                            				baseDir.getAbsolutePath(), f.getAbsolutePath());
-                            		throw new IllegalArgumentException("Invalid uri file: " + urlStr);
-                            	}
-
-                                printf("Adding base dir: %s to: %s == %s\n",baseDir,urlStr,f.getAbsolutePath());
-
-                                // Relative url file does not exist
-                            	if (!f.exists()) {
-                            		printf("Uri file does not exist: %s\n", f.getAbsolutePath());
-                            		throw new IllegalArgumentException("Uri file does not exist: " + urlStr);
-                            	}
-
-                            	localPath = f.getAbsolutePath();
-                                ret_val.put(key, localPath);
-                                cache = true;
-                        	}
-                    	}
-                    }
-
-                    // Do not cache data URI
-                    if (localPath != null && !urlStr.startsWith("data:") && !localPath.endsWith(BASE64_FILE_EXTENSION)) {
-                        ret_val.put(key, localPath);
-                    }
-
-                    if (cache) {
-                        localPath = ShapeJSGlobal.putURL(urlStr, localPath);
-                        ret_val.put(key, localPath);
-                        
-                        // If uri is to stock media, store mapping of the cached path to the urn
-                        if (urlStr.startsWith("urn:shapeways:")) {
-                        	ShapeJSGlobal.putStockUrn(localPath, urlStr);
+                        String localPath = resolveRelativePath(resources, key, urlStr, skipRelativePath);
+                        if (localPath != null) {
+                            ret_val.put(key, localPath);
                         }
                     }
 
@@ -666,9 +550,220 @@ public class ScriptManager {
             }
         }
 
+        for (Map.Entry<String, Future<String>> entry : pending.entrySet()) {
+            String key = entry.getKey();
+            try {
+                String localPath = entry.getValue().get();
+                if (localPath != null) {
+                    ret_val.put(key, localPath);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                printf("Interrupted resolving uri: %s\n", pendingUrls.get(key));
+                break;
+            } catch (ExecutionException ee) {
+                Throwable e = ee.getCause();
+                printf("Error resolving uri: %s  msg: %s\n", pendingUrls.get(key), e.getMessage());
+                e.printStackTrace();
+            }
+        }
+
         return ret_val;
     }
 
+    /**
+     * Resolve remote, data or stock media uri to local file on the download pool.  If the same uri is already being
+     * resolved the pending result is shared.
+     *
+     * @param key The param name, used for naming of downloaded file
+     * @param urlStr The uri
+     * @return The local path, null if uri was not resolved
+     */
+    Future<String> resolveURIAsync(final String key, final String urlStr) {
+        Future<String> ret_val = pendingDownloads.get(urlStr);
+        if (ret_val != null) return ret_val;
+
+        FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+            public String call() throws Exception {
+                return resolveURI(key, urlStr);
+            }
+        }) {
+            protected void done() {
+                pendingDownloads.remove(urlStr, this);
+            }
+        };
+
+        ret_val = pendingDownloads.putIfAbsent(urlStr, task);
+        if (ret_val != null) return ret_val;
+
+        getDownloadExecutor().execute(task);
+        return task;
+    }
+
+    private static synchronized ExecutorService getDownloadExecutor() {
+        if (downloadExecutor == null) {
+            downloadExecutor = Executors.newFixedThreadPool(DOWNLOAD_THREAD_COUNT, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ScriptManager download");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return downloadExecutor;
+    }
+
+    /**
+     * Resolve remote, data or stock media uri to local file
+     *
+     * @return The local path, null if uri was not resolved
+     */
+    private String resolveURI(String key, String urlStr) throws Exception {
+
+        // another job may have finished the download meanwhile
+        String file = ShapeJSGlobal.getURL(urlStr);
+        if (file != null && (new File(file)).exists()) return file;
+
+        String workingDirPath = null;
+        String localPath = null;
+        boolean cache = false;
+
+        if (urlStr.startsWith("http://") || urlStr.startsWith("https://")) {
+            if (urlStr.contains("www.shapeways.com/models/get-base")) {
+                URL yourl = new URL(urlStr);
+                // Remove query params
+                URI uri = new URI(yourl.getProtocol(), yourl.getUserInfo(), yourl.getHost(), yourl.getPort(), yourl.getPath(), "", yourl.getRef());
+
+                // TODO: this will get cleaned regularly?  not sure what todo here
+                String basedir = createDirInTmpDir("shapeways");
+
+                String filename = uri.toString().replaceAll("[:\\\\/*\"?|<>'.;]", "");
+
+                workingDirPath = basedir + File.separator + filename;
+
+                File f = new File(workingDirPath);
+
+                if (f.exists()) {
+                    // already downloaded, assume its all good
+                    localPath = URIUtils.getUrlFilename(key, urlStr, workingDirPath, true);
+                    printf("Found local copy, localPath is: %s\n", localPath);
+                } else {
+                    printf("Can't find local copy.  url: %s  path: %s\n", urlStr, workingDirPath);
+
+                    long t0 = System.currentTimeMillis();
+                    localPath = URIUtils.writeUrlToFile(key, urlStr, workingDirPath, true);
+                    printf("Download of: %s took: %s ms\n", urlStr, (System.currentTimeMillis() - t0));
+                    if (localPath == null) {
+                        printf("Could not save url.  key: %s  url: %s  dir: %s\n", key, urlStr, workingDirPath);
+                        throw new IllegalArgumentException("Could not resolve uri: %s to disk: " + urlStr);
+                    }
+                }
+            }
+
+            if (localPath == null) {
+                workingDirPath = Files.createTempDirectory("downloaduri").toAbsolutePath().toString();
+                long t0 = System.currentTimeMillis();
+                localPath = URIUtils.writeUrlToFile(key, urlStr, workingDirPath, false);
+                printf("Download of: %s took: %s ms\n", urlStr, (System.currentTimeMillis() - t0));
+                if (localPath == null) {
+                    printf("Could not save url.  key: %s  url: %s  dir: %s\n", key, urlStr, workingDirPath);
+                    throw new IllegalArgumentException("Could not resolve uri: %s to disk: " + urlStr);
+                }
+            }
+
+            // TODO: This handles a case with portal needing to write base64 file data to a
+            // .base64 file. Will want to rethink this in the future.
+            if (localPath.endsWith(BASE64_FILE_EXTENSION)) {
+                String base64 = FileUtils.readFileToString(new File(localPath), "UTF-8");
+
+                if (base64 == null || base64.length() == 0) {
+                    printf("Failed to parse base64: %s  from file: %s\n", base64, localPath);
+                }
+                localPath = URIUtils.writeDataURIToFile(key, base64, workingDirPath);
+            } else {
+                cache = true;
+            }
+
+        } else if (urlStr.startsWith("data:")) {
+            workingDirPath = Files.createTempDirectory("downloaddata").toAbsolutePath().toString();
+            localPath = URIUtils.writeDataURIToFile(key, urlStr, workingDirPath);
+        } else if (urlStr.startsWith("urn:shapeways:")) {
+
+            if (media.get(urlStr) == null) {
+                throw new Exception("Invalid media resource: " + urlStr);
+            }
+
+            // Export stock media file to tmp dir
+            localPath = TMP_DIR + media.get(urlStr);
+            File f = new File(localPath);
+            if (!f.exists()) {
+                exportMediaResources();
+                if (!f.exists()) {
+                    throw new Exception("Error exporting media resource: " + urlStr);
+                }
+            }
+
+            cache = true;
+        }
+
+        if (cache) {
+            localPath = ShapeJSGlobal.putURL(urlStr, localPath);
+
+            // If uri is to stock media, store mapping of the cached path to the urn
+            if (urlStr.startsWith("urn:shapeways:")) {
+                ShapeJSGlobal.putStockUrn(localPath, urlStr);
+            }
+        }
+
+        return localPath;
+    }
+
+    /**
+     * Resolve uri relative to the first lib dir of the script
+     *
+     * @return The local path, null if uri was not resolved
+     */
+    private String resolveRelativePath(ScriptResources resources, String key, String urlStr, boolean skipRelativePath) throws Exception {
+        // Url is a relate file path. Must have a libDirs
+        List<String> libDirs = resources.getLibDirs();
+        if (libDirs == null || libDirs.size() < 1) {
+            printf("downloadURI: No libDir specified, skipping param: %s, val: %s\n", key, urlStr);
+            return null;
+        }
+
+        // Two possible scenarios here:
+        // 1. The url val is already an absolute path -> skip this part
+        // 2. The url val is a relative path -> convert to absolute path
+        File f = new File(urlStr);
+
+        // TODO - search in multiple lib locations
+        // now search in first one only
+        String libDir = libDirs.get(0);
+        if (skipRelativePath || f.isAbsolute()) return null;
+
+        File baseDir = new File(libDir);
+        f = new File(libDir + File.separator + urlStr);
+
+        // Relative url file must be in the baseDir
+        boolean isChild = URIUtils.isInSubDirectory(baseDir, f);
+
+        if (!isChild) {
+            printf("Uri file is not in base directory.\n  baseDir: %s\n  file: %s\n",
+                   baseDir.getAbsolutePath(), f.getAbsolutePath());
+            throw new IllegalArgumentException("Invalid uri file: " + urlStr);
+        }
+
+        printf("Adding base dir: %s to: %s == %s\n",baseDir,urlStr,f.getAbsolutePath());
+
+        // Relative url file does not exist
+        if (!f.exists()) {
+            printf("Uri file does not exist: %s\n", f.getAbsolutePath());
+            throw new IllegalArgumentException("Uri file does not exist: " + urlStr);
+        }
+
+        return ShapeJSGlobal.putURL(urlStr, f.getAbsolutePath());
+    }
+
     public ScriptResources getResources(String jobID) throws NotCachedException {
         try {
             return cache.get(jobID);
@@ -728,7 +823,7 @@ public class ScriptManager {
         }
     }
 
-    private void exportMediaResources() throws Exception {
+    private synchronized void exportMediaResources() throws Exception {
         File imagesDir = new File(TMP_DIR + IMAGES_DIR);
         File modelsDir = new File(TMP_DIR + MODELS_DIR);
         if (!imagesDir.exists()) {
@@ -103,6 +103,33 @@ public interface ShapeJSExecutor {
     public void pick(Scene scene, Camera camera, Matrix4f objTrans, int pixX, int pixY, int width, int height,
                      Vector3f pos, Vector3f normal, float quality);
 
+    /**
+     * Cast many rays into the scene and get the positions and normals at the picked positions.
+     *
+     * @param pixX   The pixel x coordinates
+     * @param pixY   The pixel y coordinates
+     * @param count  The count of rays
+     * @param pos    The picked positions (x0,y0,z0,x1,...)
+     * @param normal The normals at the picked positions, zero if the ray misses the scene
+     */
+    default void pick(Scene scene, Camera camera, Matrix4f objTrans, int[] pixX, int[] pixY, int count, int width, int height,
+                      float[] pos, float[] normal, float quality) {
+
+        // casts rays one by one, backends with batched picking override this
+        Vector3f p = new Vector3f();
+        Vector3f n = new Vector3f();
+        for (int i = 0; i < count; i++) {
+            pick(scene, camera, objTrans, pixX[i], pixY[i], width, height, p, n, quality);
+            int k = 3 * i;
+            pos[k] = p.x;
+            pos[k + 1] = p.y;
+            pos[k + 2] = p.z;
+            normal[k] = n.x;
+            normal[k + 1] = n.y;
+            normal[k + 2] = n.z;
+        }
+    }
+
     public RenderStat getRenderStats();
 
     /**
@@ -15,10 +15,11 @@
 package abfab3d.shapejs;
 
 import abfab3d.core.Bounds;
-import abfab3d.datasources.Union;
+import abfab3d.core.DataSource;
+import abfab3d.datasources.ShapeList;
 import abfab3d.grid.op.ImageMaker;
 import abfab3d.intersect.DataSourceIntersector;
-import abfab3d.param.Parameterizable;
+import abfab3d.param.ParamFingerprint;
 import abfab3d.param.Shape;
 import abfab3d.util.AbFab3DGlobals;
 
@@ -42,6 +43,13 @@ public class ShapeJSExecutorCpu extends BaseShapeJSExecutor implements ShapeJSEx
     private long lastRenderTime;
     private long lastImageEncodeTime;
 
+    private static final double PICK_VOXEL_SIZE = 0.5 * MM;
+    private static final double PICK_MAX_STEP = 5 * MM;
+
+    // Initialized scene source used for picking and the fingerprint of the shapes it was made from
+    private DataSource pickSource;
+    private String pickKey;
+
     public ShapeJSExecutorCpu() {
         AbFab3DGlobals.put(AbFab3DGlobals.MAX_PROCESSOR_COUNT_KEY, Runtime.getRuntime().availableProcessors());
     }
@@ -166,13 +174,35 @@ public class ShapeJSExecutorCpu extends BaseShapeJSExecutor implements ShapeJSEx
     public void pick(Scene scene, Camera camera, Matrix4f objTrans, int pixX, int pixY, int width, int height,
                      Vector3f pos, Vector3f normal, float quality) {
 
-        DataSourceIntersector dsi = new DataSourceIntersector();
-        double vs = 0.5 * MM;
+        float p[] = new float[3];
+        float n[] = new float[3];
+
+        pick(scene, camera, objTrans, new int[]{pixX}, new int[]{pixY}, 1, width, height, p, n, quality);
+
+        pos.set(p);
+        normal.set(n);
+    }
+
+    /**
+     * Cast many rays into the scene at once.  Rays are traced on several threads.
+     *
+     * @param pixX  The pixel x coordinates
+     * @param pixY  The pixel y coordinates
+     * @param count The count of rays
+     * @param pos    The picked positions (x0,y0,z0,x1,...), the eye position if the ray misses the scene
+     * @param normal The normals at picked positions, zero if the ray misses the scene
+     */
+    public void pick(Scene scene, Camera camera, Matrix4f objTrans, int[] pixX, int[] pixY, int count, int width, int height,
+                     float[] pos, float[] normal, float quality) {
+
         double maxDist = 4 + scene.getBounds().getSizeMax();
-        dsi.set("voxelSize", vs);
+
+        DataSourceIntersector dsi = new DataSourceIntersector();
+        dsi.set("voxelSize", PICK_VOXEL_SIZE);
+        dsi.set("minStep", PICK_VOXEL_SIZE);
+        dsi.set("maxStep", PICK_MAX_STEP);
         dsi.set("maxDistance", maxDist);
-        dsi.set("maxStep", 5 * MM);
-        dsi.set("maxStepsCount", maxDist / vs);
+        dsi.set("maxStepsCount", (int) (maxDist / PICK_VOXEL_SIZE));
 
         Vector3d start = new Vector3d();
         Vector3d dir = new Vector3d();
@@ -180,34 +210,60 @@ public class ShapeJSExecutorCpu extends BaseShapeJSExecutor implements ShapeJSEx
         Matrix4f invvm = new Matrix4f();
         camera.getViewMatrix(invvm);
 
-        getUV(pixX, pixY, width, height, uv);
         getEyeOrigin(invvm, start);
         double cameraDepth = 1.0 / Math.tan(camera.getCameraAngle());
-        getEyeDirection(invvm, cameraDepth, uv, dir);
-
-        // Use the union of all sources
-        List<Parameterizable> sources = scene.getSource();
-        Union result = new Union();
-        for (Parameterizable p : sources) {
-            Shape shape = (Shape) p;
-            result.add(shape.getSource());
+
+        double[] starts = new double[3 * count];
+        double[] dirs = new double[3 * count];
+        for (int i = 0; i < count; i++) {
+            getUV(pixX[i], pixY[i], width, height, uv);
+            getEyeDirection(invvm, cameraDepth, uv, dir);
+            starts[3 * i] = start.x;
+            starts[3 * i + 1] = start.y;
+            starts[3 * i + 2] = start.z;
+            dirs[3 * i] = dir.x;
+            dirs[3 * i + 1] = dir.y;
+            dirs[3 * i + 2] = dir.z;
         }
 
-        result.initialize();
+        int[] codes = new int[count];
+        double[] points = new double[3 * count];
+        double[] normals = new double[3 * count];
 
-        DataSourceIntersector.Result res = dsi.getShapeRayIntersection(result, start, dir);
+        dsi.getShapeRayIntersections(getPickSource(scene), starts, dirs, count, codes, points, normals);
 
-        Vector3d loc = res.getLocation();
-        Vector3d n = res.getContact();
+        for (int i = 0; i < 3 * count; i++) {
+            pos[i] = (float) points[i];
+            normal[i] = (float) normals[i];
+        }
+    }
 
-        pos.x = (float) loc.x;
-        pos.y = (float) loc.y;
-        pos.z = (float) loc.z;
+    /**
+     * Get the initialized union of scene shapes used for picking.  The source is reused until
+     * the scene shapes or their params are changed.
+     */
+    protected synchronized DataSource getPickSource(Scene scene) {
+        ParamFingerprint fp = new ParamFingerprint();
+        List<Shape> shapes = scene.getShapes();
+        fp.update(shapes.size());
+        for (Shape shape : shapes) {
+            shape.getParamFingerprint(fp);
+        }
+        String key = fp.toString();
+
+        if (pickSource == null || !key.equals(pickKey)) {
+            long t0 = time();
+            ShapeList source = makeSceneSource(scene);
+            // values farther than the max step are not used by the intersector
+            source.setCullDistance(PICK_MAX_STEP);
+            pickSource = source;
+            pickKey = key;
+            if (DEBUG) printf("pick source initialized: %d ms\n", time() - t0);
+        }
 
-        normal.x = (float) n.x;
-        normal.y = (float) n.y;
-        normal.z = (float) n.z;
+        return pickSource;
     }
+
 /*
     @Override
     public void exec(ParamContainer params) {
@@ -115,6 +115,11 @@ public class ShapeJSExecutorImpl implements ShapeJSExecutor {
         impl.pick(scene,camera,objTrans,pixX,pixY,width,height,pos,normal,quality);
     }
 
+    @Override
+    public void pick(Scene scene, Camera camera, Matrix4f objTrans, int[] pixX, int[] pixY, int count, int width, int height, float[] pos, float[] normal, float quality) {
+        impl.pick(scene,camera,objTrans,pixX,pixY,count,width,height,pos,normal,quality);
+    }
+
     @Override
     public RenderStat getRenderStats() {
         return impl.getRenderStats();
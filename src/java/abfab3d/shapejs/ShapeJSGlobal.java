@@ -17,8 +17,7 @@ import abfab3d.core.AttributeGrid;
 import abfab3d.core.Grid;
 import abfab3d.core.Grid2D;
 import abfab3d.grid.Grid2DShort;
-import abfab3d.grid.GridShortIntervals;
-import abfab3d.grid.ArrayAttributeGridByte;
+import abfab3d.grid.GridFactory;
 import abfab3d.grid.op.ImageLoader;
 import abfab3d.grid.op.FontLoader;
 
@@ -1759,12 +1758,8 @@ public class ShapeJSGlobal {
                     "Maximum grid size exceeded.  Max is: " + MAX_GRID_SIZE + "^3 grid is: " + gs[0] + " " + gs[1] + " " + gs[2]);
         }
 
-        long MAX_MEMORY = Integer.MAX_VALUE;
-        if (voxels > MAX_MEMORY) {
-            dest = new GridShortIntervals(gs[0], gs[1], gs[2], vs, vs);
-        } else {
-            dest = new ArrayAttributeGridByte(gs[0], gs[1], gs[2], vs, vs);
-        }
+        // callers set the actual grid bounds
+        dest = new GridFactory().makeGrid(new Bounds(0, gs[0] * vs, 0, gs[1] * vs, 0, gs[2] * vs), vs);
 
         return dest;
     }
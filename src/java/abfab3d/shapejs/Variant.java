@@ -734,6 +734,13 @@ public class Variant  {
         return m_evaluatedScript;
     }
 
+    /**
+     * job ID of the script resources in ScriptManager.  Designs read by the same variant reuse the evaluator
+     */
+    public String getJobID() {
+        return m_jobID;
+    }
+
     /**
      * Not sure about this method yet, but most things requires Scene not a Parameterizable
      * @return
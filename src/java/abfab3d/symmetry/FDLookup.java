@@ -0,0 +1,575 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.symmetry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import javax.vecmath.Matrix3d;
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Vector3d;
+
+import abfab3d.core.Vec;
+
+import static abfab3d.core.Output.printf;
+
+/**
+   closed form folding of points into fundamental domain of euclidean crystallographic group
+   (wallpaper, frieze or space group with euclidean sides of fundamental domain)
+
+   the point is moved into the cell of translation lattice of the group by lattice modulo
+   and then mapped into fundamental domain by one of few group elements precomputed for the subcell of the lattice cell.
+   Candidate elements are found at initialization by iterative folding of sample points of each subcell.
+   If none of candidates maps the point into fundamental domain, the caller has to finish folding iteratively.
+
+   groups without translations and groups with inversive sides are not supported
+ */
+class FDLookup {
+
+    static final boolean DEBUG = false;
+
+    // limits of the group enumeration used to find the lattice
+    static final int MAX_WORD_LENGTH = 8;
+    static final int MAX_ELEMENTS_COUNT = 5000;
+    // max count of iterations used to fold samples
+    static final int MAX_SAMPLE_ITERATIONS = 1000;
+    // count of subcells of lattice cell per lattice direction for lattice of rank 1,2,3
+    static final int CELLS_COUNT[] = {0, 64, 32, 12};
+    // count of samples per subcell side
+    static final int SUBSAMPLES = 3;
+    // offsets of samples in directions orthogonal to the lattice in units of the lattice vector length
+    static final double PERP_OFFSETS[] = {0, -0.25, 0.25, -1, 1, -4, 4};
+    static final double EPS = 1.e-7;
+    // relative tolerance of point inside of FD test
+    static final double INSIDE_EPS = 1.e-12;
+
+    // planes of FD (nx, ny, nz, dist)
+    double m_planes[];
+    // generators as applied to points in 3x4 matrix form
+    double m_gens[][];
+
+    int m_rank;
+    // lattice vectors
+    double m_basis[] = new double[9];
+    // rows of inverse basis matrix
+    double m_dual[] = new double[9];
+    // origin of lattice cell, which is center of the cell
+    double m_origin[] = new double[3];
+    int m_cellsCount;
+    // candidate elements for each subcell
+    int m_cells[][];
+    // 3x4 matrices of candidate elements
+    double m_elements[];
+    // tolerance of point inside of FD test
+    double m_eps;
+
+    /**
+       @return lookup for the group or null if the group is not supported
+     */
+    static FDLookup make(SymmetryGroup group){
+
+        SPlane splanes[] = group.getFundamentalDomain();
+        double planes[] = new double[4*splanes.length];
+        for(int i = 0; i < splanes.length; i++){
+            if(!(splanes[i] instanceof EPlane))
+                return null;
+            EPlane p = (EPlane)splanes[i];
+            planes[4*i] = p.nx;
+            planes[4*i+1] = p.ny;
+            planes[4*i+2] = p.nz;
+            planes[4*i+3] = p.dist;
+        }
+
+        double gens[][] = new double[splanes.length][];
+        switch(group.getType()){
+        default:
+            return null;
+        case SymmetryGroup.TYPE_REFLECTIONS:
+            for(int i = 0; i < splanes.length; i++){
+                EPlane p = (EPlane)splanes[i];
+                gens[i] = toArray(ETransform.getReflectionMatrix(p.getNormal(), p.getDist()));
+            }
+            break;
+        case SymmetryGroup.TYPE_EUCLIDEAN:
+            ETransform trans[] = group.getETransforms();
+            if(trans == null || trans.length < splanes.length)
+                return null;
+            for(int i = 0; i < splanes.length; i++){
+                // ETransform applies inverse matrix to points
+                gens[i] = toArray(trans[i].getInverseMatrix());
+            }
+            break;
+        }
+
+        FDLookup lookup = new FDLookup(planes, gens);
+        if(!lookup.init())
+            return null;
+        return lookup;
+    }
+
+    FDLookup(double planes[], double gens[][]){
+        m_planes = planes;
+        m_gens = gens;
+    }
+
+    /**
+       @return lattice rank
+     */
+    int getRank(){
+        return m_rank;
+    }
+
+    /**
+       @return count of distinct candidate elements
+     */
+    int getElementsCount(){
+        return m_elements.length/12;
+    }
+
+    /**
+       moves point into fundamental domain
+       @return true if the point is moved into fundamental domain,
+       otherwise the point is moved into the lattice cell and has to be folded iteratively
+     */
+    boolean toFD(Vec pnt){
+
+        double v[] = pnt.v;
+        double o[] = m_origin;
+        double b[] = m_basis;
+        double d[] = m_dual;
+        int n = m_cellsCount;
+
+        double x = v[0] - o[0];
+        double y = v[1] - o[1];
+        double z = v[2] - o[2];
+        int cell = 0;
+        for(int i = 0; i < m_rank; i++){
+            int i3 = 3*i;
+            double u = d[i3]*x + d[i3+1]*y + d[i3+2]*z;
+            double k = Math.floor(u + 0.5);
+            u -= k;
+            x -= k*b[i3];
+            y -= k*b[i3+1];
+            z -= k*b[i3+2];
+            int c = (int)((u + 0.5)*n);
+            if(c < 0) c = 0;
+            else if(c >= n) c = n-1;
+            cell = cell*n + c;
+        }
+        x += o[0];
+        y += o[1];
+        z += o[2];
+
+        int cand[] = m_cells[cell];
+        double m[] = m_elements;
+        double p[] = m_planes;
+        double eps = m_eps;
+        for(int k = 0; k < cand.length; k++){
+            int e = 12*cand[k];
+            double tx = m[e]*x + m[e+1]*y + m[e+2]*z + m[e+3];
+            double ty = m[e+4]*x + m[e+5]*y + m[e+6]*z + m[e+7];
+            double tz = m[e+8]*x + m[e+9]*y + m[e+10]*z + m[e+11];
+            boolean inside = true;
+            for(int j = 0; j < p.length; j += 4){
+                if(p[j]*tx + p[j+1]*ty + p[j+2]*tz - p[j+3] > eps){
+                    inside = false;
+                    break;
+                }
+            }
+            if(inside){
+                v[0] = tx;
+                v[1] = ty;
+                v[2] = tz;
+                return true;
+            }
+        }
+        v[0] = x;
+        v[1] = y;
+        v[2] = z;
+        return false;
+    }
+
+    /**
+       finds the lattice and candidate elements
+       @return false if the group is not supported
+     */
+    boolean init(){
+
+        double scale = 0;
+        for(int i = 0; i < m_gens.length; i++){
+            double g[] = m_gens[i];
+            scale = Math.max(scale, Math.abs(g[3]) + Math.abs(g[7]) + Math.abs(g[11]));
+        }
+        for(int i = 0; i < m_planes.length; i += 4)
+            scale = Math.max(scale, Math.abs(m_planes[i+3]));
+        if(scale == 0.)
+            return false;
+
+        if(!findLattice(scale))
+            return false;
+        double len = length(m_basis, 0);
+        m_eps = INSIDE_EPS*len;
+
+        // origin is taken in FD near the origin of coordinates
+        double g[] = identity();
+        double q[] = new double[3];
+        if(!fold(q, g, MAX_SAMPLE_ITERATIONS))
+            return false;
+        m_origin = q;
+
+        // directions orthogonal to the lattice
+        double perp[] = getOrthogonal(m_basis, m_rank);
+        int perpCount = 3 - m_rank;
+        int offsetsCount = 1;
+        for(int i = 0; i < perpCount; i++)
+            offsetsCount *= PERP_OFFSETS.length;
+
+        int n = CELLS_COUNT[m_rank];
+        m_cellsCount = n;
+        int cellsCount = 1;
+        int samplesCount = 1;
+        for(int i = 0; i < m_rank; i++){
+            cellsCount *= n;
+            samplesCount *= SUBSAMPLES;
+        }
+
+        ArrayList<double[]> elements = new ArrayList<double[]>();
+        HashMap<String, Integer> elementIndex = new HashMap<String, Integer>();
+        int cellElements[][] = new int[cellsCount][];
+        int cellCounts[][] = new int[cellsCount][];
+        double p[] = new double[3];
+        int missed = 0;
+
+        for(int cell = 0; cell < cellsCount; cell++){
+            ArrayList<Integer> cand = new ArrayList<Integer>();
+            ArrayList<Integer> counts = new ArrayList<Integer>();
+            for(int s = 0; s < samplesCount; s++){
+                for(int t = 0; t < offsetsCount; t++){
+                    // sample point
+                    p[0] = q[0]; p[1] = q[1]; p[2] = q[2];
+                    for(int i = 0, c = cell, ss = s; i < m_rank; i++){
+                        int ci = c % n; c /= n;
+                        int si = ss % SUBSAMPLES; ss /= SUBSAMPLES;
+                        double u = (ci + si/(SUBSAMPLES-1.))/n - 0.5;
+                        // cell index uses the first basis vector as the highest digit
+                        int bi = m_rank - 1 - i;
+                        addMul(p, m_basis, bi, u);
+                    }
+                    for(int i = 0, tt = t; i < perpCount; i++){
+                        int oi = tt % PERP_OFFSETS.length; tt /= PERP_OFFSETS.length;
+                        addMul(p, perp, i, PERP_OFFSETS[oi]*len);
+                    }
+                    g = identity();
+                    if(!fold(p, g, MAX_SAMPLE_ITERATIONS)){
+                        missed++;
+                        continue;
+                    }
+                    String key = getKey(g, scale);
+                    Integer index = elementIndex.get(key);
+                    if(index == null){
+                        index = elements.size();
+                        elements.add(g);
+                        elementIndex.put(key, index);
+                    }
+                    int k = cand.indexOf(index);
+                    if(k < 0){
+                        cand.add(index);
+                        counts.add(1);
+                    } else {
+                        counts.set(k, counts.get(k) + 1);
+                    }
+                }
+            }
+            cellElements[cell] = toIntArray(cand);
+            cellCounts[cell] = toIntArray(counts);
+        }
+
+        // most frequent candidates are tested first, candidates of adjacent subcells are tested last
+        m_cells = new int[cellsCount][];
+        for(int cell = 0; cell < cellsCount; cell++){
+            ArrayList<Integer> cand = sortByCount(cellElements[cell], cellCounts[cell]);
+            for(int i = 0, c = cell, step = 1; i < m_rank; i++, step *= n){
+                int ci = c % n; c /= n;
+                if(ci > 0) addAbsent(cand, cellElements[cell - step]);
+                if(ci < n-1) addAbsent(cand, cellElements[cell + step]);
+            }
+            m_cells[cell] = toIntArray(cand);
+        }
+
+        m_elements = new double[12*elements.size()];
+        for(int i = 0; i < elements.size(); i++)
+            System.arraycopy(elements.get(i), 0, m_elements, 12*i, 12);
+
+        if(DEBUG)printf("FDLookup rank: %d cells: %d elements: %d missed samples: %d\n", m_rank, cellsCount, elements.size(), missed);
+        return true;
+    }
+
+    /**
+       finds basis of lattice of translations of the group
+     */
+    boolean findLattice(double scale){
+
+        ArrayList<double[]> gens = new ArrayList<double[]>();
+        for(int i = 0; i < m_gens.length; i++){
+            gens.add(m_gens[i]);
+            gens.add(invert(m_gens[i]));
+        }
+
+        HashMap<String, double[]> elements = new HashMap<String, double[]>();
+        ArrayList<double[]> translations = new ArrayList<double[]>();
+        ArrayList<double[]> front = new ArrayList<double[]>();
+        double id[] = identity();
+        front.add(id);
+        elements.put(getKey(id, scale), id);
+
+        for(int len = 0; len < MAX_WORD_LENGTH && elements.size() < MAX_ELEMENTS_COUNT; len++){
+            ArrayList<double[]> next = new ArrayList<double[]>();
+            for(double e[]: front){
+                for(double gen[]: gens){
+                    double h[] = mul(gen, e);
+                    String key = getKey(h, scale);
+                    if(elements.containsKey(key))
+                        continue;
+                    elements.put(key, h);
+                    next.add(h);
+                    if(isTranslation(h, scale))
+                        translations.add(new double[]{h[3], h[7], h[11]});
+                }
+            }
+            front = next;
+        }
+
+        Collections.sort(translations, new Comparator<double[]>(){
+                public int compare(double a[], double b[]){
+                    return Double.compare(length(a, 0), length(b, 0));
+                }
+            });
+
+        // shortest independent vectors
+        m_rank = 0;
+        for(double t[]: translations){
+            if(m_rank == 3)
+                break;
+            if(isIndependent(m_basis, m_rank, t)){
+                System.arraycopy(t, 0, m_basis, 3*m_rank, 3);
+                m_rank++;
+            }
+        }
+        if(DEBUG)printf("FDLookup elements: %d translations: %d rank: %d\n", elements.size(), translations.size(), m_rank);
+        if(m_rank == 0)
+            return false;
+
+        // dual basis
+        double perp[] = getOrthogonal(m_basis, m_rank);
+        Matrix3d bm = new Matrix3d();
+        for(int i = 0; i < 3; i++){
+            double c[] = (i < m_rank)? m_basis: perp;
+            int ci = (i < m_rank)? i: i - m_rank;
+            bm.setColumn(i, c[3*ci], c[3*ci+1], c[3*ci+2]);
+        }
+        bm.invert();
+        for(int i = 0; i < 3; i++)
+            for(int j = 0; j < 3; j++)
+                m_dual[3*i+j] = bm.getElement(i, j);
+
+        return true;
+    }
+
+    /**
+       iterative folding which accumulates the applied transforms
+       @param p point to fold
+       @param g composition of applied transforms
+     */
+    boolean fold(double p[], double g[], int maxIterations){
+
+        double planes[] = m_planes;
+        for(int iter = 0; iter < maxIterations; iter++){
+            int plane = -1;
+            for(int i = 0; i < planes.length; i += 4){
+                if(planes[i]*p[0] + planes[i+1]*p[1] + planes[i+2]*p[2] - planes[i+3] > 0){
+                    plane = i/4;
+                    break;
+                }
+            }
+            if(plane < 0)
+                return true;
+            double t[] = m_gens[plane];
+            double x = p[0], y = p[1], z = p[2];
+            p[0] = t[0]*x + t[1]*y + t[2]*z + t[3];
+            p[1] = t[4]*x + t[5]*y + t[6]*z + t[7];
+            p[2] = t[8]*x + t[9]*y + t[10]*z + t[11];
+            System.arraycopy(mul(t, g), 0, g, 0, 12);
+        }
+        return false;
+    }
+
+    /**
+       @return orthonormal vectors which complete the first rank vectors of basis to basis of 3D space
+     */
+    static double[] getOrthogonal(double basis[], int rank){
+
+        // orthonormal vectors
+        Vector3d v[] = new Vector3d[3];
+        int count = 0;
+        Vector3d axes[] = {new Vector3d(1,0,0), new Vector3d(0,1,0), new Vector3d(0,0,1)};
+        for(int a = -rank; a < 3 && count < 3; a++){
+            // Gram-Schmidt
+            Vector3d w = (a < 0)? new Vector3d(basis[3*(a+rank)], basis[3*(a+rank)+1], basis[3*(a+rank)+2]): new Vector3d(axes[a]);
+            for(int i = 0; i < count; i++){
+                Vector3d u = new Vector3d(v[i]);
+                u.scale(w.dot(u));
+                w.sub(u);
+            }
+            if(a < 0 || w.length() > 0.1){
+                w.normalize();
+                v[count++] = w;
+            }
+        }
+        double perp[] = new double[3*(3-rank)];
+        for(int i = rank; i < 3; i++){
+            perp[3*(i-rank)] = v[i].x;
+            perp[3*(i-rank)+1] = v[i].y;
+            perp[3*(i-rank)+2] = v[i].z;
+        }
+        return perp;
+    }
+
+    static boolean isIndependent(double basis[], int rank, double t[]){
+
+        double lt = length(t, 0);
+        switch(rank){
+        default: return false;
+        case 0: return lt > 0;
+        case 1:
+            {
+                double cx = basis[1]*t[2] - basis[2]*t[1];
+                double cy = basis[2]*t[0] - basis[0]*t[2];
+                double cz = basis[0]*t[1] - basis[1]*t[0];
+                return Math.sqrt(cx*cx + cy*cy + cz*cz) > EPS*length(basis, 0)*lt;
+            }
+        case 2:
+            {
+                double cx = basis[1]*basis[5] - basis[2]*basis[4];
+                double cy = basis[2]*basis[3] - basis[0]*basis[5];
+                double cz = basis[0]*basis[4] - basis[1]*basis[3];
+                return Math.abs(cx*t[0] + cy*t[1] + cz*t[2]) > EPS*length(basis, 0)*length(basis, 1)*lt;
+            }
+        }
+    }
+
+    static boolean isTranslation(double m[], double scale){
+        for(int i = 0; i < 3; i++){
+            for(int j = 0; j < 3; j++){
+                if(Math.abs(m[4*i+j] - ((i == j)? 1: 0)) > EPS)
+                    return false;
+            }
+        }
+        return Math.abs(m[3]) + Math.abs(m[7]) + Math.abs(m[11]) > EPS*scale;
+    }
+
+    /**
+       @return key of element rounded to the precision of calculations
+     */
+    static String getKey(double m[], double scale){
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 12; i++){
+            double s = ((i & 3) == 3)? scale: 1;
+            long r = Math.round(m[i]/(s*EPS));
+            sb.append(r);
+            sb.append(',');
+        }
+        return sb.toString();
+    }
+
+    static double length(double v[], int index){
+        int i = 3*index;
+        return Math.sqrt(v[i]*v[i] + v[i+1]*v[i+1] + v[i+2]*v[i+2]);
+    }
+
+    static void addMul(double p[], double v[], int index, double f){
+        p[0] += f*v[3*index];
+        p[1] += f*v[3*index+1];
+        p[2] += f*v[3*index+2];
+    }
+
+    static double[] identity(){
+        return new double[]{1,0,0,0, 0,1,0,0, 0,0,1,0};
+    }
+
+    /**
+       @return composition a*b (b is applied first)
+     */
+    static double[] mul(double a[], double b[]){
+        double c[] = new double[12];
+        for(int i = 0; i < 3; i++){
+            for(int j = 0; j < 4; j++){
+                double s = (j == 3)? a[4*i+3]: 0;
+                for(int k = 0; k < 3; k++)
+                    s += a[4*i+k]*b[4*k+j];
+                c[4*i+j] = s;
+            }
+        }
+        return c;
+    }
+
+    static double[] invert(double m[]){
+        Matrix4d mat = new Matrix4d();
+        mat.setIdentity();
+        for(int i = 0; i < 3; i++)
+            for(int j = 0; j < 4; j++)
+                mat.setElement(i, j, m[4*i+j]);
+        mat.invert();
+        return toArray(mat);
+    }
+
+    static double[] toArray(Matrix4d mat){
+        double m[] = new double[12];
+        for(int i = 0; i < 3; i++)
+            for(int j = 0; j < 4; j++)
+                m[4*i+j] = mat.getElement(i, j);
+        return m;
+    }
+
+    static int[] toIntArray(ArrayList<Integer> list){
+        int a[] = new int[list.size()];
+        for(int i = 0; i < a.length; i++)
+            a[i] = list.get(i);
+        return a;
+    }
+
+    static ArrayList<Integer> sortByCount(int elements[], final int counts[]){
+
+        Integer order[] = new Integer[elements.length];
+        for(int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>(){
+                public int compare(Integer a, Integer b){
+                    return counts[b] - counts[a];
+                }
+            });
+        ArrayList<Integer> list = new ArrayList<Integer>(elements.length);
+        for(int i = 0; i < order.length; i++)
+            list.add(elements[order[i]]);
+        return list;
+    }
+
+    static void addAbsent(ArrayList<Integer> list, int elements[]){
+        for(int i = 0; i < elements.length; i++){
+            if(!list.contains(elements[i]))
+                list.add(elements[i]);
+        }
+    }
+}
@@ -34,6 +34,10 @@ import static abfab3d.symmetry.SymmetryUtil.toFundamentalDomain;
    Pairiong transformation PT is trANSand pairing transformations whcih transform FD into adjacent tile
    reflections include plane reflections and sphere inversions 
 
+   points are folded into FD of euclidean groups with translations (wallpaper, frieze and space groups) 
+   in closed form via lattice modulo and lookup of group element, inversive groups are folded iteratively. 
+   Small max iterations count is used to show partial patterns, it is honored by iterative folding only 
+
 
    @author Vladimir Bulatov
  */
@@ -58,6 +62,12 @@ public class SymmetryGroup {
     //ITransform m_itransforms[]; // inversive transforms
     
     int m_maxIterations = 20;
+
+    // closed form folding ignores max iterations count, it has to be explicitly enabled 
+    boolean m_useLookup = false;
+    volatile boolean m_lookupDone = false;
+    FDLookup m_lookup;
+    SymmetryProfiler m_profiler;
     
     public SymmetryGroup(SPlane splanes[]){
         m_type = TYPE_REFLECTIONS;
@@ -75,7 +85,7 @@ public class SymmetryGroup {
             m_etransforms[i] = new ETransform(transforms[i]);
         }
         // general transform are ETransform
-        m_transforms = m_transforms;
+        m_transforms = m_etransforms;
         
     }
 
@@ -110,8 +120,65 @@ public class SymmetryGroup {
         
     }
 
+    /**
+       enables closed form folding of euclidean groups 
+       the closed form folding fills the whole space and ignores max iterations count 
+     */
+    public void setUseLookup(boolean value){
+        m_useLookup = value;
+    }
+
+    /**
+       set profiler to collect folding statistics, null disables profiling 
+     */
+    public void setProfiler(SymmetryProfiler profiler){
+        m_profiler = profiler;
+    }
+
+    public SymmetryProfiler getProfiler(){
+        return m_profiler;
+    }
+
+    /**
+       @return true if closed form folding is used 
+     */
+    public boolean hasLookup(){
+        return m_useLookup && getLookup() != null;
+    }
+
+    FDLookup getLookup(){
+        if(!m_lookupDone){
+            synchronized(this){
+                if(!m_lookupDone){
+                    m_lookup = FDLookup.make(this);
+                    m_lookupDone = true;
+                }
+            }
+        }
+        return m_lookup;
+    }
+
     public int toFD(Vec pnt){
 
+        SymmetryProfiler profiler = m_profiler;
+        if(m_useLookup){
+            FDLookup lookup = getLookup();
+            if(lookup != null){
+                boolean hit = lookup.toFD(pnt);
+                if(profiler != null) 
+                    profiler.addLookup(hit);
+                if(hit)
+                    return RESULT_OK;
+                // point is moved to lattice cell, folding is finished iteratively
+            }
+        }
+
+        if(profiler != null){
+            int count = getIterationsCount(pnt);
+            profiler.addIterations(count);
+            return (count < 0)? RESULT_OUTSIDE: RESULT_OK;
+        }
+
         switch(m_type){
         default:
         case TYPE_REFLECTIONS:
@@ -121,6 +188,20 @@ public class SymmetryGroup {
             
         }
     }
-    
+
+    /**
+       folds the point into FD iteratively 
+       @return count of iterations or -1 if max iterations count was reached 
+     */
+    int getIterationsCount(Vec pnt){
+
+        switch(m_type){
+        default:
+        case TYPE_REFLECTIONS:
+            return SymmetryUtil.getIterationsCount(pnt, m_splanes, m_maxIterations);
+        case TYPE_EUCLIDEAN:
+            return SymmetryUtil.getIterationsCount(pnt, m_splanes, m_transforms, m_maxIterations);
+        }
+    }
  
 }
@@ -0,0 +1,120 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.symmetry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static abfab3d.core.Output.fmt;
+
+/**
+   collects statistics of folding points into fundamental domain
+
+   records histogram of iteration counts of the iterative folding and count of lookup hits and misses
+   of the closed form folding. Can be shared between threads.
+ */
+public class SymmetryProfiler {
+
+    // last bin collects all larger counts
+    static final int BINS_COUNT = 64;
+
+    AtomicLongArray m_iterations = new AtomicLongArray(BINS_COUNT);
+    AtomicLong m_outside = new AtomicLong();
+    AtomicLong m_totalIterations = new AtomicLong();
+    AtomicLong m_lookupHits = new AtomicLong();
+    AtomicLong m_lookupMisses = new AtomicLong();
+
+    /**
+       records result of iterative folding
+       @param count count of transformations applied, negative count means max iterations count was reached
+     */
+    public void addIterations(int count){
+        if(count < 0){
+            m_outside.incrementAndGet();
+            return;
+        }
+        m_iterations.incrementAndGet(Math.min(count, BINS_COUNT-1));
+        m_totalIterations.addAndGet(count);
+    }
+
+    /**
+       records result of closed form folding
+       @param hit true if the lookup mapped the point into fundamental domain
+     */
+    public void addLookup(boolean hit){
+        if(hit) m_lookupHits.incrementAndGet();
+        else m_lookupMisses.incrementAndGet();
+    }
+
+    public long getLookupHits(){
+        return m_lookupHits.get();
+    }
+
+    public long getLookupMisses(){
+        return m_lookupMisses.get();
+    }
+
+    /**
+       @return count of points folded iteratively
+     */
+    public long getIterativeCount(){
+        long count = m_outside.get();
+        for(int i = 0; i < BINS_COUNT; i++)
+            count += m_iterations.get(i);
+        return count;
+    }
+
+    /**
+       @return count of points which reached max iterations count
+     */
+    public long getOutsideCount(){
+        return m_outside.get();
+    }
+
+    /**
+       @return count of points folded with given count of iterations, last bin collects all larger counts
+     */
+    public long getIterationsCount(int iterations){
+        return m_iterations.get(Math.min(iterations, BINS_COUNT-1));
+    }
+
+    /**
+       @return average count of iterations of points which reached fundamental domain iteratively
+     */
+    public double getAverageIterations(){
+        long count = getIterativeCount() - getOutsideCount();
+        return (count > 0)? ((double)m_totalIterations.get())/count: 0.;
+    }
+
+    public void reset(){
+        for(int i = 0; i < BINS_COUNT; i++)
+            m_iterations.set(i, 0);
+        m_outside.set(0);
+        m_totalIterations.set(0);
+        m_lookupHits.set(0);
+        m_lookupMisses.set(0);
+    }
+
+    public String toString(){
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(fmt("lookup hits: %d misses: %d iterative: %d average iterations: %5.2f outside: %d\n",
+                      getLookupHits(), getLookupMisses(), getIterativeCount(), getAverageIterations(), getOutsideCount()));
+        for(int i = 0; i < BINS_COUNT; i++){
+            long c = m_iterations.get(i);
+            if(c > 0)
+                sb.append(fmt("  %2d%s: %d\n", i, (i == BINS_COUNT-1)? "+":" ", c));
+        }
+        return sb.toString();
+    }
+}
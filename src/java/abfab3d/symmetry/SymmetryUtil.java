@@ -107,9 +107,29 @@ public class SymmetryUtil {
      */
     static public int toFundamentalDomain(Vec pnt, SPlane splanes[], int maxIterations){
         
+        if(getIterationsCount(pnt, splanes, maxIterations) < 0)
+            return ResultCodes.RESULT_OUTSIDE;
+        else 
+            return ResultCodes.RESULT_OK;
+    }
+
+    static public int toFundamentalDomain(Vec pnt, FDPlane planes[], PairingTransform  transforms[], int maxIterations){
+        
+        if(getIterationsCount(pnt, planes, transforms, maxIterations) < 0)
+            return ResultCodes.RESULT_OUTSIDE;
+        else 
+            return ResultCodes.RESULT_OK;
+    }  
+
+    /**
+       transforms arbitrary 3D point into fundamental domain 
+       @return count of reflections applied or -1 if maxIterations was reached 
+     */
+    static public int getIterationsCount(Vec pnt, SPlane splanes[], int maxIterations){
+        
         int planeCount = splanes.length;
-        int iter = maxIterations;
-        while(iter-- > 0){
+        int iter = 0;
+        while(iter < maxIterations){
 
             boolean foundOutside = false; 
 
@@ -124,20 +144,24 @@ public class SymmetryUtil {
             
             if(!foundOutside){
                 // we are in FD
-                return ResultCodes.RESULT_OK;
+                return iter;
             }
+            iter++;
         }        
 
         // we are here if we have reached maxIterations; 
-
-        return ResultCodes.RESULT_OUTSIDE;
+        return -1;
     }
 
-    static public int toFundamentalDomain(Vec pnt, FDPlane planes[], PairingTransform  transforms[], int maxIterations){
+    /**
+       transforms arbitrary 3D point into fundamental domain 
+       @return count of pairing transforms applied or -1 if maxIterations was reached 
+     */
+    static public int getIterationsCount(Vec pnt, FDPlane planes[], PairingTransform  transforms[], int maxIterations){
         
         int planeCount = planes.length;
-        int iter = maxIterations;
-        while(iter-- > 0){
+        int iter = 0;
+        while(iter < maxIterations){
 
             boolean planeFound = false; 
 
@@ -154,11 +178,12 @@ public class SymmetryUtil {
             
             if(!planeFound){
                 // we are in FD
-                return ResultCodes.RESULT_OK;
+                return iter;
             }
+            iter++;
         }        
         
         // we are here if we have reached maxIterations; 
-        return ResultCodes.RESULT_OUTSIDE;
+        return -1;
     }  
 }
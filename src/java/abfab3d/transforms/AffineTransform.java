@@ -0,0 +1,42 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.transforms;
+
+import javax.vecmath.Matrix4d;
+
+import abfab3d.core.VecTransform;
+
+/**
+   transform which is given by affine matrix
+
+   CompositeTransform replaces chains of consecutive affine transforms by single matrix.
+   Matrices are valid after the transform is initialized.
+ */
+public interface AffineTransform extends VecTransform {
+
+    /**
+       stores matrix of transform() into m
+     */
+    public void getMatrix(Matrix4d m);
+
+    /**
+       stores matrix of inverse_transform() into m
+     */
+    public void getInverseMatrix(Matrix4d m);
+
+    /**
+       @return factor of Vec scale applied by transform(), inverse_transform() applies the inverse factor
+     */
+    public double getScaleFactor();
+
+}
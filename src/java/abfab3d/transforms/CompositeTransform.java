@@ -12,8 +12,11 @@
 
 package abfab3d.transforms;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import javax.vecmath.Matrix4d;
+
 import abfab3d.core.Initializable;
 import abfab3d.core.ResultCodes;
 import abfab3d.core.Vec;
@@ -29,12 +32,16 @@ import static abfab3d.core.Output.printf;
 /**
 
    Arbitrary chain of transformations to be applied to the point 
+
+   initialize() replaces each run of consecutive affine transforms (including transforms of nested composite transforms)
+   by single precomposed matrix, non affine transforms are applied as separate stages.
    
    @author Vladimir Bulatov   
  */
 public class CompositeTransform extends BaseTransform implements VecTransform, Initializable {
         
-    private VecTransform aTransforms[]; // array of transforms used in calculations 
+    private VecTransform aTransforms[]; // array of transforms 
+    private VecTransform aStages[]; // array of transforms used in calculations 
 
     SNodeListParameter mp_transforms = new SNodeListParameter("transforms");
 
@@ -98,6 +105,7 @@ public class CompositeTransform extends BaseTransform implements VecTransform, I
     public void add(VecTransform transform){
         
         ((List)mp_transforms.getValue()).add(transform);
+        mp_transforms.fireParamChanged();
         
     }
 
@@ -116,10 +124,60 @@ public class CompositeTransform extends BaseTransform implements VecTransform, I
                     return res;
             }
         }
+        aStages = makeStages(aTransforms);
         
         return ResultCodes.RESULT_OK;
     }
 
+    /**
+       @return count of stages used in calculations 
+       @noRefGuide
+     */
+    public int getStagesCount(){
+        return aStages.length;
+    }
+
+    /**
+       makes stages of calculations from initialized transforms
+     */
+    static VecTransform[] makeStages(VecTransform transforms[]){
+
+        ArrayList<VecTransform> flat = new ArrayList<VecTransform>();
+        flatten(transforms, flat);
+
+        ArrayList<VecTransform> stages = new ArrayList<VecTransform>();
+        ArrayList<AffineTransform> chain = new ArrayList<AffineTransform>();
+        for(VecTransform tr: flat){
+            if(tr instanceof AffineTransform){
+                chain.add((AffineTransform)tr);
+            } else {
+                addChain(chain, stages);
+                stages.add(tr);
+            }
+        }
+        addChain(chain, stages);
+        return stages.toArray(new VecTransform[stages.size()]);
+    }
+
+    static void flatten(VecTransform transforms[], List<VecTransform> flat){
+        for(int i = 0; i < transforms.length; i++){
+            VecTransform tr = transforms[i];
+            if(tr instanceof CompositeTransform && ((CompositeTransform)tr).aTransforms != null)
+                flatten(((CompositeTransform)tr).aTransforms, flat);
+            else 
+                flat.add(tr);
+        }
+    }
+
+    static void addChain(List<AffineTransform> chain, List<VecTransform> stages){
+
+        if(chain.size() == 1)
+            stages.add(chain.get(0));
+        else if(chain.size() > 1)
+            stages.add(new AffineChain(chain));
+        chain.clear();
+    }
+
     public VecTransform [] getTransformsArray(){
 
         List<SNode> trans = (List<SNode>)mp_transforms.getValue();
@@ -137,24 +195,25 @@ public class CompositeTransform extends BaseTransform implements VecTransform, I
      */
     public int transform(Vec in, Vec out) {
         
-        int len = aTransforms.length;
+        VecTransform stages[] = aStages;
+        int len = stages.length;
         if(len < 1){
             // copy input to output                 
             out.set(in);
             return ResultCodes.RESULT_OK;
         }
+        if(len == 1)
+            return stages[0].transform(in, out);
         
         //TODO garbage generation 
         Vec vin = new Vec(in);
         
         for(int i = 0; i < len; i++){
             
-            VecTransform tr = aTransforms[i];
-            int res = tr.transform(in, out);
-                if(res != RESULT_OK)
-                    return res;
-                
-                in.set(out);
+            int res = stages[i].transform(vin, out);
+            if(res != RESULT_OK)
+                return res;                
+            vin.set(out);
         }
         
         return ResultCodes.RESULT_OK;
@@ -165,20 +224,22 @@ public class CompositeTransform extends BaseTransform implements VecTransform, I
      */
     public int inverse_transform(Vec in, Vec out) {
         
-        int len = aTransforms.length;
+        VecTransform stages[] = aStages;
+        int len = stages.length;
         if(len < 1){
             // copy input to output                 
             out.set(in);
             return ResultCodes.RESULT_OK;
         }
+        if(len == 1)
+            return stages[0].inverse_transform(in, out);
         
         //TODO garbage generation 
         Vec vin = new Vec(in);
         
-        for(int i = aTransforms.length-1; i >= 0; i--){
+        for(int i = len-1; i >= 0; i--){
             
-            VecTransform tr = aTransforms[i];
-            int res = tr.inverse_transform(vin, out);
+            int res = stages[i].inverse_transform(vin, out);
             
             if(res != RESULT_OK)
                 return res;
@@ -201,6 +262,13 @@ public class CompositeTransform extends BaseTransform implements VecTransform, I
         return ret;
     }
 
+    /**
+     * param string depends on transforms param only
+     */
+    protected boolean isParamStringStructural(){
+        return true;
+    }
+
     /**
      * Implement this as a value
      * @return
@@ -229,4 +297,82 @@ public class CompositeTransform extends BaseTransform implements VecTransform, I
             }
         }
     }
+
+    /**
+       chain of affine transforms precomposed into single matrix 
+     */
+    static class AffineChain implements AffineTransform {
+
+        // rows of 3x4 matrices 
+        double m[] = new double[12];
+        double mi[] = new double[12];
+        double scale = 1, inverseScale = 1;
+
+        AffineChain(List<AffineTransform> chain){
+
+            Matrix4d mat = new Matrix4d();
+            Matrix4d imat = new Matrix4d();
+            Matrix4d t = new Matrix4d();
+            mat.setIdentity();
+            imat.setIdentity();
+            for(AffineTransform tr: chain){
+                // transforms are applied in order of chain, inverse transforms in reverse order 
+                tr.getMatrix(t);
+                mat.mul(t, mat);
+                tr.getInverseMatrix(t);
+                imat.mul(t);
+                scale *= tr.getScaleFactor();
+            }
+            inverseScale = 1/scale;
+            for(int i = 0; i < 3; i++){
+                for(int j = 0; j < 4; j++){
+                    m[4*i + j] = mat.getElement(i, j);
+                    mi[4*i + j] = imat.getElement(i, j);
+                }
+            }
+        }
+
+        public int transform(Vec in, Vec out) {
+            apply(m, scale, in, out);
+            return ResultCodes.RESULT_OK;
+        }
+
+        public int inverse_transform(Vec in, Vec out) {
+            apply(mi, inverseScale, in, out);
+            return ResultCodes.RESULT_OK;
+        }
+
+        static final void apply(double m[], double scale, Vec in, Vec out){
+
+            double x = in.v[0];
+            double y = in.v[1];
+            double z = in.v[2];
+            out.set(in);
+            out.v[0] = m[0]*x + m[1]*y + m[2]*z + m[3];
+            out.v[1] = m[4]*x + m[5]*y + m[6]*z + m[7];
+            out.v[2] = m[8]*x + m[9]*y + m[10]*z + m[11];
+            if(scale != 1.)
+                out.mulScale(scale);
+        }
+
+        public void getMatrix(Matrix4d mat){
+            getMatrix(m, mat);
+        }
+
+        public void getInverseMatrix(Matrix4d mat){
+            getMatrix(mi, mat);
+        }
+
+        public double getScaleFactor(){
+            return scale;
+        }
+
+        static void getMatrix(double m[], Matrix4d mat){
+            mat.setIdentity();
+            for(int i = 0; i < 3; i++)
+                for(int j = 0; j < 4; j++)
+                    mat.setElement(i, j, m[4*i + j]);
+        }
+    } // class AffineChain 
+
 }  // class CompositeTransform
@@ -14,6 +14,7 @@ package abfab3d.transforms;
 import abfab3d.core.Initializable;
 
 import abfab3d.core.ResultCodes;
+import abfab3d.param.BooleanParameter;
 import abfab3d.param.DoubleParameter;
 import abfab3d.param.EnumParameter;
 import abfab3d.param.IntParameter;
@@ -42,6 +43,7 @@ public class FriezeSymmetry extends BaseTransform implements Initializable {
     protected DoubleParameter  mp_domainSkew = new DoubleParameter("domainSkew","skew of fundamental domain for symmetry O",0.0);
     protected IntParameter  mp_maxCount = new IntParameter("maxCount","max count of iteratioins to get to fundamental domain",100);
     protected EnumParameter  mp_symmetryType = new EnumParameter("symmetryType","type of walpaper symetry",SymmetryNames, SymmetryNames[FRIEZE_II]);
+    protected BooleanParameter  mp_closedForm = new BooleanParameter("closedForm","fill the whole strip using closed form mapping into fundamental domain, maxCount is ignored",false);
     protected ObjectParameter  mp_symmetryGroup = new ObjectParameter("symmetryGroup","symmetry group to use",null);
 
     Parameter aparam[] = new Parameter[]{
@@ -51,6 +53,7 @@ public class FriezeSymmetry extends BaseTransform implements Initializable {
         mp_maxCount, 
         mp_symmetryType,       
         mp_symmetryGroup,
+        mp_closedForm,
     };
 
     static final public String SymmetryNames[] = new String[]{
@@ -132,6 +135,15 @@ public class FriezeSymmetry extends BaseTransform implements Initializable {
 
     }
 
+    /**
+       @param value if true the whole strip is filled using closed form mapping into fundamental domain and maxCount is ignored 
+     */
+    public void setClosedForm(boolean value){
+
+        mp_closedForm.setValue(value);
+
+    }
+
     /**
      @noRefGuide
      */
@@ -169,6 +181,7 @@ public class FriezeSymmetry extends BaseTransform implements Initializable {
         // we do this to provide universal way to access m_group via get("symmetryGroup");
         mp_symmetryGroup.setValue(m_group);
         m_group.setMaxIterations(maxCount);
+        m_group.setUseLookup(mp_closedForm.getValue());
 
         return ResultCodes.RESULT_OK;
 
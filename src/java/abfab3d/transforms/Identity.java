@@ -12,6 +12,8 @@
 
 package abfab3d.transforms;
 
+import javax.vecmath.Matrix4d;
+
 import abfab3d.core.ResultCodes;
 import abfab3d.param.BaseParameterizable;
 import abfab3d.core.Vec;
@@ -27,7 +29,7 @@ import static abfab3d.util.Symmetry.toFundamentalDomain;
    only transfers data 
    
 */
-public class Identity extends BaseParameterizable implements VecTransform {
+public class Identity extends BaseParameterizable implements AffineTransform {
     /**
        @noRefGuide
      */
@@ -42,5 +44,26 @@ public class Identity extends BaseParameterizable implements VecTransform {
         out.set(in);
         return ResultCodes.RESULT_OK;
     }
+
+    /**
+       @noRefGuide
+     */
+    public void getMatrix(Matrix4d m) {
+        m.setIdentity();
+    }
+
+    /**
+       @noRefGuide
+     */
+    public void getInverseMatrix(Matrix4d m) {
+        m.setIdentity();
+    }
+
+    /**
+       @noRefGuide
+     */
+    public double getScaleFactor() {
+        return 1.;
+    }
     
 }
@@ -12,6 +12,7 @@
 
 package abfab3d.transforms;
 
+import javax.vecmath.Matrix4d;
 import javax.vecmath.Vector3d;
 
 import abfab3d.core.ResultCodes;
@@ -32,7 +33,7 @@ import static abfab3d.util.Symmetry.toFundamentalDomain;
    Reflection in a plane 
    
 */
-public class PlaneReflection  extends BaseTransform implements VecTransform, Initializable  {
+public class PlaneReflection  extends BaseTransform implements AffineTransform, Initializable  {
     
     private double m_nx, m_ny, m_nz, m_dist;    
 
@@ -178,5 +179,37 @@ public class PlaneReflection  extends BaseTransform implements VecTransform, Ini
         return transform(in, out);
         
     }
+    /**
+       @noRefGuide
+     */
+    public void getMatrix(Matrix4d m){
+
+        double n[] = new double[]{m_nx, m_ny, m_nz};
+        double t = 2*m_dist*(m_nx*m_nx + m_ny*m_ny + m_nz*m_nz);
+        for(int i = 0; i < 3; i++){
+            for(int j = 0; j < 3; j++){
+                m.setElement(i, j, ((i == j)? 1: 0) - 2*n[i]*n[j]);
+            }
+            m.setElement(i, 3, t*n[i]);
+            m.setElement(3, i, 0);
+        }
+        m.m33 = 1;
+    }
+
+    /**
+       @noRefGuide
+     *  reflection is inverse of itself 
+     */
+    public void getInverseMatrix(Matrix4d m){
+        getMatrix(m);
+    }
+
+    /**
+       @noRefGuide
+     */
+    public double getScaleFactor(){
+        return 1.;
+    }
+
 } // class PlaneReflection
 
@@ -13,6 +13,7 @@
 package abfab3d.transforms;
 
 import javax.vecmath.Matrix3d;
+import javax.vecmath.Matrix4d;
 import javax.vecmath.Vector3d;
 import javax.vecmath.AxisAngle4d;
 
@@ -29,7 +30,7 @@ import static abfab3d.core.Output.printf;
 /**
    performs rotation about given axis 
 */
-public class Rotation extends BaseTransform implements VecTransform, Initializable {
+public class Rotation extends BaseTransform implements AffineTransform, Initializable {
     
     private Vector3d m_axis = new Vector3d(1,0,0); 
     private double m_angle = 0;
@@ -185,4 +186,36 @@ public class Rotation extends BaseTransform implements VecTransform, Initializab
         
     }
 
+    /**
+       @noRefGuide
+     */
+    public void getMatrix(Matrix4d m){
+        getMatrix(mat, m);
+    }
+
+    /**
+       @noRefGuide
+     */
+    public void getInverseMatrix(Matrix4d m){
+        getMatrix(mat_inv, m);
+    }
+
+    /**
+       @noRefGuide
+     */
+    public double getScaleFactor(){
+        return 1.;
+    }
+
+    /**
+       matrix of rotation r about the center 
+     */
+    private void getMatrix(Matrix3d r, Matrix4d m){
+
+        m.set(r);
+        m.m03 = m_centerx - (r.m00*m_centerx + r.m01*m_centery + r.m02*m_centerz);
+        m.m13 = m_centery - (r.m10*m_centerx + r.m11*m_centery + r.m12*m_centerz);
+        m.m23 = m_centerz - (r.m20*m_centerx + r.m21*m_centery + r.m22*m_centerz);
+    }
+
 } // class Rotation
@@ -18,13 +18,14 @@ import abfab3d.core.Initializable;
 import abfab3d.core.Vec;
 import abfab3d.core.VecTransform;
 
+import javax.vecmath.Matrix4d;
 import javax.vecmath.Vector3d;
 
 
 /**
  * Performs scaling by given factor
  */
-public class Scale extends BaseTransform implements VecTransform, Initializable {
+public class Scale extends BaseTransform implements AffineTransform, Initializable {
 
     protected double sx = 1., sy = 1., sz = 1.;
     protected double cx = 0., cy = 0., cz = 0.;
@@ -173,4 +174,37 @@ public class Scale extends BaseTransform implements VecTransform, Initializable
 
     }
 
+    /**
+     * matrix of transform(), the center is not used by the direct transform
+     * @noRefGuide
+     */
+    public void getMatrix(Matrix4d m) {
+
+        m.setIdentity();
+        m.m00 = sx;
+        m.m11 = sy;
+        m.m22 = sz;
+    }
+
+    /**
+     * @noRefGuide
+     */
+    public void getInverseMatrix(Matrix4d m) {
+
+        m.setIdentity();
+        m.m00 = 1 / sx;
+        m.m11 = 1 / sy;
+        m.m22 = 1 / sz;
+        m.m03 = cx - cx / sx;
+        m.m13 = cy - cy / sy;
+        m.m23 = cz - cz / sz;
+    }
+
+    /**
+     * @noRefGuide
+     */
+    public double getScaleFactor() {
+        return averageScale;
+    }
+
 } // class Scale
@@ -17,12 +17,13 @@ import abfab3d.param.Parameter;
 import abfab3d.param.Vector3dParameter;
 import abfab3d.core.Vec;
 
+import javax.vecmath.Matrix4d;
 import javax.vecmath.Vector3d;
 
 /**
  * Performs translation in space
  */
-public class Translation extends BaseTransform {
+public class Translation extends BaseTransform implements AffineTransform {
 
     protected double tx = 1, ty = 1, tz = 1;
     protected Vector3dParameter  mp_trans = new Vector3dParameter("translation","translation",new Vector3d(0,0,0));
@@ -110,6 +111,40 @@ public class Translation extends BaseTransform {
 
     }
 
+    /**
+     * @noRefGuide
+     */
+    public void getMatrix(Matrix4d m) {
+        m.setIdentity();
+        m.m03 = tx;
+        m.m13 = ty;
+        m.m23 = tz;
+    }
+
+    /**
+     * @noRefGuide
+     */
+    public void getInverseMatrix(Matrix4d m) {
+        m.setIdentity();
+        m.m03 = -tx;
+        m.m13 = -ty;
+        m.m23 = -tz;
+    }
+
+    /**
+     * @noRefGuide
+     */
+    public double getScaleFactor() {
+        return 1.;
+    }
+
+    /**
+     * param string depends on translation param only
+     */
+    protected boolean isParamStringStructural(){
+        return true;
+    }
+
     /**
      * Implement this as a value
      * @return
@@ -16,6 +16,7 @@ import abfab3d.core.ResultCodes;
 import abfab3d.core.Vec;
 import abfab3d.core.Initializable;
 
+import abfab3d.param.BooleanParameter;
 import abfab3d.param.DoubleParameter;
 import abfab3d.param.EnumParameter;
 import abfab3d.param.IntParameter;
@@ -77,6 +78,7 @@ public class WallpaperSymmetry  extends BaseTransform implements Initializable {
     protected DoubleParameter  mp_domainSkew = new DoubleParameter("domainSkew","skew of fundamental domain for symmetry O",0.0);
     protected IntParameter  mp_maxCount = new IntParameter("maxCount","max count of iteratioins to get to fundamental domain",100);
     protected EnumParameter  mp_symmetryType = new EnumParameter("symmetryType","type of wallpaper symmetry",SymmetryNames, SymmetryNames[WP_S2222]);
+    protected BooleanParameter  mp_closedForm = new BooleanParameter("closedForm","fill the whole plane using closed form mapping into fundamental domain, maxCount is ignored",false);
     protected ObjectParameter  mp_symmetryGroup = new ObjectParameter("symmetryGroup","symmetry group to use",UNDEFINED);
 
     Parameter aparam[] = new Parameter[]{
@@ -86,6 +88,7 @@ public class WallpaperSymmetry  extends BaseTransform implements Initializable {
         mp_maxCount, 
         mp_symmetryType,       
         mp_symmetryGroup,
+        mp_closedForm,
     };
 
     static final public String SymmetryNames[] = new String[]{
@@ -245,7 +248,7 @@ public class WallpaperSymmetry  extends BaseTransform implements Initializable {
     /**
        @param maxCount maximal count of tranformations to use to generate patterns
        <p>
-       if maxCount = 0 - no transformation is used and only the content of fundamntal domain will be shown 
+       if maxCount = 0 - no transformation is used and only the content of fundamntal domain will be shown
        </p>
      */
     public void setMaxCount(int maxCount){
@@ -254,6 +257,15 @@ public class WallpaperSymmetry  extends BaseTransform implements Initializable {
 
     }
 
+    /**
+       @param value if true the whole plane is filled using closed form mapping into fundamental domain and maxCount is ignored 
+     */
+    public void setClosedForm(boolean value){
+
+        mp_closedForm.setValue(value);
+
+    }
+
     /**
        
        @param skew skew parameter of fundamental domain for symmetry O
@@ -317,6 +329,7 @@ public class WallpaperSymmetry  extends BaseTransform implements Initializable {
         // we do this to provide universal way to access m_group via get("symmetryGroup");
         mp_symmetryGroup.setValue(m_group);
         m_group.setMaxIterations(maxCount);
+        m_group.setUseLookup(mp_closedForm.getValue());
 
 
         return ResultCodes.RESULT_OK;
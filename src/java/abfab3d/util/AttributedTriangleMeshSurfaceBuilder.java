@@ -113,6 +113,15 @@ public class AttributedTriangleMeshSurfaceBuilder implements AttributedTriangleC
         m_sortPoints = value;
     }
 
+    /**
+       set count of points to preallocate storage for 
+       if count is not set the estimation is based on the surface of grid bounds
+       it has to be called before initialize() 
+     */
+    public void setEstimatedPointCount(int count){
+        m_estimatedPointCounts = count;
+    }
+
     /**
        @return count of points 
      */
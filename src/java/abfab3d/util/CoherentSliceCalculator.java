@@ -0,0 +1,269 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.util;
+
+import javax.vecmath.Vector3d;
+
+import abfab3d.core.DataSource;
+import abfab3d.core.Vec;
+
+import static java.lang.Math.sqrt;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static abfab3d.core.Output.printf;
+
+
+/**
+   slice calculator for distance type data sources
+
+   first channel of data source is expected to be signed distance to the surface (negative inside)
+   which changes not faster than lipschitz*distance between points
+
+   slice is split into square tiles. For each tile the bounds of distance are estimated
+   1) from bounds of distance in the same tile of previous slice calculated by the same thread
+      shifted by distance between slices
+   2) from distance at the tile center and the tile radius
+
+   tiles which are farther outside than surfaceBand are filled with lower estimation of distance and zero data in other channels
+   without evaluation of data source.
+   if fillInterior is true the tiles farther inside than surfaceBand are filled with data of the tile center
+   and upper estimation of distance.
+   all other pixels are evaluated exactly, so output in the surface band is identical to SimpleSliceCalculator
+
+   calculator keeps state of previous slice per thread and can be used from several threads
+
+ */
+public class CoherentSliceCalculator implements SliceCalculator {
+
+    static final boolean DEBUG = false;
+
+    static final int DEFAULT_TILE_SIZE = 16;
+
+    // maximal number of data channels to expect
+    int m_maxDataDimension = 8;
+    int m_tileSize = DEFAULT_TILE_SIZE;
+    double m_lipschitz = 1.;
+    double m_surfaceBand = 0.;
+    boolean m_fillInterior = false;
+
+    // statistics of evaluated and skipped pixels
+    long m_evaluatedCount, m_skippedCount;
+
+    ThreadLocal<SliceState> m_state = new ThreadLocal<SliceState>(){
+        protected SliceState initialValue(){
+            return new SliceState();
+        }
+    };
+
+    public CoherentSliceCalculator(int maxDataDimension){
+        m_maxDataDimension = maxDataDimension;
+    }
+
+    /**
+       set size of tiles in pixels
+     */
+    public void setTileSize(int size){
+        if(size < 1)
+            throw new IllegalArgumentException("tile size has to be positive: " + size);
+        m_tileSize = size;
+    }
+
+    /**
+       set max rate of change of distance, has to be >= 1 for exact distance functions
+     */
+    public void setLipschitz(double value){
+        m_lipschitz = value;
+    }
+
+    /**
+       set half width of surface band which is always evaluated exactly
+     */
+    public void setSurfaceBand(double value){
+        m_surfaceBand = value;
+    }
+
+    /**
+       if true tiles far inside of the surface are filled with data of tile center
+       it shall not be used if data in other channels vary inside of the shape
+     */
+    public void setFillInterior(boolean value){
+        m_fillInterior = value;
+    }
+
+    /**
+       @return count of pixels evaluated via data source
+     */
+    public synchronized long getEvaluatedCount(){
+        return m_evaluatedCount;
+    }
+
+    /**
+       @return count of pixels filled without evaluation
+     */
+    public synchronized long getSkippedCount(){
+        return m_skippedCount;
+    }
+
+    public void getSliceData(DataSource model, Vector3d origin, Vector3d eu, Vector3d ev, int nu, int nv, int dataDimension, double sliceData[]){
+
+        SliceState state = m_state.get();
+        int tileSize = m_tileSize;
+        int ntu = (nu + tileSize - 1)/tileSize;
+        int ntv = (nv + tileSize - 1)/tileSize;
+        // distance shift since previous slice
+        double shift = Double.MAX_VALUE;
+        if(state.isCompatible(eu, ev, nu, nv, tileSize)){
+            Vector3d d = new Vector3d();
+            d.sub(origin, state.origin);
+            shift = m_lipschitz*d.length();
+        } else {
+            state.init(eu, ev, nu, nv, tileSize, ntu*ntv);
+        }
+        state.origin.set(origin);
+
+        Vec pnt = new Vec(3);
+        Vec data = new Vec(m_maxDataDimension);
+        double band = m_surfaceBand;
+        long evaluated = 0, skipped = 0;
+
+        for(int tv = 0; tv < ntv; tv++){
+            int v0 = tv*tileSize;
+            int v1 = min(nv, v0 + tileSize);
+            for(int tu = 0; tu < ntu; tu++){
+                int u0 = tu*tileSize;
+                int u1 = min(nu, u0 + tileSize);
+                int tile = tu + tv*ntu;
+                int count = (u1 - u0)*(v1 - v0);
+
+                // estimation from previous slice
+                double dmin = state.dmin[tile] - shift;
+                double dmax = state.dmax[tile] + shift;
+                if(dmin > band){
+                    fillTile(sliceData, u0, u1, v0, v1, nu, dataDimension, dmin, null);
+                    state.setBounds(tile, dmin, dmax);
+                    skipped += count;
+                    continue;
+                }
+
+                // estimation from tile center
+                double cu = 0.5*(u0 + u1 - 1);
+                double cv = 0.5*(v0 + v1 - 1);
+                double radius = m_lipschitz*getTileRadius(eu, ev, 0.5*(u1 - u0 - 1), 0.5*(v1 - v0 - 1));
+                getPoint(origin, eu, ev, cu, cv, pnt);
+                model.getDataValue(pnt, data);
+                evaluated++;
+                double dc = data.v[0];
+                if(dc - radius > band){
+                    fillTile(sliceData, u0, u1, v0, v1, nu, dataDimension, dc - radius, null);
+                    state.setBounds(tile, dc - radius, dc + radius);
+                    skipped += count;
+                    continue;
+                }
+                if(m_fillInterior && dc + radius < -band){
+                    fillTile(sliceData, u0, u1, v0, v1, nu, dataDimension, dc + radius, data.v);
+                    state.setBounds(tile, dc - radius, dc + radius);
+                    skipped += count;
+                    continue;
+                }
+
+                // exact evaluation of tile
+                dmin = Double.MAX_VALUE;
+                dmax = -Double.MAX_VALUE;
+                for(int j = v0; j < v1; j++){
+                    for(int i = u0; i < u1; i++){
+                        getPoint(origin, eu, ev, i, j, pnt);
+                        model.getDataValue(pnt, data);
+                        data.get(sliceData, (i + j*nu)*dataDimension, dataDimension);
+                        double d = data.v[0];
+                        if(d < dmin) dmin = d;
+                        if(d > dmax) dmax = d;
+                    }
+                }
+                state.setBounds(tile, dmin, dmax);
+                evaluated += count;
+            }
+        }
+        synchronized(this){
+            m_evaluatedCount += evaluated;
+            m_skippedCount += skipped;
+        }
+        if(DEBUG) printf("CoherentSliceCalculator evaluated: %d skipped: %d\n", evaluated, skipped);
+    }
+
+    /**
+       fill tile with given distance value and data of other channels
+       @param data values of other channels, if null other channels are set to 0
+     */
+    static void fillTile(double sliceData[], int u0, int u1, int v0, int v1, int nu, int dataDimension, double distance, double data[]){
+
+        for(int j = v0; j < v1; j++){
+            for(int i = u0; i < u1; i++){
+                int offset = (i + j*nu)*dataDimension;
+                sliceData[offset] = distance;
+                for(int d = 1; d < dataDimension; d++){
+                    sliceData[offset + d] = (data != null)? data[d]: 0.;
+                }
+            }
+        }
+    }
+
+    /**
+       @return max distance from tile center to tile pixels
+     */
+    static double getTileRadius(Vector3d eu, Vector3d ev, double hu, double hv){
+
+        double x = hu*eu.x, y = hu*eu.y, z = hu*eu.z;
+        double sx = x + hv*ev.x, sy = y + hv*ev.y, sz = z + hv*ev.z;
+        double dx = x - hv*ev.x, dy = y - hv*ev.y, dz = z - hv*ev.z;
+        return sqrt(max(sx*sx + sy*sy + sz*sz, dx*dx + dy*dy + dz*dz));
+    }
+
+    static final void getPoint(Vector3d origin, Vector3d eu, Vector3d ev, double i, double j, Vec pnt){
+        pnt.set(origin.x + eu.x*i + ev.x*j,
+                origin.y + eu.y*i + ev.y*j,
+                origin.z + eu.z*i + ev.z*j);
+    }
+
+    /**
+       bounds of distance in tiles of last slice calculated by thread
+     */
+    static class SliceState {
+
+        Vector3d origin = new Vector3d();
+        Vector3d eu = new Vector3d();
+        Vector3d ev = new Vector3d();
+        int nu, nv, tileSize;
+        double dmin[], dmax[];
+
+        boolean isCompatible(Vector3d eu, Vector3d ev, int nu, int nv, int tileSize){
+            return (dmin != null) && this.eu.equals(eu) && this.ev.equals(ev) &&
+                this.nu == nu && this.nv == nv && this.tileSize == tileSize;
+        }
+
+        void init(Vector3d eu, Vector3d ev, int nu, int nv, int tileSize, int tileCount){
+            this.eu.set(eu);
+            this.ev.set(ev);
+            this.nu = nu;
+            this.nv = nv;
+            this.tileSize = tileSize;
+            dmin = new double[tileCount];
+            dmax = new double[tileCount];
+        }
+
+        final void setBounds(int tile, double min, double max){
+            dmin[tile] = min;
+            dmax[tile] = max;
+        }
+    }
+
+} // class CoherentSliceCalculator
@@ -13,13 +13,7 @@
 package abfab3d.util;
 
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
-import java.awt.image.DataBufferByte;
-import java.awt.image.DataBufferInt;
-
-import javax.imageio.ImageIO;
 import java.util.Vector;
-import java.io.File;
 
 import static abfab3d.core.Output.printf;
 import static abfab3d.core.Output.fmt;
@@ -34,14 +28,23 @@ import static abfab3d.util.ImageUtil.getAlpha;
 /**
   makes Mip map acess to the image 
 
+  levels of mip map are stored in single flat array of ARGB pixels, 
+  lookup does bilinear interpolation inside of level and linear interpolation between levels (trilinear)
+  and does no allocation 
  */
 public class ImageMipMap {
 
     static final boolean DEBUG = false;
 
-
-    MipMapEntry m_data[];
+    // ARGB pixels of all levels 
+    int m_data[];
+    // offset of each level in m_data 
+    int m_offset[];
+    int m_levelWidth[], m_levelHeight[];
+    // size of level pixel in pixels of original image 
+    double m_pixelSize[];
     double m_width, m_height;
+    boolean m_repeat = true;
     
     //static final int 
     PixelWeight m_pixelWeight = null;//new LinearPixelWeight(127);
@@ -65,298 +68,234 @@ public class ImageMipMap {
         makeMipMap(bi);
         
     }
+
+    /**
+       makes mipmap from ARGB pixels 
+       @param argb pixels in rows argb[x + y*width]
+     */
+    public ImageMipMap(int argb[], int width, int height){
+
+        makeMipMap(argb, width, height);
+
+    }
     
+    /**
+       set whether image is repeated outside of its bounds (default) or edge pixels are extended 
+     */
+    public void setRepeat(boolean value){
+        m_repeat = value;
+    }
+
+    public int getLevelCount(){
+        return m_offset.length;
+    }
+
     void makeMipMap(BufferedImage image){
         
-        //long t0 = System.currentTimeMillis();
-        if(DEBUG)printf("start mipmap\n");
         int width = image.getWidth();
         int height = image.getHeight();
-        m_width = width;
-        m_height = height;
-        
-        BufferedImage img = image;
-        
-        Vector<MipMapEntry> data = new Vector<MipMapEntry>();
-        
-        while(width > 0 && height > 0){
-            
-            DataBuffer db = img.getRaster().getDataBuffer();
-            if(DEBUG) printf("mipmap [%d x %d]: %s %s\n", width, height, db, getTypeName(img.getType()));
-            int dt = db.getDataType();
-            
-            if(dt == DataBuffer.TYPE_INT ){
-                
-                DataBufferInt  dbi = (DataBufferInt)db;
-                int[] b = dbi.getData();
-                MipMapEntry me = new MipMapEntryInt(b, width, height, m_width/width);
-                data.add(me);
-                //printf("INT b.lengt: %d - %d\n", b.length, width*height);
-                
-            } else if(dt == DataBuffer.TYPE_BYTE){
-                
-                DataBufferByte dbb = (DataBufferByte)db;
-                byte[] b = dbb.getData();
-                MipMapEntry me = new MipMapEntryByte(b, width, height, m_width/width);
-                data.add(me);
-                //printf("BYTE b.lengt: %d - %d\n", b.length, width*height);
-            }
-            
-            if(width <= 1 || height <= 1)
-                break;
-            
+        int argb[] = image.getRGB(0, 0, width, height, null, 0, width);
+        if(m_pixelWeight == null) {
+            makeMipMap(argb, width, height);
+            return;
+        }
+        // weighted downsampling of each level 
+        Vector<int[]> levels = new Vector<int[]>();
+        levels.add(argb);
+        BufferedImage img = image;        
+        while(width > 1 && height > 1){
             width = (width + 1)/2;
             height = (height + 1)/2;
-            // scale down the image 
-            if(m_pixelWeight != null)
-                img = ImageUtil.getScaledImage(img, width, height, m_pixelWeight); 
-            else 
-                img = ImageUtil.getScaledImage(img, width, height); 
-            if(DEBUG) try {ImageIO.write(img, "png", new File(fmt("/tmp/mipmap%02d.png",data.size())));} catch(Exception e){}
-          
+            img = ImageUtil.getScaledImage(img, width, height, m_pixelWeight); 
+            levels.add(img.getRGB(0, 0, width, height, null, 0, width));
         }
+        makeLevels(levels, image.getWidth(), image.getHeight());
+    }
+
+    void makeMipMap(int argb[], int width, int height){
         
-        m_data = (MipMapEntry[])data.toArray(new MipMapEntry[data.size()]);
+        Vector<int[]> levels = new Vector<int[]>();
+        levels.add(argb);
+        int w = width, h = height;
+        while(w > 1 && h > 1){
+            argb = downsample(argb, w, h);
+            w = (w + 1)/2;
+            h = (h + 1)/2;
+            levels.add(argb);
+        }
+        makeLevels(levels, width, height);
         
     }
 
-  public void printData(int ind, int start, int count){
+    /**
+       copies levels into flat array 
+     */
+    void makeLevels(Vector<int[]> levels, int width, int height){
 
-    MipMapEntry me = m_data[ind];
-    me.printData(start, count);
+        int count = levels.size();
+        m_offset = new int[count];
+        m_levelWidth = new int[count];
+        m_levelHeight = new int[count];
+        m_pixelSize = new double[count];
+        int size = 0;
+        for(int i = 0; i < count; i++){
+            size += levels.get(i).length;
+        }
+        m_data = new int[size];
+        m_width = width;
+        m_height = height;
+        int offset = 0;
+        for(int i = 0; i < count; i++){
+            int level[] = levels.get(i);
+            m_offset[i] = offset;
+            m_levelWidth[i] = width;
+            m_levelHeight[i] = height;
+            m_pixelSize[i] = m_width/width;
+            System.arraycopy(level, 0, m_data, offset, level.length);
+            if(DEBUG) printf("mipmap [%d x %d] pixelSize: %7.2f\n", width, height, m_pixelSize[i]);
+            offset += level.length;
+            width = (width + 1)/2;
+            height = (height + 1)/2;
+        }
+    }
 
-  }
-    int debugCount = 100;
+    /**
+       averages 2x2 blocks of pixels, last row and column of odd sized image are repeated 
+     */
+    static int[] downsample(int argb[], int width, int height){
+
+        int w = (width + 1)/2;
+        int h = (height + 1)/2;
+        int out[] = new int[w*h];
+        for(int y = 0; y < h; y++){
+            int y0 = 2*y*width;
+            int y1 = Math.min(2*y+1, height-1)*width;
+            for(int x = 0; x < w; x++){
+                int x0 = 2*x;
+                int x1 = Math.min(2*x+1, width-1);
+                int c00 = argb[y0 + x0], c10 = argb[y0 + x1], c01 = argb[y1 + x0], c11 = argb[y1 + x1];
+                int a = (getAlpha(c00) + getAlpha(c10) + getAlpha(c01) + getAlpha(c11) + 2) >> 2;
+                int r = (getRed(c00) + getRed(c10) + getRed(c01) + getRed(c11) + 2) >> 2;
+                int g = (getGreen(c00) + getGreen(c10) + getGreen(c01) + getGreen(c11) + 2) >> 2;
+                int b = (getBlue(c00) + getBlue(c10) + getBlue(c01) + getBlue(c11) + 2) >> 2;
+                out[x + y*w] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+        return out;
+    }
+
+    public void printData(int ind, int start, int count){
+        
+        for(int i = start; i < count; i++){
+            printf("%d: %x\n", i, m_data[m_offset[ind] + i]);
+        }
+    }
     
     /**
        return interpolated color of given pixel 
        size - diameter of the averaging area in pixels 
-       
+       color - premultiplied by alpha components of color in the range [0,255] 
     */
     public void getPixel(double x, double y, double probesize, double color[]){
+
+        getPixel(x, y, probesize, m_repeat, m_repeat, color);
+
+    }
+
+    /**
+       return interpolated color of given pixel 
+       size - diameter of the averaging area in pixels 
+       repeatX, repeatY - whether image is repeated along axis or edge pixels are extended
+       color - premultiplied by alpha components of color in the range [0,255] 
+    */
+    public void getPixel(double x, double y, double probesize, boolean repeatX, boolean repeatY, double color[]){
         
-        //printf("MipMap.getPixel(%10.5f, %10.5f, %10.5f)\n", x, y, probesize);
-        
-        // find mipmap entry, which has pixel size less, than probesize
-        // and next mipmap entry has larger pixel size
+        // find mipmap level, which has pixel size less, than probesize
+        // and next mipmap level has larger pixel size
         // linearly interpolate between results
-        int upperIndex = -1;
-        int lowerIndex = -1;
-        
-        for(int i = 0; i < m_data.length; i++){
-            MipMapEntry me = m_data[i];
-            if(probesize < me.pixelSize){
-                upperIndex = i;
-                break;
-            }
-        }
-        
-        switch(upperIndex){
-        case 0: 
-            {
-                // probe is smaler than pixel size of the first image
-                // no interpolation between maps 
-                MipMapEntry me = m_data[0];
-                //printf("map: %s\n", me);
-                me.getPixel(x,y,color);
-                return;
-            }
-        case -1:
-            
+        int count = m_pixelSize.length;
+        int upper = 0;
+        while(upper < count && probesize >= m_pixelSize[upper])
+            upper++;
+
+        if(upper == 0) {
+            // probe is smaler than pixel size of the first image
+            getLevelPixel(0, x, y, repeatX, repeatY, color);
+        } else if(upper == count) {
             // probe is larger than pixel size of the last image 
-            // no interpolation between maps 
-            {
-                
-                MipMapEntry me = m_data[m_data.length-1];      
-                
-                //printf("map: %s\n", me);
-                me.getPixel(me.width*x/m_width, me.height*y/m_height,color);      
-                return;
-            }
-            
-        default:
-            {
-                // we are btween the maps
-                MipMapEntry me0 = m_data[upperIndex-1]; 
-                MipMapEntry me1 = m_data[upperIndex];
-                //printf("map0: %s\n", me0);
-                //printf("map1: %s\n", me1);
-                
-                double color0[] = new double[4];
-                double color1[] = new double[4];
-                double w = (probesize-me0.pixelSize)/(me1.pixelSize-me0.pixelSize); // interpolation between maps 
-                if(DEBUG && debugCount-- > 0){
-                    printf("probe: %7.2f, w0: %7.2f w1:%7.2f %7.2f\n", probesize, me0.pixelSize, me1.pixelSize, w);
-                }
-                
-                //printf("w: %s\n", w);
-                
-                //synchronized(this) {
-                me0.getPixel(me0.width*x/m_width, me0.height*y/m_height, color0);      
-                me1.getPixel(me1.width*x/m_width, me1.height*y/m_height,color1);      
-                ImageUtil.lerpColors(color0, color1, w, color);
-                
-                return;
-                //}
-            }
+            getLevelPixel(count-1, x, y, repeatX, repeatY, color);
+        } else {
+            // we are between the levels
+            double w = (probesize-m_pixelSize[upper-1])/(m_pixelSize[upper]-m_pixelSize[upper-1]); 
+            getLevelPixel(upper, x, y, repeatX, repeatY, color);
+            double r1 = color[0], g1 = color[1], b1 = color[2], a1 = color[3];
+            getLevelPixel(upper-1, x, y, repeatX, repeatY, color);
+            color[0] += w*(r1 - color[0]);
+            color[1] += w*(g1 - color[1]);
+            color[2] += w*(b1 - color[2]);
+            color[3] += w*(a1 - color[3]);
         }
         
     }
 
     /**
-       data representation for one level of mipmap
+       bilinear interpolation of level pixels 
+       @param x x-coordinate in pixels of original image 
+       @param y y-coordinate in pixels of original image 
      */
-    static abstract class MipMapEntry {
-        
-        double pixelSize; 
-        int width, height; 
-        abstract void getPixel(double x, double y, double color[]);
-        
-        void init(int width, int height, double pixelSize){ 
-            this.width = width;
-            this.height = height;
-            this.pixelSize = pixelSize;
-        }   
-        void printData(int start, int count){
-        }
-        
-        public String toString(){
-            return fmt("%s[%dx%d:%8.5f]",this.getClass().getName(), width, height, pixelSize);
-        }
-        
-    }
-    
-    static class MipMapEntryByte extends MipMapEntry {
-        
-        byte data[];
-        int unitlength;
-        
-        MipMapEntryByte(byte data[], int width, int height, double pixelSize){
-            this.data = data;
-            init(width, height, pixelSize);
-            unitlength = data.length/(width*height);
+    final void getLevelPixel(int level, double x, double y, boolean repeatX, boolean repeatY, double color[]){
+
+        int width = m_levelWidth[level];
+        int height = m_levelHeight[level];
+        x = x*width/m_width - 0.5;
+        y = y*height/m_height - 0.5;
             
+        int x0 = (int)Math.floor(x);
+        int y0 = (int)Math.floor(y);
+        double dx = x-x0;
+        double dy = y-y0;
+        double dx1= 1-dx, dy1=1-dy;
+        int x1 = x0+1, y1 = y0+1;
+        if(repeatX){
+            x0 = wrap(x0, width);
+            x1 = wrap(x1, width);
+        } else {
+            x0 = clamp(x0, width);
+            x1 = clamp(x1, width);
         }
-        
-        void printData(int start, int count){
-            
-            for(int i = start; i < count; i++){
-                printf("%d: %x\n", i, data[i]);
-            }
+        if(repeatY){
+            y0 = wrap(y0, height);
+            y1 = wrap(y1, height);
+        } else {
+            y0 = clamp(y0, height);
+            y1 = clamp(y1, height);
         }
-        
-        void getPixel(double x, double y, double color[]){
-            
-            x -= 0.5;
-            y -= 0.5;
-            
-            int x0 = (int)Math.floor(x);
-            int y0 = (int)Math.floor(y);
-            int x1 = x0+1, y1 = y0+1;
+        int offset = m_offset[level];
+        int rgb00 = m_data[offset + y0*width + x0];
+        int rgb10 = m_data[offset + y0*width + x1];
+        int rgb01 = m_data[offset + y1*width + x0];
+        int rgb11 = m_data[offset + y1*width + x1];
             
-            double dx = x-x0;
-            double dy = y-y0;
-            double dx1= 1-dx, dy1=1-dy;
+        color[0] = dy1*(dx1*getRed(rgb00)   + dx * getRed(rgb10))   + dy*(dx1*getRed(rgb01)   + dx * getRed(rgb11));
+        color[1] = dy1*(dx1*getGreen(rgb00) + dx * getGreen(rgb10)) + dy*(dx1*getGreen(rgb01) + dx * getGreen(rgb11));
+        color[2] = dy1*(dx1*getBlue(rgb00)  + dx * getBlue(rgb10))  + dy*(dx1*getBlue(rgb01)  + dx * getBlue(rgb11));
+        double alpha = dy1*(dx1*getAlpha(rgb00) + dx * getAlpha(rgb10)) + dy*(dx1*getAlpha(rgb01) + dx * getAlpha(rgb11));
+        color[3] = alpha;
             
-            if(x0 < 0) x0 = width-1;
-            if(y0 < 0) y0 = height-1;
-            if(y0 >= height)y0 = 0;
-            if(x0 >= width) x0 = 0;
-            if(y1 >= height)y1 = 0;
-            if(x1 >= width) x1 = 0;
-            int offset00 = (y0 * width  + x0)*unitlength;
-            int offset10 = (y0 * width  + x1)*unitlength;
-            int offset01 = (y1 * width  + x0)*unitlength;
-            int offset11 = (y1 * width  + x1)*unitlength;
-            
-            int a00, a01, a10, a11; 
-            a00 = a01 = a10 = a11 = 255;
-            boolean hasAlpha  = (unitlength == 4);
-            try {
-                if(hasAlpha) a00 = ((int)data[offset00++])& 0xff;    
-                int b00 = ((int)data[offset00++])& 0xff;
-                int g00 = ((int)data[offset00++])& 0xff;
-                int r00 = ((int)data[offset00++])& 0xff;
-                
-                if(hasAlpha) a10 = ((int)data[offset10++])& 0xff;      
-                int b10 = ((int)data[offset10++])& 0xff;
-                int g10 = ((int)data[offset10++])& 0xff;
-                int r10 = ((int)data[offset10++])& 0xff;
-                
-                if(hasAlpha) a01 = ((int)data[offset01++])& 0xff;      
-                int b01 = ((int)data[offset01++])& 0xff;
-                int g01 = ((int)data[offset01++])& 0xff;
-                int r01 = ((int)data[offset01++])& 0xff;
-                
-                if(hasAlpha) a11 = ((int)data[offset11++])&0xff;      
-                int b11 = ((int)data[offset11++])& 0xff;
-                int g11 = ((int)data[offset11++])& 0xff;
-                int r11 = ((int)data[offset11++]) & 0xff;
-                
-                color[0] = dy1*(dx1*r00 + dx * r10) + dy*(dx1*r01 + dx * r11);
-                color[1] = dy1*(dx1*g00 + dx * g10) + dy*(dx1*g01 + dx * g11);
-                color[2] = dy1*(dx1*b00 + dx * b10) + dy*(dx1*b01 + dx * b11);
-                double alpha = 255;
-                if(hasAlpha) alpha = dy1*(dx1*a00 + dx * a10) + dy*(dx1*a01 + dx * a11);
-                
-                color[3] = alpha;
-                if(hasAlpha){
-                    // premultiply by alpha 
-                    alpha /= 255;
-                    color[0] *= alpha; color[1] *= alpha; color[2] *= alpha; 
-                }    
-            } catch(Exception e){
-                e.printStackTrace(System.out);
-                printf("xo:%d, y0:%d, x1:%d y1:%d [%dx%d]\n", x0, y0, x1, y1, width, height);
-            }
-        }
+        // premultiply by alpha 
+        alpha /= 255;
+        color[0] *= alpha; color[1] *= alpha; color[2] *= alpha; 
     }
-    
-    static class MipMapEntryInt extends MipMapEntry {
-        
-        int data[];
-        MipMapEntryInt(int data[], int width, int height, double pixelSize){
-            this.data = data;
-            init(width, height, pixelSize);
-        }
-        
-        void getPixel(double x, double y, double color[]){
-            //printf("map:(%s).getPixel(%10.5f,%10.5f)\n", this,x,y);      
-            x -= 0.5;
-            y -= 0.5;
-            
-            int x0 = (int)Math.floor(x);
-            int y0 = (int)Math.floor(y);
-            int x1 = x0+1, y1 = y0+1;
-            
-            double dx = x-x0;
-            double dy = y-y0;
-            double dx1= 1-dx, dy1=1-dy;
-            
-            if(x0 < 0) x0 = width-1;
-            if(y0 < 0) y0 = height-1;
-            if(y1 >= height)y1 = 0;
-            if(x1 >= width) x1 = 0;
-            
-            int rgb00 = data[(y0 * width  + x0)];
-            int rgb10 = data[(y0 * width  + x1)];
-            int rgb01 = data[(y1 * width  + x0)];
-            int rgb11 = data[(y1 * width  + x1)];
-            
-            color[0]   = dy1*(dx1*getRed(rgb00)   + dx * getRed(rgb10))   + dy*(dx1*getRed(rgb01)   + dx * getRed(rgb11));
-            color[1] = dy1*(dx1*getGreen(rgb00) + dx * getGreen(rgb10)) + dy*(dx1*getGreen(rgb01) + dx * getGreen(rgb11));
-            color[2]  = dy1*(dx1*getBlue(rgb00)  + dx * getBlue(rgb10))  + dy*(dx1*getBlue(rgb01)  + dx * getBlue(rgb11));
-            double alpha = dy1*(dx1*getAlpha(rgb00) + dx * getAlpha(rgb10)) + dy*(dx1*getAlpha(rgb01) + dx * getAlpha(rgb11));
-            color[3] = alpha;
-            
-            // premultiply by alpha 
-            alpha /= 255;
-            color[0] *= alpha; color[1] *= alpha; color[2] *= alpha; 
-            
-            //printf("[(%d, %d),(%d, %d)]\n", x0, y0, x1, y1);
-            //printf("dx: %8.5f, dy: %8.5f\n", dx, dy);
-            //printf("data(%d,%d): %x %x %x %x \n", x0, y0,rgb00, data01, data10, data11);
-        }
+
+    static final int wrap(int x, int size){
+        x %= size;
+        return (x < 0)? x + size: x;
+    }
+
+    static final int clamp(int x, int size){
+        if(x < 0) return 0;
+        if(x >= size) return size-1;
+        return x;
     }
     
     public static String getTypeName(int t){
@@ -155,9 +155,36 @@ public class MeshRasterizer implements TriangleCollector {
     }
 
     public void getRaster(AttributeGrid grid){
-        
+
         fillGridAttribute(grid);
-        
+
+    }
+
+    /**
+       sorts z-buffer rays, it has to be called after all triangles are added before calls to isInterior()
+     */
+    public void sort(){
+
+        m_zbuffer.sort();
+
+    }
+
+    /**
+       @return true if voxel is interior, uses the same rule as getRaster()
+     */
+    public boolean isInterior(int x, int y, int z){
+
+        int len = m_zbuffer.getCount(x,y);
+        if(len < 2)
+            return false;
+        float zray[] = m_zbuffer.getRay(x,y);
+        len = (len & 0xFFFE); // make it even
+        for(int c = 0; c < len; c += 2){
+            // half voxel shift
+            if(z >= Math.ceil(zray[c] - 0.5) && z <= Math.floor(zray[c+1] - 0.5))
+                return true;
+        }
+        return false;
     }
    
     protected void fillGridAttribute(AttributeGrid grid){
@@ -0,0 +1,29 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.util;
+
+/**
+   processor of range of indices (rows, columns, slices) 
+   
+   each instance is used by single thread and may keep its own work buffers 
+
+   @see RangeRunnerMT
+ */
+public interface RangeProcessor {
+
+    /**
+       process indices in the range [start, end)
+     */
+    public void processRange(int start, int end);
+
+}
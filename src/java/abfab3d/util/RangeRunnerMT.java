@@ -0,0 +1,110 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
+/**
+   runs processing of range of indices [0, count) split into chunks on several threads
+
+   each thread uses its own RangeProcessor, chunks are taken from shared counter 
+   ranges passed to processor never exceed chunkSize
+   if single processor is given or there is only one chunk the processing is done in the calling thread
+ */
+public class RangeRunnerMT {
+
+    static final boolean DEBUG = false;
+
+    /**
+       process range [0, count) using given processors, one thread per processor
+       @param count size of the range 
+       @param chunkSize size of chunks of range passed to processors
+       @param processors processors to use, one per thread 
+     */
+    public static void run(int count, int chunkSize, RangeProcessor processors[]){
+
+        if(count <= 0)
+            return;
+        if(chunkSize < 1)
+            chunkSize = 1;
+        int chunkCount = (count + chunkSize - 1)/chunkSize;
+        int threadCount = Math.min(processors.length, chunkCount);
+
+        if(threadCount <= 1){
+            for(int start = 0; start < count; start += chunkSize){
+                processors[0].processRange(start, Math.min(count, start + chunkSize));
+            }
+            return;
+        }
+
+        long t0 = time();
+        AtomicInteger nextChunk = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            Future<?> futures[] = new Future<?>[threadCount];
+            for(int i = 0; i < threadCount; i++){
+                futures[i] = executor.submit(new ChunkRunner(processors[i], nextChunk, count, chunkSize));
+            }
+            for(int i = 0; i < threadCount; i++){
+                try {
+                    futures[i].get();
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("processing interrupted");
+                } catch(ExecutionException e){
+                    Throwable cause = e.getCause();
+                    if(cause instanceof RuntimeException)
+                        throw (RuntimeException)cause;
+                    if(cause instanceof Error)
+                        throw (Error)cause;
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if(DEBUG) printf("RangeRunnerMT.run(%d, %d) threads: %d %d ms\n", count, chunkSize, threadCount, time() - t0);
+    }
+
+    static class ChunkRunner implements Runnable {
+
+        RangeProcessor processor;
+        AtomicInteger nextChunk;
+        int count;
+        int chunkSize;
+
+        ChunkRunner(RangeProcessor processor, AtomicInteger nextChunk, int count, int chunkSize){
+            this.processor = processor;
+            this.nextChunk = nextChunk;
+            this.count = count;
+            this.chunkSize = chunkSize;
+        }
+
+        public void run(){
+            while(true){
+                int start = nextChunk.getAndIncrement()*chunkSize;
+                if(start >= count)
+                    break;
+                processor.processRange(start, Math.min(count, start + chunkSize));
+            }
+        }
+    }
+
+} // class RangeRunnerMT
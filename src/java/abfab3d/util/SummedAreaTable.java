@@ -0,0 +1,216 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.util;
+
+import abfab3d.core.Grid2D;
+import abfab3d.core.GridDataChannel;
+
+import static java.lang.Math.floor;
+
+/**
+   summed-area table of multichannel image
+
+   gives average of image values over axis aligned box of arbitrary size in O(1)
+   box corners may have fractional pixel coordinates, pixels partially covered by the box
+   contribute proportionally to covered area (the integral of piecewise constant image is bilinear inside of each pixel)
+
+   image may be repeated along each axis, otherwise the box is clipped to the image
+   lookups do no allocation and are thread safe
+ */
+public class SummedAreaTable {
+
+    static final double EPS = 1.e-9;
+
+    int m_width, m_height, m_channels;
+    // m_sum[(x + y*(width+1))*channels + c] is sum of channel c over pixels [0,x)x[0,y)
+    double m_sum[];
+
+    /**
+       @param data interleaved pixel values data[(x + y*width)*channels + c]
+       @param width image width
+       @param height image height
+       @param channels count of channels per pixel
+     */
+    public SummedAreaTable(double data[], int width, int height, int channels){
+
+        m_width = width;
+        m_height = height;
+        m_channels = channels;
+        int rowLength = (width+1)*channels;
+        m_sum = new double[rowLength*(height+1)];
+        double rowSum[] = new double[channels];
+
+        for(int y = 0; y < height; y++){
+            for(int c = 0; c < channels; c++)
+                rowSum[c] = 0;
+            int prev = y*rowLength;
+            int curr = prev + rowLength;
+            for(int x = 0; x < width; x++){
+                int src = (x + y*width)*channels;
+                int dst = (x+1)*channels;
+                for(int c = 0; c < channels; c++){
+                    rowSum[c] += data[src + c];
+                    m_sum[curr + dst + c] = m_sum[prev + dst + c] + rowSum[c];
+                }
+            }
+        }
+    }
+
+    /**
+       makes single channel table of physical values of grid channel
+     */
+    public SummedAreaTable(Grid2D grid, GridDataChannel channel){
+
+        this(getValues(grid, channel), grid.getWidth(), grid.getHeight(), 1);
+
+    }
+
+    static double[] getValues(Grid2D grid, GridDataChannel channel){
+
+        int nx = grid.getWidth();
+        int ny = grid.getHeight();
+        double data[] = new double[nx*ny];
+        for(int y = 0; y < ny; y++){
+            for(int x = 0; x < nx; x++){
+                data[x + y*nx] = channel.getValue(grid.getAttribute(x, y));
+            }
+        }
+        return data;
+    }
+
+    public int getWidth(){
+        return m_width;
+    }
+
+    public int getHeight(){
+        return m_height;
+    }
+
+    public int getChannelsCount(){
+        return m_channels;
+    }
+
+    /**
+       @return average of channel 0 over box [x0,x1]x[y0,y1] given in pixels
+     */
+    public final double getAverage(double x0, double y0, double x1, double y1, boolean repeatX, boolean repeatY){
+
+        if(!repeatX){
+            x0 = clampCoord(x0, m_width);
+            x1 = clampCoord(x1, m_width);
+            if(x1 - x0 < EPS){
+                // box is outside of image, use nearest pixel
+                x0 = Math.min(Math.max(x0 - 0.5, 0), m_width - 1);
+                x1 = x0 + 1;
+            }
+        }
+        if(!repeatY){
+            y0 = clampCoord(y0, m_height);
+            y1 = clampCoord(y1, m_height);
+            if(y1 - y0 < EPS){
+                y0 = Math.min(Math.max(y0 - 0.5, 0), m_height - 1);
+                y1 = y0 + 1;
+            }
+        }
+        double area = (x1 - x0)*(y1 - y0);
+        if(area < EPS)
+            return getIntegral(x0, y0, 0, repeatX, repeatY);
+
+        double sum = getIntegral(x1, y1, 0, repeatX, repeatY) - getIntegral(x0, y1, 0, repeatX, repeatY)
+            - getIntegral(x1, y0, 0, repeatX, repeatY) + getIntegral(x0, y0, 0, repeatX, repeatY);
+        return sum/area;
+
+    }
+
+    /**
+       calculates average of all channels over box [x0,x1]x[y0,y1] given in pixels
+       @param value array to receive channel values
+     */
+    public final void getAverage(double x0, double y0, double x1, double y1, boolean repeatX, boolean repeatY, double value[]){
+
+        if(!repeatX){
+            x0 = clampCoord(x0, m_width);
+            x1 = clampCoord(x1, m_width);
+            if(x1 - x0 < EPS){
+                x0 = Math.min(Math.max(x0 - 0.5, 0), m_width - 1);
+                x1 = x0 + 1;
+            }
+        }
+        if(!repeatY){
+            y0 = clampCoord(y0, m_height);
+            y1 = clampCoord(y1, m_height);
+            if(y1 - y0 < EPS){
+                y0 = Math.min(Math.max(y0 - 0.5, 0), m_height - 1);
+                y1 = y0 + 1;
+            }
+        }
+        double norm = 1./Math.max((x1 - x0)*(y1 - y0), EPS);
+        for(int c = 0; c < m_channels; c++){
+            double sum = getIntegral(x1, y1, c, repeatX, repeatY) - getIntegral(x0, y1, c, repeatX, repeatY)
+                - getIntegral(x1, y0, c, repeatX, repeatY) + getIntegral(x0, y0, c, repeatX, repeatY);
+            value[c] = sum*norm;
+        }
+    }
+
+    static final double clampCoord(double x, int size){
+        if(x < 0.) return 0.;
+        if(x > size) return size;
+        return x;
+    }
+
+    /**
+       integral of channel over [0,x)x[0,y), repeated image is integrated over whole periods
+     */
+    final double getIntegral(double x, double y, int channel, boolean repeatX, boolean repeatY){
+
+        double qx = 0., qy = 0.;
+        if(repeatX){
+            qx = floor(x/m_width);
+            x -= qx*m_width;
+        }
+        if(repeatY){
+            qy = floor(y/m_height);
+            y -= qy*m_height;
+        }
+        double sum = interpolate(x, y, channel);
+        if(qx != 0.)
+            sum += qx*interpolate(m_width, y, channel);
+        if(qy != 0.)
+            sum += qy*interpolate(x, m_height, channel);
+        if(qx != 0. && qy != 0.)
+            sum += qx*qy*m_sum[(m_width + m_height*(m_width+1))*m_channels + channel];
+        return sum;
+    }
+
+    /**
+       bilinear interpolation of the table at point inside of [0,width]x[0,height]
+     */
+    final double interpolate(double x, double y, int channel){
+
+        int ix = (int)x;
+        int iy = (int)y;
+        if(ix >= m_width) ix = m_width-1;
+        if(iy >= m_height) iy = m_height-1;
+        double dx = x - ix;
+        double dy = y - iy;
+        int rowLength = (m_width+1)*m_channels;
+        int i00 = iy*rowLength + ix*m_channels + channel;
+        int i01 = i00 + rowLength;
+        double s00 = m_sum[i00];
+        double s10 = m_sum[i00 + m_channels];
+        double s01 = m_sum[i01];
+        double s11 = m_sum[i01 + m_channels];
+        return (1-dy)*((1-dx)*s00 + dx*s10) + dy*((1-dx)*s01 + dx*s11);
+    }
+
+} // class SummedAreaTable
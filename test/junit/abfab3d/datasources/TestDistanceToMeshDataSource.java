@@ -38,6 +38,7 @@ import abfab3d.core.AttributedTriangleProducer;
 import abfab3d.core.AttributedTriangleCollector;
 
 import abfab3d.util.ColorMapperDistance;
+import abfab3d.util.TriangleMeshSurfaceBuilder;
 import abfab3d.util.ColorMapperDensity;
 import abfab3d.util.ColorMapper;
 
@@ -72,6 +73,89 @@ public class TestDistanceToMeshDataSource extends TestCase {
         printf("testNothing()\n");
     }
 
+    /**
+       parallel rasterization generates the same points as single surface builder 
+     */
+    public void testSurfacePoints() throws Exception {
+
+        TriangleProducer producer = new TriangulatedModels.Sphere(10*MM, new Vector3d(0,0,0), 6);
+        Bounds bounds = new Bounds(-11*MM, 11*MM, -11*MM, 11*MM, -11*MM, 11*MM, 0.2*MM);
+
+        TriangleMeshSurfaceBuilder builder = new TriangleMeshSurfaceBuilder(bounds);
+        builder.initialize();
+        producer.getTriangles(builder);
+        int pcount = builder.getPointCount();
+        double pnts[][] = new double[3][pcount];
+        builder.getPoints(pnts[0], pnts[1], pnts[2]);
+
+        DistanceToMeshDataSource.TriangleArray triangles = new DistanceToMeshDataSource.TriangleArray(3);
+        producer.getTriangles(triangles);
+        assertTrue("several chunks", triangles.getTriCount() > 2*DistanceToMeshDataSource.TRIANGLES_CHUNK_SIZE);
+
+        for(int threads = 1; threads <= 4; threads += 3){
+            double pnts1[][] = DistanceToMeshDataSource.makeSurfacePoints(triangles, bounds, 3, null, threads);
+            assertEquals("point count", pcount, pnts1[0].length);
+            for(int d = 0; d < 3; d++){
+                for(int i = 0; i < pcount; i++){
+                    assertEquals("point coord", pnts[d][i], pnts1[d][i], 0.);
+                }
+            }
+        }
+        Bounds meshBounds = triangles.getBounds(4);
+        Bounds meshBounds1 = triangles.getBounds(1);
+        assertEquals("bounds", meshBounds.toString(), meshBounds1.toString());
+        assertEquals("xmax", 10*MM, meshBounds.xmax, 1.e-10);
+    }
+
+    /**
+       distance data does not depend on thread count 
+     */
+    public void testThreadCount() throws Exception {
+
+        TriangleProducer tProducer = new TriangulatedModels.Sphere(10*MM, new Vector3d(0,0,0), 6);
+        Object producers[] = new Object[]{
+            tProducer,
+            tProducer,
+            new MeshColorizer(tProducer, MeshColorizer.COLORING_SURFACE),
+        };
+        boolean makeSolid[] = new boolean[]{true, false, true};
+        int threads[] = new int[]{1, 4};
+        
+        for(int k = 0; k < producers.length; k++){
+            DistanceToMeshDataSource dmds[] = new DistanceToMeshDataSource[threads.length];
+            for(int t = 0; t < threads.length; t++){
+                dmds[t] = new DistanceToMeshDataSource(producers[k]);
+                dmds[t].set("voxelSize", 0.5*MM);
+                dmds[t].set("margins", 2*MM);
+                dmds[t].set("makeSolid", makeSolid[k]);
+                dmds[t].set("useCaching", false);
+                dmds[t].setThreadCount(threads[t]);
+                dmds[t].initialize();
+            }
+            Vec pnt = new Vec(3);
+            Vec data0 = new Vec(6);
+            Vec data1 = new Vec(6);
+            int N = 20;
+            for(int i = 0; i <= N; i++){
+                for(int j = 0; j <= N; j++){
+                    pnt.v[0] = (-12 + 24.*i/N)*MM;
+                    pnt.v[1] = (-12 + 24.*j/N)*MM;
+                    pnt.v[2] = 0.3*MM;
+                    dmds[0].getDataValue(pnt, data0);
+                    dmds[1].getDataValue(pnt, data1);
+                    for(int d = 0; d < dmds[0].getChannelsCount(); d++){
+                        assertEquals(fmt("producer: %d channel: %d", k, d), data0.v[d], data1.v[d], 0.);
+                    }
+                }
+            }
+            if(makeSolid[k]){
+                pnt.set(0,0,0);
+                dmds[1].getDataValue(pnt, data1);
+                assertTrue("interior", data1.v[0] < 0.);
+            }
+        }
+    }
+
 
     //
     //  testing distance to sphere 
@@ -0,0 +1,125 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.datasources;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+import static abfab3d.core.Units.MM;
+
+/**
+ * Tests GlyphCache and composition of Text2D images from cached glyphs
+ */
+public class TestGlyphCache extends TestCase {
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestGlyphCache.class);
+    }
+
+    public void testComposition() {
+
+        Font font = new Font("Serif", Font.PLAIN, 1).deriveFont(60.f);
+        BufferedImage tmp = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = (Graphics2D)tmp.getGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
+        FontRenderContext frc = g.getFontRenderContext();
+        String text = "Shapeways 2018";
+        GlyphVector gv = font.layoutGlyphVector(frc, text.toCharArray(), 0, text.length(), 0);
+
+        int width = 500, height = 100;
+        double dx = 10.3, dy = 70.6;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g2 = (Graphics2D)image.getGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setColor(Color.white);
+        g2.drawGlyphVector(gv, (float)dx, (float)dy);
+
+        float coverage[] = new float[width*height];
+        new GlyphCache(1000000).drawGlyphVector(gv, dx, dy, coverage, width, height);
+
+        double diff = 0, total = 0;
+        for(int y = 0; y < height; y++){
+            for(int x = 0; x < width; x++){
+                double c0 = (image.getRaster().getSample(x, y, 0))/255.;
+                double c1 = coverage[x + y*width];
+                diff += Math.abs(c0 - c1);
+                total += c0;
+            }
+        }
+        printf("coverage: %7.1f difference: %7.1f\n", total, diff);
+        assertTrue("text rendered", total > 1000);
+        assertTrue("composed image differs from direct rendering", diff < 0.1*total);
+    }
+
+    public void testTextChange() {
+
+        GlyphCache cache = GlyphCache.getInstance();
+        Text2D text = makeText("Anna");
+        text.getImage();
+        long misses = cache.getStats().missCount();
+
+        text = makeText("Anne");
+        BufferedImage image = text.getImage();
+        assertTrue("image", image.getWidth() > 1);
+        long newMisses = cache.getStats().missCount() - misses;
+        printf("glyphs rendered for changed text: %d\n", newMisses);
+        assertTrue("only changed glyph is rendered", newMisses <= 1);
+    }
+
+    public void testLRU() {
+
+        Font font = new Font("Serif", Font.PLAIN, 1).deriveFont(40.f);
+        GlyphCache cache = new GlyphCache(20000);
+        for(int code = 0; code < 200; code++)
+            cache.getGlyph(font, code, 0, 0);
+        assertTrue("evictions", cache.getStats().evictionCount() > 0);
+    }
+
+    /**
+       compares time of repeated rendering of personalized text
+     */
+    public void devTestSpeed() {
+
+        String names[] = new String[]{"Anna", "Anne", "Annie", "Ann", "Hanna", "Joanna", "Johanna", "Jon", "John", "Jonah"};
+        long t0 = time();
+        for(int k = 0; k < 20; k++){
+            for(int i = 0; i < names.length; i++){
+                Text2D text = makeText(names[i] + " " + k);
+                text.getImage();
+            }
+        }
+        printf("Text2D images: %d ms %s\n", time() - t0, GlyphCache.getInstance().getStats());
+    }
+
+    static Text2D makeText(String str){
+
+        Text2D text = new Text2D(str, "Serif", 0.02*MM);
+        text.set("fit", "NONE");
+        text.set("fontSize", 20);
+        return text;
+    }
+}
@@ -0,0 +1,116 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.datasources;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import javax.vecmath.Vector3d;
+
+import abfab3d.core.Bounds;
+import abfab3d.param.Shape;
+import abfab3d.transforms.Translation;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Units.MM;
+
+/**
+ * Tests changed region found by ShapeChangeTracker
+ */
+public class TestShapeChangeTracker extends TestCase {
+
+    static final double EPS = 1.e-10;
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestShapeChangeTracker.class);
+    }
+
+    public void testChangedShape() {
+
+        ShapeChangeTracker tracker = new ShapeChangeTracker();
+        assertTrue("first update", Bounds.isInfinite(tracker.update(makeScene(2*MM, 0))));
+        assertNull("same scene", tracker.update(makeScene(2*MM, 0)));
+
+        // second sphere of the second shape is changed
+        Bounds changed = tracker.update(makeScene(3*MM, 0));
+        printf("changed: %s\n", changed.toString(MM));
+        assertBounds(new Bounds(7*MM, 13*MM, -3*MM, 3*MM, -3*MM, 3*MM), changed);
+        assertNull("same scene", tracker.update(makeScene(3*MM, 0)));
+
+        // blend of the union expands changed region
+        tracker.update(makeScene(3*MM, 1*MM));
+        changed = tracker.update(makeScene(2*MM, 1*MM));
+        assertBounds(new Bounds(6*MM, 14*MM, -4*MM, 4*MM, -4*MM, 4*MM), changed);
+
+        // change of blend changes the whole union which has no bounds
+        assertTrue("blend", Bounds.isInfinite(tracker.update(makeScene(2*MM, 0))));
+    }
+
+    public void testShapeList() {
+
+        ShapeChangeTracker tracker = new ShapeChangeTracker();
+        List<Shape> shapes = new ArrayList<Shape>();
+        shapes.add(new Shape(new Sphere(new Vector3d(0, 0, 0), 1*MM), null));
+        tracker.update(shapes);
+
+        // added shape
+        shapes = new ArrayList<Shape>(shapes);
+        shapes.add(new Shape(new Sphere(new Vector3d(5*MM, 0, 0), 1*MM), null));
+        assertBounds(new Bounds(4*MM, 6*MM, -1*MM, 1*MM, -1*MM, 1*MM), tracker.update(shapes));
+
+        // moved shape
+        shapes.set(0, new Shape(new Sphere(new Vector3d(0, 1*MM, 0), 1*MM), null));
+        assertBounds(new Bounds(-1*MM, 1*MM, -1*MM, 2*MM, -1*MM, 1*MM), tracker.update(shapes));
+
+        // removed shape
+        shapes.remove(1);
+        assertBounds(new Bounds(4*MM, 6*MM, -1*MM, 1*MM, -1*MM, 1*MM), tracker.update(shapes));
+
+        // bounds of transformed shape are unknown
+        Sphere sphere = new Sphere(new Vector3d(0, 1*MM, 0), 1*MM);
+        sphere.setTransform(new Translation(1*MM, 0, 0));
+        shapes.set(0, new Shape(sphere, null));
+        assertTrue("transformed", Bounds.isInfinite(tracker.update(shapes)));
+    }
+
+    /**
+       sphere and union of two spheres
+     */
+    static List<Shape> makeScene(double radius, double blend){
+
+        List<Shape> shapes = new ArrayList<Shape>();
+        shapes.add(new Shape(new Sphere(new Vector3d(-10*MM, 0, 0), 2*MM), null));
+        Union union = new Union(new Sphere(new Vector3d(5*MM, 0, 0), 2*MM), new Sphere(new Vector3d(10*MM, 0, 0), radius));
+        union.setBlend(blend);
+        shapes.add(new Shape(union, null));
+        return shapes;
+    }
+
+    static void assertBounds(Bounds expected, Bounds bounds){
+
+        assertNotNull("bounds", bounds);
+        assertEquals("xmin", expected.xmin, bounds.xmin, EPS);
+        assertEquals("xmax", expected.xmax, bounds.xmax, EPS);
+        assertEquals("ymin", expected.ymin, bounds.ymin, EPS);
+        assertEquals("ymax", expected.ymax, bounds.ymax, EPS);
+        assertEquals("zmin", expected.zmin, bounds.zmin, EPS);
+        assertEquals("zmax", expected.zmax, bounds.zmax, EPS);
+    }
+}
@@ -0,0 +1,244 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.datasources;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import javax.vecmath.Vector3d;
+
+import abfab3d.core.Bounds;
+import abfab3d.core.DataSource;
+import abfab3d.core.Vec;
+import abfab3d.param.Shape;
+import abfab3d.transforms.Rotation;
+import abfab3d.transforms.Scale;
+import abfab3d.transforms.Translation;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Units.MM;
+
+/**
+ * Tests combined evaluation of shapes in ShapeList
+ */
+public class TestShapeList extends TestCase {
+
+    static final double EPS = 1.e-12;
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestShapeList.class);
+    }
+
+    /**
+       culled list gives exact distance below cull distance
+     */
+    public void testCulling() {
+
+        double cullDistance = 1*MM;
+        Sphere spheres[] = new Sphere[6];
+        ShapeList list = new ShapeList();
+        for(int i = 0; i < spheres.length; i++){
+            spheres[i] = new Sphere(new Vector3d((i - 2.5)*6*MM, (i%2)*3*MM, 0), 2*MM + i*0.2*MM);
+            if(i == 3) // translated shape is culled by its transformed bounds
+                spheres[i].setTransform(new Translation(0, 0, 1*MM));
+            Shape shape = new Shape(spheres[i], null);
+            shape.setMaterialID(i);
+            list.add(shape);
+        }
+        list.setCullDistance(cullDistance);
+        list.initialize();
+
+        Random rnd = new Random(11);
+        Vec pnt = new Vec(3);
+        Vec data = new Vec(1);
+        Vec data1 = new Vec(1);
+        int nearCount = 0;
+
+        for(int k = 0; k < 10000; k++){
+            double x = (rnd.nextDouble() - 0.5)*40*MM;
+            double y = (rnd.nextDouble() - 0.5)*12*MM;
+            double z = (rnd.nextDouble() - 0.5)*12*MM;
+
+            double dist = Double.MAX_VALUE;
+            int closest = 0;
+            for(int i = 0; i < spheres.length; i++){
+                pnt.set(x, y, z);
+                spheres[i].getDataValue(pnt, data1);
+                if(data1.v[0] < dist){
+                    dist = data1.v[0];
+                    closest = i;
+                }
+            }
+
+            pnt.set(x, y, z);
+            list.getDataValue(pnt, data);
+            if(dist <= cullDistance){
+                nearCount++;
+                assertEquals("distance", dist, data.v[0], EPS);
+                assertEquals("material", closest, data.materialIndex);
+            } else {
+                assertTrue("far distance", data.v[0] >= cullDistance - EPS);
+            }
+        }
+        printf("near points: %d\n", nearCount);
+        assertTrue(nearCount > 100);
+    }
+
+    /**
+       shapes with bounds which may not contain the whole shape are not culled
+     */
+    public void testNotConservativeBounds() {
+
+        double cullDistance = 1*MM;
+        // exterior of sphere has inverted bounds
+        Sphere exterior = new Sphere(new Vector3d(0, 0, 0), -2*MM);
+        // composition reports bounds of the first shape only
+        Composition composition = new Composition(Composition.BoverA,
+                                                  new Sphere(new Vector3d(-5*MM, 0, 0), 1*MM),
+                                                  new Sphere(new Vector3d(5*MM, 0, 0), 1*MM));
+        DataSource sources[] = new DataSource[]{exterior, composition};
+        Vec pnts[] = new Vec[]{new Vec(10*MM, 0, 0), new Vec(5.5*MM, 0, 0)};
+        for(int i = 0; i < sources.length; i++){
+            ShapeList list = new ShapeList();
+            list.add(new Shape(sources[i], null));
+            list.setCullDistance(cullDistance);
+            list.initialize();
+            assertNull("culling bounds", ShapeList.getCullingBounds(sources[i]));
+            Vec data = new Vec(1);
+            Vec data1 = new Vec(1);
+            list.getDataValue(new Vec(pnts[i]), data);
+            sources[i].getDataValue(new Vec(pnts[i]), data1);
+            assertTrue("inside", data1.v[0] < 0.);
+            assertEquals("distance", data1.v[0], data.v[0], EPS);
+        }
+    }
+
+    /**
+       culling bounds of transformed shapes and of other primitives
+     */
+    public void testTransformedBounds() {
+
+        // translation followed by uniform scale 
+        Sphere sphere = new Sphere(new Vector3d(0, 0, 0), 1*MM);
+        sphere.addTransform(new Translation(5*MM, 0, 0));
+        sphere.addTransform(new Scale(2));
+        sphere.initialize();
+        assertBounds("translated and scaled sphere", new Bounds(8*MM, 12*MM, -2*MM, 2*MM, -2*MM, 2*MM), ShapeList.getCullingBounds(sphere));
+        Vec data = new Vec(1);
+        sphere.getDataValue(new Vec(12*MM, 0, 0), data);
+        assertEquals("surface point", 0., data.v[0], 1.e-9);
+
+        // rotated box 
+        Box box = new Box(2*MM, 2*MM, 2*MM);
+        box.setTransform(new Rotation(new Vector3d(0, 0, 1), Math.PI/4));
+        box.initialize();
+        double d = Math.sqrt(2)*MM;
+        assertBounds("rotated box", new Bounds(-d, d, -d, d, -1*MM, 1*MM), ShapeList.getCullingBounds(box));
+
+        // torus bounds depend on its axis 
+        Torus torus = new Torus(new Vector3d(0, 0, 0), new Vector3d(1, 0, 0), 3*MM, 1*MM);
+        torus.initialize();
+        assertBounds("torus", new Bounds(-1*MM, 1*MM, -4*MM, 4*MM, -4*MM, 4*MM), ShapeList.getCullingBounds(torus));
+
+        // non uniform scale keeps the shape inside of transformed bounds but distorts distance values 
+        Sphere scaled = new Sphere(new Vector3d(0, 0, 0), 1*MM);
+        scaled.setTransform(new Scale(1, 2, 1));
+        scaled.initialize();
+        assertBounds("non uniform scale", new Bounds(-1*MM, 1*MM, -2*MM, 2*MM, -1*MM, 1*MM), scaled.getConservativeBounds());
+        assertNull("non uniform scale", ShapeList.getCullingBounds(scaled));
+    }
+
+    /**
+       far shapes are not evaluated 
+     */
+    public void testCullingSkipsWork() {
+
+        int count = 20;
+        CountingSphere spheres[] = new CountingSphere[count];
+        ShapeList list = new ShapeList();
+        for(int i = 0; i < count; i++){
+            spheres[i] = new CountingSphere(2*MM);
+            spheres[i].setTransform(new Translation(i*10*MM, 0, 0));
+            list.add(new Shape(spheres[i], null));
+        }
+        list.setCullDistance(1*MM);
+        list.initialize();
+
+        Vec data = new Vec(1);
+        list.getDataValue(new Vec(2.5*MM, 0, 0), data);
+        assertEquals("distance", 0.5*MM, data.v[0], EPS);
+        int evaluated = 0;
+        for(int i = 0; i < count; i++)
+            evaluated += spheres[i].count;
+        printf("evaluated shapes: %d of %d\n", evaluated, count);
+        assertTrue("culled shapes", evaluated < count/2);
+    }
+
+    static void assertBounds(String msg, Bounds expected, Bounds bounds){
+        assertNotNull(msg, bounds);
+        double e[] = expected.getArray(), b[] = bounds.getArray();
+        for(int i = 0; i < e.length; i++)
+            assertEquals(msg, e[i], b[i], 1.e-9);
+    }
+
+    /**
+       sphere which counts its evaluations
+     */
+    static class CountingSphere extends Sphere {
+
+        int count;
+
+        CountingSphere(double r){
+            super(new Vector3d(0, 0, 0), r);
+        }
+
+        public int getDataValue(Vec pnt, Vec data){
+            count++;
+            return super.getDataValue(pnt, data);
+        }
+    }
+
+    /**
+       material channels come from the closest shape
+     */
+    public void testMaterialChannels() {
+
+        Sphere s1 = new Sphere(new Vector3d(-3*MM, 0, 0), 2*MM);
+        s1.setMaterial(new SolidColor(1, 0, 0));
+        Sphere s2 = new Sphere(new Vector3d(3*MM, 0, 0), 2*MM);
+        s2.setMaterial(new SolidColor(0, 0, 1));
+        ShapeList list = new ShapeList(new Shape(s1, null), new Shape(s2, null));
+        list.initialize();
+
+        Vec pnt = new Vec(3);
+        Vec data = new Vec(4);
+
+        pnt.set(-2*MM, 0, 0);
+        list.getDataValue(pnt, data);
+        assertEquals("distance", -1*MM, data.v[0], EPS);
+        assertEquals("red", 1., data.v[1], EPS);
+        assertEquals("blue", 0., data.v[3], EPS);
+
+        pnt.set(2*MM, 0, 0);
+        list.getDataValue(pnt, data);
+        assertEquals("distance", -1*MM, data.v[0], EPS);
+        assertEquals("red", 0., data.v[1], EPS);
+        assertEquals("blue", 1., data.v[3], EPS);
+    }
+}
@@ -0,0 +1,152 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.datasources;
+
+import java.util.Random;
+
+import javax.vecmath.Vector3d;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import abfab3d.core.TriangleProducer;
+import abfab3d.core.Vec;
+
+import abfab3d.geom.TriangulatedModels;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.fmt;
+import static abfab3d.core.Output.time;
+import static abfab3d.core.Units.MM;
+
+/**
+ * Tests distance to mesh with voxels near surface subdivided into bricks
+ */
+public class TestSparseDistanceInterpolator extends TestCase {
+
+    static final double RADIUS = 10*MM;
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestSparseDistanceInterpolator.class);
+    }
+
+    /**
+       sparse grid is as accurate near surface as uniform fine grid
+     */
+    public void testAccuracy() throws Exception {
+
+        DistanceToMeshDataSource coarse = makeSphere(1*MM, 1, true, 4);
+        DistanceToMeshDataSource sparse = makeSphere(1*MM, 4, true, 4);
+        DistanceToMeshDataSource fine = makeSphere(0.25*MM, 1, true, 4);
+
+        double band = 1*MM;
+        double ec = getMaxError(coarse, band);
+        double es = getMaxError(sparse, band);
+        double ef = getMaxError(fine, band);
+        printf("max error coarse: %7.4f mm sparse: %7.4f mm fine: %7.4f mm\n", ec/MM, es/MM, ef/MM);
+
+        SparseDistanceInterpolator sdi = (SparseDistanceInterpolator)sparse.getDistanceInterpolator();
+        long sparseSize = sdi.getIndexDataSize() + (long)sdi.getBrickCount()*64;
+        long fineSize = fine.getDistanceInterpolator().getIndexDataSize();
+        printf("bricks: %d sparse size: %d fine size: %d\n", sdi.getBrickCount(), sparseSize, fineSize);
+
+        assertTrue("bricks", sdi.getBrickCount() > 0);
+        assertTrue("sparse better than coarse", es < 0.5*ec);
+        assertTrue("sparse close to fine", es < 1.5*ef + 0.01*MM);
+        assertTrue("sparse size", 3*sparseSize < fineSize);
+
+        // far from surface the sparse grid is not worse than coarse grid
+        Vec pnt = new Vec(3);
+        Vec data = new Vec(3);
+        Vec cdata = new Vec(3);
+        pnt.set(0,0,0);
+        sparse.getDataValue(pnt, data);
+        coarse.getDataValue(pnt, cdata);
+        assertTrue("center", Math.abs(data.v[0] + RADIUS) <= Math.abs(cdata.v[0] + RADIUS));
+        pnt.set(RADIUS + 3*MM, 0.3*MM, 0.2*MM);
+        sparse.getDataValue(pnt, data);
+        assertEquals("outside", 3*MM, data.v[0], 0.1*MM);
+    }
+
+    /**
+       surface distance is unsigned and does not depend on thread count
+     */
+    public void testThreadCount() throws Exception {
+
+        boolean makeSolid[] = new boolean[]{true, false};
+        for(int k = 0; k < makeSolid.length; k++){
+
+            DistanceToMeshDataSource dmds0 = makeSphere(0.5*MM, 3, makeSolid[k], 1);
+            DistanceToMeshDataSource dmds1 = makeSphere(0.5*MM, 3, makeSolid[k], 4);
+            Vec pnt = new Vec(3);
+            Vec data0 = new Vec(3);
+            Vec data1 = new Vec(3);
+            int N = 40;
+            for(int i = 0; i <= N; i++){
+                for(int j = 0; j <= N; j++){
+                    pnt.set((-12 + 24.*i/N)*MM, (-12 + 24.*j/N)*MM, 0.3*MM);
+                    dmds0.getDataValue(pnt, data0);
+                    dmds1.getDataValue(pnt, data1);
+                    assertEquals(fmt("solid: %s", makeSolid[k]), data0.v[0], data1.v[0], 0.);
+                    if(!makeSolid[k])
+                        assertTrue("unsigned", data0.v[0] >= 0.);
+                }
+            }
+        }
+    }
+
+    static DistanceToMeshDataSource makeSphere(double voxelSize, int refinement, boolean makeSolid, int threads){
+
+        TriangleProducer producer = new TriangulatedModels.Sphere(RADIUS, new Vector3d(0,0,0), 6);
+        DistanceToMeshDataSource dmds = new DistanceToMeshDataSource(producer);
+        dmds.set("voxelSize", voxelSize);
+        dmds.set("margins", 4*MM);
+        dmds.set("makeSolid", makeSolid);
+        dmds.set("useCaching", false);
+        dmds.setSurfaceRefinement(refinement);
+        dmds.setThreadCount(threads);
+        long t0 = time();
+        dmds.initialize();
+        printf("voxelSize: %4.2f mm refinement: %d time: %d ms\n", voxelSize/MM, refinement, time() - t0);
+        return dmds;
+    }
+
+    /**
+       @return max error of signed distance to sphere at random points near surface
+     */
+    static double getMaxError(DistanceToMeshDataSource dmds, double band){
+
+        Random rnd = new Random(101);
+        Vec pnt = new Vec(3);
+        Vec data = new Vec(3);
+        double maxError = 0;
+        for(int k = 0; k < 20000; k++){
+            Vector3d v = new Vector3d(rnd.nextGaussian(), rnd.nextGaussian(), rnd.nextGaussian());
+            v.normalize();
+            double d = band*(2*rnd.nextDouble()-1);
+            v.scale(RADIUS + d);
+            pnt.set(v.x, v.y, v.z);
+            dmds.getDataValue(pnt, data);
+            maxError = Math.max(maxError, Math.abs(data.v[0] - d));
+        }
+        return maxError;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new TestSparseDistanceInterpolator().testAccuracy();
+    }
+}
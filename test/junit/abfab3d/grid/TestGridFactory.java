@@ -0,0 +1,110 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.grid;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import javax.vecmath.Vector3d;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.core.Bounds;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.GridDataDesc;
+import abfab3d.datasources.Sphere;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Units.MM;
+
+/**
+ * Tests GridFactory memory estimates and grid selection
+ */
+public class TestGridFactory extends TestCase {
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestGridFactory.class);
+    }
+
+    public void testAreaEstimate() {
+
+        double r = 10*MM;
+        Sphere sphere = new Sphere(new Vector3d(0, 0, 0), r);
+        sphere.initialize();
+        double s = 12*MM;
+        double area = GridFactory.estimateArea(sphere, -s, -s, -s, 2*s, 2*s, 2*s, 64);
+        double exact = 4*Math.PI*r*r;
+        printf("area: %7.2f exact: %7.2f cm^2\n", area*1.e4, exact*1.e4);
+        assertEquals("area", exact, area, 0.05*exact);
+    }
+
+    public void testSelection() {
+
+        double vs = 0.1*MM;
+        Bounds bounds = new Bounds(-12*MM, 12*MM, -12*MM, 12*MM, -12*MM, 12*MM);
+        Sphere sphere = new Sphere(new Vector3d(0, 0, 0), 10*MM);
+        sphere.initialize();
+
+        GridFactory factory = new GridFactory();
+        factory.setSource(sphere);
+        factory.setDataDesc(new GridDataDesc(new GridDataChannel(GridDataChannel.DISTANCE, "dist", 8, 0, -1*MM, 1*MM)));
+        factory.setMaxHeapMemory(1L << 30);
+        factory.setMaxDirectMemory(1L << 30);
+
+        GridFactory.Estimate est = factory.estimate(bounds, vs);
+        printf("%s\n", est);
+        assertEquals("array", GridFactory.GRID_ARRAY, est.gridType);
+        assertEquals("array memory", 240L*240*240, est.getMemory(), 2000);
+
+        // array does not fit into heap
+        factory.setMaxHeapMemory(1L << 20);
+        est = factory.estimate(bounds, vs);
+        assertEquals("nio", GridFactory.GRID_NIO, est.gridType);
+
+        // distance band is too thick for intervals, nothing fits
+        factory.setMaxDirectMemory(1L << 20);
+        factory.setMaxHeapMemory(8L << 20);
+        est = factory.estimate(bounds, vs);
+        assertEquals("smallest", GridFactory.GRID_ARRAY, est.gridType);
+
+        // intervals of density grid are smaller than array
+        factory.setDataDesc(new GridDataDesc(new GridDataChannel(GridDataChannel.DENSITY, "dens", 8, 0, 0., 1.)));
+        factory.setMaxHeapMemory(8L << 20);
+        est = factory.estimate(bounds, vs);
+        printf("%s\n", est);
+        assertEquals("intervals", GridFactory.GRID_INTERVALS, est.gridType);
+        assertTrue("intervals memory", est.memory[GridFactory.GRID_INTERVALS] < est.memory[GridFactory.GRID_ARRAY]);
+
+        AttributeGrid grid = factory.makeGrid(bounds, vs);
+        assertTrue("grid class", grid instanceof GridShortIntervals);
+        assertEquals("width", 240, grid.getWidth());
+        assertNotNull("data desc", grid.getDataDesc());
+
+        // forced type
+        factory.setGridType(GridFactory.GRID_ARRAY);
+        grid = factory.makeGrid(bounds, vs);
+        assertTrue("forced grid class", grid instanceof ArrayAttributeGridByte);
+    }
+
+    public void testBytesPerVoxel() {
+
+        Bounds bounds = new Bounds(0, 1*MM, 0, 1*MM, 0, 1*MM);
+        GridFactory factory = new GridFactory();
+        factory.setDataDesc(GridDataDesc.getDensBGR());
+        AttributeGrid grid = factory.makeGrid(bounds, 0.1*MM);
+        assertTrue("grid class", grid instanceof ArrayAttributeGridInt);
+    }
+}
@@ -0,0 +1,209 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.grid.op;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.grid.ArrayAttributeGridByte;
+import abfab3d.grid.BlockBasedAttributeGridByte;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.sqrt;
+import static abfab3d.core.MathUtil.clamp;
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.fmt;
+import static abfab3d.core.Output.time;
+
+/**
+ * Tests DistanceMorphologyOp
+ */
+public class TestDistanceMorphologyOp extends TestCase {
+
+    static final int SVR = 255;
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestDistanceMorphologyOp.class);
+    }
+
+    public void testDilateErode() {
+
+        double r = 12;
+        double d = 6;
+        AttributeGrid grid = makeGrid(60);
+        fillSphere(grid, 30, 30, 30, r);
+        double v0 = getVolume(grid);
+
+        AttributeGrid dilated = makeGrid(60);
+        fillSphere(dilated, 30, 30, 30, r);
+        new DistanceMorphologyOp(DistanceMorphologyOp.DILATE, d, SVR).execute(dilated);
+        double vd = getVolume(dilated);
+        double ed = 4*PI*(r+d)*(r+d)*(r+d)/3;
+
+        AttributeGrid eroded = makeGrid(60);
+        fillSphere(eroded, 30, 30, 30, r);
+        new DistanceMorphologyOp(DistanceMorphologyOp.OFFSET, -d, SVR).execute(eroded);
+        double ve = getVolume(eroded);
+        double ee = 4*PI*(r-d)*(r-d)*(r-d)/3;
+
+        printf("volume orig: %8.1f dilated: %8.1f (%8.1f) eroded: %8.1f (%8.1f)\n", v0, vd, ed, ve, ee);
+        assertTrue(fmt("dilated volume %8.1f != %8.1f", vd, ed), abs(vd - ed) < 0.03*ed);
+        assertTrue(fmt("eroded volume %8.1f != %8.1f", ve, ee), abs(ve - ee) < 0.1*ee);
+    }
+
+    public void testThreadCount() {
+
+        int modes[] = new int[]{DistanceMorphologyOp.DILATE, DistanceMorphologyOp.ERODE,
+                                DistanceMorphologyOp.OPEN, DistanceMorphologyOp.CLOSE};
+        for(int m = 0; m < modes.length; m++){
+            AttributeGrid g1 = makeGrid(40);
+            fillSphere(g1, 15, 20, 20, 8);
+            fillSphere(g1, 26, 20, 20, 6);
+            AttributeGrid g4 = makeGrid(40);
+            fillSphere(g4, 15, 20, 20, 8);
+            fillSphere(g4, 26, 20, 20, 6);
+
+            DistanceMorphologyOp op = new DistanceMorphologyOp(modes[m], 3, SVR);
+            op.setThreadCount(1);
+            op.execute(g1);
+            op.setThreadCount(4);
+            op.execute(g4);
+            assertEquals("mode: " + modes[m], 0, countDifferences(g1, g4));
+        }
+    }
+
+    /**
+       result for grid which is not safe for concurrent reads does not depend on thread count
+     */
+    public void testBlockBasedGrid() {
+
+        AttributeGrid g1 = makeBlockGrid(40);
+        AttributeGrid g4 = makeBlockGrid(40);
+
+        DistanceMorphologyOp op = new DistanceMorphologyOp(DistanceMorphologyOp.DILATE, 3, SVR);
+        op.setThreadCount(1);
+        op.execute(g1);
+        op.setThreadCount(4);
+        op.execute(g4);
+        assertEquals("block based grid", 0, countDifferences(g1, g4));
+        assertTrue("dilated", getVolume(g4) > 0.);
+    }
+
+    static AttributeGrid makeBlockGrid(int n){
+
+        AttributeGrid grid = new BlockBasedAttributeGridByte(n, n, n, 1., 1.);
+        grid.setGridBounds(new double[]{0, n, 0, n, 0, n});
+        fillSphere(grid, 15, 20, 20, 8);
+        fillSphere(grid, 26, 20, 20, 6);
+        return grid;
+    }
+
+    public void testOpenClose() {
+
+        // two spheres connected by thin rod
+        AttributeGrid grid = makeGrid(50);
+        fillSphere(grid, 12, 25, 25, 8);
+        fillSphere(grid, 38, 25, 25, 8);
+        for(int x = 12; x < 38; x++)
+            grid.setAttribute(x, 25, 25, SVR);
+        new DistanceMorphologyOp(DistanceMorphologyOp.OPEN, 2, SVR).execute(grid);
+        assertEquals("rod removed", 0, grid.getAttribute(25, 25, 25));
+        assertEquals("sphere kept", SVR, grid.getAttribute(12, 25, 25));
+
+        // two spheres with narrow gap
+        grid = makeGrid(50);
+        fillSphere(grid, 15, 25, 25, 8);
+        fillSphere(grid, 33, 25, 25, 8);
+        assertEquals("gap", 0, grid.getAttribute(24, 25, 25));
+        new DistanceMorphologyOp(DistanceMorphologyOp.CLOSE, 3, SVR).execute(grid);
+        assertEquals("gap filled", SVR, grid.getAttribute(24, 25, 25));
+        assertEquals("exterior kept", 0, grid.getAttribute(2, 25, 25));
+    }
+
+    /**
+       compares time of large radius dilations
+     */
+    public void devTestSpeed() {
+
+        int n = 200;
+        double radius[] = new double[]{2, 5, 10, 20, 40};
+        for(int k = 0; k < radius.length; k++){
+            AttributeGrid grid = makeGrid(n);
+            fillSphere(grid, n/2, n/2, n/2, n/4);
+            long t0 = time();
+            DistanceMorphologyOp op = new DistanceMorphologyOp(DistanceMorphologyOp.DILATE, radius[k], SVR);
+            op.setThreadCount(0);
+            op.execute(grid);
+            long t1 = time();
+
+            grid = makeGrid(n);
+            fillSphere(grid, n/2, n/2, n/2, n/4);
+            DilationDistance dd = new DilationDistance(radius[k], SVR);
+            dd.setThreadCount(0);
+            dd.execute(grid);
+            printf("radius: %4.1f DistanceMorphologyOp: %5d ms DilationDistance: %5d ms\n", radius[k], t1 - t0, time() - t1);
+        }
+    }
+
+    static AttributeGrid makeGrid(int n){
+
+        AttributeGrid grid = new ArrayAttributeGridByte(n, n, n, 1., 1.);
+        grid.setGridBounds(new double[]{0, n, 0, n, 0, n});
+        return grid;
+    }
+
+    /**
+       adds antialiased sphere to the grid
+     */
+    static void fillSphere(AttributeGrid grid, double cx, double cy, double cz, double r){
+
+        for(int y = 0; y < grid.getHeight(); y++){
+            for(int x = 0; x < grid.getWidth(); x++){
+                for(int z = 0; z < grid.getDepth(); z++){
+                    double dx = x + 0.5 - cx, dy = y + 0.5 - cy, dz = z + 0.5 - cz;
+                    double dens = clamp(0.5 + r - sqrt(dx*dx + dy*dy + dz*dz), 0., 1.);
+                    long att = (long)(dens*SVR + 0.5);
+                    if(att > grid.getAttribute(x,y,z))
+                        grid.setAttribute(x,y,z,att);
+                }
+            }
+        }
+    }
+
+    static double getVolume(AttributeGrid grid){
+
+        long v = 0;
+        for(int y = 0; y < grid.getHeight(); y++)
+            for(int x = 0; x < grid.getWidth(); x++)
+                for(int z = 0; z < grid.getDepth(); z++)
+                    v += grid.getAttribute(x,y,z);
+        return (double)v/SVR;
+    }
+
+    static int countDifferences(AttributeGrid g1, AttributeGrid g2){
+
+        int count = 0;
+        for(int y = 0; y < g1.getHeight(); y++)
+            for(int x = 0; x < g1.getWidth(); x++)
+                for(int z = 0; z < g1.getDepth(); z++)
+                    if(g1.getAttribute(x,y,z) != g2.getAttribute(x,y,z))
+                        count++;
+        return count;
+    }
+}
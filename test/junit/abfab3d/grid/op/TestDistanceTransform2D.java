@@ -61,6 +61,22 @@ public class TestDistanceTransform2D extends BaseTestDistanceTransform {
 
     }
 
+    public void testThreadCount() {
+
+        Grid2D grid = TestGaussianBlur.makeTestGrid(new Grid2DShort(230, 170, pixelSize), 16);
+        Grid2D dist[] = new Grid2D[2];
+        Grid2D index[] = new Grid2D[2];
+        int threads[] = new int[]{1, 4};
+        for(int i = 0; i < 2; i++){
+            DistanceTransform2DOp dt = new DistanceTransform2DOp(3*MM, 3*MM, 0.5);
+            dt.setThreadCount(threads[i]);
+            dist[i] = dt.execute(grid);
+            index[i] = dt.getIndexGrid();
+        }
+        assertEquals("index grid", 0, TestGaussianBlur.countDifferences(index[0], index[1]));
+        assertEquals("distance grid", 0, TestGaussianBlur.countDifferences(dist[0], dist[1]));
+    }
+
     public void _test1() throws Exception {
         
         //Grid2D grid = loadImageToGrid2D("test/images/white_pixel.png");
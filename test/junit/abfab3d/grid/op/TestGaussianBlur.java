@@ -0,0 +1,185 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.grid.op;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import abfab3d.core.Grid2D;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.GridDataDesc;
+import abfab3d.core.MathUtil;
+import abfab3d.grid.Grid2DInt;
+import abfab3d.grid.Grid2DShort;
+
+import static abfab3d.core.MathUtil.clamp;
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+import static abfab3d.core.Units.MM;
+
+/**
+ * Tests GaussianBlur and parallel execution of 2D image operations
+ */
+public class TestGaussianBlur extends TestCase {
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestGaussianBlur.class);
+    }
+
+    public void testReference() {
+
+        double kernel[] = MathUtil.getGaussianKernel(3.5, 0.001);
+        Grid2D grids[] = new Grid2D[]{
+            makeTestGrid(new Grid2DShort(157, 93, 0.1*MM), 16),
+            makeTestGrid(new Grid2DInt(157, 93, 0.1*MM), 20),
+        };
+        for(int g = 0; g < grids.length; g++){
+            Grid2D grid = grids[g];
+            GridDataChannel channel = grid.getDataDesc().getChannel(0);
+            Grid2D ref = copy(grid);
+            convoluteReference(ref, channel, kernel);
+            for(int threads = 1; threads <= 4; threads += 3){
+                Grid2D test = copy(grid);
+                GaussianBlur blur = new GaussianBlur(0.35*MM);
+                blur.setThreadCount(threads);
+                blur.convolute(test, channel, kernel);
+                assertEquals(grid.getClass().getSimpleName() + " threads: " + threads, 0, countDifferences(ref, test));
+            }
+        }
+    }
+
+    public void testExecute() {
+
+        Grid2D grid = makeTestGrid(new Grid2DShort(300, 200, 0.1*MM), 16);
+        Grid2D g1 = copy(grid);
+        Grid2D g4 = copy(grid);
+        GaussianBlur blur = new GaussianBlur(0.5*MM);
+        blur.setThreadCount(1);
+        blur.execute(g1);
+        blur.setThreadCount(4);
+        blur.execute(g4);
+        assertEquals(0, countDifferences(g1, g4));
+        assertTrue("blurred", countDifferences(grid, g1) > 0);
+    }
+
+    /**
+       benchmark of 2D image operations over typical image sizes
+     */
+    public void devTestSpeed() {
+
+        int sizes[] = new int[]{1000, 2000, 4000, 8000};
+        int threads[] = new int[]{1, 0};
+        for(int s = 0; s < sizes.length; s++){
+            int n = sizes[s];
+            Grid2D grid = makeTestGrid(new Grid2DShort(n, n, 0.1*MM), 16);
+            for(int t = 0; t < threads.length; t++){
+                Grid2D g = copy(grid);
+                GaussianBlur blur = new GaussianBlur(0.3*MM);
+                blur.setThreadCount(threads[t]);
+                long t0 = time();
+                blur.execute(g);
+                printf("GaussianBlur %5d threads: %d  %5d ms\n", n, blur.getThreadCount(), time() - t0);
+
+                ResampleOp resample = new ResampleOp(n/3, n/3, ResampleOp.WEIGHTING_AVERAGE);
+                resample.setThreadCount(threads[t]);
+                t0 = time();
+                resample.execute(grid);
+                printf("ResampleOp   %5d threads: %d  %5d ms\n", n, blur.getThreadCount(), time() - t0);
+
+                DistanceTransform2DOp dt = new DistanceTransform2DOp(2*MM, 2*MM, 0.5);
+                dt.setThreadCount(threads[t]);
+                t0 = time();
+                dt.execute(grid);
+                printf("DistanceTransform2DOp %5d threads: %d  %5d ms\n", n, dt.getThreadCount(), time() - t0);
+            }
+        }
+    }
+
+    /**
+       fills grid with set of rings
+     */
+    static Grid2D makeTestGrid(Grid2D grid, int bits){
+
+        GridDataChannel channel = new GridDataChannel(GridDataChannel.DENSITY, "dens", bits, 0, 0., 1.);
+        grid.setDataDesc(new GridDataDesc(channel));
+        int nx = grid.getWidth();
+        int ny = grid.getHeight();
+        double r = 0.1*Math.min(nx, ny);
+        for(int y = 0; y < ny; y++){
+            for(int x = 0; x < nx; x++){
+                double dx = x - 0.4*nx, dy = y - 0.6*ny;
+                double d = Math.sqrt(dx*dx + dy*dy)/r;
+                double v = ((int)d % 2 == 0)? 1.: 0.2*(d - (int)d);
+                grid.setAttribute(x, y, channel.makeAtt(v));
+            }
+        }
+        return grid;
+    }
+
+    /**
+       straightforward serial convolution
+     */
+    static void convoluteReference(Grid2D grid, GridDataChannel channel, double kernel[]){
+
+        int w = grid.getWidth();
+        int h = grid.getHeight();
+        int ksize = kernel.length/2;
+        double row[] = new double[Math.max(w,h)];
+
+        for(int y = 0; y < h; y++){
+            for(int x = 0; x < w; x++){
+                row[x] = 0;
+                for(int k = 0; k < kernel.length; k++){
+                    int xx = clamp(x - (k-ksize), 0, w-1);
+                    row[x] += kernel[k] * channel.getValue(grid.getAttribute(xx,y));
+                }
+            }
+            for(int x = 0; x < w; x++)
+                grid.setAttribute(x,y,channel.makeAtt(row[x]));
+        }
+        for(int x = 0; x < w; x++){
+            for(int y = 0; y < h; y++){
+                row[y] = 0;
+                for(int k = 0; k < kernel.length; k++){
+                    int yy = clamp(y - (k-ksize), 0, h-1);
+                    row[y] += kernel[k] * channel.getValue(grid.getAttribute(x,yy));
+                }
+            }
+            for(int y = 0; y < h; y++)
+                grid.setAttribute(x,y,channel.makeAtt(row[y]));
+        }
+    }
+
+    static Grid2D copy(Grid2D grid){
+
+        Grid2D copy = (grid instanceof Grid2DShort)? new Grid2DShort((Grid2DShort)grid): new Grid2DInt((Grid2DInt)grid);
+        copy.setDataDesc(grid.getDataDesc());
+        return copy;
+    }
+
+    static int countDifferences(Grid2D g1, Grid2D g2){
+
+        int count = 0;
+        for(int y = 0; y < g1.getHeight(); y++){
+            for(int x = 0; x < g1.getWidth(); x++){
+                if(g1.getAttribute(x,y) != g2.getAttribute(x,y))
+                    count++;
+            }
+        }
+        return count;
+    }
+}
@@ -37,6 +37,10 @@ import junit.framework.TestSuite;
 // Internal Imports
 //import abfab3d.grid.Grid;
 import abfab3d.core.AttributeGrid;
+import abfab3d.core.Bounds;
+import abfab3d.core.DataSource;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.GridDataDesc;
 import abfab3d.grid.ArrayAttributeGridByte;
 import abfab3d.grid.GridShortIntervals;
 
@@ -977,6 +981,118 @@ public class TestGridMaker extends TestCase {
         
     }
 
+    /**
+       rendering of changed region of the grid gives the same grid as rendering of the whole grid 
+     */
+    public void testRegion() {
+
+        double vs = 0.2*MM;
+        double maxDist = 1*MM;
+        Bounds bounds = new Bounds(-10*MM, 10*MM, -6*MM, 6*MM, -6*MM, 6*MM);
+        
+        AttributeGrid grid = makeDistanceGrid(bounds, vs, maxDist);
+        GridMaker gm = new GridMaker();
+        gm.setSource(new Union(new Sphere(new Vector3d(-5*MM, 0, 0), 3*MM), new Sphere(new Vector3d(5*MM, 0, 0), 3*MM)));
+        gm.makeGrid(grid);
+
+        // second sphere is moved, the region covers old and new sphere and max distance stored in the grid 
+        DataSource source = new Union(new Sphere(new Vector3d(-5*MM, 0, 0), 3*MM), new Sphere(new Vector3d(5.5*MM, 0, 0), 3*MM));
+        Bounds region = new Bounds(2*MM, 8.5*MM, -3*MM, 3*MM, -3*MM, 3*MM);
+        region.expand(maxDist + vs);
+        gm = new GridMaker();
+        gm.setSource(source);
+        gm.setRegion(region);
+        gm.makeGrid(grid);
+
+        AttributeGrid grid1 = makeDistanceGrid(bounds, vs, maxDist);
+        gm = new GridMaker();
+        gm.setSource(source);
+        gm.makeGrid(grid1);
+
+        int diffCount = 0;
+        for(int y = 0; y < grid.getHeight(); y++){
+            for(int x = 0; x < grid.getWidth(); x++){
+                for(int z = 0; z < grid.getDepth(); z++){
+                    if(grid.getAttribute(x,y,z) != grid1.getAttribute(x,y,z))
+                        diffCount++;
+                }
+            }
+        }
+        assertEquals("different voxels", 0, diffCount);
+
+        // empty region does not change the grid 
+        gm.setSource(new Sphere(new Vector3d(0, 0, 0), 5*MM));
+        gm.setRegion(new Bounds(20*MM, 30*MM, 0, 1*MM, 0, 1*MM));
+        gm.makeGrid(grid1);
+        assertEquals("empty region", grid.getAttribute(50, 30, 30), grid1.getAttribute(50, 30, 30));
+    }
+
+    /**
+       voxels of the region outside of the transform domain are cleared 
+     */
+    public void testRegionTransformDomain() {
+
+        double vs = 0.2*MM;
+        double maxDist = 1*MM;
+        Bounds bounds = new Bounds(-6*MM, 6*MM, -6*MM, 6*MM, -6*MM, 6*MM);
+        DataSource source = new Sphere(new Vector3d(0, 0, 0), 4*MM);
+        
+        int threads[] = new int[]{1, 4};
+        for(int k = 0; k < threads.length; k++){
+
+            AttributeGrid grid = makeDistanceGrid(bounds, vs, maxDist);
+            GridMaker gm = new GridMaker();
+            gm.setSource(source);
+            gm.setThreadCount(threads[k]);
+            gm.makeGrid(grid);
+            
+            gm = new GridMaker();
+            gm.setSource(source);
+            gm.setTransform(new HalfSpaceDomain());
+            gm.setThreadCount(threads[k]);
+            gm.setRegion(new Bounds(-1*MM, 4.5*MM, -2*MM, 2*MM, -2*MM, 2*MM));
+            gm.makeGrid(grid);
+            
+            AttributeGrid grid1 = makeDistanceGrid(bounds, vs, maxDist);
+            gm = new GridMaker();
+            gm.setSource(source);
+            gm.setTransform(new HalfSpaceDomain());
+            gm.setThreadCount(threads[k]);
+            gm.makeGrid(grid1);
+            
+            // inside of the region grid has the same values as grid made with the transform 
+            assertEquals(fmt("threads: %d", threads[k]), grid1.getAttribute(49, 30, 30), grid.getAttribute(49, 30, 30));
+            assertEquals(fmt("threads: %d", threads[k]), grid1.getAttribute(20, 30, 30), grid.getAttribute(20, 30, 30));
+            // outside of the region grid is unchanged 
+            assertTrue(fmt("threads: %d", threads[k]), grid.getAttribute(55, 30, 30) != grid1.getAttribute(55, 30, 30));
+        }
+    }
+
+    /**
+       transform defined in half space x < 0 
+     */
+    static class HalfSpaceDomain implements VecTransform {
+
+        public int transform(Vec in, Vec out) {
+            out.set(in);
+            return ResultCodes.RESULT_OK;
+        }
+
+        public int inverse_transform(Vec in, Vec out) {
+            if(in.v[0] > 0.)
+                return ResultCodes.RESULT_OUTSIDE;
+            out.set(in);
+            return ResultCodes.RESULT_OK;
+        }        
+    }
+
+    static AttributeGrid makeDistanceGrid(Bounds bounds, double vs, double maxDist){
+
+        AttributeGrid grid = new ArrayAttributeGridByte(bounds, vs, vs);
+        grid.setDataDesc(new GridDataDesc(new GridDataChannel(GridDataChannel.DISTANCE, "dist", 8, 0, -maxDist, maxDist)));
+        return grid;
+    }
+
     public void testHoledWedge() {
         
         double blockWidth = 50*MM;
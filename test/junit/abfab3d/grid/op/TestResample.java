@@ -14,6 +14,7 @@ package abfab3d.grid.op;
 
 // External Imports
 
+import abfab3d.core.Grid2D;
 import abfab3d.core.GridDataChannel;
 import abfab3d.core.GridDataDesc;
 import abfab3d.grid.*;
@@ -22,6 +23,7 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import static abfab3d.core.Output.printf;
+import static abfab3d.core.Units.MM;
 
 // Internal Imports
 
@@ -50,6 +52,45 @@ public class TestResample extends BaseTestAttributeGrid {
      * x000    00
      * 0xx0
      */
+    public void testThreadCount() {
+
+        Grid2D grid = TestGaussianBlur.makeTestGrid(new Grid2DShort(301, 203, 0.1*MM), 16);
+        int weighting[] = new int[]{ResampleOp.WEIGHTING_MINIMUM, ResampleOp.WEIGHTING_AVERAGE, ResampleOp.WEIGHTING_MAXIMUM};
+        for(int w = 0; w < weighting.length; w++){
+            short d1[] = ResampleOp.getScaledDownData(grid, 97, 61, weighting[w], 1);
+            short d4[] = ResampleOp.getScaledDownData(grid, 97, 61, weighting[w], 4);
+            assertTrue("weighting: " + weighting[w], java.util.Arrays.equals(d1, d4));
+        }
+        short ref[] = getScaledDownDataReference(grid, 97, 61);
+        assertTrue("average", java.util.Arrays.equals(ref, ResampleOp.getScaledDownData(grid, 97, 61)));
+    }
+
+    /**
+       straightforward averaging of pixels 
+     */
+    static short[] getScaledDownDataReference(Grid2D src, int width, int height){
+
+        int inwidth = src.getWidth();
+        int inheight = src.getHeight();
+        short outData[] = new short[width * height];
+        for(int y = 0; y < height; y++){
+            int y0 = (y * inheight)/height;
+            int y1 = ((y + 1) * inheight)/height;
+            for(int x = 0; x < width; x++){
+                int x0 = (x * inwidth)/width;
+                int x1 = ((x + 1) * inwidth)/width;
+                int pv = 0;
+                for(int yy = y0; yy < y1; yy++){
+                    for(int xx = x0; xx < x1; xx++){
+                        pv += (int)src.getAttribute(xx,yy);
+                    }
+                }
+                outData[x + y*width] = (short)(pv/((y1 - y0) * (x1-x0)));
+            }
+        }
+        return outData;
+    }
+
     public void testWeightingMin() {
         int w = 4;
         int h = w;
@@ -0,0 +1,180 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.grid.op;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.GridDataDesc;
+import abfab3d.grid.ArrayAttributeGridInt;
+import abfab3d.grid.ArrayAttributeGridShort;
+import abfab3d.grid.BlockBasedAttributeGridShort;
+
+import static abfab3d.core.MathUtil.clamp;
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.fmt;
+import static abfab3d.core.Output.time;
+
+/**
+ * Tests SeparableFilter3D
+ */
+public class TestSeparableFilter3D extends TestCase {
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestSeparableFilter3D.class);
+    }
+
+    public void testBoxFilter1() {
+
+        double in[] = new double[]{1, 5, 2, 8, 3, 0, 7, 4, 6, 9};
+        int n = in.length;
+        double out[] = new double[n];
+        for(int r = 1; r <= 12; r++){
+            SeparableFilter3D.boxFilter1(in, n, r, out);
+            for(int i = 0; i < n; i++){
+                double s = 0;
+                for(int k = -r; k <= r; k++)
+                    s += in[clamp(i + k, 0, n-1)];
+                assertEquals(fmt("radius: %d index: %d", r, i), s/(2*r+1), out[i], 1.e-10);
+            }
+        }
+    }
+
+    public void testThreadCount() {
+
+        int types[] = new int[]{SeparableFilter3D.FILTER_GAUSSIAN, SeparableFilter3D.FILTER_BOX};
+        for(int t = 0; t < types.length; t++){
+            AttributeGrid g1 = makeTestGrid(37, 23, 29);
+            AttributeGrid g4 = makeTestGrid(37, 23, 29);
+            SeparableFilter3D filter = new SeparableFilter3D(types[t], 2.);
+            filter.setIterations(2);
+            filter.setThreadCount(1);
+            filter.execute(g1);
+            filter.setThreadCount(4);
+            filter.execute(g4);
+            assertEquals("filter: " + types[t], 0, TestDistanceMorphologyOp.countDifferences(g1, g4));
+            assertTrue("filtered", TestDistanceMorphologyOp.countDifferences(g1, makeTestGrid(37, 23, 29)) > 0);
+        }
+    }
+
+    public void testConstant() {
+
+        AttributeGrid grid = makeTestGrid(10, 10, 10);
+        GridDataChannel channel = grid.getDataDesc().getChannel(0);
+        long att = channel.makeAtt(0.75);
+        for(int y = 0; y < 10; y++)
+            for(int x = 0; x < 10; x++)
+                for(int z = 0; z < 10; z++)
+                    grid.setAttribute(x,y,z,att);
+        new SeparableFilter3D(SeparableFilter3D.FILTER_GAUSSIAN, 1.5).execute(grid);
+        new SeparableFilter3D(SeparableFilter3D.FILTER_BOX, 4.).execute(grid);
+        for(int y = 0; y < 10; y++)
+            for(int x = 0; x < 10; x++)
+                for(int z = 0; z < 10; z++)
+                    assertEquals(att, grid.getAttribute(x,y,z));
+    }
+
+    /**
+       only the first channel is filtered, bits of other channels are preserved
+     */
+    public void testMultiChannel() {
+
+        int nx = 37, ny = 23, nz = 29;
+        AttributeGrid single = makeTestGrid(nx, ny, nz);
+        GridDataChannel dens = single.getDataDesc().getChannel(0);
+        GridDataChannel mat = new GridDataChannel(GridDataChannel.MATERIAL, "mat", 8, 16, 0., 255.);
+        AttributeGrid grid = new ArrayAttributeGridInt(nx, ny, nz, 1., 1.);
+        grid.setDataDesc(new GridDataDesc(dens, mat));
+        for(int y = 0; y < ny; y++)
+            for(int x = 0; x < nx; x++)
+                for(int z = 0; z < nz; z++)
+                    grid.setAttribute(x,y,z, single.getAttribute(x,y,z) | mat.makeAtt((x+y+z)%200));
+
+        SeparableFilter3D filter = new SeparableFilter3D(SeparableFilter3D.FILTER_GAUSSIAN, 2.);
+        filter.setThreadCount(4);
+        filter.execute(single);
+        filter.execute(grid);
+        for(int y = 0; y < ny; y++){
+            for(int x = 0; x < nx; x++){
+                for(int z = 0; z < nz; z++){
+                    long att = grid.getAttribute(x,y,z);
+                    assertEquals(fmt("density (%d %d %d)", x, y, z), single.getAttribute(x,y,z), dens.getBits(att));
+                    assertEquals(fmt("material (%d %d %d)", x, y, z), (x+y+z)%200, mat.getBits(att));
+                }
+            }
+        }
+    }
+
+    /**
+       result doesn't depend on thread count for grid which is not safe for concurrent writes
+     */
+    public void testBlockBasedGrid() {
+
+        int nx = 37, ny = 23, nz = 29;
+        GridDataChannel dens = new GridDataChannel(GridDataChannel.DENSITY, "dens", 15, 0, 0., 1.);
+        AttributeGrid grids[] = new AttributeGrid[2];
+        for(int g = 0; g < grids.length; g++){
+            grids[g] = new BlockBasedAttributeGridShort(nx, ny, nz, 1., 1.);
+            grids[g].setDataDesc(new GridDataDesc(dens));
+            for(int y = 0; y < ny; y++)
+                for(int x = 0; x < nx; x++)
+                    for(int z = 0; z < nz; z++)
+                        grids[g].setAttribute(x,y,z, dens.makeAtt(((x/4 + y/3 + z/5) % 2 == 0)? 1.: 0.1));
+        }
+        SeparableFilter3D filter = new SeparableFilter3D(SeparableFilter3D.FILTER_BOX, 2.);
+        filter.setIterations(2);
+        filter.setThreadCount(1);
+        filter.execute(grids[0]);
+        filter.setThreadCount(4);
+        filter.execute(grids[1]);
+        assertEquals("differences", 0, TestDistanceMorphologyOp.countDifferences(grids[0], grids[1]));
+    }
+
+    /**
+       compares time of box filter and gaussian filter of increasing width
+     */
+    public void devTestSpeed() {
+
+        double width[] = new double[]{1, 2, 5, 10, 20};
+        for(int k = 0; k < width.length; k++){
+            AttributeGrid grid = makeTestGrid(200, 200, 200);
+            SeparableFilter3D filter = new SeparableFilter3D(SeparableFilter3D.FILTER_BOX, width[k]);
+            filter.setThreadCount(0);
+            long t0 = time();
+            filter.execute(grid);
+            long t1 = time();
+            filter = new SeparableFilter3D(SeparableFilter3D.FILTER_GAUSSIAN, width[k]);
+            filter.setThreadCount(0);
+            filter.execute(grid);
+            printf("width: %4.1f box: %5d ms gaussian: %5d ms\n", width[k], t1 - t0, time() - t1);
+        }
+    }
+
+    static AttributeGrid makeTestGrid(int nx, int ny, int nz){
+
+        AttributeGrid grid = new ArrayAttributeGridShort(nx, ny, nz, 1., 1.);
+        GridDataChannel channel = new GridDataChannel(GridDataChannel.DENSITY, "dens", 16, 0, 0., 1.);
+        grid.setDataDesc(new GridDataDesc(channel));
+        for(int y = 0; y < ny; y++)
+            for(int x = 0; x < nx; x++)
+                for(int z = 0; z < nz; z++)
+                    grid.setAttribute(x,y,z, channel.makeAtt(((x/4 + y/3 + z/5) % 2 == 0)? 1.: 0.1));
+        return grid;
+    }
+}
@@ -0,0 +1,191 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.grid.op;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.core.Bounds;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.GridDataDesc;
+import abfab3d.grid.ArrayAttributeGridByte;
+import abfab3d.grid.BlockBasedAttributeGridByte;
+import abfab3d.grid.DensityMakerFromDensityChannel;
+import abfab3d.grid.GridMask;
+import abfab3d.io.output.GridSaver;
+import abfab3d.mesh.WingedEdgeTriangleMesh;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Units.MM;
+
+/**
+ * Tests removal of small shells from the grid before meshing
+ */
+public class TestShellPruner extends TestCase {
+
+    static final double VS = 0.2*MM;
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestShellPruner.class);
+    }
+
+    public void testExact() {
+
+        AttributeGrid grid = makeGrid();
+        ShellPruner pruner = new ShellPruner(new DensityMakerFromDensityChannel(grid.getDataChannel()));
+        pruner.setMinShellVolume(10*MM*MM*MM);
+        GridMask mask = pruner.execute(grid);
+        printf("components: %d pruned: %d\n", pruner.getComponentsCount(), pruner.getPrunedCount());
+        assertEquals("components", 4, pruner.getComponentsCount());
+        assertEquals("pruned", 3, pruner.getPrunedCount());
+        checkMask(grid, mask);
+
+        // debris closer than smoothing width make single shell, volume bound grows with smoothing
+        pruner.setSmoothingRadius(2);
+        pruner.setMinShellVolume(50*MM*MM*MM);
+        mask = pruner.execute(grid);
+        assertEquals("smoothed components", 3, pruner.getComponentsCount());
+        checkMask(grid, mask);
+
+        // upper bound of debris volume is above min volume
+        pruner.setMinShellVolume(10*MM*MM*MM);
+        assertNull("nothing pruned", pruner.execute(grid));
+
+        // shells count on mesh can not be predicted
+        pruner.setMinShellVolume(50*MM*MM*MM);
+        pruner.setMinShellCount(5);
+        assertNull("min shell count", pruner.execute(grid));
+    }
+
+    public void testFast() {
+
+        AttributeGrid grid = makeGrid();
+        ShellPruner pruner = new ShellPruner(new DensityMakerFromDensityChannel(grid.getDataChannel()));
+        pruner.setExact(false);
+        pruner.setMaxShellsCount(1);
+        GridMask mask = pruner.execute(grid);
+        assertEquals("pruned", 3, pruner.getPrunedCount());
+        checkMask(grid, mask);
+
+        // smoothing joins close debris into one component
+        pruner.setSmoothingRadius(6);
+        pruner.execute(grid);
+        assertEquals("joined components", 3, pruner.getComponentsCount());
+    }
+
+    /**
+       grid which is not safe for concurrent reads gives the same components
+     */
+    public void testBlockBasedGrid() {
+
+        double w = 10*MM;
+        int n = (int)Math.round(2*w/VS);
+        AttributeGrid grid = new BlockBasedAttributeGridByte(n, n, n, VS, VS);
+        grid.setGridBounds(new Bounds(-w, w, -w, w, -w, w));
+        fillGrid(grid);
+        ShellPruner pruner = new ShellPruner(new DensityMakerFromDensityChannel(grid.getDataChannel()));
+        pruner.setMinShellVolume(10*MM*MM*MM);
+        pruner.setThreadCount(4);
+        GridMask mask = pruner.execute(grid);
+        assertEquals("components", 4, pruner.getComponentsCount());
+        assertEquals("pruned", 3, pruner.getPrunedCount());
+        checkMask(grid, mask);
+    }
+
+    public void testMesh() {
+
+        AttributeGrid grid = makeGrid();
+        GridSaver saver = new GridSaver();
+        saver.setMinShellVolume(10*MM*MM*MM);
+
+        saver.setShellPruning(GridSaver.SHELL_PRUNING_NONE);
+        WingedEdgeTriangleMesh mesh0 = saver.getMesh(grid);
+        saver.setShellPruning(GridSaver.SHELL_PRUNING_EXACT);
+        WingedEdgeTriangleMesh mesh1 = saver.getMesh(grid);
+        saver.setShellPruning(GridSaver.SHELL_PRUNING_FAST);
+        WingedEdgeTriangleMesh mesh2 = saver.getMesh(grid);
+        printf("faces none: %d exact: %d fast: %d\n", mesh0.getFaceCount(), mesh1.getFaceCount(), mesh2.getFaceCount());
+        assertEquals("exact", mesh0.getFaceCount(), mesh1.getFaceCount());
+        assertEquals("fast", mesh0.getFaceCount(), mesh2.getFaceCount());
+    }
+
+    /**
+       checks that mask covers the debris only 
+     */
+    static void checkMask(AttributeGrid grid, GridMask mask){
+
+        assertNotNull("mask", mask);
+        double center[] = new double[3];
+        int inside = 0, masked = 0;
+        for(int y = 0; y < grid.getHeight(); y++){
+            for(int x = 0; x < grid.getWidth(); x++){
+                for(int z = 0; z < grid.getDepth(); z++){
+                    if(grid.getAttribute(x, y, z) == 0)
+                        continue;
+                    grid.getWorldCoords(x, y, z, center);
+                    boolean debris = (center[0] > 7*MM);
+                    assertEquals("masked", debris, mask.get(x, y, z) != 0);
+                    if(debris) masked++;
+                    else inside++;
+                }
+            }
+        }
+        printf("kept voxels: %d masked voxels: %d\n", inside, masked);
+        assertTrue(masked > 0);
+    }
+
+    /**
+       large sphere and three small spheres
+     */
+    static AttributeGrid makeGrid(){
+
+        double w = 10*MM;
+        AttributeGrid grid = new ArrayAttributeGridByte(new Bounds(-w, w, -w, w, -w, w), VS, VS);
+        fillGrid(grid);
+        return grid;
+    }
+
+    static void fillGrid(AttributeGrid grid){
+
+        // x, y, z, r
+        double spheres[][] = new double[][]{
+            {-2*MM, 0, 0, 6*MM},
+            {9*MM, 0, 0, 0.5*MM},
+            {9*MM, 2*MM, 0, 0.5*MM},
+            {9*MM, -4*MM, 3*MM, 0.6*MM},
+        };
+        GridDataChannel channel = new GridDataChannel(GridDataChannel.DENSITY, "dens", 8, 0, 0., 1.);
+        grid.setDataDesc(new GridDataDesc(channel));
+        double p[] = new double[3];
+        for(int y = 0; y < grid.getHeight(); y++){
+            for(int x = 0; x < grid.getWidth(); x++){
+                for(int z = 0; z < grid.getDepth(); z++){
+                    grid.getWorldCoords(x, y, z, p);
+                    double dist = Double.MAX_VALUE;
+                    for(int i = 0; i < spheres.length; i++){
+                        double s[] = spheres[i];
+                        double dx = p[0] - s[0], dy = p[1] - s[1], dz = p[2] - s[2];
+                        dist = Math.min(dist, Math.sqrt(dx*dx + dy*dy + dz*dz) - s[3]);
+                    }
+                    double density = Math.max(0., Math.min(1., 0.5 - dist/VS));
+                    grid.setAttribute(x, y, z, channel.makeAtt(density));
+                }
+            }
+        }
+    }
+}
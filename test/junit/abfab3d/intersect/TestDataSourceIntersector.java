@@ -16,6 +16,10 @@ package abfab3d.intersect;
 
 //External Imports
 
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
 import javax.vecmath.Vector3d;
 
 
@@ -28,6 +32,11 @@ import abfab3d.core.ResultCodes;
 
 import abfab3d.datasources.Sphere;
 import abfab3d.datasources.Box;
+import abfab3d.datasources.Union;
+import abfab3d.datasources.ImageMap;
+import abfab3d.transforms.Translation;
+
+import abfab3d.core.DataSource;
 
 import static abfab3d.core.Output.printf;
 import static abfab3d.core.Output.time;
@@ -55,6 +64,216 @@ public class TestDataSourceIntersector extends BaseTestCase  {
     public void testNothing(){
         
     }
+
+    public void testRaySphere() {
+
+        double r = 10*MM;
+        Sphere s = new Sphere(new Vector3d(1*MM, 2*MM, 0), r);
+        s.initialize();
+
+        DataSourceIntersector dsi = new DataSourceIntersector();
+        dsi.set("maxDistance", 100*MM);
+
+        Vector3d start = new Vector3d(50*MM, 2*MM, 0);
+        DataSourceIntersector.Result res = dsi.getShapeRayIntersection(s, start, new Vector3d(-2, 0, 0));
+        assertEquals("code", DataSourceIntersector.RESULT_INTERSECTION_FOUND, res.getCode());
+        assertEquals("x", 11*MM, res.getLocation().x, 1.e-4*MM);
+        assertEquals("nx", 1., res.getNormal().x, 1.e-6);
+
+        // ray misses the sphere
+        res = dsi.getShapeRayIntersection(s, start, new Vector3d(0, 1, 0));
+        assertTrue("miss", res.getCode() != DataSourceIntersector.RESULT_INTERSECTION_FOUND);
+        assertEquals("no normal", 0., res.getNormal().length());
+
+        // start inside
+        res = dsi.getShapeRayIntersection(s, new Vector3d(0, 0, 0), new Vector3d(1, 0, 0));
+        assertEquals("inside", DataSourceIntersector.RESULT_INITIAL_INTERSECTION, res.getCode());
+    }
+
+    public void testManyRays() {
+
+        double r = 10*MM;
+        Sphere s = new Sphere(r);
+        s.initialize();
+
+        DataSourceIntersector dsi = new DataSourceIntersector();
+        dsi.set("maxDistance", 100*MM);
+
+        int count = 500;
+        double starts[] = new double[3*count];
+        double dirs[] = new double[3*count];
+        for(int i = 0; i < count; i++){
+            double a = 2*Math.PI*i/count;
+            starts[3*i] = 30*MM*Math.cos(a);
+            starts[3*i+1] = 30*MM*Math.sin(a);
+            starts[3*i+2] = (i%20 - 10)*MM;
+            dirs[3*i] = -Math.cos(a);
+            dirs[3*i+1] = -Math.sin(a);
+            dirs[3*i+2] = 0;
+        }
+        int codes[] = new int[count];
+        double points[] = new double[3*count];
+        double normals[] = new double[3*count];
+        dsi.getShapeRayIntersections(s, starts, dirs, count, codes, points, normals);
+
+        for(int i = 0; i < count; i++){
+            Vector3d start = new Vector3d(starts[3*i], starts[3*i+1], starts[3*i+2]);
+            DataSourceIntersector.Result res = dsi.getShapeRayIntersection(s, start, new Vector3d(dirs[3*i], dirs[3*i+1], dirs[3*i+2]));
+            assertEquals("code", res.getCode(), codes[i]);
+            assertEquals("x", res.getLocation().x, points[3*i], 1.e-12);
+            assertEquals("nz", res.getNormal().z, normals[3*i+2], 1.e-12);
+            if(codes[i] == DataSourceIntersector.RESULT_INTERSECTION_FOUND){
+                double len = Math.sqrt(points[3*i]*points[3*i] + points[3*i+1]*points[3*i+1] + points[3*i+2]*points[3*i+2]);
+                assertEquals("radius", r, len, 1.e-4*MM);
+            }
+        }
+        // the ray at z = -10mm touches the sphere
+        assertEquals("hits", 19*count/20, countHits(codes), count/20);
+    }
+
+    public void testManyProbes() {
+
+        // static shape without bounds and with bounds 
+        Union union = new Union();
+        for(int i = 0; i < 5; i++)
+            union.add(new Sphere(new Vector3d((i - 2)*8*MM, 0, 0), 3*MM));
+        Sphere sphere = new Sphere(new Vector3d(2*MM, 1*MM, 0), 10*MM);
+        // bounds of transformed shape are given before transformation 
+        Sphere moved = new Sphere(new Vector3d(-8*MM, 1*MM, 0), 10*MM);
+        moved.setTransform(new Translation(14*MM, 0, 0));
+        DataSource shapes[] = new DataSource[]{union, sphere, moved};
+
+        Sphere probe = new Sphere(2*MM);
+        probe.initialize();
+
+        int count = 40;
+        double starts[] = new double[3*count];
+        double dirs[] = new double[3*count];
+        for(int i = 0; i < count; i++){
+            starts[3*i] = (i - count/2)*1*MM;
+            starts[3*i+1] = 20*MM;
+            starts[3*i+2] = (i%3 - 1)*1*MM;
+            dirs[3*i] = 0.1*(i%5 - 2);
+            dirs[3*i+1] = -1;
+            dirs[3*i+2] = 0;
+        }
+
+        for(int s = 0; s < shapes.length; s++){
+
+            DataSourceIntersector dsi = new DataSourceIntersector();
+            dsi.set("voxelSize", 0.5*MM);
+            dsi.set("minStep", 0.1*MM);
+            dsi.set("maxDistance", 40*MM);
+            
+            DataSourceIntersector.Results res = dsi.getShapesIntersections(shapes[s], probe, starts, dirs);
+            assertEquals("count", count, res.getCount());
+            // cached field is reused 
+            dsi.getShapesIntersections(shapes[s], probe, starts, dirs);
+
+            int found = 0;
+            for(int i = 0; i < count; i++){
+                DataSourceIntersector.Result r = dsi.getShapesIntersection(shapes[s], probe, 
+                                                                           new Vector3d(starts[3*i], starts[3*i+1], starts[3*i+2]), 
+                                                                           new Vector3d(dirs[3*i], dirs[3*i+1], dirs[3*i+2]));
+                assertEquals("code", r.getCode(), res.getCodes()[i]);
+                assertEquals("location y", r.getLocation().y, res.getLocations()[3*i+1], 1.e-12);
+                assertEquals("contact x", r.getContact().x, res.getContacts()[3*i], 1.e-12);
+                if(r.getCode() == DataSourceIntersector.RESULT_INTERSECTION_FOUND) 
+                    found++;
+            }
+            printf("shape %d: contacts found: %d\n", s, found);
+            assertTrue("found", found > count/2);
+        }
+    }
+
+    public void devTestManyProbesSpeed() {
+
+        Union union = new Union();
+        for(int i = 0; i < 20; i++)
+            union.add(new Sphere(new Vector3d((i - 10)*4*MM, (i%3)*2*MM, 0), 2*MM));
+        Sphere probe = new Sphere(2*MM);
+        probe.initialize();
+
+        int count = 200;
+        double starts[] = new double[3*count];
+        double dirs[] = new double[3*count];
+        for(int i = 0; i < count; i++){
+            starts[3*i] = (i - count/2)*0.4*MM;
+            starts[3*i+1] = 30*MM;
+            dirs[3*i+1] = -1;
+        }
+        DataSourceIntersector dsi = new DataSourceIntersector();
+        dsi.set("minStep", 0.1*MM);
+        dsi.set("maxDistance", 60*MM);
+
+        long t0 = time();
+        for(int i = 0; i < count; i++)
+            dsi.getShapesIntersection(union, probe, new Vector3d(starts[3*i], starts[3*i+1], starts[3*i+2]), new Vector3d(0,-1,0));
+        printf("single queries: %d ms\n", time() - t0);
+        t0 = time();
+        dsi.getShapesIntersections(union, probe, starts, dirs);
+        printf("bulk queries: %d ms\n", time() - t0);
+    }
+
+    /**
+       shapes in pixel units with minStep larger than default maxStep as used by AutoKerning 
+     */
+    public void testPixelUnits() {
+
+        Sphere s = new Sphere(100);
+        s.initialize();
+
+        DataSourceIntersector dsi = new DataSourceIntersector();
+        dsi.set("minStep", 1.);
+        dsi.set("maxDistance", 1000.);
+
+        DataSourceIntersector.Result res = dsi.getShapeRayIntersection(s, new Vector3d(300, 0, 0), new Vector3d(-1, 0, 0));
+        assertEquals("sphere code", DataSourceIntersector.RESULT_INTERSECTION_FOUND, res.getCode());
+        assertEquals("sphere x", 100., res.getLocation().x, 1.e-4);
+
+        // glyph like image maps with values +1 outside and -1 inside 
+        ImageMap shape = makeGlyph();
+        ImageMap probe = makeGlyph();
+        probe.initialize();
+
+        dsi = new DataSourceIntersector();
+        dsi.set("dimension", 2);
+        dsi.set("voxelSize", 1.);
+        dsi.set("minStep", 1.);
+        dsi.set("maxDistance", 200.);
+
+        res = dsi.getShapesIntersection(new Union(shape), probe, new Vector3d(60, 0, 0), new Vector3d(-1, 0, 0));
+        printf("glyphs: %s\n", res.toString(1.));
+        assertEquals("glyph code", DataSourceIntersector.RESULT_INTERSECTION_FOUND, res.getCode());
+        // black rectangles of width 20 touch 
+        assertEquals("glyph x", 20., res.getLocation().x, 2.);
+    }
+
+    /**
+       @return image map of size 40 x 60 with black 20 x 40 rectangle in the center 
+     */
+    static ImageMap makeGlyph(){
+
+        BufferedImage image = new BufferedImage(40, 60, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.white);
+        g.fillRect(0, 0, 40, 60);
+        g.setColor(Color.black);
+        g.fillRect(10, 10, 20, 40);
+        g.dispose();
+
+        ImageMap imageMap = new ImageMap(image, 40, 60, 1.);
+        imageMap.set("whiteDisplacement", 1.);
+        imageMap.set("blackDisplacement", -1.);
+        return imageMap;
+    }
+
+    static int countHits(int codes[]){
+        int n = 0;
+        for(int i = 0; i < codes.length; i++)
+            if(codes[i] == DataSourceIntersector.RESULT_INTERSECTION_FOUND) n++;
+        return n;
+    }
      
 
     public void devTestRaySphereIntersection() {
@@ -151,6 +370,7 @@ public class TestDataSourceIntersector extends BaseTestCase  {
         for(int i = 0; i < 1; i++){
             //new TestDataSourceIntersector().devTestRaySphereIntersection();
             new TestDataSourceIntersector().devTestSpheresIntersection();
+            new TestDataSourceIntersector().devTestManyProbesSpeed();
         }
     }
 
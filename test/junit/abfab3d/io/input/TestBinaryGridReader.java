@@ -0,0 +1,204 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2016
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.io.input;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import abfab3d.core.AttributeGrid;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.GridDataDesc;
+import abfab3d.grid.ArrayAttributeGridByte;
+import abfab3d.grid.ArrayAttributeGridInt;
+import abfab3d.grid.ArrayAttributeGridLong;
+import abfab3d.grid.ArrayAttributeGridShort;
+import abfab3d.grid.GridShortIntervals;
+import abfab3d.grid.NIOAttributeGridByte;
+import abfab3d.io.output.BinaryGridWriter;
+import abfab3d.io.output.SVXWriter;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
+/**
+ * Tests BinaryGridReader and BinaryGridWriter
+ */
+public class TestBinaryGridReader extends TestCase {
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestBinaryGridReader.class);
+    }
+
+    public void testRoundTrip() throws IOException {
+
+        int nx = 37, ny = 23, nz = 19;
+        AttributeGrid grids[] = new AttributeGrid[]{
+            new ArrayAttributeGridByte(nx, ny, nz, 0.1, 0.1),
+            new ArrayAttributeGridShort(nx, ny, nz, 0.1, 0.1),
+            new ArrayAttributeGridInt(nx, ny, nz, 0.1, 0.1),
+            new ArrayAttributeGridLong(nx, ny, nz, 0.1, 0.1),
+        };
+        long masks[] = new long[]{0xFFL, 0xFFFFL, 0xFFFFFFFFL, -1L};
+        int compression[] = new int[]{BinaryGridWriter.COMPRESSION_NONE, BinaryGridWriter.COMPRESSION_DEFLATE};
+
+        File file = File.createTempFile("grid_", ".agrid");
+        file.deleteOnExit();
+
+        for(int g = 0; g < grids.length; g++){
+            AttributeGrid grid = grids[g];
+            fillGrid(grid, masks[g]);
+            for(int c = 0; c < compression.length; c++){
+                for(int u = 0; u < 2; u++){
+                    BinaryGridWriter writer = new BinaryGridWriter();
+                    writer.setBlockSize(1000);
+                    writer.setCompression(compression[c]);
+                    writer.setUniformBlocks(u == 1);
+                    writer.write(grid, file.getPath());
+
+                    BinaryGridReader reader = new BinaryGridReader();
+                    reader.setMemoryMapping(false);
+                    AttributeGrid grid1 = reader.load(file.getPath());
+                    String msg = grid.getClass().getSimpleName() + " compression: " + compression[c] + " uniform: " + u;
+                    assertEquals(msg, grid.getClass(), grid1.getClass());
+                    assertEquals(msg, 0, countDifferences(grid, grid1, masks[g]));
+                    checkBounds(grid, grid1);
+                    assertEquals(msg, grid.getDataDesc().toString(), grid1.getDataDesc().toString());
+                }
+            }
+        }
+    }
+
+    public void testMemoryMapping() throws IOException {
+
+        AttributeGrid grid = new ArrayAttributeGridByte(30, 20, 10, 0.1, 0.1);
+        fillGrid(grid, 0xFF);
+        File file = File.createTempFile("grid_", ".agrid");
+        file.deleteOnExit();
+        new BinaryGridWriter().write(grid, file.getPath());
+
+        AttributeGrid grid1 = new BinaryGridReader().load(file.getPath());
+        assertTrue("zero copy grid", grid1 instanceof NIOAttributeGridByte);
+        assertEquals(0, countDifferences(grid, grid1, 0xFF));
+        // modification of mapped grid does not change the file
+        grid1.setAttribute(1, 2, 3, 77);
+        assertEquals(77, grid1.getAttribute(1, 2, 3));
+        AttributeGrid grid2 = new BinaryGridReader().load(file.getPath());
+        assertEquals(0, countDifferences(grid, grid2, 0xFF));
+
+        BinaryGridReader reader = new BinaryGridReader();
+        reader.setMemoryMapping(false);
+        assertTrue("array grid", reader.load(file.getPath()) instanceof ArrayAttributeGridByte);
+    }
+
+    public void testGenericGrid() throws IOException {
+
+        // grid without direct data access
+        AttributeGrid grid = new GridShortIntervals(20, 15, 10, 0.1, 0.1);
+        for(int y = 0; y < 15; y++){
+            for(int x = 5; x < 12; x++){
+                for(int z = 2; z < 8; z++){
+                    grid.setAttribute(x, y, z, 1);
+                }
+            }
+        }
+        File file = File.createTempFile("grid_", ".agrid");
+        file.deleteOnExit();
+        BinaryGridWriter writer = new BinaryGridWriter();
+        writer.setUniformBlocks(true);
+        writer.setBlockSize(10);
+        writer.write(grid, file.getPath());
+
+        AttributeGrid grid1 = new BinaryGridReader().load(file.getPath());
+        assertEquals(0, countDifferences(grid, grid1, 0xFF));
+    }
+
+    /**
+     * compares speed of binary format and svx
+     */
+    public void devTestSpeed() throws IOException {
+
+        int n = 500;
+        AttributeGrid grid = new ArrayAttributeGridByte(n, n, n, 0.1, 0.1);
+        fillGrid(grid, 0xFF);
+        File file = File.createTempFile("grid_", ".agrid");
+        File svx = File.createTempFile("grid_", ".svx");
+        file.deleteOnExit();
+        svx.deleteOnExit();
+
+        long t0 = time();
+        new BinaryGridWriter().write(grid, file.getPath());
+        printf("binary write: %d ms\n", time() - t0);
+        t0 = time();
+        new BinaryGridReader().load(file.getPath());
+        printf("binary mapped load: %d ms\n", time() - t0);
+        BinaryGridReader reader = new BinaryGridReader();
+        reader.setMemoryMapping(false);
+        t0 = time();
+        reader.load(file.getPath());
+        printf("binary array load: %d ms\n", time() - t0);
+        t0 = time();
+        new SVXWriter().write(grid, svx.getPath());
+        printf("svx write: %d ms\n", time() - t0);
+        t0 = time();
+        new SVXReader().load(svx.getPath());
+        printf("svx load: %d ms\n", time() - t0);
+    }
+
+    static void fillGrid(AttributeGrid grid, long mask){
+
+        for(int y = 0; y < grid.getHeight(); y++){
+            for(int x = 0; x < grid.getWidth(); x++){
+                for(int z = 0; z < grid.getDepth(); z++){
+                    // half of the grid is constant to have uniform blocks
+                    long v = (y < grid.getHeight()/2)? 0: (x*7919L + y*104729L + z*15485863L)*2654435761L;
+                    grid.setAttribute(x, y, z, v & mask);
+                }
+            }
+        }
+        double vs = grid.getVoxelSize();
+        grid.setGridBounds(new double[]{-1, -1 + grid.getWidth()*vs, -0.5, -0.5 + grid.getHeight()*vs, 0.25, 0.25 + grid.getDepth()*vs});
+        GridDataDesc desc = new GridDataDesc();
+        desc.addChannel(new GridDataChannel(GridDataChannel.DENSITY, "density", 8, 0, 0., 1.));
+        grid.setDataDesc(desc);
+    }
+
+    static void checkBounds(AttributeGrid grid1, AttributeGrid grid2){
+        double b1[] = new double[6], b2[] = new double[6];
+        grid1.getGridBounds(b1);
+        grid2.getGridBounds(b2);
+        for(int i = 0; i < 6; i++)
+            assertEquals("bounds", b1[i], b2[i], 0.);
+        assertEquals("voxel size", grid1.getVoxelSize(), grid2.getVoxelSize(), 0.);
+    }
+
+    static int countDifferences(AttributeGrid grid1, AttributeGrid grid2, long mask){
+
+        int count = 0;
+        for(int y = 0; y < grid1.getHeight(); y++){
+            for(int x = 0; x < grid1.getWidth(); x++){
+                for(int z = 0; z < grid1.getDepth(); z++){
+                    if((grid1.getAttribute(x, y, z) & mask) != (grid2.getAttribute(x, y, z) & mask))
+                        count++;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -13,14 +13,25 @@
 package abfab3d.io.input;
 
 import abfab3d.core.AttributeGrid;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.GridDataDesc;
+import abfab3d.grid.ArrayAttributeGridByte;
+import abfab3d.grid.BlockBasedAttributeGridByte;
 import abfab3d.io.output.MeshMakerMT;
 import abfab3d.io.output.STLWriter;
+import abfab3d.io.output.SVXWriter;
 import abfab3d.mesh.IndexedTriangleSetBuilder;
 import abfab3d.mesh.WingedEdgeTriangleMesh;
 import junit.framework.TestCase;
 
+import java.io.File;
 import java.io.IOException;
 
+import java.util.zip.ZipFile;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
 
 /**
  * Test SVXReader
@@ -79,4 +90,143 @@ public class TestSVXReader extends TestCase {
         }
         */
     }
+
+    /**
+     * Parallel writing and reading have to produce the same grid as sequential
+     */
+    public void testParallelRoundTrip() throws IOException {
+
+        AttributeGrid grid = makeTestGrid(40, 30, 20);
+
+        File file1 = File.createTempFile("svx1_", ".svx");
+        File file4 = File.createTempFile("svx4_", ".svx");
+        file1.deleteOnExit();
+        file4.deleteOnExit();
+
+        SVXWriter writer = new SVXWriter();
+        writer.setThreadCount(1);
+        writer.write(grid, file1.getPath());
+        writer.setThreadCount(4);
+        writer.write(grid, file4.getPath());
+
+        SVXReader reader = new SVXReader();
+        reader.setThreadCount(1);
+        AttributeGrid grid11 = reader.load(file1.getPath());
+        AttributeGrid grid14 = reader.load(file4.getPath());
+        reader.setThreadCount(4);
+        AttributeGrid grid41 = reader.load(file1.getPath());
+        AttributeGrid grid44 = reader.load(file4.getPath());
+
+        assertEquals("sequential", 0, countDifferences(grid, grid11));
+        assertEquals("parallel write", 0, countDifferences(grid, grid14));
+        assertEquals("parallel read", 0, countDifferences(grid, grid41));
+        assertEquals("parallel write and read", 0, countDifferences(grid, grid44));
+    }
+
+    /**
+     * Grid which is not safe for concurrent reads is written correctly with any thread count
+     */
+    public void testBlockGridRoundTrip() throws IOException {
+
+        AttributeGrid array = makeTestGrid(40, 30, 20);
+        AttributeGrid grid = new BlockBasedAttributeGridByte(40, 30, 20, 0.1, 0.1);
+        grid.setDataDesc(array.getDataDesc());
+        for(int y = 0; y < 30; y++)
+            for(int x = 0; x < 40; x++)
+                for(int z = 0; z < 20; z++)
+                    grid.setAttribute(x, y, z, array.getAttribute(x, y, z));
+
+        File file = File.createTempFile("svxb_", ".svx");
+        file.deleteOnExit();
+        SVXWriter writer = new SVXWriter();
+        writer.setThreadCount(4);
+        writer.write(grid, file.getPath());
+        SVXReader reader = new SVXReader();
+        reader.setThreadCount(4);
+        assertEquals("block grid", 0, countDifferences(grid, reader.load(file.getPath())));
+    }
+
+    /**
+     * Runtime errors of slice decoding are not lost by parallel reading
+     */
+    public void testParallelReadError() throws IOException {
+
+        File file = File.createTempFile("svxe_", ".svx");
+        file.deleteOnExit();
+        new SVXWriter().write(makeTestGrid(40, 30, 20), file.getPath());
+
+        int threads[] = new int[]{1, 4};
+        for(int i = 0; i < threads.length; i++){
+            // grid is too small for all slices 
+            AttributeGrid grid = new ArrayAttributeGridByte(40, 10, 20, 0.1, 0.1);
+            SlicesReader reader = new SlicesReader();
+            reader.setThreadCount(threads[i]);
+            ZipFile zip = new ZipFile(file);
+            try {
+                reader.readSlices(grid, zip, "density/slice%04d.png", 0, 0, 30);
+                fail("error is not reported with threads: " + threads[i]);
+            } catch(RuntimeException e){
+                printf("threads: %d error: %s\n", threads[i], e);
+            } finally {
+                zip.close();
+            }
+        }
+    }
+
+    /**
+     * Throughput of sequential and parallel writing and reading
+     */
+    public void devTestThroughput() throws IOException {
+
+        int n = 500;
+        AttributeGrid grid = makeTestGrid(n, n, n);
+        File file = File.createTempFile("svx_", ".svx");
+        file.deleteOnExit();
+
+        int threads[] = new int[]{1, 2, 4, 8};
+        for(int i = 0; i < threads.length; i++){
+            SVXWriter writer = new SVXWriter();
+            writer.setThreadCount(threads[i]);
+            long t0 = time();
+            writer.write(grid, file.getPath());
+            long tw = Math.max(time() - t0, 1);
+            SVXReader reader = new SVXReader();
+            reader.setThreadCount(threads[i]);
+            t0 = time();
+            reader.load(file.getPath());
+            long tr = Math.max(time() - t0, 1);
+            printf("threads: %d write: %5.1f slices/sec read: %5.1f slices/sec\n", threads[i], n*1000./tw, n*1000./tr);
+        }
+    }
+
+    static AttributeGrid makeTestGrid(int nx, int ny, int nz){
+
+        double vs = 0.1;
+        AttributeGrid grid = new ArrayAttributeGridByte(nx, ny, nz, vs, vs);
+        for(int y = 0; y < ny; y++){
+            for(int x = 0; x < nx; x++){
+                for(int z = 0; z < nz; z++){
+                    grid.setAttribute(x, y, z, (x*7 + y*13 + z*3) & 0xFF);
+                }
+            }
+        }
+        GridDataDesc desc = new GridDataDesc();
+        desc.addChannel(new GridDataChannel(GridDataChannel.DENSITY, "density", 8, 0, 0., 1.));
+        grid.setDataDesc(desc);
+        return grid;
+    }
+
+    static int countDifferences(AttributeGrid grid1, AttributeGrid grid2){
+
+        int count = 0;
+        for(int y = 0; y < grid1.getHeight(); y++){
+            for(int x = 0; x < grid1.getWidth(); x++){
+                for(int z = 0; z < grid1.getDepth(); z++){
+                    if((grid1.getAttribute(x, y, z) & 0xFF) != (grid2.getAttribute(x, y, z) & 0xFF))
+                        count++;
+                }
+            }
+        }
+        return count;
+    }
 }
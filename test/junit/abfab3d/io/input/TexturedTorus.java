@@ -31,7 +31,7 @@ public class TexturedTorus implements  AttributedTriangleProducer{
     double Rin, Rout;
     int Nin, Nout;
     TriangleCollector tc;
-    TexturedTorus(double Rout, double Rin, int Nout, int Nin){
+    public TexturedTorus(double Rout, double Rin, int Nout, int Nin){
         this.Rin = Rin;
         this.Rout = Rout;
         this.Nin = Nin;
@@ -22,11 +22,17 @@ import javax.vecmath.Vector3d;
 // external imports
 import abfab3d.core.AttributeGrid;
 import abfab3d.core.AttributePacker;
+import abfab3d.core.Bounds;
 import abfab3d.core.DataSource;
+import abfab3d.core.GridDataChannel;
+import abfab3d.core.GridDataDesc;
 import abfab3d.core.MathUtil;
 import abfab3d.core.ResultCodes;
 import abfab3d.core.Vec;
 import abfab3d.grid.*;
+import abfab3d.mesh.AreaCalculator;
+import abfab3d.mesh.MeshDecimator;
+import abfab3d.mesh.MeshDecimatorPQ;
 import abfab3d.util.*;
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -42,6 +48,7 @@ import abfab3d.datasources.DataSourceMixer;
 import abfab3d.datasources.Sphere;
 import abfab3d.datasources.Plane;
 import abfab3d.datasources.Intersection;
+import abfab3d.datasources.Union;
 
 import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
@@ -81,6 +88,160 @@ public class TestMeshMaker extends TestCase {
         
     }
 
+    /**
+       mesh extracted directly from data source matches mesh extracted from grid 
+     */
+    public void testMeshFromDataSource(){
+
+        double vs = 0.2*MM;
+        double r = 8*MM;
+        double s = 10*MM;
+        Bounds bounds = new Bounds(-s, s, -s, s, -s, s);
+        Sphere sphere = new Sphere(new Vector3d(0.1*MM,0.2*MM,0.3*MM), r);
+        sphere.initialize();
+
+        AttributeGrid grid = new ArrayAttributeGridByte(bounds, vs, vs);
+        GridDataChannel channel = new GridDataChannel(GridDataChannel.DISTANCE, "dist", 8, 0, -1*MM, 1*MM);
+        grid.setDataDesc(new GridDataDesc(channel));
+        GridMaker gm = new GridMaker();
+        gm.setSource(sphere);
+        gm.makeGrid(grid);
+
+        MeshMakerMT mm = new MeshMakerMT();
+        mm.setSmoothingWidth(0.5);
+        mm.setMaxDecimationError(0.1*vs*vs);
+        mm.setDensityMaker(new DensityMakerFromDistanceChannel(channel, 0, vs));
+        AreaCalculator gridMesh = new AreaCalculator();
+        mm.makeMesh(grid, gridMesh);
+
+        mm = new MeshMakerMT();
+        mm.setSmoothingWidth(0.5);
+        mm.setMaxDecimationError(0.1*vs*vs);
+        AreaCalculator sourceMesh = new AreaCalculator();
+        assertEquals(ResultCodes.RESULT_OK, mm.makeMesh(sphere, bounds, vs, sourceMesh));
+        assertEquals(MeshMakerMT.StatusType.SUCCESS, mm.getStatus());
+
+        double volume = 4*PI*r*r*r/3;
+        double area = 4*PI*r*r;
+        printf("grid mesh: volume: %8.5f area: %8.5f\n", gridMesh.getVolume()/volume, gridMesh.getArea()/area);
+        printf("source mesh: volume: %8.5f area: %8.5f\n", sourceMesh.getVolume()/volume, sourceMesh.getArea()/area);
+        assertEquals("volume", volume, sourceMesh.getVolume(), 0.01*volume);
+        assertEquals("area", area, sourceMesh.getArea(), 0.01*area);
+        assertEquals("grid volume", gridMesh.getVolume(), sourceMesh.getVolume(), 0.005*volume);
+    }
+
+    /**
+       updated mesh of changed grid matches mesh made from scratch 
+     */
+    public void testUpdateMesh(){
+
+        double vs = 0.2*MM;
+        double s = 10*MM;
+        Bounds bounds = new Bounds(-s, s, -s/2, s/2, -s/2, s/2);
+        AttributeGrid grid = new ArrayAttributeGridByte(bounds, vs, vs);
+        GridDataChannel channel = new GridDataChannel(GridDataChannel.DISTANCE, "dist", 8, 0, -1*MM, 1*MM);
+        grid.setDataDesc(new GridDataDesc(channel));
+        GridMaker gm = new GridMaker();
+        gm.setSource(new Union(new Sphere(new Vector3d(-5*MM, 0, 0), 3*MM), new Sphere(new Vector3d(5*MM, 0, 0), 3*MM)));
+        gm.makeGrid(grid);
+
+        MeshMakerMT mm = new MeshMakerMT();
+        mm.setThreadCount(4);
+        mm.setBlockSize(10);
+        mm.setSmoothingWidth(0.5);
+        mm.setMaxDecimationError(0.1*vs*vs);
+        mm.setDensityMaker(new DensityMakerFromDistanceChannel(channel, 0, vs));
+        AreaCalculator mesh0 = new AreaCalculator();
+        mm.makeMesh(grid, mesh0);
+
+        // nothing is changed 
+        AreaCalculator mesh1 = new AreaCalculator();
+        mm.updateMesh(grid, null, mesh1);
+        assertEquals("unchanged volume", mesh0.getVolume(), mesh1.getVolume(), 1.e-15);
+
+        // second sphere is changed 
+        double r = 3.5*MM;
+        Bounds region = new Bounds(1.5*MM, 8.5*MM, -3.5*MM, 3.5*MM, -3.5*MM, 3.5*MM);
+        region.expand(1*MM + vs);
+        gm = new GridMaker();
+        gm.setSource(new Union(new Sphere(new Vector3d(-5*MM, 0, 0), 3*MM), new Sphere(new Vector3d(5*MM, 0, 0), r)));
+        gm.setRegion(region);
+        gm.makeGrid(grid);
+        AreaCalculator mesh2 = new AreaCalculator();
+        long t0 = time();
+        mm.updateMesh(grid, region, mesh2);
+        printf("updateMesh: %d ms\n", time() - t0);
+
+        double volume = 4*PI*(27 + r*r*r/(MM*MM*MM))*MM*MM*MM/3;
+        printf("volume: %8.5f updated: %8.5f\n", mesh0.getVolume()/volume, mesh2.getVolume()/volume);
+        assertEquals("volume", volume, mesh2.getVolume(), 0.01*volume);
+
+        // unchanged sphere is kept 
+        AreaCalculator mesh3 = new AreaCalculator();
+        mm = new MeshMakerMT();
+        mm.setThreadCount(4);
+        mm.setBlockSize(10);
+        mm.setSmoothingWidth(0.5);
+        mm.setMaxDecimationError(0.1*vs*vs);
+        mm.setDensityMaker(new DensityMakerFromDistanceChannel(channel, 0, vs));
+        mm.makeMesh(grid, mesh3);
+        assertEquals("remade volume", mesh3.getVolume(), mesh2.getVolume(), 0.002*volume);
+    }
+
+    /**
+       priority decimators of the mesh maker use decimation thread count
+     */
+    public void testDecimationThreads(){
+
+        double vs = 0.1*MM;
+        double r = 8*MM;
+        double s = 9*MM;
+        Bounds bounds = new Bounds(-s, s, -s, s, -s, s);
+        AttributeGrid grid = new ArrayAttributeGridByte(bounds, vs, vs);
+        GridDataChannel channel = new GridDataChannel(GridDataChannel.DISTANCE, "dist", 8, 0, -1*MM, 1*MM);
+        grid.setDataDesc(new GridDataDesc(channel));
+        GridMaker gm = new GridMaker();
+        gm.setSource(new Sphere(new Vector3d(0.1*MM,0.2*MM,0.3*MM), r));
+        gm.makeGrid(grid);
+
+        double volume = 4*PI*r*r*r/3;
+        double area = 4*PI*r*r;
+        int threads[] = {1, 4};
+        double volumes[] = new double[threads.length];
+        for(int t = 0; t < threads.length; t++){
+
+            final int decimatorThreads[] = new int[1];
+            MeshMakerMT mm = new MeshMakerMT(){
+                    protected MeshDecimator makeDecimator(){
+                        MeshDecimator md = super.makeDecimator();
+                        synchronized(decimatorThreads){
+                            decimatorThreads[0] = ((MeshDecimatorPQ)md).getThreadCount();
+                        }
+                        return md;
+                    }
+                };
+            mm.setThreadCount(2);
+            // single block to have enough edges for partitioned decimation
+            mm.setBlockSize(grid.getWidth());
+            mm.setDecimationAlgorithm(MeshMakerMT.DECIMATION_PRIORITY);
+            mm.setDecimationThreadCount(threads[t]);
+            mm.setSmoothingWidth(0.5);
+            mm.setMaxDecimationError(0.1*vs*vs);
+            mm.setDensityMaker(new DensityMakerFromDistanceChannel(channel, 0, vs));
+            AreaCalculator mesh = new AreaCalculator();
+            long t0 = time();
+            assertEquals(ResultCodes.RESULT_OK, mm.makeMesh(grid, mesh));
+            printf("decimation threads: %d time: %d ms volume: %8.5f area: %8.5f\n",
+                   threads[t], time() - t0, mesh.getVolume()/volume, mesh.getArea()/area);
+
+            assertEquals("decimator threads", threads[t], decimatorThreads[0]);
+            assertEquals("volume", volume, mesh.getVolume(), 0.01*volume);
+            assertEquals("area", area, mesh.getArea(), 0.01*area);
+            volumes[t] = mesh.getVolume();
+        }
+        assertEquals("volume with decimation threads", volumes[0], volumes[1], 0.002*volume);
+    }
+
     public static void makeColorSphere() throws Exception {
         
         printf("makeColorSphere()\n");    
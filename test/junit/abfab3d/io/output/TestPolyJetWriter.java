@@ -28,6 +28,9 @@ import javax.imageio.ImageIO;
 
 
 // external imports
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
 
 
 // Internal Imports
@@ -84,12 +87,69 @@ import static java.lang.Math.*;
  *
  * @version
  */
-public class TestPolyJetWriter {
+public class TestPolyJetWriter extends TestCase {
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestPolyJetWriter.class);
+    }
 
     public void testNothing() {
 
     }
 
+    /**
+       slices of transformed model written with skipping of empty regions are the same as full slices 
+       and regions outside of the model are really skipped 
+     */
+    public void testEmptyRegions() throws Exception {
+
+        Sphere model = new Sphere(new Vector3d(0, 0, 0), 1.5*MM);
+        model.setTransform(new Translation(1.5*MM, -1*MM, 0.5*MM));
+        Bounds bounds = new Bounds(-4*MM, 4*MM, -4*MM, 4*MM, -2*MM, 2*MM);
+        double sliceThickness = 0.2*MM;
+        int slicesCount = bounds.getGridDepth(sliceThickness);
+        File base = File.createTempFile("polyjet", "");
+        base.delete();
+        String folders[] = new String[]{base.getPath() + "_full", base.getPath() + "_occupancy"};
+        PolyJetWriter writers[] = new PolyJetWriter[folders.length];
+        for(int k = 0; k < folders.length; k++){
+            new File(folders[k]).mkdirs();
+            PolyJetWriter writer = new PolyJetWriter();
+            writer.setBounds(bounds);
+            writer.set("model", model);
+            writer.set("sliceThickness", sliceThickness);
+            writer.set("threadCount", 2);
+            writer.set("outFolder", folders[k]);
+            writer.set("occupancyCellSize", (k == 1)? 0.5*MM: 0.);
+            writer.write();
+            writers[k] = writer;
+        }
+        int width = writers[1].m_nx;
+        int height = writers[1].m_ny;
+        long skipped = 0;
+        for(int i = 0; i < slicesCount; i++){
+            int data0[] = getImageData(fmt("%s/slice_%d.png", folders[0], i));
+            int data1[] = getImageData(fmt("%s/slice_%d.png", folders[1], i));
+            for(int j = 0; j < data0.length; j++)
+                assertEquals(fmt("slice: %d pixel: %d", i, j), data0[j], data1[j]);
+            long area = 0;
+            for(int[] r: writers[1].getSliceRegions(i))
+                area += (long)(r[1] - r[0])*(r[3] - r[2]);
+            skipped += (long)width*height - area;
+        }
+        printf("skipped pixels: %d of %d\n", skipped, (long)width*height*slicesCount);
+        assertTrue("skipped", skipped > (long)width*height*slicesCount/2);
+        for(int k = 0; k < folders.length; k++){
+            File files[] = new File(folders[k]).listFiles();
+            for(int i = 0; i < files.length; i++)
+                files[i].delete();
+            new File(folders[k]).delete();
+        }
+    }
+
     
     void devTestSingleImage()throws Exception {
         
@@ -272,6 +332,50 @@ public class TestPolyJetWriter {
 
     }
 
+    /**
+       compares slices written with and without skipping of empty regions and with coherent slice calculator
+       the model is not transformed, so its bounds can be used 
+     */
+    void devTestEmptyRegions() throws Exception {
+
+        DataSource model = new Sphere(new Vector3d(2*MM, -1*MM, 0), 4*MM);
+        Bounds bounds = new Bounds(-10*MM, 10*MM, -8*MM, 8*MM, -6*MM, 6*MM);
+        String folders[] = new String[]{"/tmp/polyjet_full", "/tmp/polyjet_bounds", "/tmp/polyjet_occupancy", "/tmp/polyjet_coherent"};
+        int slicesCount = 0;
+        for(int k = 0; k < folders.length; k++){
+            new File(folders[k]).mkdirs();
+            PolyJetWriter writer = new PolyJetWriter();
+            writer.setBounds(bounds);
+            writer.set("model", model);        
+            writer.set("sliceThickness", 0.1*MM);
+            writer.set("threadCount", 3);
+            writer.set("outFolder", folders[k]);
+            writer.set("useModelBounds", (k == 1 || k == 2));
+            writer.set("occupancyCellSize", (k == 2)? 1*MM: 0.);
+            writer.set("coherentSlices", (k == 3));
+            long t0 = time();
+            writer.write();
+            printf("%s: %d ms\n", folders[k], time() - t0);
+            slicesCount = bounds.getGridDepth(0.1*MM);
+        }
+        for(int i = 0; i < slicesCount; i++){
+            int data0[] = getImageData(fmt("%s/slice_%d.png", folders[0], i));
+            for(int k = 1; k < folders.length; k++){
+                int data[] = getImageData(fmt("%s/slice_%d.png", folders[k], i));
+                for(int j = 0; j < data0.length; j++){
+                    if(data[j] != data0[j]) 
+                        throw new RuntimeException(fmt("slice %d differs in %s at %d", i, folders[k], j));
+                }
+            }
+        }
+        printf("%d slices are equal\n", slicesCount);
+    }
+
+    static int[] getImageData(String path) throws IOException {
+        BufferedImage image = ImageIO.read(new File(path));
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
     /**
        
        
@@ -29,6 +29,8 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
+import java.nio.file.Files;
+
 
 import javax.vecmath.Vector3d;
 import javax.vecmath.Vector2d;
@@ -46,6 +48,7 @@ import junit.framework.TestSuite;
 import abfab3d.grid.AttributePackerGeneral;
 import abfab3d.core.AttributeGrid;
 import abfab3d.grid.ArrayAttributeGridInt;
+import abfab3d.grid.BlockBasedAttributeGridShort;
 import abfab3d.core.GridDataDesc;
 import abfab3d.core.GridDataChannel;
 
@@ -62,6 +65,12 @@ import abfab3d.datasources.VolumePatterns;
 
 import abfab3d.grid.op.GridMaker;
 
+import abfab3d.io.input.GradientColorizer;
+import abfab3d.io.input.GridLoader;
+import abfab3d.io.input.TexturedTorus;
+
+import abfab3d.mesh.WingedEdgeTriangleMesh;
+
 import static abfab3d.core.Output.printf;
 import static abfab3d.core.Output.fmt;
 import static abfab3d.core.Output.time;
@@ -205,6 +214,143 @@ public class TestTextureRenderer extends TestCase {
         
     }
 
+    /**
+       tiled parallel rendering has to produce the same texture as single threaded rendering
+     */
+    public void testParallelRendering(){
+
+        double vs = 0.5*MM;
+        int gs = 40;
+        // color grid with color depending on voxel coordinates 
+        AttributeGrid colorGrid = new ArrayAttributeGridInt(gs,gs,gs, vs, vs);
+        for(int y = 0; y < gs; y++){
+            for(int x = 0; x < gs; x++){
+                for(int z = 0; z < gs; z++){
+                    colorGrid.setAttribute(x,y,z, ((6*x) << 16) | ((6*y) << 8) | (6*z));
+                }
+            }
+        }
+        checkParallelRendering(colorGrid);
+    }
+
+    /**
+       grid which is not safe for concurrent reads has to give the same texture with any thread count
+     */
+    public void testBlockGridRendering(){
+
+        double vs = 0.5*MM;
+        int gs = 40;
+        AttributeGrid colorGrid = new BlockBasedAttributeGridShort(gs,gs,gs, vs, vs);
+        for(int y = 0; y < gs; y++){
+            for(int x = 0; x < gs; x++){
+                for(int z = 0; z < gs; z++){
+                    colorGrid.setAttribute(x,y,z, ((6*x) << 8) | (6*z));
+                }
+            }
+        }
+        checkParallelRendering(colorGrid);
+    }
+
+    void checkParallelRendering(AttributeGrid colorGrid){
+
+        double vs = colorGrid.getVoxelSize();
+        int gs = colorGrid.getWidth();
+        TrianglePacker tp = new TrianglePacker();
+        tp.setGap(2.5);
+        new TriangulatedModels.Sphere(gs/2-2, new Vector3d(gs/2,gs/2,gs/2), 4).getTriangles(tp);
+        tp.packTriangles();
+        Vector2d area = tp.getPackedSize();
+        int imgWidth = (int)(area.x+5);
+        int imgHeight = (int)(area.y+5);
+
+        AttributeGrid texGrid1 = new ArrayAttributeGridInt(imgWidth,1,imgHeight, vs, vs);
+        AttributeGrid texGrid4 = new ArrayAttributeGridInt(imgWidth,1,imgHeight, vs, vs);
+
+        tp.setThreadCount(1);
+        tp.renderTexturedTriangles(colorGrid, new ColorMaker(), texGrid1, 1.5);
+        tp.setThreadCount(4);
+        tp.setTileSize(32);
+        tp.renderTexturedTriangles(colorGrid, new ColorMaker(), texGrid4, 1.5);
+
+        int diffCount = 0, colored = 0;
+        for(int v = 0; v < imgHeight; v++){
+            for(int u = 0; u < imgWidth; u++){
+                long a = texGrid1.getAttribute(u,0,v);
+                if(a != 0) colored++;
+                if(a != texGrid4.getAttribute(u,0,v)) diffCount++;
+            }
+        }
+        printf("texture: %d x %d colored pixels: %d\n", imgWidth, imgHeight, colored);
+        assertTrue("texture is empty", colored > 0);
+        assertEquals("pixels differ in parallel rendering", 0, diffCount);
+    }
+
+    /**
+       benchmark of texture rendering with different thread counts 
+     */
+    public void devTestRenderingSpeed(){
+
+        double vs = 0.1*MM;
+        double s = 50*MM;
+        double bounds[] = new double[]{-s/2,s/2,-s/2,s/2,-s/2,s/2};
+        double gs = s/vs;
+        AttributeGrid colorGrid = makeColorGrid_2(bounds, vs);
+
+        TrianglePacker tp = new TrianglePacker();
+        tp.setGap(2.5);
+        // 2M triangles 
+        new TriangulatedModels.Sphere(gs/2-2, new Vector3d(gs/2,gs/2,gs/2), 9).getTriangles(tp);
+        printf("triangles: %d\n", tp.getTriCount());
+        long t0 = time();
+        tp.packTriangles();
+        printf("packing: %d ms\n", (time() - t0));
+        Vector2d area = tp.getPackedSize();
+        int imgWidth = (int)(area.x+5);
+        int imgHeight = (int)(area.y+5);
+        printf("texture: %d x %d\n", imgWidth, imgHeight);
+        AttributeGrid texGrid = new ArrayAttributeGridInt(imgWidth,1,imgHeight, vs, vs);
+
+        int threads[] = new int[]{1, 2, 4, 8};
+        for(int i = 0; i < threads.length; i++){
+            tp.setThreadCount(threads[i]);
+            t0 = time();
+            tp.renderTexturedTriangles(colorGrid, new ColorMaker(), texGrid, 1.5);
+            printf("threads: %d rendering: %d ms\n", threads[i], (time() - t0));
+        }
+    }
+
+    /**
+       benchmark of texturing of mesh of full color model with different thread counts 
+     */
+    public void devTestFullColorTexturingSpeed() throws IOException {
+
+        GridLoader loader = new GridLoader();
+        loader.setThreadCount(8);
+        loader.setMaxInDistance(1*MM);
+        loader.setMaxOutDistance(1*MM);
+        loader.setMargins(1*MM);
+        loader.setPreferredVoxelSize(0.2*MM);
+        AttributeGrid grid = loader.rasterizeAttributedTriangles(new TexturedTorus(30*MM, 15*MM, 3, 40), 
+                                                                 new GradientColorizer(new Vector3d(0.05,0,0)));
+        GridSaver saver = new GridSaver();
+        saver.setTexPixelSize(1);
+        saver.setMeshSmoothingWidth(1);
+        saver.setTexTriExt(1.5);
+        saver.setTexTriGap(1.5);
+        long t0 = time();
+        WingedEdgeTriangleMesh mesh = saver.getMesh(grid);
+        printf("mesh: %d triangles %d ms\n", mesh.getTriangleCount(), (time() - t0));
+
+        String outPath = Files.createTempDirectory("tex").toString() + "/torus.x3d";
+        int threads[] = new int[]{1, 2, 4, 8};
+        for(int i = 0; i < threads.length; i++){
+            saver.setMaxThreads(threads[i]);
+            t0 = time();
+            saver.writeTexturedMesh(mesh, grid, saver.makeDefaultColorMaker(grid), outPath);
+            printf("threads: %d texturing: %d ms\n", threads[i], (time() - t0));
+        }
+    }
+
     public void testExtendedTriangle(){
         
         double tri[][] = new double[][]{{0,0},{10,0},{0,10}};
@@ -0,0 +1,148 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2013
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.mesh;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+import static abfab3d.mesh.TestMeshDecimator.loadMesh;
+
+/**
+ * Tests the functionality of MeshDecimatorPQ
+ */
+public class TestMeshDecimatorPQ extends TestCase {
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestMeshDecimatorPQ.class);
+    }
+
+    public void testEdgeHeap(){
+
+        int N = 1000;
+        EdgeHeap heap = new EdgeHeap(N);
+        double cost[] = new double[N];
+        Random rnd = new Random(101);
+        for(int i = 0; i < N; i++){
+            cost[i] = rnd.nextDouble();
+            heap.put(i, cost[i]);
+        }
+        // update some costs and remove some keys
+        for(int i = 0; i < N; i += 3){
+            cost[i] = rnd.nextDouble();
+            heap.put(i, cost[i]);
+        }
+        for(int i = 1; i < N; i += 7){
+            assertTrue(heap.remove(i));
+            assertFalse(heap.contains(i));
+        }
+        double last = -1;
+        int count = 0;
+        while(!heap.isEmpty()){
+            double c = heap.peekCost();
+            int key = heap.pop();
+            assertEquals("heap cost", cost[key], c, 0.);
+            assertTrue("heap order", c >= last);
+            last = c;
+            count++;
+        }
+        assertEquals("popped keys", N - (N+5)/7, count);
+    }
+
+    public void testSpeedKnot() throws Exception {
+
+        WingedEdgeTriangleMesh mesh = loadMesh("test/models/speed-knot.x3db");
+        int fcount = mesh.getFaceCount();
+        int target = fcount/2;
+
+        MeshDecimatorPQ md = new MeshDecimatorPQ();
+        md.setMaxCollapseError(1.);
+        long t0 = time();
+        int result = md.processMesh(mesh, target);
+        printf("speed-knot: %d -> %d faces in one pass %d ms\n", fcount, result, (time() - t0));
+
+        assertEquals("face count", mesh.getFaceCount(), result);
+        assertTrue("target reached in one pass", result <= target + 2);
+        assertTrue("verifyVertices", TestMeshDecimator.verifyVertices(mesh));
+        assertTrue("Structural Check", TestWingedEdgeTriangleMesh.verifyStructure(mesh, true));
+        assertTrue("Final Manifold", TestWingedEdgeTriangleMesh.isManifold(mesh));
+    }
+
+    public void testMaxCollapseError() throws Exception {
+
+        // every collapse on curved torus has error above the tiny max error
+        WingedEdgeTriangleMesh mesh = makeTorus(40, 20, 1., 0.3);
+        int fcount = mesh.getFaceCount();
+        MeshDecimatorPQ md = new MeshDecimatorPQ();
+        md.setMaxCollapseError(1.e-12);
+        int result = md.processMesh(mesh, fcount/10);
+        assertEquals("max error stops decimation", fcount, result);
+        assertTrue("Structural Check", TestWingedEdgeTriangleMesh.verifyStructure(mesh, true));
+    }
+
+    public void testPartitions() throws Exception {
+
+        WingedEdgeTriangleMesh mesh = makeTorus(400, 200, 1., 0.3);
+        int fcount = mesh.getFaceCount();
+        int target = fcount/4;
+
+        MeshDecimatorPQ md = new MeshDecimatorPQ();
+        md.setThreadCount(4);
+        md.setMaxCollapseError(1.);
+        long t0 = time();
+        int result = md.processMesh(mesh, target);
+        printf("torus 4 threads: %d -> %d faces %d ms\n", fcount, result, (time() - t0));
+
+        assertEquals("face count", mesh.getFaceCount(), result);
+        assertTrue("target reached in one pass", result <= target + 2);
+        assertTrue("verifyVertices", TestMeshDecimator.verifyVertices(mesh));
+        assertTrue("Structural Check", TestWingedEdgeTriangleMesh.verifyStructure(mesh, true));
+        assertTrue("Final Manifold", TestWingedEdgeTriangleMesh.isManifold(mesh));
+    }
+
+    /**
+       makes closed torus mesh with nu*nv*2 faces
+     */
+    static WingedEdgeTriangleMesh makeTorus(int nu, int nv, double R, double r){
+
+        double vert[] = new double[nu*nv*3];
+        int faces[] = new int[nu*nv*6];
+        for(int i = 0, k = 0; i < nu; i++){
+            double u = 2*Math.PI*i/nu;
+            for(int j = 0; j < nv; j++){
+                double v = 2*Math.PI*j/nv;
+                vert[k++] = (R + r*Math.cos(v))*Math.cos(u);
+                vert[k++] = (R + r*Math.cos(v))*Math.sin(u);
+                vert[k++] = r*Math.sin(v);
+            }
+        }
+        for(int i = 0, k = 0; i < nu; i++){
+            int i1 = (i+1)%nu;
+            for(int j = 0; j < nv; j++){
+                int j1 = (j+1)%nv;
+                int v00 = i*nv + j, v10 = i1*nv + j, v01 = i*nv + j1, v11 = i1*nv + j1;
+                faces[k++] = v00; faces[k++] = v10; faces[k++] = v11;
+                faces[k++] = v00; faces[k++] = v11; faces[k++] = v01;
+            }
+        }
+        return new WingedEdgeTriangleMesh(vert, faces);
+    }
+
+}
@@ -0,0 +1,234 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.param;
+
+import javax.vecmath.Vector3d;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import abfab3d.core.DataSource;
+import abfab3d.datasources.Box;
+import abfab3d.datasources.Sphere;
+import abfab3d.datasources.Union;
+import abfab3d.transforms.CompositeTransform;
+import abfab3d.transforms.Rotation;
+import abfab3d.transforms.Translation;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+import static abfab3d.core.Units.MM;
+
+/**
+ * Tests ParamFingerprint and fingerprints of parameters
+ */
+public class TestParamFingerprint extends TestCase {
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestParamFingerprint.class);
+    }
+
+    public void testHasher() {
+
+        ParamFingerprint fp1 = new ParamFingerprint().update("ab").update("c");
+        ParamFingerprint fp2 = new ParamFingerprint().update("a").update("bc");
+        ParamFingerprint fp3 = new ParamFingerprint().update("ab").update("c");
+        assertFalse("string boundaries", fp1.toString().equals(fp2.toString()));
+        assertEquals("same content", fp1.toString(), fp3.toString());
+        assertEquals("hex length", 32, fp1.toString().length());
+        assertFalse(fp1.isTransient());
+
+        ParamFingerprint fp4 = new ParamFingerprint().update("java.lang.Object@1b6d3586");
+        assertTrue("memory reference", fp4.isTransient());
+        assertTrue("memory reference marker", fp4.toString().endsWith("@"));
+        ParamFingerprint fp5 = new ParamFingerprint().update(fp4);
+        assertTrue("transient is inherited", fp5.isTransient());
+    }
+
+    public void testEqualTrees() {
+
+        Union u1 = makeTree(2*MM);
+        Union u2 = makeTree(2*MM);
+        Union u3 = makeTree(3*MM);
+
+        assertEquals("equal trees", u1.getParamFingerprint(), u2.getParamFingerprint());
+        assertFalse("different trees", u1.getParamFingerprint().equals(u3.getParamFingerprint()));
+        assertEquals("data label", u1.getDataLabel(), u2.getDataLabel());
+    }
+
+    public void testNestedInvalidation() {
+
+        Sphere sphere = new Sphere(new Vector3d(1*MM, 0, 0), 2*MM);
+        Union union = new Union(new Box(4*MM, 4*MM, 4*MM), sphere);
+        Union root = new Union(union);
+
+        String fp0 = root.getParamFingerprint();
+        assertEquals("memoized", fp0, root.getParamFingerprint());
+
+        sphere.setRadius(3*MM);
+        String fp1 = root.getParamFingerprint();
+        assertFalse("change of nested param", fp0.equals(fp1));
+
+        sphere.setRadius(2*MM);
+        assertEquals("restored value", fp0, root.getParamFingerprint());
+
+        union.add(new Sphere(1*MM));
+        String fp2 = root.getParamFingerprint();
+        assertFalse("node added to list", fp0.equals(fp2));
+
+        union.clear();
+        assertFalse("list cleared", fp2.equals(root.getParamFingerprint()));
+    }
+
+    /**
+       every modifier of parameter value invalidates memoized fingerprint 
+     */
+    public void testModifiers() {
+
+        StringListParameter sp = new StringListParameter("list", new String[]{"a"});
+        String fp0 = getFingerprint(sp);
+        sp.add("b");
+        String fp1 = getFingerprint(sp);
+        assertFalse("string added", fp0.equals(fp1));
+        sp.clear();
+        assertFalse("strings cleared", fp1.equals(getFingerprint(sp)));
+
+        IntParameter ip = new IntParameter("int", 1);
+        fp0 = getFingerprint(ip);
+        ip.setStringValue("2");
+        assertFalse("int string value", fp0.equals(getFingerprint(ip)));
+
+        DoubleParameter dp = new DoubleParameter("double", 1.);
+        fp0 = getFingerprint(dp);
+        dp.setStringValue("2");
+        assertFalse("double string value", fp0.equals(getFingerprint(dp)));
+
+        // validation does not modify value 
+        ip.validate(new Integer(5));
+        assertEquals("validate", new Integer(2), ip.getValue());
+
+        Box box = new Box(4*MM, 4*MM, 4*MM);
+        Union root = new Union(box);
+        fp0 = root.getParamFingerprint();
+        box.setWidth(5*MM);
+        fp1 = root.getParamFingerprint();
+        assertFalse("box width", fp0.equals(fp1));
+        box.setHeight(5*MM);
+        String fp2 = root.getParamFingerprint();
+        assertFalse("box height", fp1.equals(fp2));
+        box.setDepth(5*MM);
+        assertFalse("box depth", fp2.equals(root.getParamFingerprint()));
+    }
+
+    /**
+       fingerprints of parents of shared node follow its changes, removed nodes do not affect the list 
+     */
+    public void testSharedNode() {
+
+        Sphere shared = new Sphere(1*MM);
+        Union unions[] = new Union[100];
+        String fp0[] = new String[unions.length];
+        for(int i = 0; i < unions.length; i++){
+            unions[i] = new Union(shared, new Sphere(i*MM));
+            fp0[i] = unions[i].getParamFingerprint();
+        }
+        shared.setRadius(2*MM);
+        for(int i = 0; i < unions.length; i++){
+            assertFalse("shared node changed", fp0[i].equals(unions[i].getParamFingerprint()));
+        }
+
+        Sphere s1 = new Sphere(1*MM);
+        Union union = new Union(s1, new Sphere(2*MM));
+        SNodeListParameter sources = (SNodeListParameter)union.getParam("sources");
+        sources.remove(0);
+        String fp1 = union.getParamFingerprint();
+        s1.setRadius(3*MM);
+        assertEquals("removed node changed", fp1, union.getParamFingerprint());
+
+        sources.set(0, s1);
+        String fp2 = union.getParamFingerprint();
+        s1.setRadius(4*MM);
+        assertFalse("replaced node changed", fp2.equals(union.getParamFingerprint()));
+    }
+
+    static String getFingerprint(BaseParameter param){
+        ParamFingerprint fp = new ParamFingerprint();
+        param.getParamFingerprint(fp);
+        return fp.toString();
+    }
+
+    public void testTransforms() {
+
+        Sphere sphere = new Sphere(2*MM);
+        CompositeTransform ct = new CompositeTransform();
+        Translation tr = new Translation(1*MM, 0, 0);
+        ct.add(tr);
+        sphere.setTransform(ct);
+
+        String fp0 = sphere.getParamFingerprint();
+        tr.set("translation", new Vector3d(2*MM, 0, 0));
+        String fp1 = sphere.getParamFingerprint();
+        assertFalse("translation changed", fp0.equals(fp1));
+
+        ct.add(new Rotation(0, 0, 1, 0.5));
+        assertFalse("transform added", fp1.equals(sphere.getParamFingerprint()));
+    }
+
+    public void testParamSubset() {
+
+        Sphere s1 = new Sphere(new Vector3d(1*MM, 0, 0), 2*MM);
+        Sphere s2 = new Sphere(new Vector3d(5*MM, 0, 0), 2*MM);
+        Parameter p1[] = new Parameter[]{s1.getParam("radius")};
+        Parameter p2[] = new Parameter[]{s2.getParam("radius")};
+        assertEquals("same subset", BaseParameterizable.getParamFingerprint("Sphere", p1),
+                     BaseParameterizable.getParamFingerprint("Sphere", p2));
+        assertFalse("different name", BaseParameterizable.getParamFingerprint("Sphere", p1).equals(
+                     BaseParameterizable.getParamFingerprint("Ball", p1)));
+    }
+
+    /**
+       compares cost of param string and fingerprint of deep tree
+     */
+    public void devTestSpeed() {
+
+        Union root = new Union();
+        for(int i = 0; i < 50; i++){
+            root.add(makeTree(i*MM));
+        }
+        int count = 1000;
+        long t0 = time();
+        int len = 0;
+        for(int i = 0; i < count; i++){
+            len += root.getParamString().length();
+        }
+        printf("param string: %d chars %d ms\n", len/count, time() - t0);
+        t0 = time();
+        for(int i = 0; i < count; i++){
+            len += root.getParamFingerprint().length();
+        }
+        printf("fingerprint: %d ms\n", time() - t0);
+    }
+
+    static Union makeTree(double radius){
+
+        DataSource s = new Sphere(new Vector3d(1*MM, 2*MM, 0), radius);
+        Union u = new Union(new Box(4*MM, 4*MM, 4*MM), s);
+        Union root = new Union(u, new Sphere(radius));
+        root.setTransform(new Translation(0, 1*MM, 0));
+        return root;
+    }
+}
@@ -21,12 +21,23 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Tests the functionality of the ScriptManager
@@ -81,4 +92,64 @@ public class TestScriptManager extends TestCase {
 
         fail("No exception thrown");
     }
+
+    /**
+     * Test parallel resolution and sharing of concurrent downloads of the same uri
+     */
+    public void testConcurrentDownload() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        server.setExecutor(pool);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                try { Thread.sleep(300); } catch(InterruptedException ie) {}
+                byte[] data = "solid test\nendsolid test\n".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, data.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(data);
+                os.close();
+            }
+        });
+        server.start();
+
+        try {
+            ScriptManager sm = ScriptManager.getInstance();
+            String base = "http://localhost:" + server.getAddress().getPort() + "/model" + System.nanoTime();
+
+            // same uri requested by several jobs is downloaded once
+            List<Future<String>> same = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                same.add(sm.resolveURIAsync("model", base + "_same.stl"));
+            }
+            String path = same.get(0).get();
+            assertNotNull("downloaded", path);
+            assertTrue("file exists", new File(path).exists());
+            for (Future<String> f : same) {
+                assertEquals("shared download", path, f.get());
+            }
+            assertEquals("requests for same uri", 1, requests.get());
+
+            // repeated request is served from local store
+            assertEquals("cached", path, sm.resolveURIAsync("model", base + "_same.stl").get());
+            assertEquals("no new request", 1, requests.get());
+
+            // different uris are downloaded in parallel
+            long t0 = System.currentTimeMillis();
+            List<Future<String>> different = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                different.add(sm.resolveURIAsync("model" + i, base + "_" + i + ".stl"));
+            }
+            for (Future<String> f : different) {
+                assertNotNull("downloaded", f.get());
+            }
+            long time = System.currentTimeMillis() - t0;
+            assertEquals("requests", 5, requests.get());
+            assertTrue("parallel download time: " + time, time < 4 * 300);
+        } finally {
+            server.stop(0);
+            pool.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,208 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.symmetry;
+
+import java.util.Random;
+
+import javax.vecmath.Vector3d;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import abfab3d.core.ResultCodes;
+import abfab3d.core.Vec;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
+/**
+ * Tests closed form folding of points into fundamental domain of symmetry groups
+ */
+public class TestSymmetryGroup extends TestCase {
+
+    static final double EPS = 1.e-9;
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestSymmetryGroup.class);
+    }
+
+    static SymmetryGroup[] getWallpaperGroups(double w){
+        return new SymmetryGroup[]{
+            WallpaperSymmetries.getO(w, 0.7*w, 0.3),
+            WallpaperSymmetries.getXX(w, 0.7*w),
+            WallpaperSymmetries.getSX(w, 0.7*w),
+            WallpaperSymmetries.getSS(w, 0.7*w),
+            WallpaperSymmetries.get632(w),
+            WallpaperSymmetries.getS632(w),
+            WallpaperSymmetries.get333(w),
+            WallpaperSymmetries.getS333(w),
+            WallpaperSymmetries.get3S3(w),
+            WallpaperSymmetries.get442(w),
+            WallpaperSymmetries.getS442(w),
+            WallpaperSymmetries.get4S2(w),
+            WallpaperSymmetries.get2222(w, 0.7*w),
+            WallpaperSymmetries.get22X(w, 0.7*w),
+            WallpaperSymmetries.get22S(w, 0.7*w),
+            WallpaperSymmetries.getS2222(w, 0.7*w),
+            WallpaperSymmetries.get2S22(w, 0.7*w),
+        };
+    }
+
+    static SymmetryGroup[] getFriezeGroups(double w){
+        return new SymmetryGroup[]{
+            FriezeSymmetries.getII(w),
+            FriezeSymmetries.getIX(w),
+            FriezeSymmetries.get22I(w),
+            FriezeSymmetries.getSII(w),
+            FriezeSymmetries.getIS(w),
+            FriezeSymmetries.getS22I(w),
+            FriezeSymmetries.get2SI(w),
+        };
+    }
+
+    public void testWallpaper() {
+
+        SymmetryGroup groups[] = getWallpaperGroups(0.01);
+        for(int i = 0; i < groups.length; i++)
+            checkGroup("wallpaper " + i, groups[i], 2, 0.1);
+    }
+
+    public void testFrieze() {
+
+        SymmetryGroup groups[] = getFriezeGroups(0.01);
+        for(int i = 0; i < groups.length; i++)
+            checkGroup("frieze " + i, groups[i], 1, 0.1);
+    }
+
+    public void testReflections() {
+
+        // cube reflected in its sides
+        SymmetryGroup group = new SymmetryGroup(new SPlane[] {
+                new EPlane(new Vector3d(-1,0,0), 1),
+                new EPlane(new Vector3d(1,0,0), 1),
+                new EPlane(new Vector3d(0,1,0), 1),
+                new EPlane(new Vector3d(0,-1,0), 1),
+                new EPlane(new Vector3d(0,0,1), 1),
+                new EPlane(new Vector3d(0,0,-1), 1),
+            });
+        checkGroup("cube", group, 3, 10);
+    }
+
+    public void testInversive() {
+
+        // sphere inversion is folded iteratively
+        SymmetryGroup group = new SymmetryGroup(new SPlane[] {
+                new EPlane(new Vector3d(-1,0,0), 0),
+                new EPlane(new Vector3d(1,0,0), 1),
+                new ESphere(new Vector3d(0,0,0), 2),
+            });
+        group.setUseLookup(true);
+        assertFalse("inversive lookup", group.hasLookup());
+
+        SymmetryProfiler profiler = new SymmetryProfiler();
+        group.setProfiler(profiler);
+        Vec p = new Vec(-0.5, 0.3, 0.2);
+        assertEquals("result", ResultCodes.RESULT_OK, group.toFD(p));
+        assertEquals("lookups", 0, profiler.getLookupHits() + profiler.getLookupMisses());
+        assertEquals("iterative", 1, profiler.getIterativeCount());
+        assertEquals("one iteration", 1, profiler.getIterationsCount(1));
+    }
+
+    public void testMaxIterations() {
+
+        // max iterations count is honored unless closed form folding is enabled
+        int counts[] = new int[]{1, 30, 100};
+        for(int i = 0; i < counts.length; i++){
+            SymmetryGroup group = WallpaperSymmetries.getS2222(1., 1.);
+            group.setMaxIterations(counts[i]);
+            assertFalse("lookup", group.hasLookup());
+            Vec p = new Vec(1000.5, 0.5, 0);
+            assertEquals("outside", ResultCodes.RESULT_OUTSIDE, group.toFD(p));
+            group.setUseLookup(true);
+            p = new Vec(1000.5, 0.5, 0);
+            assertEquals("closed form", ResultCodes.RESULT_OK, group.toFD(p));
+        }
+    }
+
+    /**
+       compares closed form folding with iterative folding of random points
+     */
+    void checkGroup(String name, SymmetryGroup group, int rank, double size){
+
+        SymmetryGroup iter = new SymmetryGroup(group.getFundamentalDomain(), group.getETransforms());
+        if(group.getType() == SymmetryGroup.TYPE_REFLECTIONS)
+            iter = new SymmetryGroup(group.getFundamentalDomain());
+        iter.setMaxIterations(100000);
+        group.setMaxIterations(100);
+        group.setUseLookup(true);
+
+        assertTrue(name + " lookup", group.hasLookup());
+        assertEquals(name + " rank", rank, group.getLookup().getRank());
+
+        SymmetryProfiler profiler = new SymmetryProfiler();
+        group.setProfiler(profiler);
+        Random rnd = new Random(101);
+        int count = 10000;
+        SPlane planes[] = group.getFundamentalDomain();
+        for(int k = 0; k < count; k++){
+            Vec p = new Vec(size*(2*rnd.nextDouble()-1), size*(2*rnd.nextDouble()-1), size*(2*rnd.nextDouble()-1));
+            Vec q = new Vec(p);
+            assertEquals(name + " result", ResultCodes.RESULT_OK, group.toFD(p));
+            assertEquals(name + " iterative result", ResultCodes.RESULT_OK, iter.toFD(q));
+            for(int i = 0; i < planes.length; i++)
+                assertTrue(name + " inside", planes[i].distance(p) < EPS*size);
+            for(int i = 0; i < 3; i++)
+                assertEquals(name + " point", q.v[i], p.v[i], EPS*size);
+        }
+        printf("%s elements: %d %s", name, group.getLookup().getElementsCount(), profiler);
+        assertTrue(name + " hits", profiler.getLookupHits() > 0.99*count);
+    }
+
+    public void devTestSpeed() {
+
+        SymmetryGroup groups[] = getWallpaperGroups(0.01);
+        for(int i = 0; i < groups.length; i++){
+            SymmetryGroup group = groups[i];
+            group.setMaxIterations(100);
+            group.setUseLookup(true);
+            group.toFD(new Vec(3));
+            Random rnd = new Random(101);
+            int count = 1000000;
+            double size = 0.05;
+            Vec pnt[] = new Vec[count];
+            for(int k = 0; k < count; k++)
+                pnt[k] = new Vec(size*(2*rnd.nextDouble()-1), size*(2*rnd.nextDouble()-1), 0);
+            Vec p = new Vec(3);
+            long t0 = time();
+            for(int k = 0; k < count; k++){
+                p.set(pnt[k]);
+                group.toFD(p);
+            }
+            long t1 = time();
+            group.setUseLookup(false);
+            for(int k = 0; k < count; k++){
+                p.set(pnt[k]);
+                group.toFD(p);
+            }
+            printf("group %2d lookup: %4d ms iterative: %4d ms\n", i, t1 - t0, time() - t1);
+        }
+    }
+
+    public static void main(String[] args) {
+        new TestSymmetryGroup().devTestSpeed();
+    }
+}
@@ -0,0 +1,163 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.transforms;
+
+import javax.vecmath.Vector3d;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import abfab3d.core.Initializable;
+import abfab3d.core.Vec;
+import abfab3d.core.VecTransform;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+
+/**
+ * Tests precomposition of affine transforms in CompositeTransform
+ */
+public class TestCompositeTransform extends TestCase {
+
+    static final double EPS = 1.e-12;
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestCompositeTransform.class);
+    }
+
+    public void testAffineChain() {
+
+        VecTransform trans[] = makeTransforms(false);
+        CompositeTransform ct = makeComposite(trans);
+        assertEquals("stages", 1, ct.getStagesCount());
+        checkTransforms(ct, trans);
+    }
+
+    public void testMixedChain() {
+
+        VecTransform trans[] = makeTransforms(true);
+        CompositeTransform ct = makeComposite(trans);
+        // affine chain, twist, affine chain
+        assertEquals("stages", 3, ct.getStagesCount());
+        checkTransforms(ct, trans);
+    }
+
+    public void testNested() {
+
+        VecTransform trans[] = makeTransforms(false);
+        PlaneReflection refl = new PlaneReflection(new Vector3d(0.3, 0.4, 1.2), 0.7);
+        refl.initialize();
+        CompositeTransform inner = new CompositeTransform(trans[1], trans[2]);
+        CompositeTransform ct = new CompositeTransform(trans[0], inner, trans[3], refl);
+        ct.initialize();
+        assertEquals("stages", 1, ct.getStagesCount());
+        VecTransform trans1[] = new VecTransform[]{trans[0], trans[1], trans[2], trans[3], refl};
+        checkTransforms(ct, trans1);
+    }
+
+    /**
+       compares the composite transform with the sequential application of the transforms
+     */
+    void checkTransforms(CompositeTransform ct, VecTransform trans[]){
+
+        Vec in = new Vec(3), out = new Vec(3), exp = new Vec(3), tmp = new Vec(3);
+        for(int k = 0; k < 20; k++){
+            in.set(0.1*k - 1., 0.3 - 0.05*k, 0.02*k*k);
+            in.scaleFactor = 1.5;
+
+            exp.set(in);
+            for(int i = trans.length-1; i >= 0; i--){
+                trans[i].inverse_transform(exp, tmp);
+                exp.set(tmp);
+            }
+            ct.inverse_transform(in, out);
+            assertVec("inverse", exp, out);
+
+            exp.set(in);
+            for(int i = 0; i < trans.length; i++){
+                trans[i].transform(exp, tmp);
+                exp.set(tmp);
+            }
+            ct.transform(in, out);
+            assertVec("forward", exp, out);
+        }
+    }
+
+    static void assertVec(String msg, Vec exp, Vec v){
+        for(int i = 0; i < 3; i++)
+            assertEquals(msg, exp.v[i], v.v[i], EPS);
+        assertEquals(msg + " scale", exp.scaleFactor, v.scaleFactor, EPS);
+    }
+
+    static VecTransform[] makeTransforms(boolean withTwist){
+
+        Scale scale = new Scale(1.5, 1.7, 0.8);
+        scale.set("center", new Vector3d(0.2, -0.3, 0.1));
+        VecTransform trans[] = new VecTransform[]{
+            new Translation(0.1, 0.2, -0.3),
+            new Rotation(new Vector3d(1, 2, 3), 0.7, new Vector3d(0.5, 0.1, -0.2)),
+            scale,
+            new Translation(-0.4, 0.1, 0.25),
+        };
+        if(withTwist){
+            VecTransform t[] = new VecTransform[]{trans[0], trans[1], new Twist(3.), trans[2], trans[3]};
+            trans = t;
+        }
+        for(int i = 0; i < trans.length; i++){
+            if(trans[i] instanceof Initializable)
+                ((Initializable)trans[i]).initialize();
+        }
+        return trans;
+    }
+
+    static CompositeTransform makeComposite(VecTransform trans[]){
+
+        CompositeTransform ct = new CompositeTransform();
+        for(int i = 0; i < trans.length; i++)
+            ct.add(trans[i]);
+        ct.initialize();
+        return ct;
+    }
+
+    public void devTestSpeed() {
+
+        VecTransform trans[] = makeTransforms(false);
+        CompositeTransform ct = makeComposite(trans);
+        Vec in = new Vec(3), out = new Vec(3), tmp = new Vec(3);
+        int count = 10000000;
+        for(int rep = 0; rep < 3; rep++){
+            long t0 = time();
+            for(int k = 0; k < count; k++){
+                in.set(1.e-7*k, 0.2, 0.3);
+                ct.inverse_transform(in, out);
+            }
+            long t1 = time();
+            for(int k = 0; k < count; k++){
+                in.set(1.e-7*k, 0.2, 0.3);
+                for(int i = trans.length-1; i >= 0; i--){
+                    trans[i].inverse_transform(in, tmp);
+                    in.set(tmp);
+                }
+            }
+            printf("composite: %d ms sequential: %d ms\n", t1 - t0, time() - t1);
+        }
+    }
+
+    public static void main(String[] args) {
+        new TestCompositeTransform().devTestSpeed();
+    }
+}
@@ -0,0 +1,106 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.util;
+
+import javax.vecmath.Vector3d;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import abfab3d.core.DataSource;
+import abfab3d.core.MathUtil;
+import abfab3d.datasources.Sphere;
+import abfab3d.datasources.Torus;
+import abfab3d.datasources.Union;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.fmt;
+import static abfab3d.core.Units.MM;
+
+/**
+ * Tests CoherentSliceCalculator
+ */
+public class TestCoherentSliceCalculator extends TestCase {
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestCoherentSliceCalculator.class);
+    }
+
+    public void testSurfaceBand() {
+
+        DataSource model = new Union(new Sphere(new Vector3d(2*MM, 1*MM, 0), 5*MM),
+                                     new Torus(new Vector3d(-3*MM, 0, 0), new Vector3d(0,0,1), 4*MM, 1*MM));
+        MathUtil.initialize(model);
+
+        double band = 0.5*MM;
+        CoherentSliceCalculator coherent = new CoherentSliceCalculator(4);
+        coherent.setSurfaceBand(band);
+        coherent.setTileSize(8);
+        SliceCalculator simple = new SimpleSliceCalculator(4);
+
+        int nu = 200, nv = 150, dim = 4;
+        double vs = 0.1*MM;
+        Vector3d eu = new Vector3d(vs, 0, 0);
+        Vector3d ev = new Vector3d(0, vs, 0);
+        double data0[] = new double[nu*nv*dim];
+        double data1[] = new double[nu*nv*dim];
+
+        for(int k = 0; k < 60; k++){
+            Vector3d origin = new Vector3d(-10*MM, -7*MM, -6*MM + k*0.2*MM);
+            simple.getSliceData(model, origin, eu, ev, nu, nv, dim, data0);
+            coherent.getSliceData(model, origin, eu, ev, nu, nv, dim, data1);
+            for(int i = 0; i < nu*nv; i++){
+                double d0 = data0[i*dim];
+                double d1 = data1[i*dim];
+                if(d0 <= band){
+                    // interior and surface band are exact
+                    for(int c = 0; c < dim; c++)
+                        assertEquals(fmt("slice: %d pixel: %d channel: %d", k, i, c), data0[i*dim + c], data1[i*dim + c], 0.);
+                } else {
+                    // exterior estimation is positive and does not exceed the distance
+                    assertTrue(fmt("slice: %d pixel: %d exterior", k, i), d1 > 0. && d1 <= d0 + 1.e-10);
+                }
+            }
+        }
+        printf("evaluated: %d skipped: %d\n", coherent.getEvaluatedCount(), coherent.getSkippedCount());
+        assertTrue("skipped pixels", coherent.getSkippedCount() > coherent.getEvaluatedCount());
+    }
+
+    public void testFillInterior() {
+
+        DataSource model = new Sphere(new Vector3d(0, 0, 0), 8*MM);
+        MathUtil.initialize(model);
+
+        CoherentSliceCalculator coherent = new CoherentSliceCalculator(4);
+        coherent.setFillInterior(true);
+        SliceCalculator simple = new SimpleSliceCalculator(4);
+
+        int nu = 100, nv = 100, dim = 1;
+        double vs = 0.2*MM;
+        Vector3d origin = new Vector3d(-10*MM, -10*MM, 0);
+        Vector3d eu = new Vector3d(vs, 0, 0);
+        Vector3d ev = new Vector3d(0, vs, 0);
+        double data0[] = new double[nu*nv*dim];
+        double data1[] = new double[nu*nv*dim];
+        simple.getSliceData(model, origin, eu, ev, nu, nv, dim, data0);
+        coherent.getSliceData(model, origin, eu, ev, nu, nv, dim, data1);
+        for(int i = 0; i < nu*nv; i++){
+            assertEquals("sign", data0[i] > 0, data1[i] > 0);
+        }
+        assertTrue("interior tiles skipped", coherent.getSkippedCount() > 0);
+    }
+}
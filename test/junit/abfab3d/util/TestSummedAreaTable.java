@@ -0,0 +1,227 @@
+/*****************************************************************************
+ *                        Shapeways, Inc Copyright (c) 2018
+ *                               Java Source
+ *
+ * This source is licensed under the GNU LGPL v2.1
+ * Please read http://www.gnu.org/copyleft/lgpl.html for more information
+ *
+ * This software comes with the standard NO WARRANTY disclaimer for any
+ * purpose. Use it at your own risk. If there's a problem you get to fix it.
+ *
+ ****************************************************************************/
+
+package abfab3d.util;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import abfab3d.core.Vec;
+import abfab3d.datasources.ImageMap;
+
+import static abfab3d.core.Output.printf;
+import static abfab3d.core.Output.time;
+import static abfab3d.core.Units.MM;
+
+/**
+ * Tests SummedAreaTable, ImageMipMap and image filtering in ImageMap
+ */
+public class TestSummedAreaTable extends TestCase {
+
+    static final double EPS = 1.e-9;
+
+    /**
+     * Creates a test suite consisting of all the methods that start with "test".
+     */
+    public static Test suite() {
+        return new TestSuite(TestSummedAreaTable.class);
+    }
+
+    public void testBoxAverage() {
+
+        int w = 37, h = 23;
+        double data[] = makeData(w, h, 2);
+        SummedAreaTable sat = new SummedAreaTable(data, w, h, 2);
+        Random rnd = new Random(17);
+        double value[] = new double[2];
+
+        for(int i = 0; i < 1000; i++){
+            double x0 = rnd.nextDouble()*w, x1 = rnd.nextDouble()*w;
+            double y0 = rnd.nextDouble()*h, y1 = rnd.nextDouble()*h;
+            if(x1 < x0){ double t = x0; x0 = x1; x1 = t;}
+            if(y1 < y0){ double t = y0; y0 = y1; y1 = t;}
+            if(x1 - x0 < 0.01 || y1 - y0 < 0.01)
+                continue;
+            sat.getAverage(x0, y0, x1, y1, false, false, value);
+            for(int c = 0; c < 2; c++){
+                double ref = boxAverage(data, w, h, 2, c, x0, y0, x1, y1);
+                assertEquals("channel " + c, ref, value[c], EPS);
+            }
+            assertEquals("channel 0", value[0], sat.getAverage(x0, y0, x1, y1, false, false), EPS);
+        }
+    }
+
+    public void testRepeat() {
+
+        int w = 13, h = 11;
+        double data[] = makeData(w, h, 1);
+        SummedAreaTable sat = new SummedAreaTable(data, w, h, 1);
+
+        // whole periods average to image average
+        double avg = boxAverage(data, w, h, 1, 0, 0, 0, w, h);
+        assertEquals(avg, sat.getAverage(-2*w + 0.3, 5.7, w + 0.3, 2*h + 5.7, true, true), EPS);
+
+        // shifted by period
+        double v0 = sat.getAverage(2.3, 3.1, 7.8, 4.9, true, true);
+        assertEquals(v0, sat.getAverage(2.3 - 3*w, 3.1 + 2*h, 7.8 - 3*w, 4.9 + 2*h, true, true), EPS);
+
+        // box crossing image edge
+        double ref = (boxAverage(data, w, h, 1, 0, w - 1.5, 2, w, 4)*1.5 + boxAverage(data, w, h, 1, 0, 0, 2, 0.5, 4)*0.5)/2;
+        assertEquals(ref, sat.getAverage(w - 1.5, 2, w + 0.5, 4, true, false), EPS);
+
+        // box is clipped to image without repeat
+        assertEquals(boxAverage(data, w, h, 1, 0, w - 1.5, 2, w, 4), sat.getAverage(w - 1.5, 2, w + 0.5, 4, false, false), EPS);
+    }
+
+    public void testMipMap() {
+
+        int w = 64, h = 32;
+        BufferedImage image = makeStripes(w, h);
+        ImageMipMap mm = new ImageMipMap(image);
+        assertEquals("levels", 6, mm.getLevelCount());
+        double color[] = new double[4];
+
+        // small probe gives pixel colors
+        mm.getPixel(4.5, 3.5, 0.5, color);
+        assertEquals(255., color[0], EPS);
+        mm.getPixel(5.5, 3.5, 0.5, color);
+        assertEquals(0., color[0], EPS);
+
+        // large probe averages the stripes
+        for(double probe = 2.; probe <= 64; probe *= 1.7){
+            mm.getPixel(20.3, 10.6, probe, color);
+            assertEquals("probe " + probe, 127.5, color[0], 1.);
+            assertEquals("alpha " + probe, 255, color[3], EPS);
+        }
+
+        // no repeat extends edge pixels
+        mm.getPixel(-3.5, 3.5, 0.5, false, false, color);
+        assertEquals(255., color[0], EPS);
+    }
+
+    public void testImageMapFiltering() {
+
+        int w = 100, h = 100;
+        double size = 10*MM;
+        ImageMap map = new ImageMap(makeStripes(w, h), size, size, size);
+        map.setBlackDisplacement(1*MM);
+        map.setWhiteDisplacement(0);
+        map.initialize();
+
+        ImageMap fmap = new ImageMap(makeStripes(w, h), size, size, size);
+        fmap.setBlackDisplacement(1*MM);
+        fmap.setWhiteDisplacement(0);
+        fmap.setFiltering(true);
+        fmap.initialize();
+
+        Vec pnt = new Vec(3);
+        Vec value = new Vec(3);
+        double minValue = 1, maxValue = 0, fmin = 1, fmax = 0;
+        for(int i = 0; i < 100; i++){
+            pnt.v[0] = -4*MM + i*0.0731*MM;
+            pnt.v[1] = 1.3*MM;
+            pnt.setVoxelSize(1*MM);
+            map.getDataValue(pnt, value);
+            minValue = Math.min(minValue, value.v[0]);
+            maxValue = Math.max(maxValue, value.v[0]);
+            fmap.getDataValue(pnt, value);
+            fmin = Math.min(fmin, value.v[0]);
+            fmax = Math.max(fmax, value.v[0]);
+
+            // small voxels are not filtered
+            pnt.setVoxelSize(0.05*MM);
+            map.getDataValue(pnt, value);
+            double v = value.v[0];
+            fmap.getDataValue(pnt, value);
+            assertEquals(v, value.v[0], EPS);
+        }
+        printf("unfiltered: [%7.4f, %7.4f] mm filtered: [%7.4f, %7.4f] mm\n", minValue/MM, maxValue/MM, fmin/MM, fmax/MM);
+        assertTrue("unfiltered aliasing", maxValue - minValue > 0.9*MM);
+        assertTrue("filtered", fmax - fmin < 0.1*MM);
+        assertEquals("filtered average", 0.5*MM, 0.5*(fmin + fmax), 0.05*MM);
+    }
+
+    /**
+       compares lookup speed of mipmap at different probe sizes
+     */
+    public void devTestSpeed() {
+
+        int n = 2000;
+        ImageMipMap mm = new ImageMipMap(makeStripes(n, n));
+        SummedAreaTable sat = new SummedAreaTable(makeData(n, n, 1), n, n, 1);
+        double color[] = new double[4];
+        int count = 10000000;
+        double probes[] = new double[]{0.5, 3., 17.};
+        for(int k = 0; k < probes.length; k++){
+            long t0 = time();
+            double s = 0;
+            for(int i = 0; i < count; i++){
+                mm.getPixel((i*0.37) % n, (i*0.011) % n, probes[k], color);
+                s += color[0];
+            }
+            printf("mipmap probe: %5.1f %d ms (%f)\n", probes[k], time() - t0, s/count);
+            t0 = time();
+            s = 0;
+            double r = probes[k]/2;
+            for(int i = 0; i < count; i++){
+                double x = (i*0.37) % n, y = (i*0.011) % n;
+                s += sat.getAverage(x - r, y - r, x + r, y + r, true, true);
+            }
+            printf("sat probe: %5.1f %d ms (%f)\n", probes[k], time() - t0, s/count);
+        }
+    }
+
+    static double[] makeData(int w, int h, int channels){
+
+        double data[] = new double[w*h*channels];
+        Random rnd = new Random(5);
+        for(int i = 0; i < data.length; i++)
+            data[i] = rnd.nextDouble();
+        return data;
+    }
+
+    /**
+       vertical white and black stripes one pixel wide
+     */
+    static BufferedImage makeStripes(int w, int h){
+
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        for(int y = 0; y < h; y++){
+            for(int x = 0; x < w; x++){
+                image.setRGB(x, y, (x % 2 == 0)? 0xFFFFFFFF: 0xFF000000);
+            }
+        }
+        return image;
+    }
+
+    /**
+       brute force average over box with fractional pixel coverage
+     */
+    static double boxAverage(double data[], int w, int h, int channels, int c, double x0, double y0, double x1, double y1){
+
+        double sum = 0;
+        for(int y = 0; y < h; y++){
+            double cy = Math.min(y + 1, y1) - Math.max(y, y0);
+            if(cy <= 0) continue;
+            for(int x = 0; x < w; x++){
+                double cx = Math.min(x + 1, x1) - Math.max(x, x0);
+                if(cx <= 0) continue;
+                sum += cx*cy*data[(x + y*w)*channels + c];
+            }
+        }
+        return sum/((x1 - x0)*(y1 - y0));
+    }
+}